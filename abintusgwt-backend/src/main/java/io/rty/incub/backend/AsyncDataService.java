@@ -0,0 +1,218 @@
+package io.rty.incub.backend;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Calls a {@link DataService} on a bounded pool of its own threads, so that
+ * a slow store holds neither a request thread nor the session lock of the
+ * user waiting for it.
+ * <p>
+ * Every method returns at once with a future of the outcome of the
+ * corresponding {@link DataService} method, which completes exceptionally
+ * with what that method threw. The pool has a bounded queue: when it is
+ * full, calls are refused at once, with a future completed exceptionally
+ * with a {@link RejectedExecutionException}, rather than left piling up
+ * behind a store that does not keep up. Futures complete on a thread of the
+ * pool, so what depends on them should be quick, or hand over to another
+ * thread.
+ */
+public class AsyncDataService implements Closeable {
+
+    /** Queued calls per thread. */
+    private static final int QUEUE_PER_THREAD = 32;
+    /**
+     * Calls running at once on virtual threads, which cost little while
+     * they wait, so that the bound is that of the store rather than of the
+     * threads.
+     */
+    private static final int VIRTUAL_THREADS = 256;
+
+    private static class InstanceHolder {
+        private static final AsyncDataService INSTANCE = new AsyncDataService(
+                DataService.get());
+    }
+
+    private final DataService dataService;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a service calling the given one on as many threads as there
+     * are processors, at least two, or on {@value #VIRTUAL_THREADS} threads
+     * if they are {@link VirtualThreads virtual} ones.
+     */
+    public AsyncDataService(DataService dataService) {
+        this(dataService, VirtualThreads.isEnabled() ? VIRTUAL_THREADS
+                : Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public AsyncDataService(DataService dataService, int threads) {
+        this(dataService, threads, threads * QUEUE_PER_THREAD);
+    }
+
+    AsyncDataService(DataService dataService, int threads,
+            int queueCapacity) {
+        this.dataService = dataService;
+        executor = new ThreadPoolExecutor(threads, threads, 0,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                VirtualThreads.factory("data-service"));
+    }
+
+    /**
+     * Returns the asynchronous service of the application, calling
+     * {@link DataService#get()}.
+     */
+    public static AsyncDataService get() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Returns the service called by this one.
+     */
+    public DataService getDataService() {
+        return dataService;
+    }
+
+    /**
+     * @see DataService#getProductById(int)
+     */
+    public CompletableFuture<Product> getProductById(int productId) {
+        return supply(() -> dataService.getProductById(productId));
+    }
+
+    /**
+     * Looks up the products with the given ids in a single call, leaving out
+     * ids of no product.
+     *
+     * @see DataService#getProductById(int)
+     */
+    public CompletableFuture<List<Product>> getProductsById(
+            Collection<Integer> productIds) {
+        return supply(() -> {
+            List<Product> products = new ArrayList<>(productIds.size());
+            for (int productId : productIds) {
+                Product product = dataService.getProductById(productId);
+                if (product != null) {
+                    products.add(product);
+                }
+            }
+            return products;
+        });
+    }
+
+    /**
+     * @see DataService#fetchProducts(ProductQuery)
+     */
+    public CompletableFuture<List<Product>> fetchProducts(ProductQuery query) {
+        return supply(() -> dataService.fetchProducts(query));
+    }
+
+    /**
+     * @see DataService#countProducts(String)
+     */
+    public CompletableFuture<Integer> countProducts(String filter) {
+        return supply(() -> dataService.countProducts(filter));
+    }
+
+    /**
+     * Stores the product as {@link DataService#updateProduct(Product)} does.
+     * The product must not be changed until the future completes.
+     *
+     * @return a future of the product, with its new id and version
+     */
+    public CompletableFuture<Product> updateProduct(Product product) {
+        return supply(() -> {
+            dataService.updateProduct(product);
+            return product;
+        });
+    }
+
+    /**
+     * @see DataService#deleteProduct(int)
+     */
+    public CompletableFuture<Void> deleteProduct(int productId) {
+        return supply(() -> {
+            dataService.deleteProduct(productId);
+            return null;
+        });
+    }
+
+    /**
+     * Updates products as
+     * {@link DataService#updateProducts(Predicate, Consumer)} does. The
+     * predicate and the mutation are called on a thread of the pool.
+     */
+    public CompletableFuture<Integer> updateProducts(
+            Predicate<? super Product> where,
+            Consumer<? super Product> mutation) {
+        return supply(() -> dataService.updateProducts(where, mutation));
+    }
+
+    /**
+     * Updates products as
+     * {@link DataService#updateProductsById(Collection, Consumer)} does. The
+     * mutation is called on a thread of the pool.
+     */
+    public CompletableFuture<Integer> updateProductsById(
+            Collection<Integer> productIds,
+            Consumer<? super Product> mutation) {
+        return supply(
+                () -> dataService.updateProductsById(productIds, mutation));
+    }
+
+    /**
+     * @see DataService#deleteProducts(Collection)
+     */
+    public CompletableFuture<Integer> deleteProducts(
+            Collection<Integer> productIds) {
+        return supply(() -> dataService.deleteProducts(productIds));
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(call.get());
+                } catch (Throwable e) {
+                    // errors too, a future left pending is waited for forever
+                    result.completeExceptionally(e);
+                    if (e instanceof Error) {
+                        throw (Error) e;
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of calls waiting for a thread.
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stops the threads of the service. Calls not started yet are dropped
+     * and their futures never complete.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
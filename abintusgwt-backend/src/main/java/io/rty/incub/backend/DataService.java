@@ -1,29 +1,291 @@
 package io.rty.incub.backend;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import io.rty.incub.backend.cache.CachingDataService;
 import io.rty.incub.backend.data.Category;
 import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.metrics.TimedDataService;
 import io.rty.incub.backend.mock.MockDataService;
+import io.rty.incub.backend.persist.SnapshotDataService;
 
 /**
  * Back-end service interface for retrieving and updating product data.
  */
 public abstract class DataService implements Serializable {
 
+    /**
+     * System property naming the snapshot file products are persisted in.
+     * The file is created with generated products if it does not exist yet.
+     * Without it, products are generated on every start and edits are lost.
+     */
+    public static final String SNAPSHOT_PROPERTY = "abintusgwt.data.snapshot";
+
+    /** Products fetched at a time by {@link #forEachProduct}. */
+    private static final int FOR_EACH_PAGE_SIZE = 1000;
+
+    private static class InstanceHolder {
+        private static final DataService INSTANCE = new TimedDataService(
+                new CachingDataService(create()));
+    }
+
     public abstract Collection<Product> getAllProducts();
 
     public abstract Collection<Category> getAllCategories();
 
+    /**
+     * Stores the product: a new one if its id is negative, otherwise a
+     * replacement for the product with that id. On return, the product has
+     * its new id and {@link Product#getVersion() version}.
+     * <p>
+     * Replacements are compare-and-set: a product with a version replaces the
+     * stored product only if that is still at the same version, so an editor
+     * cannot overwrite changes it has not seen. Products without a version,
+     * which were not read from the service, replace the stored product
+     * whatever its version.
+     *
+     * @throws ProductConflictException
+     *             if the product was changed or deleted since it was read
+     * @throws IllegalArgumentException
+     *             if a product without a version has the id of no stored
+     *             product
+     */
     public abstract void updateProduct(Product p);
 
     public abstract void deleteProduct(int productId);
 
+    /**
+     * Applies the mutation to a copy of every product matching the predicate
+     * and stores the copies, which get new versions. The mutation must not
+     * change product ids.
+     * <p>
+     * This default implementation updates the products one by one;
+     * implementations should override it to update them in a single write,
+     * with a single change notification.
+     *
+     * @return the number of products updated
+     */
+    public int updateProducts(Predicate<? super Product> where,
+            Consumer<? super Product> mutation) {
+        int count = 0;
+        for (Product product : getAllProducts()) {
+            if (where.test(product)) {
+                Product copy = new Product(product);
+                mutation.accept(copy);
+                copy.setVersion(0);
+                updateProduct(copy);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Applies the mutation to a copy of every product with one of the given
+     * ids and stores the copies, which get new versions, skipping ids of no
+     * product. The mutation must not change product ids. Unlike
+     * {@link #updateProducts(Predicate, Consumer)}, the products are looked
+     * up by id, so updating a few costs the same whatever the number of
+     * products.
+     * <p>
+     * This default implementation updates the products one by one;
+     * implementations should override it to update them in a single write,
+     * with a single change notification.
+     *
+     * @return the number of products updated
+     */
+    public int updateProductsById(Collection<Integer> productIds,
+            Consumer<? super Product> mutation) {
+        int count = 0;
+        for (int productId : new LinkedHashSet<>(productIds)) {
+            Product product = getProductById(productId);
+            if (product != null) {
+                Product copy = new Product(product);
+                mutation.accept(copy);
+                copy.setVersion(0);
+                updateProduct(copy);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Deletes the products with the given ids, skipping ids of no product.
+     * <p>
+     * This default implementation deletes the products one by one;
+     * implementations should override it to delete them in a single write,
+     * with a single change notification.
+     *
+     * @return the number of products deleted
+     */
+    public int deleteProducts(Collection<Integer> productIds) {
+        int count = 0;
+        for (int productId : productIds) {
+            if (getProductById(productId) != null) {
+                deleteProduct(productId);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stores all the products as {@link #updateProduct(Product)} would:
+     * products with a negative id are created, others replace the product
+     * with their id, compared by version if they have one. On return, the
+     * products have their ids and versions.
+     * <p>
+     * This default implementation stores the products one by one, so a
+     * failure leaves the products before it stored; implementations should
+     * override it to check every product first and store them in a single
+     * write, with a single change notification.
+     *
+     * @throws ProductConflictException
+     *             if a product was changed or deleted since it was read
+     * @throws IllegalArgumentException
+     *             if a product without a version has the id of no product
+     */
+    public void upsertProducts(Collection<? extends Product> products) {
+        for (Product product : products) {
+            updateProduct(product);
+        }
+    }
+
     public abstract Product getProductById(int productId);
 
+    /**
+     * Returns one page of the products matching the query, sorted by the sort
+     * orders of the query.
+     * <p>
+     * This default implementation filters and sorts the whole
+     * {@link #getAllProducts() product collection}; implementations should
+     * override it with something that scales with the page size instead.
+     */
+    public List<Product> fetchProducts(ProductQuery query) {
+        Stream<Product> products = getAllProducts().stream()
+                .filter(query.getFilterPredicate());
+        Comparator<Product> comparator = query.getComparator();
+        if (comparator != null) {
+            products = products.sorted(comparator);
+        }
+        return products.skip(query.getOffset()).limit(query.getLimit())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Hands the products matching the query to the action, in the order of
+     * the query, from its offset on and up to its limit. Products are read a
+     * page at a time, and the action runs without any lock of the service
+     * held, so that it may be as slow as writing to a client is, and reading
+     * every product takes no more memory than a page.
+     * <p>
+     * Products are read as paging through
+     * {@link #fetchProducts(ProductQuery)} would: a write between two pages
+     * may move products across the page boundary, so that one is skipped or
+     * handed out twice.
+     * <p>
+     * This default implementation fetches one page after the other;
+     * implementations should override it to read on from where the previous
+     * page ended.
+     */
+    public void forEachProduct(ProductQuery query,
+            Consumer<? super Product> action) {
+        long offset = query.getOffset();
+        long end = offset + query.getLimit();
+        while (offset < end) {
+            int limit = (int) Math.min(FOR_EACH_PAGE_SIZE, end - offset);
+            List<Product> page = fetchProducts(new ProductQuery((int) offset,
+                    limit, query.getSortOrders(), query.getFilter()));
+            page.forEach(action);
+            if (page.size() < limit) {
+                return;
+            }
+            offset += limit;
+        }
+    }
+
+    /**
+     * Returns the number of products matching the filter text.
+     *
+     * @see ProductQuery#getFilter()
+     */
+    public int countProducts(String filter) {
+        return (int) getAllProducts().stream()
+                .filter(ProductQuery.all(filter).getFilterPredicate())
+                .count();
+    }
+
+    /**
+     * Returns an estimate of the memory taken by the products, in bytes, or
+     * -1 if it is not known.
+     * <p>
+     * This default implementation returns -1.
+     */
+    public long getEstimatedBytes() {
+        return -1;
+    }
+
+    /**
+     * Adds a listener notified of every product created, updated or deleted
+     * through this service. Changes are delivered asynchronously and bursts
+     * of changes are coalesced into a single event.
+     */
+    public abstract ListenerRegistration addProductChangeListener(
+            ProductChangeListener listener);
+
+    /**
+     * Returns the service of the application, with lookups and queries
+     * cached by a {@link CachingDataService} and every call timed by a
+     * {@link TimedDataService}. Writes must go through this service for the
+     * cache to see them.
+     */
     public static DataService get() {
-        return MockDataService.getInstance();
+        return InstanceHolder.INSTANCE;
+    }
+
+    private static DataService create() {
+        String snapshot = System.getProperty(SNAPSHOT_PROPERTY);
+        if (snapshot == null || snapshot.isEmpty()) {
+            return MockDataService.getInstance();
+        }
+        Path file = Paths.get(snapshot);
+        try {
+            if (!Files.exists(file)) {
+                MockDataService.writeSnapshot(file);
+            }
+            SnapshotDataService service = new SnapshotDataService(file);
+            Runtime.getRuntime().addShutdownHook(new Thread(
+                    () -> closeQuietly(service), "product-snapshot-save"));
+            return service;
+        } catch (IOException e) {
+            throw new UncheckedIOException(
+                    "Cannot open product snapshot " + file, e);
+        }
+    }
+
+    private static void closeQuietly(SnapshotDataService service) {
+        try {
+            service.close();
+        } catch (IOException e) {
+            Logger.getLogger(DataService.class.getName()).log(Level.SEVERE,
+                    "Failed to save products on shutdown", e);
+        }
     }
 
 }
@@ -0,0 +1,15 @@
+package io.rty.incub.backend;
+
+import java.io.Serializable;
+
+/**
+ * Handle for removing a listener added to a {@link DataService}.
+ */
+@FunctionalInterface
+public interface ListenerRegistration extends Serializable {
+
+    /**
+     * Removes the listener. Calling this more than once has no effect.
+     */
+    void remove();
+}
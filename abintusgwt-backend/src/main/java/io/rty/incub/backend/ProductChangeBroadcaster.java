@@ -0,0 +1,140 @@
+package io.rty.incub.backend;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers {@link ProductChangeEvent}s to the listeners of a
+ * {@link DataService}.
+ * <p>
+ * Writers only record the change in a pending map, which is cheap and never
+ * waits for listeners. The first change of a burst schedules a delivery after
+ * the coalescing delay, and everything recorded until then goes out as a
+ * single event on a daemon notification thread. The changes of a bulk
+ * operation are recorded at once, so they go out in the same event.
+ * <p>
+ * All broadcasters share the notification thread, so that services created
+ * and dropped, as tests do, leave no thread behind. Listeners should hand
+ * long work off rather than hold it up.
+ */
+public class ProductChangeBroadcaster {
+
+    private static final Logger LOGGER = Logger
+            .getLogger(ProductChangeBroadcaster.class.getName());
+    private static final ScheduledExecutorService NOTIFIER = Executors
+            .newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "product-change-notifier");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private enum Change {
+        CREATED, UPDATED, DELETED
+    }
+
+    private final long coalesceMillis;
+    private final CopyOnWriteArrayList<ProductChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private Map<Integer, Change> pending = new HashMap<>();
+    private boolean deliveryScheduled;
+
+    public ProductChangeBroadcaster(long coalesceMillis) {
+        this.coalesceMillis = coalesceMillis;
+    }
+
+    public ListenerRegistration addListener(ProductChangeListener listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    public void productCreated(int productId) {
+        record(productId, Change.CREATED);
+    }
+
+    public void productUpdated(int productId) {
+        record(productId, Change.UPDATED);
+    }
+
+    public void productDeleted(int productId) {
+        record(productId, Change.DELETED);
+    }
+
+    public void productsCreated(int[] productIds) {
+        record(productIds, Change.CREATED);
+    }
+
+    public void productsUpdated(int[] productIds) {
+        record(productIds, Change.UPDATED);
+    }
+
+    public void productsDeleted(int[] productIds) {
+        record(productIds, Change.DELETED);
+    }
+
+    private synchronized void record(int[] productIds, Change change) {
+        for (int productId : productIds) {
+            record(productId, change);
+        }
+    }
+
+    private synchronized void record(int productId, Change change) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        Change previous = pending.get(productId);
+        if (previous == Change.CREATED && change == Change.DELETED) {
+            pending.remove(productId);
+        } else if (previous == Change.CREATED) {
+            // still new to the listeners, whatever happened since
+        } else if (previous == Change.DELETED && change == Change.CREATED) {
+            pending.put(productId, Change.UPDATED);
+        } else {
+            pending.put(productId, change);
+        }
+        if (!deliveryScheduled) {
+            deliveryScheduled = true;
+            NOTIFIER.schedule(this::deliver, coalesceMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void deliver() {
+        Map<Integer, Change> changes;
+        synchronized (this) {
+            changes = pending;
+            pending = new HashMap<>();
+            deliveryScheduled = false;
+        }
+        Set<Integer> created = new LinkedHashSet<>();
+        Set<Integer> updated = new LinkedHashSet<>();
+        Set<Integer> deleted = new LinkedHashSet<>();
+        changes.forEach((id, change) -> {
+            if (change == Change.CREATED) {
+                created.add(id);
+            } else if (change == Change.UPDATED) {
+                updated.add(id);
+            } else {
+                deleted.add(id);
+            }
+        });
+        ProductChangeEvent event = new ProductChangeEvent(created, updated,
+                deleted);
+        if (event.isEmpty()) {
+            return;
+        }
+        for (ProductChangeListener listener : listeners) {
+            try {
+                listener.productsChanged(event);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Product change listener failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package io.rty.incub.backend;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A batch of product modifications. A product appears in at most one of the
+ * id sets: a product created and then updated within the batch only counts as
+ * created, one updated and then deleted only as deleted, and one created and
+ * deleted within the batch does not appear at all.
+ */
+public class ProductChangeEvent implements Serializable {
+
+    private final Set<Integer> createdIds;
+    private final Set<Integer> updatedIds;
+    private final Set<Integer> deletedIds;
+
+    public ProductChangeEvent(Set<Integer> createdIds,
+            Set<Integer> updatedIds, Set<Integer> deletedIds) {
+        this.createdIds = Collections.unmodifiableSet(createdIds);
+        this.updatedIds = Collections.unmodifiableSet(updatedIds);
+        this.deletedIds = Collections.unmodifiableSet(deletedIds);
+    }
+
+    public Set<Integer> getCreatedIds() {
+        return createdIds;
+    }
+
+    public Set<Integer> getUpdatedIds() {
+        return updatedIds;
+    }
+
+    public Set<Integer> getDeletedIds() {
+        return deletedIds;
+    }
+
+    /**
+     * Returns whether products were added or removed, i.e. whether the
+     * number or the positions of the rows can have changed.
+     */
+    public boolean isStructural() {
+        return !createdIds.isEmpty() || !deletedIds.isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return createdIds.isEmpty() && updatedIds.isEmpty()
+                && deletedIds.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ProductChangeEvent[created=" + createdIds + ", updated="
+                + updatedIds + ", deleted=" + deletedIds + "]";
+    }
+}
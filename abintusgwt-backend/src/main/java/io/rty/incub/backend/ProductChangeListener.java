@@ -0,0 +1,17 @@
+package io.rty.incub.backend;
+
+import java.io.Serializable;
+
+/**
+ * Listener for product modifications made through a {@link DataService}.
+ */
+@FunctionalInterface
+public interface ProductChangeListener extends Serializable {
+
+    /**
+     * Called with a batch of coalesced changes. Listeners are called from a
+     * shared notification thread and should hand the event over to their own
+     * thread (e.g. with {@code UI.access}) instead of doing the work inline.
+     */
+    void productsChanged(ProductChangeEvent event);
+}
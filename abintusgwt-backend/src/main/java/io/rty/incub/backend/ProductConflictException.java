@@ -0,0 +1,45 @@
+package io.rty.incub.backend;
+
+/**
+ * Thrown when a product is updated from a stale copy: it was changed or
+ * deleted through the data service since the copy was read.
+ *
+ * @see DataService#updateProduct(io.rty.incub.backend.data.Product)
+ */
+public class ProductConflictException extends RuntimeException {
+
+    private final int productId;
+    private final int expectedVersion;
+    private final int currentVersion;
+
+    /**
+     * @param currentVersion
+     *            the version of the stored product, 0 if it was deleted
+     */
+    public ProductConflictException(int productId, int expectedVersion,
+            int currentVersion) {
+        super("Product " + productId + " is at version " + currentVersion
+                + ", not " + expectedVersion);
+        this.productId = productId;
+        this.expectedVersion = expectedVersion;
+        this.currentVersion = currentVersion;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    /**
+     * Returns the version of the copy that was to be saved.
+     */
+    public int getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    /**
+     * Returns the version of the stored product, or 0 if it was deleted.
+     */
+    public int getCurrentVersion() {
+        return currentVersion;
+    }
+}
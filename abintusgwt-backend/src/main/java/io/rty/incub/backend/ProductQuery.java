@@ -0,0 +1,169 @@
+package io.rty.incub.backend;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.CategorySet;
+import io.rty.incub.backend.data.Product;
+
+/**
+ * A page request for products: which products match (the filter), in which
+ * order (the sort orders) and which slice of the result (offset and limit).
+ * <p>
+ * The filter text matches products whose name, availability or any category
+ * name contains it, ignoring case. An empty filter matches every product.
+ * Products that compare equal on every sort order keep the order in which
+ * they were added.
+ */
+public final class ProductQuery implements Serializable {
+
+    private final int offset;
+    private final int limit;
+    private final List<ProductSortOrder> sortOrders;
+    private final String filter;
+
+    public ProductQuery(int offset, int limit,
+            List<ProductSortOrder> sortOrders, String filter) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Negative offset or limit");
+        }
+        this.offset = offset;
+        this.limit = limit;
+        this.sortOrders = sortOrders == null ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(sortOrders));
+        this.filter = normalizeFilter(filter);
+    }
+
+    /**
+     * Returns a query for every product matching {@code filter}, unsorted.
+     */
+    public static ProductQuery all(String filter) {
+        return new ProductQuery(0, Integer.MAX_VALUE, null, filter);
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public List<ProductSortOrder> getSortOrders() {
+        return sortOrders;
+    }
+
+    /**
+     * Returns the trimmed, lower case filter text, never {@code null}.
+     */
+    public String getFilter() {
+        return filter;
+    }
+
+    public boolean isFiltered() {
+        return !filter.isEmpty();
+    }
+
+    public boolean isSorted() {
+        return !sortOrders.isEmpty();
+    }
+
+    /**
+     * Returns a comparator for the sort orders of this query, or
+     * {@code null} if the query is not sorted.
+     */
+    public Comparator<Product> getComparator() {
+        Comparator<Product> comparator = null;
+        for (ProductSortOrder order : sortOrders) {
+            comparator = comparator == null ? order.getComparator()
+                    : comparator.thenComparing(order.getComparator());
+        }
+        return comparator;
+    }
+
+    /**
+     * Returns a predicate matching the products of this query. The categories
+     * whose name matches the filter are looked up once, so that testing a
+     * product's categories is a bit set intersection.
+     */
+    public Predicate<Product> getFilterPredicate() {
+        if (filter.isEmpty()) {
+            return product -> true;
+        }
+        CategorySet categories = matchingCategories(filter);
+        return product -> matches(product, filter, categories);
+    }
+
+    /**
+     * Checks the product against an already normalized filter text.
+     *
+     * @see #normalizeFilter(String)
+     * @see #getFilterPredicate()
+     */
+    public static boolean matches(Product product, String filter) {
+        return filter.isEmpty()
+                || matches(product, filter, matchingCategories(filter));
+    }
+
+    private static boolean matches(Product product, String filter,
+            CategorySet categories) {
+        if (contains(product.getProductName(), filter)
+                || (product.getAvailability() != null && contains(
+                        product.getAvailability().toString(), filter))) {
+            return true;
+        }
+        return product.getCategory() != null && !categories.isEmpty()
+                && CategorySet.of(product.getCategory())
+                        .intersects(categories);
+    }
+
+    private static CategorySet matchingCategories(String filter) {
+        List<Category> matching = new ArrayList<>();
+        for (int id = 0, count = Category.count(); id < count; id++) {
+            Category category = Category.forId(id);
+            if (category != null && contains(category.getName(), filter)) {
+                matching.add(category);
+            }
+        }
+        return CategorySet.of(matching);
+    }
+
+    public static String normalizeFilter(String filter) {
+        return filter == null ? ""
+                : filter.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    private static boolean contains(String value, String filter) {
+        return value != null
+                && value.toLowerCase(Locale.ENGLISH).contains(filter);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ProductQuery)) {
+            return false;
+        }
+        ProductQuery other = (ProductQuery) o;
+        return offset == other.offset && limit == other.limit
+                && sortOrders.equals(other.sortOrders)
+                && filter.equals(other.filter);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(offset, limit, sortOrders, filter);
+    }
+
+    @Override
+    public String toString() {
+        return "ProductQuery[offset=" + offset + ", limit=" + limit
+                + ", sort=" + sortOrders + ", filter=" + filter + "]";
+    }
+}
@@ -0,0 +1,107 @@
+package io.rty.incub.backend;
+
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.Objects;
+
+import io.rty.incub.backend.data.Product;
+
+/**
+ * A single sort criterion of a {@link ProductQuery}.
+ */
+public final class ProductSortOrder implements Serializable {
+
+    /**
+     * The sortable product properties, named after the bean properties of
+     * {@link Product}. Products without a value come first.
+     */
+    public enum Property {
+        PRODUCT_NAME("productName", Comparator.comparing(
+                Product::getProductName,
+                Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER))),
+        PRICE("price", Comparator.comparing(Product::getPrice,
+                Comparator.nullsFirst(Comparator.naturalOrder()))),
+        AVAILABILITY("availability",
+                Comparator.comparing(Product::getAvailability,
+                        Comparator.nullsFirst(Comparator.naturalOrder()))),
+        STOCK_COUNT("stockCount",
+                Comparator.comparingInt(Product::getStockCount));
+
+        private final String propertyName;
+        private final Comparator<Product> comparator;
+
+        private Property(String propertyName,
+                Comparator<Product> comparator) {
+            this.propertyName = propertyName;
+            this.comparator = comparator;
+        }
+
+        public String getPropertyName() {
+            return propertyName;
+        }
+
+        /**
+         * Returns the property with the given bean property name.
+         *
+         * @throws IllegalArgumentException
+         *             if the property is not sortable
+         */
+        public static Property forPropertyName(String propertyName) {
+            for (Property property : values()) {
+                if (property.propertyName.equals(propertyName)) {
+                    return property;
+                }
+            }
+            throw new IllegalArgumentException(
+                    "Cannot sort products by " + propertyName);
+        }
+    }
+
+    private final Property property;
+    private final boolean descending;
+
+    public ProductSortOrder(Property property, boolean descending) {
+        this.property = Objects.requireNonNull(property);
+        this.descending = descending;
+    }
+
+    public static ProductSortOrder asc(Property property) {
+        return new ProductSortOrder(property, false);
+    }
+
+    public static ProductSortOrder desc(Property property) {
+        return new ProductSortOrder(property, true);
+    }
+
+    public Property getProperty() {
+        return property;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public Comparator<Product> getComparator() {
+        return descending ? property.comparator.reversed()
+                : property.comparator;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ProductSortOrder)) {
+            return false;
+        }
+        ProductSortOrder other = (ProductSortOrder) o;
+        return property == other.property && descending == other.descending;
+    }
+
+    @Override
+    public int hashCode() {
+        return property.hashCode() * 31 + (descending ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return property.getPropertyName() + (descending ? " desc" : " asc");
+    }
+}
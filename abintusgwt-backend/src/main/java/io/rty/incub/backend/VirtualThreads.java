@@ -0,0 +1,102 @@
+package io.rty.incub.backend;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates the threads the back end blocks on, such as those of the
+ * {@link AsyncDataService}, as virtual threads when the application runs on
+ * a JDK that has them and {@link #VIRTUAL_THREADS_PROPERTY} is
+ * {@code true}, and as daemon platform threads otherwise.
+ * <p>
+ * The build targets Java 8, so virtual threads are created through
+ * reflection. A virtual thread blocked on I/O does not hold an operating
+ * system thread, so many more calls to a slow store can wait at once than
+ * there are platform threads. Work that keeps a processor busy, such as
+ * hashing passwords, gains nothing from them and keeps its platform threads.
+ */
+public final class VirtualThreads {
+
+    /**
+     * System property turning virtual threads on, on a JDK that has them.
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "abintusgwt.virtualThreads";
+
+    private static final Logger LOGGER = Logger
+            .getLogger(VirtualThreads.class.getName());
+
+    /**
+     * The methods of {@code Thread.ofVirtual().name(prefix, 1).factory()},
+     * all null without virtual threads.
+     */
+    private static class BuilderHolder {
+        private static final Method OF_VIRTUAL;
+        private static final Method NAME;
+        private static final Method FACTORY;
+
+        static {
+            Method ofVirtual = null;
+            Method name = null;
+            Method factory = null;
+            try {
+                // called through the public interface, the builders are of
+                // classes internal to the JDK
+                Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                name = builder.getMethod("name", String.class, long.class);
+                factory = builder.getMethod("factory");
+            } catch (ReflectiveOperationException e) {
+                ofVirtual = null;
+            }
+            OF_VIRTUAL = ofVirtual;
+            NAME = name;
+            FACTORY = factory;
+        }
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Returns whether back-end threads are virtual ones: if so asked with
+     * {@link #VIRTUAL_THREADS_PROPERTY}, and if the JDK has them.
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)
+                && BuilderHolder.OF_VIRTUAL != null;
+    }
+
+    /**
+     * Returns a factory of threads named after the prefix and numbered from
+     * 1: virtual threads if {@link #isEnabled() enabled}, daemon platform
+     * threads otherwise.
+     */
+    public static ThreadFactory factory(String prefix) {
+        if (isEnabled()) {
+            try {
+                Object builder = BuilderHolder.NAME.invoke(
+                        BuilderHolder.OF_VIRTUAL.invoke(null), prefix + "-",
+                        1L);
+                return (ThreadFactory) BuilderHolder.FACTORY.invoke(builder);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOGGER.log(Level.WARNING,
+                        "Cannot create virtual threads, using platform threads",
+                        e);
+            }
+        }
+        return platformFactory(prefix);
+    }
+
+    private static ThreadFactory platformFactory(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r,
+                    prefix + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,41 @@
+package io.rty.incub.backend.auth;
+
+import java.io.UncheckedIOException;
+
+/**
+ * Stores the password hashes of the users who can sign in.
+ * <p>
+ * Implementations must be safe to use from several threads.
+ */
+public interface CredentialStore {
+
+    /**
+     * System property naming the file credentials are kept in, see
+     * {@link FileCredentialStore}. Without it, only the demo users of
+     * {@link InMemoryCredentialStore#createDemo()} can sign in.
+     */
+    String CREDENTIALS_PROPERTY = "abintusgwt.credentials";
+
+    /**
+     * Returns the password hash of the user, or {@code null} if there is no
+     * such user.
+     */
+    PasswordHash getPasswordHash(String username);
+
+    /**
+     * Sets the password hash of the user, adding the user if new.
+     *
+     * @throws UncheckedIOException
+     *             if the change cannot be saved
+     */
+    void setPasswordHash(String username, PasswordHash hash);
+
+    /**
+     * Removes the user.
+     *
+     * @return whether there was such a user
+     * @throws UncheckedIOException
+     *             if the change cannot be saved
+     */
+    boolean removeUser(String username);
+}
@@ -0,0 +1,183 @@
+package io.rty.incub.backend.auth;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks passwords against a {@link CredentialStore} on a bounded pool of
+ * its own threads.
+ * <p>
+ * Hashing a password takes a good part of a second of CPU, so it must not run
+ * on a request thread holding a session lock: {@link #verify(String, char[])}
+ * returns at once with a future of the outcome. The pool has half as many
+ * threads as there are processors, leaving the others to serve requests
+ * during a burst of logins, and a bounded queue: when it is full, logins are
+ * refused at once rather than left waiting longer than a user would. Users
+ * failing to sign in are made to wait between attempts, see
+ * {@link LoginAttempts}.
+ */
+public class CredentialVerifier implements Closeable {
+
+    /** Queued verifications per thread, a few seconds' worth. */
+    private static final int QUEUE_PER_THREAD = 16;
+
+    private static class InstanceHolder {
+        private static final CredentialVerifier INSTANCE = new CredentialVerifier(
+                createStore());
+    }
+
+    /**
+     * Checked for unknown users, so that they take as long as known ones.
+     */
+    private static class UnknownUserHolder {
+        private static final PasswordHash HASH = PasswordHash
+                .create(new char[0]);
+    }
+
+    private final CredentialStore store;
+    private final ThreadPoolExecutor executor;
+    private final LoginAttempts attempts;
+
+    /**
+     * Creates a verifier with the default pool size and throttling.
+     */
+    public CredentialVerifier(CredentialStore store) {
+        this(store, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public CredentialVerifier(CredentialStore store, int threads) {
+        this(store, threads, threads * QUEUE_PER_THREAD, new LoginAttempts());
+    }
+
+    CredentialVerifier(CredentialStore store, int threads, int queueCapacity,
+            LoginAttempts attempts) {
+        this.store = store;
+        this.attempts = attempts;
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "credential-verifier-"
+                            + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Returns the verifier of the application, checking passwords against
+     * the store configured with {@link CredentialStore#CREDENTIALS_PROPERTY}.
+     */
+    public static CredentialVerifier get() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    private static CredentialStore createStore() {
+        String credentials = System
+                .getProperty(CredentialStore.CREDENTIALS_PROPERTY);
+        if (credentials == null || credentials.isEmpty()) {
+            return InMemoryCredentialStore.createDemo();
+        }
+        Path file = Paths.get(credentials);
+        try {
+            return new FileCredentialStore(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read credentials " + file,
+                    e);
+        }
+    }
+
+    public CredentialStore getStore() {
+        return store;
+    }
+
+    /**
+     * Checks the password of the user in the background. The password array
+     * is cleared once checked.
+     * <p>
+     * The future completes on a thread of the verifier, so what depends on it
+     * should be quick, or hand over to another thread. It completes
+     * exceptionally with a {@link LoginThrottledException} if the user has to
+     * wait before trying again, and with a
+     * {@link RejectedExecutionException} if too many logins are waiting to be
+     * checked.
+     *
+     * @return a future of whether the password is that of the user
+     */
+    public CompletableFuture<Boolean> verify(String username,
+            char[] password) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        if (username == null || username.isEmpty()) {
+            Arrays.fill(password, '\0');
+            result.complete(false);
+            return result;
+        }
+        long wait = attempts.tryStart(username);
+        if (wait > 0) {
+            Arrays.fill(password, '\0');
+            result.completeExceptionally(
+                    new LoginThrottledException(username, wait));
+            return result;
+        }
+        try {
+            executor.execute(() -> check(username, password, result));
+        } catch (RejectedExecutionException e) {
+            attempts.end(username, null);
+            Arrays.fill(password, '\0');
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private void check(String username, char[] password,
+            CompletableFuture<Boolean> result) {
+        Boolean matches = null;
+        try {
+            PasswordHash hash = store.getPasswordHash(username);
+            if (hash == null) {
+                UnknownUserHolder.HASH.matches(password);
+                matches = false;
+            } else {
+                matches = hash.matches(password);
+            }
+        } catch (Throwable e) {
+            // errors too, the login screen waits for the future to complete
+            result.completeExceptionally(e);
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+        } finally {
+            attempts.end(username, matches);
+            Arrays.fill(password, '\0');
+        }
+        if (matches != null) {
+            result.complete(matches);
+        }
+    }
+
+    /**
+     * Returns the number of logins waiting for a thread to be checked on.
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stops the threads of the verifier. Logins not checked yet are dropped
+     * and their futures never complete.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
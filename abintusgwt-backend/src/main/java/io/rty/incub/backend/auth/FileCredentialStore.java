@@ -0,0 +1,170 @@
+package io.rty.incub.backend.auth;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Console;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Credentials kept in a text file, one {@code <username>:<hash>} line per
+ * user, as written by {@link PasswordHash#toString()}. Lines starting with
+ * {@code #} and blank lines are skipped.
+ * <p>
+ * The file is read when the store is opened, and rewritten whole on each
+ * change, through a temporary file moved over it, so that it is never left
+ * half written. Changes made to the file by other means are not seen until
+ * the store is opened again. Users can be added from the command line with
+ * {@link #main(String[])}.
+ */
+public class FileCredentialStore implements CredentialStore {
+
+    private final Path file;
+    private final ConcurrentMap<String, PasswordHash> hashes = new ConcurrentHashMap<>();
+
+    /**
+     * Opens the store on the file, which is created on the first change if
+     * it does not exist.
+     *
+     * @throws IOException
+     *             if the file cannot be read or has a malformed line
+     */
+    public FileCredentialStore(Path file) throws IOException {
+        this.file = file;
+        try (BufferedReader in = Files.newBufferedReader(file,
+                StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                // base64 and the hash prefix have no colons, usernames can
+                int colon = line.lastIndexOf(':');
+                try {
+                    if (colon <= 0) {
+                        throw new IllegalArgumentException("No username");
+                    }
+                    hashes.put(line.substring(0, colon),
+                            PasswordHash.parse(line.substring(colon + 1)));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(
+                            file + ":" + lineNumber + ": " + e.getMessage(),
+                            e);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // no users yet
+        }
+    }
+
+    @Override
+    public PasswordHash getPasswordHash(String username) {
+        return hashes.get(username);
+    }
+
+    @Override
+    public synchronized void setPasswordHash(String username,
+            PasswordHash hash) {
+        if (username.isEmpty() || username.indexOf('\n') >= 0
+                || username.indexOf('\r') >= 0
+                || !username.trim().equals(username)) {
+            throw new IllegalArgumentException(
+                    "Invalid username: '" + username + "'");
+        }
+        PasswordHash previous = hashes.put(username, hash);
+        try {
+            save();
+        } catch (IOException e) {
+            restore(username, previous);
+            throw new UncheckedIOException("Cannot save credentials " + file,
+                    e);
+        }
+    }
+
+    @Override
+    public synchronized boolean removeUser(String username) {
+        PasswordHash previous = hashes.remove(username);
+        if (previous == null) {
+            return false;
+        }
+        try {
+            save();
+        } catch (IOException e) {
+            restore(username, previous);
+            throw new UncheckedIOException("Cannot save credentials " + file,
+                    e);
+        }
+        return true;
+    }
+
+    private void restore(String username, PasswordHash previous) {
+        if (previous == null) {
+            hashes.remove(username);
+        } else {
+            hashes.put(username, previous);
+        }
+    }
+
+    private void save() throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory,
+                file.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(temp,
+                    StandardCharsets.UTF_8)) {
+                // sorted, so that the file is easy to read and compare
+                for (Map.Entry<String, PasswordHash> entry : new TreeMap<>(
+                        hashes).entrySet()) {
+                    out.write(entry.getKey());
+                    out.write(':');
+                    out.write(entry.getValue().toString());
+                    out.newLine();
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Sets the password of a user in a credentials file, asking for the
+     * password on the console.
+     * <p>
+     * Usage: {@code FileCredentialStore <file> <username>}
+     */
+    public static void main(String[] args) throws IOException {
+        Console console = System.console();
+        if (args.length != 2 || console == null) {
+            System.err.println("Usage: FileCredentialStore <file> <username>"
+                    + " (run from a console)");
+            System.exit(1);
+        }
+        char[] password = console.readPassword("Password for %s: ", args[1]);
+        char[] again = console.readPassword("Again: ");
+        if (password == null || password.length == 0
+                || !Arrays.equals(password, again)) {
+            System.err.println("Passwords are empty or do not match");
+            System.exit(1);
+        }
+        new FileCredentialStore(Paths.get(args[0]))
+                .setPasswordHash(args[1], PasswordHash.create(password));
+        Arrays.fill(password, '\0');
+        Arrays.fill(again, '\0');
+    }
+}
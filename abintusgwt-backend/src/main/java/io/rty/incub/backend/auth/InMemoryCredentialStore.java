@@ -0,0 +1,40 @@
+package io.rty.incub.backend.auth;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Credentials kept in memory only, lost on restart.
+ */
+public class InMemoryCredentialStore implements CredentialStore {
+
+    private final ConcurrentMap<String, PasswordHash> hashes = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a store with the users "admin" and "user", whose passwords are
+     * their names.
+     */
+    public static InMemoryCredentialStore createDemo() {
+        InMemoryCredentialStore store = new InMemoryCredentialStore();
+        for (String username : new String[] { "admin", "user" }) {
+            store.setPasswordHash(username,
+                    PasswordHash.create(username.toCharArray()));
+        }
+        return store;
+    }
+
+    @Override
+    public PasswordHash getPasswordHash(String username) {
+        return hashes.get(username);
+    }
+
+    @Override
+    public void setPasswordHash(String username, PasswordHash hash) {
+        hashes.put(username, hash);
+    }
+
+    @Override
+    public boolean removeUser(String username) {
+        return hashes.remove(username) != null;
+    }
+}
@@ -0,0 +1,136 @@
+package io.rty.incub.backend.auth;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts the failed logins of each user, to make them wait longer and longer
+ * between attempts once they failed a few times in a row.
+ * <p>
+ * Counters are striped rather than kept per user: a username picks one of a
+ * fixed number of stripes by its hash, and users sharing a stripe share
+ * their counter. Memory stays the same however many usernames are tried, and
+ * two attempts only contend when they fall on the same stripe. Attempts
+ * being verified count against the free failures of their stripe, so that
+ * many attempts at once do not all get through before the first one fails.
+ * <p>
+ * After {@code freeFailures} failures, each further attempt is refused until
+ * the base delay has passed since the last failure, doubling with every
+ * further failure up to the maximum delay, and only one attempt is verified
+ * at a time. Failures are forgotten once the maximum
+ * delay has passed, or on a successful login.
+ */
+final class LoginAttempts {
+
+    static final int DEFAULT_STRIPES = 4096;
+    static final int DEFAULT_FREE_FAILURES = 5;
+    static final long DEFAULT_BASE_DELAY_MILLIS = 1000;
+    static final long DEFAULT_MAX_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final class Stripe {
+        int failures;
+        int pending;
+        long lastFailure;
+    }
+
+    private final Stripe[] stripes;
+    private final int freeFailures;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final LongSupplier clock;
+
+    LoginAttempts() {
+        this(DEFAULT_STRIPES, DEFAULT_FREE_FAILURES,
+                DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS,
+                System::nanoTime);
+    }
+
+    /**
+     * @param stripes
+     *            the number of stripes, a power of two
+     * @param clock
+     *            the time in nanoseconds
+     */
+    LoginAttempts(int stripes, int freeFailures, long baseDelayMillis,
+            long maxDelayMillis, LongSupplier clock) {
+        if (Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException(
+                    "Stripes must be a power of two: " + stripes);
+        }
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.freeFailures = freeFailures;
+        this.baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(baseDelayMillis);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * Starts an attempt of the user, unless the user has to wait. A started
+     * attempt must be ended with {@link #end(String, Boolean)}.
+     *
+     * @return 0 if the attempt is started, or else the milliseconds to wait
+     */
+    long tryStart(String username) {
+        Stripe stripe = stripe(username);
+        long now = clock.getAsLong();
+        synchronized (stripe) {
+            if (stripe.failures > 0
+                    && now - stripe.lastFailure >= maxDelayNanos) {
+                stripe.failures = 0;
+            }
+            long wait = 0;
+            if (stripe.failures >= freeFailures) {
+                wait = delay(stripe.failures) - (now - stripe.lastFailure);
+            }
+            if (wait <= 0 && stripe.pending > 0
+                    && stripe.failures + stripe.pending >= freeFailures) {
+                // the attempts being verified may use up the free ones
+                wait = baseDelayNanos;
+            }
+            if (wait > 0) {
+                // round up, so that retrying after the wait gets through
+                return TimeUnit.NANOSECONDS.toMillis(wait - 1) + 1;
+            }
+            stripe.pending++;
+            return 0;
+        }
+    }
+
+    /**
+     * Ends an attempt started with {@link #tryStart(String)}.
+     *
+     * @param succeeded
+     *            whether the password matched, or {@code null} if it could
+     *            not be checked
+     */
+    void end(String username, Boolean succeeded) {
+        Stripe stripe = stripe(username);
+        long now = clock.getAsLong();
+        synchronized (stripe) {
+            stripe.pending--;
+            if (Boolean.TRUE.equals(succeeded)) {
+                stripe.failures = 0;
+            } else if (Boolean.FALSE.equals(succeeded)) {
+                stripe.failures++;
+                stripe.lastFailure = now;
+            }
+        }
+    }
+
+    private long delay(int failures) {
+        int doublings = failures - freeFailures;
+        if (doublings >= Long.numberOfLeadingZeros(baseDelayNanos) - 1) {
+            return maxDelayNanos;
+        }
+        return Math.min(baseDelayNanos << doublings, maxDelayNanos);
+    }
+
+    private Stripe stripe(String username) {
+        int h = username.hashCode();
+        // spread the high bits, as HashMap does
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+}
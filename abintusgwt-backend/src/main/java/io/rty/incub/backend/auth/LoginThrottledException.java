@@ -0,0 +1,25 @@
+package io.rty.incub.backend.auth;
+
+/**
+ * Thrown instead of checking the password of a user who failed to sign in
+ * too many times lately.
+ *
+ * @see CredentialVerifier#verify(String, char[])
+ */
+public class LoginThrottledException extends RuntimeException {
+
+    private final long retryAfterMillis;
+
+    public LoginThrottledException(String username, long retryAfterMillis) {
+        super("Too many failed logins for " + username + ", retry in "
+                + retryAfterMillis + " ms");
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Returns how long to wait before the user can try again.
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,143 @@
+package io.rty.incub.backend.auth;
+
+import java.io.Serializable;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * A salted PBKDF2 hash of a password, with HMAC-SHA256.
+ * <p>
+ * The hash is deliberately slow to compute, in proportion to its iteration
+ * count, to make guessing stolen passwords expensive: at the default count a
+ * check takes a good part of a second of CPU. Each hash keeps its own salt
+ * and iteration count, so the count can be raised for new hashes while the
+ * old ones still verify. Instances are immutable.
+ */
+public final class PasswordHash implements Serializable {
+
+    /** Iterations for new hashes, as recommended for PBKDF2-HMAC-SHA256. */
+    public static final int DEFAULT_ITERATIONS = 600_000;
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int iterations;
+    private final byte[] salt;
+    private final byte[] hash;
+
+    private PasswordHash(int iterations, byte[] salt, byte[] hash) {
+        this.iterations = iterations;
+        this.salt = salt;
+        this.hash = hash;
+    }
+
+    /**
+     * Hashes the password with a new random salt and the default iteration
+     * count.
+     */
+    public static PasswordHash create(char[] password) {
+        return create(password, DEFAULT_ITERATIONS);
+    }
+
+    public static PasswordHash create(char[] password, int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException(
+                    "Iterations must be positive: " + iterations);
+        }
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        return new PasswordHash(iterations, salt,
+                derive(password, salt, iterations));
+    }
+
+    /**
+     * Parses a hash written with {@link #toString()}.
+     *
+     * @throws IllegalArgumentException
+     *             if the text is not a hash
+     */
+    public static PasswordHash parse(String text) {
+        String[] parts = text.split("\\$");
+        if (parts.length != 4 || !parts[0].equals(PREFIX)) {
+            throw new IllegalArgumentException("Not a password hash");
+        }
+        try {
+            int iterations = Integer.parseInt(parts[1]);
+            if (iterations < 1) {
+                throw new IllegalArgumentException(
+                        "Iterations must be positive: " + iterations);
+            }
+            Base64.Decoder decoder = Base64.getDecoder();
+            return new PasswordHash(iterations, decoder.decode(parts[2]),
+                    decoder.decode(parts[3]));
+        } catch (IllegalArgumentException e) {
+            // also a NumberFormatException
+            throw new IllegalArgumentException("Not a password hash", e);
+        }
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Tells whether the password is the hashed one, taking as long whichever
+     * byte of the hash differs.
+     */
+    public boolean matches(char[] password) {
+        return MessageDigest.isEqual(hash,
+                derive(password, salt, iterations));
+    }
+
+    private static byte[] derive(char[] password, byte[] salt,
+            int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations,
+                HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec)
+                    .getEncoded();
+        } catch (GeneralSecurityException e) {
+            // every Java 8 runtime has the algorithm
+            throw new IllegalStateException(ALGORITHM + " is not available",
+                    e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Returns the hash as
+     * {@code pbkdf2-sha256$<iterations>$<base64 salt>$<base64 hash>}.
+     */
+    @Override
+    public String toString() {
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + "$" + iterations + "$" + encoder.encodeToString(salt)
+                + "$" + encoder.encodeToString(hash);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof PasswordHash)) {
+            return false;
+        }
+        PasswordHash other = (PasswordHash) obj;
+        return iterations == other.iterations
+                && Arrays.equals(salt, other.salt)
+                && Arrays.equals(hash, other.hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(hash);
+    }
+}
@@ -0,0 +1,70 @@
+package io.rty.incub.backend.cache;
+
+import java.io.Serializable;
+
+/**
+ * Statistics of a cache of a {@link CachingDataService}, as of when they
+ * were taken. Hits and misses count lookups since the cache was created;
+ * evictions count entries dropped for want of room, not those invalidated
+ * by writes.
+ */
+public final class CacheStats implements Serializable {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+    private final int capacity;
+
+    CacheStats(long hits, long misses, long evictions, int size,
+            int capacity) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.capacity = capacity;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getRequests() {
+        return hits + misses;
+    }
+
+    /**
+     * Returns the share of lookups that were hits, from 0 to 1, or 0 if
+     * there was no lookup.
+     */
+    public double getHitRate() {
+        long requests = getRequests();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of entries cached.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "CacheStats[hits=%d, misses=%d, hitRate=%.3f, evictions=%d, size=%d/%d]",
+                hits, misses, getHitRate(), evictions, size, capacity);
+    }
+}
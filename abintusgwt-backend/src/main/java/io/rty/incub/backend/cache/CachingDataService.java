@@ -0,0 +1,457 @@
+package io.rty.incub.backend.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.ListenerRegistration;
+import io.rty.incub.backend.ProductChangeListener;
+import io.rty.incub.backend.ProductQuery;
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.metrics.MetricRegistry;
+
+/**
+ * Caches the product lookups, pages and counts of another
+ * {@link DataService}, each in a {@link TinyLfuCache}, so that the pages
+ * every user opens on, and the products edited over and over, are read from
+ * the store once rather than on every request.
+ * <p>
+ * Writes invalidate what they change, and only that: the product written,
+ * the counts of the filters it matched or now matches, and the pages of
+ * those filters it appears on or may have moved across. Pages of other
+ * filters stay cached. Bulk writes change too many products to work that
+ * out, and drop every page and count. Writes made to the other service
+ * directly, rather than through this one, are not seen, so the application
+ * writes through {@link DataService#get()} only.
+ * <p>
+ * Writes are serialized, so that a write can read the product it replaces.
+ * They invalidate before they go to the other service, and nothing is
+ * cached until they end, so that neither readers nor the change listeners
+ * of the other service, notified on a thread of their own as soon as it
+ * has written, can be handed what was there before. Reads run concurrently
+ * with writes: a read that started before a write may have read what was
+ * there before, so every write increments a generation as it starts and as
+ * it ends, and a read only caches what it read if the generation did not
+ * change while it ran. Products are copied in and out of the caches, so
+ * every product handed out is a fresh copy, as with the other services.
+ * <p>
+ * The hit rates and sizes of the caches are {@link #getProductStats()
+ * available} and published as {@value #HIT_RATIO_GAUGE_NAME} and
+ * {@value #ENTRIES_GAUGE_NAME} gauges labelled with the cache name.
+ */
+public class CachingDataService extends DataService {
+
+    static final String HIT_RATIO_GAUGE_NAME = "abintusgwt_data_cache_hit_ratio";
+    static final String ENTRIES_GAUGE_NAME = "abintusgwt_data_cache_entries";
+
+    /** Products cached by default. */
+    public static final int DEFAULT_PRODUCT_CAPACITY = 10_000;
+    /** Pages, and counts, cached by default. */
+    public static final int DEFAULT_QUERY_CAPACITY = 1_000;
+    /** Pages longer than this, such as exports, are not cached. */
+    static final int MAX_CACHED_PAGE = 1_000;
+
+    private final DataService dataService;
+    private final int productCapacity;
+    private final int queryCapacity;
+    private final transient ReentrantLock writeLock = new ReentrantLock();
+    /** Guards the caches and the generation. */
+    private final transient ReentrantLock cacheLock = new ReentrantLock();
+    private final transient TinyLfuCache<Integer, Product> products;
+    private final transient TinyLfuCache<ProductQuery, List<Product>> pages;
+    private final transient TinyLfuCache<String, Integer> counts;
+    private transient long generation;
+    /** Whether a write is in progress, during which nothing is cached. */
+    private transient boolean writing;
+
+    public CachingDataService(DataService dataService) {
+        this(dataService, DEFAULT_PRODUCT_CAPACITY, DEFAULT_QUERY_CAPACITY,
+                MetricRegistry.get());
+    }
+
+    /**
+     * @param productCapacity
+     *            the number of products cached by id
+     * @param queryCapacity
+     *            the number of pages cached, and of counts
+     */
+    public CachingDataService(DataService dataService, int productCapacity,
+            int queryCapacity, MetricRegistry registry) {
+        this.dataService = dataService;
+        this.productCapacity = productCapacity;
+        this.queryCapacity = queryCapacity;
+        products = new TinyLfuCache<>(productCapacity);
+        pages = new TinyLfuCache<>(queryCapacity);
+        counts = new TinyLfuCache<>(queryCapacity);
+        gauges(registry, "product", this::getProductStats);
+        gauges(registry, "page", this::getPageStats);
+        gauges(registry, "count", this::getCountStats);
+    }
+
+    private static void gauges(MetricRegistry registry, String cache,
+            Supplier<CacheStats> stats) {
+        registry.gauge(HIT_RATIO_GAUGE_NAME,
+                "Share of data service lookups answered from the cache.",
+                () -> stats.get().getHitRate(), "cache", cache);
+        registry.gauge(ENTRIES_GAUGE_NAME,
+                "Entries in the caches of the data service.",
+                () -> stats.get().getSize(), "cache", cache);
+    }
+
+    /**
+     * Returns the cached service.
+     */
+    public DataService getDataService() {
+        return dataService;
+    }
+
+    public CacheStats getProductStats() {
+        return stats(products);
+    }
+
+    public CacheStats getPageStats() {
+        return stats(pages);
+    }
+
+    public CacheStats getCountStats() {
+        return stats(counts);
+    }
+
+    private CacheStats stats(TinyLfuCache<?, ?> cache) {
+        cacheLock.lock();
+        try {
+            return cache.stats();
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    @Override
+    public Product getProductById(int productId) {
+        long readGeneration;
+        cacheLock.lock();
+        try {
+            Product cached = products.get(productId);
+            if (cached != null) {
+                return new Product(cached);
+            }
+            readGeneration = generation;
+        } finally {
+            cacheLock.unlock();
+        }
+        Product product = dataService.getProductById(productId);
+        if (product != null) {
+            cache(readGeneration, () -> products.put(productId,
+                    new Product(product)));
+        }
+        return product;
+    }
+
+    @Override
+    public List<Product> fetchProducts(ProductQuery query) {
+        if (query.getLimit() > MAX_CACHED_PAGE) {
+            return dataService.fetchProducts(query);
+        }
+        long readGeneration;
+        cacheLock.lock();
+        try {
+            List<Product> cached = pages.get(query);
+            if (cached != null) {
+                return copy(cached);
+            }
+            readGeneration = generation;
+        } finally {
+            cacheLock.unlock();
+        }
+        List<Product> page = dataService.fetchProducts(query);
+        List<Product> copy = Collections.unmodifiableList(copy(page));
+        cache(readGeneration, () -> pages.put(query, copy));
+        return page;
+    }
+
+    @Override
+    public int countProducts(String filter) {
+        String key = ProductQuery.normalizeFilter(filter);
+        long readGeneration;
+        cacheLock.lock();
+        try {
+            Integer cached = counts.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            readGeneration = generation;
+        } finally {
+            cacheLock.unlock();
+        }
+        int count = dataService.countProducts(filter);
+        cache(readGeneration, () -> counts.put(key, count));
+        return count;
+    }
+
+    /**
+     * Caches what was read, unless a write started or ended since the read
+     * started, or is in progress.
+     */
+    private void cache(long readGeneration, Runnable put) {
+        cacheLock.lock();
+        try {
+            if (generation == readGeneration && !writing) {
+                put.run();
+            }
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    private static List<Product> copy(List<Product> products) {
+        List<Product> copy = new ArrayList<>(products.size());
+        for (Product product : products) {
+            copy.add(new Product(product));
+        }
+        return copy;
+    }
+
+    @Override
+    public void updateProduct(Product p) {
+        writeLock.lock();
+        try {
+            Product old = p.getId() < 0 ? null
+                    : dataService.getProductById(p.getId());
+            try {
+                invalidate(p.getId(), old, p);
+                dataService.updateProduct(p);
+            } finally {
+                endWrite();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void deleteProduct(int productId) {
+        writeLock.lock();
+        try {
+            Product old = dataService.getProductById(productId);
+            try {
+                invalidate(productId, old, null);
+                dataService.deleteProduct(productId);
+            } finally {
+                endWrite();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Starts a write of a single product, dropping what it will change: the
+     * product, the counts of the filters whose match of the product changes,
+     * and the pages of the filters matching it before or after the write
+     * that may change. A product matching a filter both before and after the
+     * write only changes the pages it is on, unless the query is sorted and
+     * it may move.
+     *
+     * @param old
+     *            the product before the write, {@code null} if new
+     * @param updated
+     *            the product to write, {@code null} if deleted
+     */
+    private void invalidate(int productId, Product old, Product updated) {
+        Map<String, Boolean> changedMatch = new HashMap<>();
+        Map<String, Boolean> matchesEither = new HashMap<>();
+        Predicate<String> matchChanged = filter -> changedMatch
+                .computeIfAbsent(filter, f -> matches(old, f) != matches(
+                        updated, f));
+        Predicate<String> matchedOrMatches = filter -> matchesEither
+                .computeIfAbsent(filter,
+                        f -> matches(old, f) || matches(updated, f));
+        cacheLock.lock();
+        try {
+            generation++;
+            writing = true;
+            products.remove(productId);
+            counts.removeIf((filter, count) -> matchChanged.test(filter));
+            pages.removeIf((query, page) -> {
+                String filter = query.getFilter();
+                if (!matchedOrMatches.test(filter)) {
+                    return false;
+                }
+                return matchChanged.test(filter)
+                        || moved(query.getComparator(), old, updated)
+                        || contains(page, productId);
+            });
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    private static boolean matches(Product product, String filter) {
+        return product != null && ProductQuery.matches(product, filter);
+    }
+
+    private static boolean moved(Comparator<Product> comparator, Product old,
+            Product updated) {
+        return comparator != null && (old == null || updated == null
+                || comparator.compare(old, updated) != 0);
+    }
+
+    private static boolean contains(List<Product> page, int productId) {
+        for (Product product : page) {
+            if (product.getId() == productId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int updateProducts(Predicate<? super Product> where,
+            Consumer<? super Product> mutation) {
+        writeLock.lock();
+        try {
+            invalidateAll(Collections.emptyList());
+            // the products are known once matched, which is before they are
+            // stored; dropping those that end up not updated is harmless
+            return dataService.updateProducts(product -> {
+                if (where.test(product)) {
+                    invalidateProduct(product.getId());
+                    return true;
+                }
+                return false;
+            }, mutation);
+        } finally {
+            endWrite();
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public int updateProductsById(Collection<Integer> productIds,
+            Consumer<? super Product> mutation) {
+        writeLock.lock();
+        try {
+            invalidateAll(productIds);
+            return dataService.updateProductsById(productIds, mutation);
+        } finally {
+            endWrite();
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public int deleteProducts(Collection<Integer> productIds) {
+        writeLock.lock();
+        try {
+            invalidateAll(productIds);
+            return dataService.deleteProducts(productIds);
+        } finally {
+            endWrite();
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void upsertProducts(Collection<? extends Product> products) {
+        List<Integer> ids = new ArrayList<>(products.size());
+        for (Product product : products) {
+            // new products are not cached yet
+            if (product.getId() >= 0) {
+                ids.add(product.getId());
+            }
+        }
+        writeLock.lock();
+        try {
+            invalidateAll(ids);
+            dataService.upsertProducts(products);
+        } finally {
+            endWrite();
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Starts a bulk write, dropping the products with the given ids, and
+     * every page and count.
+     */
+    private void invalidateAll(Collection<Integer> productIds) {
+        cacheLock.lock();
+        try {
+            generation++;
+            writing = true;
+            for (int productId : productIds) {
+                products.remove(productId);
+            }
+            pages.clear();
+            counts.clear();
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    private void invalidateProduct(int productId) {
+        cacheLock.lock();
+        try {
+            products.remove(productId);
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    /**
+     * Ends a write, whether it succeeded or not, after which reads cache
+     * what they read again.
+     */
+    private void endWrite() {
+        cacheLock.lock();
+        try {
+            generation++;
+            writing = false;
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    @Override
+    public Collection<Product> getAllProducts() {
+        return dataService.getAllProducts();
+    }
+
+    @Override
+    public Collection<Category> getAllCategories() {
+        return dataService.getAllCategories();
+    }
+
+    @Override
+    public void forEachProduct(ProductQuery query,
+            Consumer<? super Product> action) {
+        dataService.forEachProduct(query, action);
+    }
+
+    @Override
+    public long getEstimatedBytes() {
+        return dataService.getEstimatedBytes();
+    }
+
+    @Override
+    public ListenerRegistration addProductChangeListener(
+            ProductChangeListener listener) {
+        return dataService.addProductChangeListener(listener);
+    }
+
+    private Object readResolve() {
+        // caches are not serialized, they start empty
+        return new CachingDataService(dataService, productCapacity,
+                queryCapacity, MetricRegistry.get());
+    }
+}
@@ -0,0 +1,95 @@
+package io.rty.incub.backend.cache;
+
+/**
+ * Estimates how often keys were used lately, in little memory: a count-min
+ * sketch of 4-bit counters, sixteen to a {@code long}.
+ * <p>
+ * A key is counted in four counters picked by its hash, and its frequency is
+ * the smallest of them, which may overestimate it but never underestimates
+ * it. Counters saturate at 15. Once as many keys were counted as ten times
+ * the capacity, every counter is halved, so that keys no longer used are
+ * forgotten and new ones can catch up. Not thread safe.
+ */
+final class FrequencySketch {
+
+    static final int MAX_FREQUENCY = 15;
+
+    private static final long[] SEEDS = { 0x97cb3127L, 0xb492b66fbe98f273L,
+            0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long HALF_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * Creates a sketch for a cache of the given capacity.
+     */
+    FrequencySketch(int capacity) {
+        // sixteen counters per cached key, few enough keys of a scan collide
+        // with a frequently used one to make it look used as often
+        int longs = Math.max(4, capacity);
+        table = new long[Integer.highestOneBit(longs - 1) << 1];
+        sampleSize = 10 * Math.max(capacity, 1);
+    }
+
+    /**
+     * Counts a use of the key, unless its counters are all saturated.
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = index(hash, i);
+            int shift = offset(hash, i);
+            if (((table[index] >>> shift) & 0xfL) < MAX_FREQUENCY) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Returns the estimated uses of the key, from 0 to
+     * {@value #MAX_FREQUENCY}.
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < SEEDS.length; i++) {
+            frequency = Math.min(frequency,
+                    (int) ((table[index(hash, i)] >>> offset(hash, i)) & 0xfL));
+        }
+        return frequency;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & HALF_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int index(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & (table.length - 1);
+    }
+
+    /**
+     * Returns the shift of the counter of the row within its {@code long}:
+     * each row uses four of its sixteen counters.
+     */
+    private static int offset(int hash, int row) {
+        return (((hash >>> (row << 3)) & 3) + (row << 2)) << 2;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
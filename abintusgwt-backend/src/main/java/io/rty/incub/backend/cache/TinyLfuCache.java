@@ -0,0 +1,136 @@
+package io.rty.incub.backend.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiPredicate;
+
+/**
+ * A bounded map evicting by recency and frequency, in the way of W-TinyLFU.
+ * <p>
+ * New entries go to a small window, one hundredth of the capacity, evicting
+ * its least recently used entry. That entry moves on to the main part, which
+ * holds the rest, if there is room there, or if its key was used more often
+ * lately than that of the least recently used entry of the main part, which
+ * then makes way. Otherwise it is dropped. How often keys were used is
+ * estimated by a {@link FrequencySketch}, counting every {@link #get}, hits
+ * and misses alike, so that a scan through many keys used once pushes out no
+ * key used often, where a plain LRU map would lose them all.
+ * <p>
+ * Not thread safe: callers hold a lock around every call.
+ */
+final class TinyLfuCache<K, V> {
+
+    private final int capacity;
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final LinkedHashMap<K, V> window;
+    private final LinkedHashMap<K, V> main;
+    private final FrequencySketch sketch;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @throws IllegalArgumentException
+     *             if the capacity is less than 2
+     */
+    TinyLfuCache(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException(
+                    "Capacity must be at least 2, was " + capacity);
+        }
+        this.capacity = capacity;
+        windowCapacity = Math.max(1, capacity / 100);
+        mainCapacity = capacity - windowCapacity;
+        // in access order, so that the first entry is the least recently used
+        window = new LinkedHashMap<>(16, 0.75f, true);
+        main = new LinkedHashMap<>(16, 0.75f, true);
+        sketch = new FrequencySketch(capacity);
+    }
+
+    /**
+     * Returns the value of the key, or {@code null} if it is not cached.
+     */
+    V get(K key) {
+        sketch.increment(key);
+        V value = window.get(key);
+        if (value == null) {
+            value = main.get(key);
+        }
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    /**
+     * Caches the value of the key, replacing any value it had, and evicts an
+     * entry if the cache is full.
+     */
+    void put(K key, V value) {
+        if (main.containsKey(key)) {
+            main.put(key, value);
+            return;
+        }
+        window.put(key, value);
+        if (window.size() > windowCapacity) {
+            Iterator<Map.Entry<K, V>> eldest = window.entrySet().iterator();
+            Map.Entry<K, V> candidate = eldest.next();
+            eldest.remove();
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    private void admit(K key, V value) {
+        if (main.size() < mainCapacity) {
+            main.put(key, value);
+            return;
+        }
+        evictions++;
+        Iterator<K> eldest = main.keySet().iterator();
+        K victim = eldest.next();
+        if (sketch.frequency(key) > sketch.frequency(victim)) {
+            eldest.remove();
+            main.put(key, value);
+        }
+    }
+
+    /**
+     * Removes the key, if cached.
+     */
+    void remove(K key) {
+        if (window.remove(key) == null) {
+            main.remove(key);
+        }
+    }
+
+    /**
+     * Removes the entries matching the predicate.
+     */
+    void removeIf(BiPredicate<? super K, ? super V> predicate) {
+        window.entrySet()
+                .removeIf(e -> predicate.test(e.getKey(), e.getValue()));
+        main.entrySet()
+                .removeIf(e -> predicate.test(e.getKey(), e.getValue()));
+    }
+
+    /**
+     * Removes every entry. Use frequencies and statistics are kept.
+     */
+    void clear() {
+        window.clear();
+        main.clear();
+    }
+
+    int size() {
+        return window.size() + main.size();
+    }
+
+    CacheStats stats() {
+        return new CacheStats(hits, misses, evictions, size(), capacity);
+    }
+}
@@ -1,34 +1,104 @@
 package io.rty.incub.backend.data;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.validation.constraints.NotNull;
 
-public class Category implements Serializable {
+/**
+ * A product category. Categories are interned by name: {@link #valueOf(String)}
+ * returns the same instance for the same name, with an id handed out in
+ * sequence from 0. Ids are therefore dense, which lets a {@link CategorySet}
+ * keep the categories of a product as a bit set.
+ * <p>
+ * Ids are only stable within a JVM; deserialized and persisted categories are
+ * resolved by name.
+ */
+public final class Category implements Serializable {
+
+    private static final ConcurrentHashMap<String, Category> BY_NAME = new ConcurrentHashMap<>();
+    private static volatile Category[] byId = new Category[16];
+    private static volatile int count;
 
     @NotNull
-    private int id;
+    private final int id;
     @NotNull
-    private String name;
+    private final String name;
 
-    public int getId() {
-        return id;
+    private Category(int id, String name) {
+        this.id = id;
+        this.name = name;
     }
 
-    public void setId(int id) {
-        this.id = id;
+    /**
+     * Returns the category with the given name, creating it the first time.
+     */
+    public static Category valueOf(String name) {
+        Objects.requireNonNull(name, "name");
+        Category category = BY_NAME.get(name);
+        return category != null ? category : register(name);
+    }
+
+    private static synchronized Category register(String name) {
+        Category category = BY_NAME.get(name);
+        if (category == null) {
+            category = new Category(count, name);
+            Category[] categories = byId;
+            if (count == categories.length) {
+                categories = Arrays.copyOf(categories, count * 2);
+            }
+            categories[count] = category;
+            byId = categories;
+            count++;
+            BY_NAME.put(name, category);
+        }
+        return category;
+    }
+
+    /**
+     * Returns the category with the given id, or {@code null} if no category
+     * has been created with that id.
+     */
+    public static Category forId(int id) {
+        Category[] categories = byId;
+        return id >= 0 && id < categories.length ? categories[id] : null;
+    }
+
+    /**
+     * Returns the number of categories created so far, which is also the
+     * first id not in use.
+     */
+    public static int count() {
+        return count;
+    }
+
+    public int getId() {
+        return id;
     }
 
     public String getName() {
         return name;
     }
 
-    public void setName(String name) {
-        this.name = name;
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Category && ((Category) o).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
     }
 
     @Override
     public String toString() {
         return getName();
     }
+
+    private Object readResolve() throws ObjectStreamException {
+        return valueOf(name);
+    }
 }
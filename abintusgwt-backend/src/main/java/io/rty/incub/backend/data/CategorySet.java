@@ -0,0 +1,229 @@
+package io.rty.incub.backend.data;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * An immutable set of categories, kept as a bit set of category ids.
+ * <p>
+ * Membership tests and intersections are bit operations, and a set of
+ * categories with ids below 64 is a single {@code long}. Such sets are
+ * canonical: all products with the same categories share one instance, so
+ * they cost nothing beyond the reference. Iteration is in id order.
+ *
+ * @see Category
+ */
+public final class CategorySet extends AbstractSet<Category>
+        implements Serializable {
+
+    private static final CategorySet EMPTY = new CategorySet(new long[0]);
+
+    /**
+     * Bound of the canonical sets; products rarely have more than a few
+     * categories, so there are far fewer combinations in practice.
+     */
+    private static final int MAX_CANONICAL_SETS = 4096;
+
+    /** Canonical sets of categories with ids below 64, by bits. */
+    private static final ConcurrentHashMap<Long, CategorySet> SINGLE_WORD = new ConcurrentHashMap<>();
+
+    /** The bits, without trailing zero words. */
+    private final long[] words;
+    private final int size;
+
+    private CategorySet(long[] words) {
+        this.words = words;
+        int bits = 0;
+        for (long word : words) {
+            bits += Long.bitCount(word);
+        }
+        size = bits;
+    }
+
+    public static CategorySet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the set of the given categories.
+     */
+    public static CategorySet of(Collection<? extends Category> categories) {
+        if (categories instanceof CategorySet) {
+            return (CategorySet) categories;
+        }
+        long[] words = new long[1];
+        for (Category category : categories) {
+            int word = category.getId() >>> 6;
+            if (word >= words.length) {
+                words = Arrays.copyOf(words, word + 1);
+            }
+            words[word] |= 1L << category.getId();
+        }
+        return fromWords(words, 0, words.length);
+    }
+
+    public static CategorySet of(Category... categories) {
+        return of(Arrays.asList(categories));
+    }
+
+    /**
+     * Returns the set with the given bits, {@code length} words of them
+     * starting at {@code offset}.
+     */
+    public static CategorySet fromWords(long[] bits, int offset, int length) {
+        while (length > 0 && bits[offset + length - 1] == 0) {
+            length--;
+        }
+        if (length == 0) {
+            return EMPTY;
+        }
+        if (length == 1) {
+            long word = bits[offset];
+            CategorySet set = SINGLE_WORD.get(word);
+            if (set == null) {
+                set = new CategorySet(new long[] { word });
+                if (SINGLE_WORD.size() >= MAX_CANONICAL_SETS) {
+                    return set;
+                }
+                CategorySet raced = SINGLE_WORD.putIfAbsent(word, set);
+                if (raced != null) {
+                    set = raced;
+                }
+            }
+            return set;
+        }
+        return new CategorySet(Arrays.copyOfRange(bits, offset,
+                offset + length));
+    }
+
+    /**
+     * Returns the number of 64 bit words of the set, the highest category id
+     * of the set being below {@code 64 * wordCount()}.
+     */
+    public int wordCount() {
+        return words.length;
+    }
+
+    /**
+     * Returns the bits of the categories with ids from {@code 64 * index} to
+     * {@code 64 * index + 63}.
+     */
+    public long getWord(int index) {
+        return index < words.length ? words[index] : 0;
+    }
+
+    public boolean containsId(int categoryId) {
+        int word = categoryId >>> 6;
+        return categoryId >= 0 && word < words.length
+                && (words[word] & (1L << categoryId)) != 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Category && containsId(((Category) o).getId());
+    }
+
+    /**
+     * Tells whether the two sets have a category in common.
+     */
+    public boolean intersects(CategorySet other) {
+        int common = Math.min(words.length, other.words.length);
+        for (int i = 0; i < common; i++) {
+            if ((words[i] & other.words[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Iterator<Category> iterator() {
+        return new Iterator<Category>() {
+            private int word;
+            private long remaining = words.length == 0 ? 0 : words[0];
+
+            @Override
+            public boolean hasNext() {
+                while (remaining == 0 && word + 1 < words.length) {
+                    remaining = words[++word];
+                }
+                return remaining != 0;
+            }
+
+            @Override
+            public Category next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int id = (word << 6) + Long.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+                return Category.forId(id);
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof CategorySet) {
+            return Arrays.equals(words, ((CategorySet) o).words);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        // the sum of the element hash codes, as for any set
+        int hash = 0;
+        for (int word = 0; word < words.length; word++) {
+            long bits = words[word];
+            while (bits != 0) {
+                hash += (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Category ids are only valid within a JVM, so sets are serialized as
+     * category names.
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return new SerializedForm(this);
+    }
+
+    private static final class SerializedForm implements Serializable {
+
+        private final String[] names;
+
+        private SerializedForm(CategorySet set) {
+            names = new String[set.size()];
+            int i = 0;
+            for (Category category : set) {
+                names[i++] = category.getName();
+            }
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            return of(Arrays.stream(names).map(Category::valueOf)
+                    .collect(Collectors.toList()));
+        }
+    }
+}
@@ -17,11 +17,29 @@ public class Product implements Serializable {
     private String productName = "";
     @Min(0)
     private BigDecimal price = BigDecimal.ZERO;
-    private Set<Category> category;
+    private CategorySet category;
     @Min(value = 0, message = "Can't have negative amount in stock")
     private int stockCount = 0;
     @NotNull
     private Availability availability = Availability.COMING;
+    private int version;
+
+    public Product() {
+    }
+
+    /**
+     * Creates a copy of the product, to be edited without changing the
+     * original.
+     */
+    public Product(Product product) {
+        id = product.id;
+        productName = product.productName;
+        price = product.price;
+        category = product.category;
+        stockCount = product.stockCount;
+        availability = product.availability;
+        version = product.version;
+    }
 
     public int getId() {
         return id;
@@ -47,12 +65,20 @@ public class Product implements Serializable {
         this.price = price;
     }
 
+    /**
+     * Returns the categories of the product as an immutable
+     * {@link CategorySet}, or {@code null}.
+     */
     public Set<Category> getCategory() {
         return category;
     }
 
+    /**
+     * Sets the categories of the product. They are copied to a
+     * {@link CategorySet}, so later changes to the given set are not seen.
+     */
     public void setCategory(Set<Category> category) {
-        this.category = category;
+        this.category = category == null ? null : CategorySet.of(category);
     }
 
     public int getStockCount() {
@@ -71,6 +97,20 @@ public class Product implements Serializable {
         this.availability = availability;
     }
 
+    /**
+     * Returns the version of the product, handed out by the data service
+     * every time the product is stored, so that two copies of a product with
+     * the same id and version have the same values. Products that have not
+     * been stored yet have version 0.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     public boolean isNewProduct() {
         return getId() == -1;
     }
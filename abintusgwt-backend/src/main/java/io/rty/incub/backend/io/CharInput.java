@@ -0,0 +1,69 @@
+package io.rty.incub.backend.io;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Characters of a feed, read through a buffer of its own and counted in
+ * lines. A byte order mark at the start is skipped.
+ */
+final class CharInput {
+
+    static final int EOF = -1;
+
+    private final Reader in;
+    private final char[] buffer = new char[1 << 16];
+    private int position;
+    private int limit;
+    private int line = 1;
+    private boolean started;
+
+    CharInput(Reader in) {
+        this.in = in;
+    }
+
+    int read() throws IOException {
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+        char c = buffer[position++];
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+
+    int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Returns the line of the next character, counting from 1.
+     */
+    int getLine() {
+        return line;
+    }
+
+    private boolean fill() throws IOException {
+        int count;
+        do {
+            count = in.read(buffer);
+        } while (count == 0);
+        if (count < 0) {
+            return false;
+        }
+        position = 0;
+        limit = count;
+        if (!started) {
+            started = true;
+            if (buffer[0] == '\uFEFF') {
+                position = 1;
+                return limit > 1 || fill();
+            }
+        }
+        return true;
+    }
+}
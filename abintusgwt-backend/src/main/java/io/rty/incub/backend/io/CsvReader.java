@@ -0,0 +1,112 @@
+package io.rty.incub.backend.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads CSV records as described by RFC 4180: fields are separated by commas
+ * and may be quoted, quoted fields may span lines and contain doubled quotes,
+ * and records end with CR, LF or CRLF. Blank lines are skipped.
+ * <p>
+ * Only the current record is held in memory, and fields are limited in
+ * length, so that a malformed feed, such as one with an unterminated quote,
+ * fails instead of filling the heap.
+ */
+final class CsvReader {
+
+    private final CharInput in;
+    private final int maxFieldLength;
+    private final StringBuilder field = new StringBuilder();
+    private int recordLine;
+
+    CsvReader(Reader in, int maxFieldLength) {
+        this.in = new CharInput(in);
+        this.maxFieldLength = maxFieldLength;
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return the fields of the record, or {@code null} at the end of the
+     *         feed
+     * @throws ProductFeedException
+     *             if a quote is not terminated or a field is too long
+     */
+    List<String> readRecord() throws IOException {
+        int c = in.read();
+        while (c == '\r' || c == '\n') {
+            c = in.read();
+        }
+        if (c == CharInput.EOF) {
+            return null;
+        }
+        recordLine = in.getLine();
+        List<String> record = new ArrayList<>();
+        while (true) {
+            field.setLength(0);
+            if (c == '"') {
+                c = readQuoted();
+                if (c != ',' && c != '\r' && c != '\n'
+                        && c != CharInput.EOF) {
+                    throw new ProductFeedException(
+                            "Unexpected character after a quoted field",
+                            in.getLine());
+                }
+            } else {
+                while (c != ',' && c != '\r' && c != '\n'
+                        && c != CharInput.EOF) {
+                    append(c);
+                    c = in.read();
+                }
+            }
+            record.add(field.toString());
+            if (c != ',') {
+                if (c == '\r' && in.peek() == '\n') {
+                    in.read();
+                }
+                return record;
+            }
+            c = in.read();
+        }
+    }
+
+    /**
+     * Reads a quoted field after its opening quote.
+     *
+     * @return the character after the closing quote
+     */
+    private int readQuoted() throws IOException {
+        while (true) {
+            int c = in.read();
+            if (c == CharInput.EOF) {
+                throw new ProductFeedException("Unterminated quoted field",
+                        recordLine);
+            }
+            if (c == '"') {
+                c = in.read();
+                if (c != '"') {
+                    return c;
+                }
+            }
+            append(c);
+        }
+    }
+
+    private void append(int c) throws ProductFeedException {
+        if (field.length() == maxFieldLength) {
+            throw new ProductFeedException(
+                    "Field longer than " + maxFieldLength + " characters",
+                    recordLine);
+        }
+        field.append((char) c);
+    }
+
+    /**
+     * Returns the line the last record read started on, counting from 1.
+     */
+    int getRecordLine() {
+        return recordLine;
+    }
+}
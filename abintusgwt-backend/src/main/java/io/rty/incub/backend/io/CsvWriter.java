@@ -0,0 +1,137 @@
+package io.rty.incub.backend.io;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Writes products as RFC 4180 CSV, with a header record and CRLF line ends.
+ * Fields are only quoted when they need to be.
+ * <p>
+ * Spreadsheets open a field starting with {@code =}, {@code +}, {@code -},
+ * {@code @}, a tab or a carriage return as a formula, which a product name
+ * could use to run commands or leak data. Names and categories starting so
+ * are written with an apostrophe before them, which spreadsheets show the
+ * field as text for and hide, and which {@link ProductImporter} drops. A
+ * value already starting with apostrophes before such a character gets one
+ * more, so that it imports back as it was.
+ */
+final class CsvWriter extends ProductWriter {
+
+    private final Writer out;
+
+    CsvWriter(OutputStream out) throws IOException {
+        this.out = new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        for (int i = 0; i < HEADERS.length; i++) {
+            if (i > 0) {
+                this.out.write(',');
+            }
+            writeField(HEADERS[i]);
+        }
+        this.out.write("\r\n");
+    }
+
+    @Override
+    void write(Product product) throws IOException {
+        writeField(escapeFormula(product.getProductName()));
+        out.write(',');
+        writeField(price(product));
+        out.write(',');
+        writeField(availability(product));
+        out.write(',');
+        out.write(Integer.toString(product.getStockCount()));
+        out.write(',');
+        writeField(escapeFormula(categories(product)));
+        out.write("\r\n");
+    }
+
+    @Override
+    void finish() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Returns the value with an apostrophe before it if a spreadsheet could
+     * take it for a formula.
+     */
+    static String escapeFormula(String value) {
+        return isFormula(value) ? "'" + value : value;
+    }
+
+    /**
+     * Returns the value without the apostrophe
+     * {@link #escapeFormula(String)} put before it, if any.
+     */
+    static String unescapeFormula(String value) {
+        return value.startsWith("'") && isFormula(value)
+                ? value.substring(1)
+                : value;
+    }
+
+    /**
+     * Tells whether the value starts with a character spreadsheets take for
+     * the start of a formula, after any apostrophes.
+     */
+    private static boolean isFormula(String value) {
+        if (value == null) {
+            return false;
+        }
+        int i = 0;
+        while (i < value.length() && value.charAt(i) == '\'') {
+            i++;
+        }
+        if (i == value.length()) {
+            return false;
+        }
+        char c = value.charAt(i);
+        return c == '=' || c == '+' || c == '-' || c == '@' || c == '\t'
+                || c == '\r';
+    }
+
+    private void writeField(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (!needsQuotes(value)) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        int start = 0;
+        for (int i = value.indexOf('"'); i >= 0; i = value.indexOf('"',
+                start)) {
+            out.write(value, start, i + 1 - start);
+            out.write('"');
+            start = i + 1;
+        }
+        out.write(value, start, value.length() - start);
+        out.write('"');
+    }
+
+    /**
+     * Tells whether the value has a separator, a quote or a line end, or
+     * spaces around it that a reader trimming fields would lose.
+     */
+    private static boolean needsQuotes(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        if (value.charAt(0) == ' '
+                || value.charAt(value.length() - 1) == ' ') {
+            return true;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,292 @@
+package io.rty.incub.backend.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads JSON objects one at a time, from either a top-level array of objects
+ * or a sequence of objects, as in newline delimited JSON.
+ * <p>
+ * An object is returned as a map of its member names to their values:
+ * strings, numbers as their text, so that no precision is lost, booleans as
+ * {@code "true"} and {@code "false"}, {@code null}, lists for arrays and maps
+ * for nested objects. Only the current object is held in memory, and strings
+ * and nesting are limited, so that a malformed feed fails instead of filling
+ * the heap or the stack.
+ */
+final class JsonReader {
+
+    private static final int MAX_DEPTH = 32;
+
+    private final CharInput in;
+    private final int maxStringLength;
+    private final StringBuilder text = new StringBuilder();
+    private boolean started;
+    private boolean inArray;
+    private boolean first = true;
+    private boolean ended;
+    private int objectLine;
+
+    JsonReader(Reader in, int maxStringLength) {
+        this.in = new CharInput(in);
+        this.maxStringLength = maxStringLength;
+    }
+
+    /**
+     * Reads the next object.
+     *
+     * @return the members of the object, or {@code null} at the end of the
+     *         feed
+     * @throws ProductFeedException
+     *             if the feed is not well-formed JSON, or not made of objects
+     */
+    Map<String, Object> readObject() throws IOException {
+        if (ended) {
+            return null;
+        }
+        int c = skipWhitespace();
+        if (!started) {
+            started = true;
+            if (c == '[') {
+                inArray = true;
+                c = skipWhitespace();
+            }
+        }
+        if (inArray) {
+            if (c == ']') {
+                ended = true;
+                return null;
+            }
+            if (!first) {
+                if (c != ',') {
+                    throw error("Expected ',' or ']'");
+                }
+                c = skipWhitespace();
+            }
+            if (c == CharInput.EOF) {
+                throw error("Unterminated array");
+            }
+        } else if (c == CharInput.EOF) {
+            ended = true;
+            return null;
+        }
+        first = false;
+        if (c != '{') {
+            throw error("Expected an object");
+        }
+        objectLine = in.getLine();
+        return readMembers(1);
+    }
+
+    /**
+     * Returns the line the last object read started on, counting from 1.
+     */
+    int getObjectLine() {
+        return objectLine;
+    }
+
+    /** Reads the members of an object after its opening brace. */
+    private Map<String, Object> readMembers(int depth) throws IOException {
+        Map<String, Object> members = new HashMap<>();
+        int c = skipWhitespace();
+        if (c == '}') {
+            return members;
+        }
+        while (true) {
+            if (c != '"') {
+                throw error("Expected a member name");
+            }
+            String name = readString();
+            if (skipWhitespace() != ':') {
+                throw error("Expected ':'");
+            }
+            members.put(name, readValue(skipWhitespace(), depth));
+            c = skipWhitespace();
+            if (c == '}') {
+                return members;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or '}'");
+            }
+            c = skipWhitespace();
+        }
+    }
+
+    /** Reads the elements of an array after its opening bracket. */
+    private List<Object> readElements(int depth) throws IOException {
+        List<Object> elements = new ArrayList<>();
+        int c = skipWhitespace();
+        if (c == ']') {
+            return elements;
+        }
+        while (true) {
+            elements.add(readValue(c, depth));
+            c = skipWhitespace();
+            if (c == ']') {
+                return elements;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or ']'");
+            }
+            c = skipWhitespace();
+        }
+    }
+
+    private Object readValue(int c, int depth) throws IOException {
+        switch (c) {
+        case '{':
+        case '[':
+            if (depth == MAX_DEPTH) {
+                throw error("Nested deeper than " + MAX_DEPTH);
+            }
+            return c == '{' ? readMembers(depth + 1)
+                    : readElements(depth + 1);
+        case '"':
+            return readString();
+        case 't':
+            expect("rue");
+            return "true";
+        case 'f':
+            expect("alse");
+            return "false";
+        case 'n':
+            expect("ull");
+            return null;
+        default:
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                return readNumber(c);
+            }
+            throw error(c == CharInput.EOF ? "Unexpected end of feed"
+                    : "Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /** Reads a string after its opening quote. */
+    private String readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            int c = in.read();
+            if (c == '"') {
+                return text.toString();
+            }
+            if (c == CharInput.EOF) {
+                throw error("Unterminated string");
+            }
+            if (c == '\\') {
+                c = readEscape();
+            } else if (c < 0x20) {
+                throw error("Control character in a string");
+            }
+            append(c);
+        }
+    }
+
+    private int readEscape() throws IOException {
+        int c = in.read();
+        switch (c) {
+        case '"':
+        case '\\':
+        case '/':
+            return c;
+        case 'b':
+            return '\b';
+        case 'f':
+            return '\f';
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 't':
+            return '\t';
+        case 'u':
+            int code = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(in.read(), 16);
+                if (digit < 0) {
+                    throw error("Malformed unicode escape");
+                }
+                code = code * 16 + digit;
+            }
+            return code;
+        default:
+            throw error("Malformed escape");
+        }
+    }
+
+    /**
+     * Reads a number from its first character, checking its syntax but
+     * keeping its text.
+     */
+    private String readNumber(int first) throws IOException {
+        text.setLength(0);
+        append(first);
+        int c = first;
+        if (c == '-') {
+            c = in.read();
+            if (c < '0' || c > '9') {
+                throw error("Malformed number");
+            }
+            append(c);
+        }
+        if (c != '0') {
+            appendDigits();
+        }
+        if (in.peek() == '.') {
+            append(in.read());
+            if (appendDigits() == 0) {
+                throw error("Malformed number");
+            }
+        }
+        if (in.peek() == 'e' || in.peek() == 'E') {
+            append(in.read());
+            if (in.peek() == '+' || in.peek() == '-') {
+                append(in.read());
+            }
+            if (appendDigits() == 0) {
+                throw error("Malformed number");
+            }
+        }
+        return text.toString();
+    }
+
+    private int appendDigits() throws IOException {
+        int count = 0;
+        while (in.peek() >= '0' && in.peek() <= '9') {
+            append(in.read());
+            count++;
+        }
+        return count;
+    }
+
+    private void expect(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (in.read() != rest.charAt(i)) {
+                throw error("Malformed literal");
+            }
+        }
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c = in.read();
+        while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+            c = in.read();
+        }
+        return c;
+    }
+
+    private void append(int c) throws ProductFeedException {
+        if (text.length() == maxStringLength) {
+            throw error("Value longer than " + maxStringLength
+                    + " characters");
+        }
+        text.append((char) c);
+    }
+
+    private ProductFeedException error(String message) {
+        return new ProductFeedException(message, in.getLine());
+    }
+}
@@ -0,0 +1,82 @@
+package io.rty.incub.backend.io;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Writes products as a JSON array of objects, one object per line, with the
+ * member names of the {@link Product} properties and categories as an array
+ * of names.
+ */
+final class JsonWriter extends ProductWriter {
+
+    private final Writer out;
+    private boolean first = true;
+
+    JsonWriter(OutputStream out) throws IOException {
+        this.out = new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        this.out.write('[');
+    }
+
+    @Override
+    void write(Product product) throws IOException {
+        out.write(first ? "\n{\"productName\":" : ",\n{\"productName\":");
+        first = false;
+        writeString(product.getProductName());
+        out.write(",\"price\":");
+        String price = price(product);
+        out.write(price == null ? "null" : price);
+        out.write(",\"availability\":");
+        writeString(availability(product));
+        out.write(",\"stockCount\":");
+        out.write(Integer.toString(product.getStockCount()));
+        out.write(",\"category\":[");
+        Set<Category> categories = product.getCategory();
+        if (categories != null) {
+            boolean firstCategory = true;
+            for (Category category : categories) {
+                if (!firstCategory) {
+                    out.write(',');
+                }
+                firstCategory = false;
+                writeString(category.getName());
+            }
+        }
+        out.write("]}");
+    }
+
+    @Override
+    void finish() throws IOException {
+        out.write(first ? "]\n" : "\n]\n");
+        out.flush();
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                out.write(value, start, i - start);
+                out.write(c < 0x20 ? String.format("\\u%04x", (int) c)
+                        : "\\" + c);
+                start = i + 1;
+            }
+        }
+        out.write(value, start, value.length() - start);
+        out.write('"');
+    }
+}
@@ -0,0 +1,146 @@
+package io.rty.incub.backend.io;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Checks products against the Bean Validation constraints declared on the
+ * fields of {@link Product}, as the product form does, without needing a
+ * validation provider in the back end.
+ * <p>
+ * The constraints are read once, so that checking a product only reads its
+ * constrained fields. {@link NotNull}, {@link Size}, {@link Min} and
+ * {@link Max} are supported; any other constraint on {@link Product} fails
+ * the class initialization rather than be silently skipped.
+ */
+final class ProductConstraints {
+
+    private static final String CONSTRAINTS_PACKAGE = NotNull.class
+            .getPackage().getName();
+    private static final List<Constraint> CONSTRAINTS = readConstraints();
+
+    private ProductConstraints() {
+    }
+
+    /**
+     * Returns a message for every constraint the product breaks, naming the
+     * field, or an empty list.
+     */
+    static List<String> check(Product product) {
+        List<String> violations = Collections.emptyList();
+        for (Constraint constraint : CONSTRAINTS) {
+            Object value;
+            try {
+                value = constraint.field.get(product);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            if (!constraint.isValid(value)) {
+                if (violations.isEmpty()) {
+                    violations = new ArrayList<>();
+                }
+                violations.add(
+                        constraint.field.getName() + ": " + constraint.message);
+            }
+        }
+        return violations;
+    }
+
+    private static List<Constraint> readConstraints() {
+        List<Constraint> constraints = new ArrayList<>();
+        for (Field field : Product.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            for (Annotation annotation : field.getAnnotations()) {
+                if (annotation.annotationType().getPackage().getName()
+                        .equals(CONSTRAINTS_PACKAGE)) {
+                    field.setAccessible(true);
+                    constraints.add(constraint(field, annotation));
+                }
+            }
+        }
+        return Collections.unmodifiableList(constraints);
+    }
+
+    private static Constraint constraint(Field field, Annotation annotation) {
+        if (annotation instanceof NotNull) {
+            return new Constraint(field, ((NotNull) annotation).message(),
+                    "may not be null", value -> value != null);
+        }
+        if (annotation instanceof Size) {
+            Size size = (Size) annotation;
+            return new Constraint(field, size.message(),
+                    "size must be between " + size.min() + " and "
+                            + size.max(),
+                    value -> {
+                        if (value == null) {
+                            return true;
+                        }
+                        int length = value instanceof CharSequence
+                                ? ((CharSequence) value).length()
+                                : ((Collection<?>) value).size();
+                        return length >= size.min() && length <= size.max();
+                    });
+        }
+        if (annotation instanceof Min) {
+            long min = ((Min) annotation).value();
+            return new Constraint(field, ((Min) annotation).message(),
+                    "must be greater than or equal to " + min,
+                    value -> value == null || compare(value, min) >= 0);
+        }
+        if (annotation instanceof Max) {
+            long max = ((Max) annotation).value();
+            return new Constraint(field, ((Max) annotation).message(),
+                    "must be less than or equal to " + max,
+                    value -> value == null || compare(value, max) <= 0);
+        }
+        throw new IllegalStateException("Cannot check "
+                + annotation.annotationType().getSimpleName() + " on "
+                + field.getName());
+    }
+
+    private static int compare(Object number, long bound) {
+        if (number instanceof BigDecimal) {
+            return ((BigDecimal) number).compareTo(BigDecimal.valueOf(bound));
+        }
+        return Long.compare(((Number) number).longValue(), bound);
+    }
+
+    private interface Check {
+        boolean isValid(Object value);
+    }
+
+    private static final class Constraint {
+
+        private final Field field;
+        private final String message;
+        private final Check check;
+
+        private Constraint(Field field, String message,
+                String defaultMessage, Check check) {
+            this.field = field;
+            // default messages are keys for the validation provider
+            this.message = message.startsWith("{") ? defaultMessage
+                    : message;
+            this.check = check;
+        }
+
+        private boolean isValid(Object value) {
+            return check.isValid(value);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package io.rty.incub.backend.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.ProductQuery;
+
+/**
+ * Exports the products matching a query from a {@link DataService} to a CSV,
+ * JSON or XLSX file, with the columns of the product grid.
+ * <p>
+ * Products are read with
+ * {@link DataService#forEachProduct(ProductQuery, java.util.function.Consumer)}
+ * and written to the stream as they come, so that an export holds no more
+ * than a page of products in memory whatever its size, and holds no lock of
+ * the service while writing. Exported CSV and JSON files can be imported
+ * again with {@link ProductImporter}.
+ */
+public class ProductExporter {
+
+    private final DataService dataService;
+
+    public ProductExporter(DataService dataService) {
+        this.dataService = dataService;
+    }
+
+    /**
+     * Writes the products matching the query, in its order, to the stream.
+     * The stream is flushed but not closed.
+     *
+     * @return the number of products written
+     */
+    public long exportProducts(ProductQuery query, ProductFeedFormat format,
+            OutputStream out) throws IOException {
+        ProductWriter writer = createWriter(format, out);
+        long[] count = { 0 };
+        try {
+            dataService.forEachProduct(query, product -> {
+                try {
+                    writer.write(product);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count[0]++;
+            });
+        } catch (UncheckedIOException e) {
+            // most likely the client went away
+            throw e.getCause();
+        }
+        writer.finish();
+        return count[0];
+    }
+
+    private static ProductWriter createWriter(ProductFeedFormat format,
+            OutputStream out) throws IOException {
+        switch (format) {
+        case CSV:
+            return new CsvWriter(out);
+        case JSON:
+            return new JsonWriter(out);
+        case XLSX:
+            return new XlsxWriter(out);
+        default:
+            throw new IllegalArgumentException("Cannot export " + format);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package io.rty.incub.backend.io;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a product feed is malformed beyond a single bad record, such as
+ * an unterminated quote or broken JSON.
+ */
+public class ProductFeedException extends IOException {
+
+    private final int line;
+
+    public ProductFeedException(String message, int line) {
+        super("Line " + line + ": " + message);
+        this.line = line;
+    }
+
+    /**
+     * Returns the line of the feed the error was found on, counting from 1.
+     */
+    public int getLine() {
+        return line;
+    }
+}
@@ -0,0 +1,60 @@
+package io.rty.incub.backend.io;
+
+import java.util.Locale;
+
+/**
+ * The file formats products are imported from and exported to. Spreadsheets
+ * are only exported.
+ */
+public enum ProductFeedFormat {
+    CSV(".csv", "text/csv", true), JSON(".json", "application/json",
+            true), XLSX(".xlsx",
+                    "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+                    false);
+
+    private final String extension;
+    private final String contentType;
+    private final boolean importable;
+
+    private ProductFeedFormat(String extension, String contentType,
+            boolean importable) {
+        this.extension = extension;
+        this.contentType = contentType;
+        this.importable = importable;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Returns the MIME type of the format.
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Tells whether {@link ProductImporter} reads this format.
+     */
+    public boolean isImportable() {
+        return importable;
+    }
+
+    /**
+     * Returns the format of a file by its extension, ignoring case.
+     *
+     * @throws IllegalArgumentException
+     *             if the extension is not one of a known format
+     */
+    public static ProductFeedFormat forFileName(String fileName) {
+        String lowerCase = fileName.toLowerCase(Locale.ENGLISH);
+        for (ProductFeedFormat format : values()) {
+            if (lowerCase.endsWith(format.extension)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException(
+                "Cannot tell the format of " + fileName);
+    }
+}
@@ -0,0 +1,65 @@
+package io.rty.incub.backend.io;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The progress of a {@link ProductImporter} import, or its outcome once it
+ * completed.
+ */
+public final class ProductImportResult implements Serializable {
+
+    private final long records;
+    private final long imported;
+    private final long rejected;
+    private final long bytesRead;
+    private final List<String> errors;
+
+    ProductImportResult(long records, long imported, long rejected,
+            long bytesRead, List<String> errors) {
+        this.records = records;
+        this.imported = imported;
+        this.rejected = rejected;
+        this.bytesRead = bytesRead;
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * Returns the number of records read, not counting a CSV header.
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Returns the number of bytes of the feed read so far, to measure the
+     * progress against the size of the feed.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns why records were rejected, one message per record, with its
+     * line. Only the first {@value ProductImporter#MAX_REPORTED_ERRORS} are
+     * kept.
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    @Override
+    public String toString() {
+        return imported + " of " + records + " products imported, "
+                + rejected + " rejected";
+    }
+}
@@ -0,0 +1,454 @@
+package io.rty.incub.backend.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.data.Availability;
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.store.ProductStore;
+
+/**
+ * Imports new products from a CSV or JSON feed into a {@link DataService}.
+ * <p>
+ * The feed is read one record at a time, and only the current batch of
+ * products is held in memory, so feeds of any size import in constant heap.
+ * Each batch is stored with {@link DataService#upsertProducts(Collection)},
+ * as a single write with a single change notification.
+ * <p>
+ * Fields are matched by name, ignoring case, spaces and punctuation:
+ * {@code productName} (or {@code name}), {@code price}, {@code stockCount}
+ * (or {@code stock}), {@code availability} and {@code category} (or
+ * {@code categories}). Other fields, ids included, are ignored, and missing
+ * ones keep the defaults of a new product. In CSV, the first record names the
+ * columns, categories are separated by commas, and an apostrophe before a
+ * name or category that would otherwise start like a spreadsheet formula is
+ * dropped; in JSON, categories may also be an array. Category names must be
+ * those of the categories of the service, ignoring case.
+ * <p>
+ * A record that cannot be converted, or whose product breaks a constraint
+ * declared on {@link Product}, is rejected and reported, and the import goes
+ * on with the next one. A feed that cannot be parsed any further fails the
+ * import with a {@link ProductFeedException}, and interrupting the importing
+ * thread fails it between two batches; either way the batches stored before
+ * stay imported.
+ */
+public class ProductImporter {
+
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+    public static final int MAX_REPORTED_ERRORS = 100;
+    /** Longest field accepted, far above any sensible product value. */
+    private static final int MAX_VALUE_LENGTH = 1 << 16;
+
+    private enum Column {
+        PRODUCT_NAME("productName", "name"), PRICE("price"), STOCK_COUNT(
+                "stockCount", "stock", "instock"), AVAILABILITY(
+                        "availability"), CATEGORY("category", "categories");
+
+        private static final Column[] COLUMNS = values();
+
+        private final String propertyName;
+        private final List<String> names;
+
+        private Column(String propertyName, String... aliases) {
+            this.propertyName = propertyName;
+            names = new ArrayList<>(Arrays.asList(aliases));
+            names.add(lowerCase(propertyName));
+        }
+
+        /**
+         * Returns the column with the given name, or {@code null}.
+         */
+        static Column forName(String name) {
+            StringBuilder key = new StringBuilder(name.length());
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (Character.isLetterOrDigit(c)) {
+                    key.append(Character.toLowerCase(c));
+                }
+            }
+            for (Column column : COLUMNS) {
+                if (column.names.contains(key.toString())) {
+                    return column;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final DataService dataService;
+    private final int batchSize;
+    private final Map<String, Category> categoriesByName = new HashMap<>();
+
+    public ProductImporter(DataService dataService) {
+        this(dataService, DEFAULT_BATCH_SIZE);
+    }
+
+    public ProductImporter(DataService dataService, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(
+                    "Batch size must be positive: " + batchSize);
+        }
+        this.dataService = dataService;
+        this.batchSize = batchSize;
+        for (Category category : dataService.getAllCategories()) {
+            categoriesByName.put(lowerCase(category.getName()), category);
+        }
+    }
+
+    /**
+     * Imports the products of the UTF-8 feed, reporting the progress after
+     * every batch. The stream is read to its end but not closed.
+     *
+     * @param progress
+     *            called on the importing thread after every batch
+     * @return the outcome of the import
+     * @throws ProductFeedException
+     *             if the feed cannot be parsed any further
+     * @throws InterruptedIOException
+     *             if the importing thread was interrupted
+     * @throws IllegalArgumentException
+     *             if the format is not {@link ProductFeedFormat#isImportable()
+     *             importable}
+     */
+    public ProductImportResult importProducts(InputStream in,
+            ProductFeedFormat format,
+            Consumer<? super ProductImportResult> progress)
+            throws IOException {
+        if (!format.isImportable()) {
+            throw new IllegalArgumentException("Cannot import " + format);
+        }
+        CountingInputStream counting = new CountingInputStream(in);
+        Reader reader = new InputStreamReader(counting,
+                StandardCharsets.UTF_8);
+        RecordSource records = format == ProductFeedFormat.CSV
+                ? new CsvRecords(new CsvReader(reader, MAX_VALUE_LENGTH))
+                : new JsonRecords(new JsonReader(reader, MAX_VALUE_LENGTH));
+        Run run = new Run(counting, progress);
+        Object[] values;
+        while ((values = records.next()) != null) {
+            run.add(values, records.getLine());
+        }
+        run.flush();
+        return run.result();
+    }
+
+    /**
+     * One import, from the first record to the last.
+     */
+    private final class Run {
+
+        private final CountingInputStream in;
+        private final Consumer<? super ProductImportResult> progress;
+        private final List<Product> batch = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+        private long records;
+        private long imported;
+        private long rejected;
+
+        private Run(CountingInputStream in,
+                Consumer<? super ProductImportResult> progress) {
+            this.in = in;
+            this.progress = progress;
+        }
+
+        private void add(Object[] values, int line) throws IOException {
+            records++;
+            try {
+                batch.add(toProduct(values));
+            } catch (RejectedRecordException e) {
+                rejected++;
+                if (errors.size() < MAX_REPORTED_ERRORS) {
+                    errors.add("Line " + line + ": " + e.getMessage());
+                }
+            }
+            if (batch.size() == batchSize) {
+                flush();
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException("Import interrupted after "
+                            + imported + " products");
+                }
+            }
+        }
+
+        private void flush() {
+            if (!batch.isEmpty()) {
+                dataService.upsertProducts(batch);
+                imported += batch.size();
+                batch.clear();
+            }
+            progress.accept(result());
+        }
+
+        private ProductImportResult result() {
+            return new ProductImportResult(records, imported, rejected,
+                    in.count, new ArrayList<>(errors));
+        }
+    }
+
+    private Product toProduct(Object[] values)
+            throws RejectedRecordException {
+        Product product = new Product();
+        String name = text(values, Column.PRODUCT_NAME);
+        if (name != null) {
+            product.setProductName(name);
+        }
+        String price = text(values, Column.PRICE);
+        if (price != null) {
+            try {
+                product.setPrice(new BigDecimal(price));
+            } catch (NumberFormatException e) {
+                throw new RejectedRecordException(
+                        "price: not a number: " + price);
+            }
+        }
+        String stockCount = text(values, Column.STOCK_COUNT);
+        if (stockCount != null) {
+            try {
+                product.setStockCount(Integer.parseInt(stockCount));
+            } catch (NumberFormatException e) {
+                throw new RejectedRecordException(
+                        "stockCount: not a whole number: " + stockCount);
+            }
+        }
+        String availability = text(values, Column.AVAILABILITY);
+        if (availability != null) {
+            product.setAvailability(toAvailability(availability));
+        }
+        Object category = values[Column.CATEGORY.ordinal()];
+        if (category != null) {
+            product.setCategory(toCategories(category));
+        }
+        try {
+            ProductStore.checkStorable(product);
+        } catch (IllegalArgumentException e) {
+            throw new RejectedRecordException("price: " + e.getMessage());
+        }
+        List<String> violations = ProductConstraints.check(product);
+        if (!violations.isEmpty()) {
+            throw new RejectedRecordException(String.join("; ", violations));
+        }
+        return product;
+    }
+
+    /**
+     * Returns the trimmed text of a single valued field, or {@code null} if
+     * it is missing or blank.
+     */
+    private static String text(Object[] values, Column column)
+            throws RejectedRecordException {
+        Object value = values[column.ordinal()];
+        if (value != null && !(value instanceof String)) {
+            throw new RejectedRecordException(
+                    column.propertyName + ": not a single value");
+        }
+        String text = value == null ? "" : ((String) value).trim();
+        return text.isEmpty() ? null : text;
+    }
+
+    private static Availability toAvailability(String value)
+            throws RejectedRecordException {
+        for (Availability availability : Availability.values()) {
+            if (availability.name().equalsIgnoreCase(value)
+                    || availability.toString().equalsIgnoreCase(value)) {
+                return availability;
+            }
+        }
+        throw new RejectedRecordException(
+                "availability: unknown availability: " + value);
+    }
+
+    private Set<Category> toCategories(Object value)
+            throws RejectedRecordException {
+        List<?> names = value instanceof List ? (List<?>) value
+                : Arrays.asList(value.toString().split(","));
+        Set<Category> categories = new HashSet<>();
+        for (Object name : names) {
+            if (!(name instanceof String)) {
+                throw new RejectedRecordException(
+                        "category: not a category name: " + name);
+            }
+            String trimmed = ((String) name).trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            Category category = categoriesByName.get(lowerCase(trimmed));
+            if (category == null) {
+                throw new RejectedRecordException(
+                        "category: unknown category: " + trimmed);
+            }
+            categories.add(category);
+        }
+        return categories;
+    }
+
+    private static String lowerCase(String text) {
+        return text.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Records of a feed, as values by {@link Column} ordinal.
+     */
+    private interface RecordSource {
+
+        /**
+         * Returns the values of the next record, or {@code null} at the end
+         * of the feed.
+         */
+        Object[] next() throws IOException;
+
+        /**
+         * Returns the line the last record started on.
+         */
+        int getLine();
+    }
+
+    private static final class CsvRecords implements RecordSource {
+
+        private final CsvReader csv;
+        /** The column of each field, or {@code null} for ignored fields. */
+        private Column[] columns;
+
+        private CsvRecords(CsvReader csv) {
+            this.csv = csv;
+        }
+
+        @Override
+        public Object[] next() throws IOException {
+            if (columns == null && !readHeader()) {
+                return null;
+            }
+            List<String> record = csv.readRecord();
+            if (record == null) {
+                return null;
+            }
+            Object[] values = new Object[Column.COLUMNS.length];
+            for (int i = 0; i < Math.min(record.size(), columns.length); i++) {
+                Column column = columns[i];
+                if (column == Column.PRODUCT_NAME
+                        || column == Column.CATEGORY) {
+                    // the only columns exported with formulas escaped
+                    values[column.ordinal()] = CsvWriter
+                            .unescapeFormula(record.get(i));
+                } else if (column != null) {
+                    values[column.ordinal()] = record.get(i);
+                }
+            }
+            return values;
+        }
+
+        private boolean readHeader() throws IOException {
+            List<String> header = csv.readRecord();
+            if (header == null) {
+                return false;
+            }
+            columns = new Column[header.size()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = Column.forName(header.get(i));
+            }
+            if (!Arrays.asList(columns).contains(Column.PRODUCT_NAME)) {
+                throw new ProductFeedException(
+                        "The header has no product name column",
+                        csv.getRecordLine());
+            }
+            return true;
+        }
+
+        @Override
+        public int getLine() {
+            return csv.getRecordLine();
+        }
+    }
+
+    private static final class JsonRecords implements RecordSource {
+
+        private final JsonReader json;
+
+        private JsonRecords(JsonReader json) {
+            this.json = json;
+        }
+
+        @Override
+        public Object[] next() throws IOException {
+            Map<String, Object> object = json.readObject();
+            if (object == null) {
+                return null;
+            }
+            Object[] values = new Object[Column.COLUMNS.length];
+            object.forEach((name, value) -> {
+                Column column = Column.forName(name);
+                if (column != null) {
+                    values[column.ordinal()] = value;
+                }
+            });
+            return values;
+        }
+
+        @Override
+        public int getLine() {
+            return json.getObjectLine();
+        }
+    }
+
+    /**
+     * Thrown for a record that does not make a valid product. It has no
+     * stack trace, as rejected records are reported rather than debugged.
+     */
+    private static final class RejectedRecordException extends Exception {
+
+        private RejectedRecordException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
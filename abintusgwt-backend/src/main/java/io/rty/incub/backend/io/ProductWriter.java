@@ -0,0 +1,71 @@
+package io.rty.incub.backend.io;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Writes products one after the other in an export format, with the columns
+ * of the product grid. Values are written as {@link ProductImporter} reads
+ * them back: plain numbers, availabilities by their display name and
+ * category names separated by commas.
+ */
+abstract class ProductWriter {
+
+    static final String[] HEADERS = { "Product name", "Price",
+            "Availability", "Stock count", "Category" };
+
+    private static final int MAX_CATEGORY_LABELS = 256;
+
+    private final Map<Set<Category>, String> categoryLabels = new HashMap<>();
+
+    /**
+     * Writes the product after the ones written before.
+     */
+    abstract void write(Product product) throws IOException;
+
+    /**
+     * Completes the export and flushes it, without closing the stream it is
+     * written to.
+     */
+    abstract void finish() throws IOException;
+
+    static String price(Product product) {
+        BigDecimal price = product.getPrice();
+        return price == null ? null : price.toPlainString();
+    }
+
+    static String availability(Product product) {
+        return product.getAvailability() == null ? null
+                : product.getAvailability().toString();
+    }
+
+    /**
+     * Returns the names of the categories of the product separated by
+     * commas, or {@code null} if it has none. Few distinct category sets are
+     * in use, so labels are cached by set rather than joined for every
+     * product.
+     */
+    String categories(Product product) {
+        Set<Category> categories = product.getCategory();
+        if (categories == null || categories.isEmpty()) {
+            return null;
+        }
+        String label = categoryLabels.get(categories);
+        if (label == null) {
+            label = categories.stream().map(Category::getName)
+                    .collect(Collectors.joining(", "));
+            if (categoryLabels.size() >= MAX_CATEGORY_LABELS) {
+                categoryLabels.clear();
+            }
+            categoryLabels.put(categories, label);
+        }
+        return label;
+    }
+}
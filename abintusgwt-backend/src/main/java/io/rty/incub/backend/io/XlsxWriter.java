@@ -0,0 +1,227 @@
+package io.rty.incub.backend.io;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Writes products as an Office Open XML workbook, streaming the rows into
+ * the zipped sheet as they come, so that no workbook is built in memory.
+ * <p>
+ * Strings are written inline rather than to a shared string table, which
+ * would have to be held until the end, and prices get a two decimals number
+ * format. A sheet holds at most {@value #MAX_ROWS} rows, the header
+ * included, so longer exports go on in further sheets. The workbook parts
+ * listing the sheets are written last, once their number is known.
+ */
+final class XlsxWriter extends ProductWriter {
+
+    /** The most rows a sheet can have. */
+    static final int MAX_ROWS = 1 << 20;
+
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    private static final String MAIN_NAMESPACE = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String RELATIONSHIPS_NAMESPACE = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String PACKAGE_RELATIONSHIPS_NAMESPACE = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String CONTENT_TYPE_PREFIX = "application/vnd.openxmlformats-officedocument.spreadsheetml.";
+    private static final String SHEET_NAME = "Products";
+    private static final String COLUMNS = "<cols>"
+            + "<col min=\"1\" max=\"1\" width=\"40\" customWidth=\"1\"/>"
+            + "<col min=\"2\" max=\"4\" width=\"14\" customWidth=\"1\"/>"
+            + "<col min=\"5\" max=\"5\" width=\"40\" customWidth=\"1\"/>"
+            + "</cols>";
+    /** Cell style of the header row, bold. */
+    private static final int HEADER_STYLE = 1;
+    /** Cell style of prices, with two decimals. */
+    private static final int PRICE_STYLE = 2;
+
+    private final ZipOutputStream zip;
+    private final Writer out;
+    private final int maxRows;
+    private int sheets;
+    private int rowsInSheet;
+
+    XlsxWriter(OutputStream out) throws IOException {
+        this(out, MAX_ROWS);
+    }
+
+    XlsxWriter(OutputStream out, int maxRows) throws IOException {
+        this.maxRows = maxRows;
+        zip = new ZipOutputStream(out);
+        // exports are generated for a download, and deflating is what they
+        // spend most of their time on
+        zip.setLevel(Deflater.BEST_SPEED);
+        this.out = new BufferedWriter(
+                new OutputStreamWriter(zip, StandardCharsets.UTF_8), 1 << 16);
+        startSheet();
+    }
+
+    @Override
+    void write(Product product) throws IOException {
+        if (rowsInSheet == maxRows) {
+            endSheet();
+            startSheet();
+        }
+        out.write("<row>");
+        writeString(product.getProductName(), 0);
+        writeNumber(price(product), PRICE_STYLE);
+        writeString(availability(product), 0);
+        writeNumber(Integer.toString(product.getStockCount()), 0);
+        writeString(categories(product), 0);
+        out.write("</row>");
+        rowsInSheet++;
+    }
+
+    @Override
+    void finish() throws IOException {
+        endSheet();
+        writeWorkbook();
+        out.flush();
+        zip.finish();
+    }
+
+    private void startSheet() throws IOException {
+        sheets++;
+        out.flush();
+        zip.putNextEntry(
+                new ZipEntry("xl/worksheets/sheet" + sheets + ".xml"));
+        out.write(XML_DECLARATION);
+        out.write("<worksheet xmlns=\"" + MAIN_NAMESPACE + "\">");
+        // keep the header in view while scrolling
+        out.write("<sheetViews><sheetView workbookViewId=\"0\">"
+                + "<pane ySplit=\"1\" topLeftCell=\"A2\" activePane=\"bottomLeft\" state=\"frozen\"/>"
+                + "</sheetView></sheetViews>");
+        out.write(COLUMNS);
+        out.write("<sheetData><row>");
+        for (String header : HEADERS) {
+            writeString(header, HEADER_STYLE);
+        }
+        out.write("</row>");
+        rowsInSheet = 1;
+    }
+
+    private void endSheet() throws IOException {
+        out.write("</sheetData></worksheet>");
+        out.flush();
+        zip.closeEntry();
+    }
+
+    private void writeWorkbook() throws IOException {
+        StringBuilder sheetList = new StringBuilder();
+        StringBuilder sheetRelationships = new StringBuilder();
+        StringBuilder sheetContentTypes = new StringBuilder();
+        for (int sheet = 1; sheet <= sheets; sheet++) {
+            sheetList.append("<sheet name=\"").append(SHEET_NAME);
+            if (sheet > 1) {
+                sheetList.append(' ').append(sheet);
+            }
+            sheetList.append("\" sheetId=\"").append(sheet)
+                    .append("\" r:id=\"rId").append(sheet).append("\"/>");
+            sheetRelationships.append("<Relationship Id=\"rId").append(sheet)
+                    .append("\" Type=\"").append(RELATIONSHIPS_NAMESPACE)
+                    .append("/worksheet\" Target=\"worksheets/sheet")
+                    .append(sheet).append(".xml\"/>");
+            sheetContentTypes
+                    .append("<Override PartName=\"/xl/worksheets/sheet")
+                    .append(sheet).append(".xml\" ContentType=\"")
+                    .append(CONTENT_TYPE_PREFIX)
+                    .append("worksheet+xml\"/>");
+        }
+        writeEntry("xl/workbook.xml", "<workbook xmlns=\"" + MAIN_NAMESPACE
+                + "\" xmlns:r=\"" + RELATIONSHIPS_NAMESPACE + "\"><sheets>"
+                + sheetList + "</sheets></workbook>");
+        writeEntry("xl/_rels/workbook.xml.rels",
+                "<Relationships xmlns=\"" + PACKAGE_RELATIONSHIPS_NAMESPACE
+                        + "\">" + sheetRelationships
+                        + "<Relationship Id=\"rId" + (sheets + 1)
+                        + "\" Type=\"" + RELATIONSHIPS_NAMESPACE
+                        + "/styles\" Target=\"styles.xml\"/>"
+                        + "</Relationships>");
+        writeEntry("xl/styles.xml", "<styleSheet xmlns=\"" + MAIN_NAMESPACE
+                + "\">"
+                + "<fonts count=\"2\"><font><sz val=\"11\"/></font>"
+                + "<font><b/><sz val=\"11\"/></font></fonts>"
+                + "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill>"
+                + "<fill><patternFill patternType=\"gray125\"/></fill></fills>"
+                + "<borders count=\"1\"><border/></borders>"
+                + "<cellStyleXfs count=\"1\"><xf/></cellStyleXfs>"
+                + "<cellXfs count=\"3\"><xf xfId=\"0\"/>"
+                + "<xf xfId=\"0\" fontId=\"1\" applyFont=\"1\"/>"
+                // built-in number format 2 is "0.00"
+                + "<xf xfId=\"0\" numFmtId=\"2\" applyNumberFormat=\"1\"/>"
+                + "</cellXfs></styleSheet>");
+        writeEntry("_rels/.rels", "<Relationships xmlns=\""
+                + PACKAGE_RELATIONSHIPS_NAMESPACE + "\">"
+                + "<Relationship Id=\"rId1\" Type=\"" + RELATIONSHIPS_NAMESPACE
+                + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                + "</Relationships>");
+        writeEntry("[Content_Types].xml",
+                "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                        + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                        + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                        + "<Override PartName=\"/xl/workbook.xml\" ContentType=\""
+                        + CONTENT_TYPE_PREFIX + "sheet.main+xml\"/>"
+                        + "<Override PartName=\"/xl/styles.xml\" ContentType=\""
+                        + CONTENT_TYPE_PREFIX + "styles+xml\"/>"
+                        + sheetContentTypes + "</Types>");
+    }
+
+    private void writeEntry(String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        out.write(XML_DECLARATION);
+        out.write(content);
+        out.flush();
+        zip.closeEntry();
+    }
+
+    private void writeString(String value, int style) throws IOException {
+        if (value == null) {
+            out.write("<c/>");
+            return;
+        }
+        out.write(style == 0 ? "<c t=\"inlineStr\">"
+                : "<c t=\"inlineStr\" s=\"" + style + "\">");
+        out.write("<is><t xml:space=\"preserve\">");
+        // write the runs between characters to escape in one go
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String escaped;
+            if (c == '&') {
+                escaped = "&amp;";
+            } else if (c == '<') {
+                escaped = "&lt;";
+            } else if (c == '>') {
+                escaped = "&gt;";
+            } else if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') {
+                // other control characters cannot be written in XML 1.0
+                escaped = "";
+            } else {
+                continue;
+            }
+            out.write(value, start, i - start);
+            out.write(escaped);
+            start = i + 1;
+        }
+        out.write(value, start, value.length() - start);
+        out.write("</t></is></c>");
+    }
+
+    private void writeNumber(String value, int style) throws IOException {
+        if (value == null) {
+            out.write("<c/>");
+            return;
+        }
+        out.write(style == 0 ? "<c><v>" : "<c s=\"" + style + "\"><v>");
+        out.write(value);
+        out.write("</v></c>");
+    }
+}
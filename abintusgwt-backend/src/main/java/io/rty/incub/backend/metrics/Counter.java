@@ -0,0 +1,23 @@
+package io.rty.incub.backend.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events, cheaply from many threads at once.
+ */
+public final class Counter {
+
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long events) {
+        count.add(events);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,229 @@
+package io.rty.incub.backend.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Named {@link Timer timers}, {@link Counter counters} and gauges, written
+ * out in the Prometheus text format.
+ * <p>
+ * Metrics of the same name make a family, told apart by their labels, such
+ * as the timers of the methods of a service. A metric is created the first
+ * time it is asked for and the same one returned after that, so callers
+ * should hold on to it rather than look it up in their hot paths. Timers are
+ * written as summaries, with their 50th and 99th percentiles, in seconds.
+ */
+public final class MetricRegistry {
+
+    private static final MetricRegistry DEFAULT = new MetricRegistry();
+
+    private static final Pattern NAME = Pattern
+            .compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+    private static final double[] QUANTILES = { 0.5, 0.99 };
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS
+            .toNanos(1);
+
+    private enum Type {
+        SUMMARY, COUNTER, GAUGE;
+    }
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final Type type;
+        /** Metrics by their labels, as written out. */
+        final ConcurrentMap<String, Object> metrics = new ConcurrentSkipListMap<>();
+
+        Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * Returns the registry of the application.
+     */
+    public static MetricRegistry get() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the timer of the given name and labels.
+     *
+     * @param labels
+     *            label names and values, one after the other
+     * @throws IllegalArgumentException
+     *             if the name is already that of another type of metric
+     */
+    public Timer timer(String name, String help, String... labels) {
+        return (Timer) metric(name, help, Type.SUMMARY, labels,
+                key -> new Timer());
+    }
+
+    /**
+     * Returns the counter of the given name and labels. Counter names should
+     * end with {@code _total}.
+     *
+     * @param labels
+     *            label names and values, one after the other
+     * @throws IllegalArgumentException
+     *             if the name is already that of another type of metric
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) metric(name, help, Type.COUNTER, labels,
+                key -> new Counter());
+    }
+
+    /**
+     * Adds a gauge of the given name and labels, which reads its value when
+     * the metrics are written out. A gauge added again replaces the previous
+     * one.
+     *
+     * @param labels
+     *            label names and values, one after the other
+     * @throws IllegalArgumentException
+     *             if the name is already that of another type of metric
+     */
+    public void gauge(String name, String help, DoubleSupplier value,
+            String... labels) {
+        family(name, help, Type.GAUGE).metrics.put(labels(labels), value);
+    }
+
+    private Object metric(String name, String help, Type type,
+            String[] labels, Function<String, Object> create) {
+        return family(name, help, type).metrics
+                .computeIfAbsent(labels(labels), create);
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, key -> {
+            if (!NAME.matcher(key).matches()) {
+                throw new IllegalArgumentException(
+                        "Invalid metric name: " + key);
+            }
+            return new Family(key, help, type);
+        });
+        if (family.type != type) {
+            throw new IllegalArgumentException(
+                    name + " is a " + family.type.name().toLowerCase());
+        }
+        return family;
+    }
+
+    private static String labels(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException(
+                    "Labels must be name and value pairs");
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (!NAME.matcher(labels[i]).matches()) {
+                throw new IllegalArgumentException(
+                        "Invalid label name: " + labels[i]);
+            }
+            if (text.length() > 0) {
+                text.append(',');
+            }
+            text.append(labels[i]).append("=\"");
+            escape(labels[i + 1], text);
+            text.append('"');
+        }
+        return text.toString();
+    }
+
+    private static void escape(String value, StringBuilder text) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                text.append('\\').append(c);
+            } else if (c == '\n') {
+                text.append("\\n");
+            } else {
+                text.append(c);
+            }
+        }
+    }
+
+    /**
+     * Writes every metric in the Prometheus text format, version 0.0.4.
+     */
+    public void writePrometheus(Writer out) throws IOException {
+        for (Family family : families.values()) {
+            out.write("# HELP " + family.name + " ");
+            out.write(family.help.replace("\\", "\\\\").replace("\n", "\\n"));
+            out.write("\n# TYPE " + family.name + " "
+                    + family.type.name().toLowerCase() + "\n");
+            for (Map.Entry<String, Object> entry : family.metrics
+                    .entrySet()) {
+                String labels = entry.getKey();
+                switch (family.type) {
+                case SUMMARY:
+                    writeTimer(family.name, labels, (Timer) entry.getValue(),
+                            out);
+                    break;
+                case COUNTER:
+                    writeSample(family.name, labels,
+                            ((Counter) entry.getValue()).getCount(), out);
+                    break;
+                case GAUGE:
+                    writeSample(family.name, labels,
+                            ((DoubleSupplier) entry.getValue()).getAsDouble(),
+                            out);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void writeTimer(String name, String labels, Timer timer,
+            Writer out) throws IOException {
+        Timer.Snapshot snapshot = timer.snapshot();
+        String separator = labels.isEmpty() ? "" : ",";
+        for (double quantile : QUANTILES) {
+            writeSample(name,
+                    labels + separator + "quantile=\"" + quantile + "\"",
+                    snapshot.getQuantileNanos(quantile) / NANOS_PER_SECOND,
+                    out);
+        }
+        writeSample(name + "_sum", labels,
+                timer.getTotalNanos() / NANOS_PER_SECOND, out);
+        writeSample(name + "_count", labels, timer.getCount(), out);
+    }
+
+    private static void writeSample(String name, String labels,
+            double value, Writer out) throws IOException {
+        writeName(name, labels, out);
+        out.write(Double.isNaN(value) ? "NaN"
+                : Double.isInfinite(value) ? (value > 0 ? "+Inf" : "-Inf")
+                        : Double.toString(value));
+        out.write('\n');
+    }
+
+    private static void writeSample(String name, String labels, long value,
+            Writer out) throws IOException {
+        writeName(name, labels, out);
+        out.write(Long.toString(value));
+        out.write('\n');
+    }
+
+    private static void writeName(String name, String labels, Writer out)
+            throws IOException {
+        out.write(name);
+        if (!labels.isEmpty()) {
+            out.write('{');
+            out.write(labels);
+            out.write('}');
+        }
+        out.write(' ');
+    }
+}
@@ -0,0 +1,161 @@
+package io.rty.incub.backend.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the slowest of the operations of the last one to two minutes, such
+ * as requests, with a description of each.
+ * <p>
+ * Operations are kept in two windows taking turns every minute, as in
+ * {@link Timer}. An operation faster than the fastest of those kept in a
+ * full window is turned away with a volatile read, so that logging every
+ * request costs next to nothing but for the slow ones.
+ */
+public final class SlowOperationLog {
+
+    /**
+     * An operation of the log.
+     */
+    public static final class Entry {
+
+        private final String description;
+        private final long nanos;
+        private final long endMillis;
+
+        private Entry(String description, long nanos, long endMillis) {
+            this.description = description;
+            this.nanos = nanos;
+            this.endMillis = endMillis;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Returns when the operation ended, in milliseconds since the epoch.
+         */
+        public long getEndMillis() {
+            return endMillis;
+        }
+    }
+
+    private static final Comparator<Entry> FASTEST_FIRST = Comparator
+            .comparingLong(Entry::getNanos);
+
+    private final class Window {
+        final long start;
+        /** The kept operations, the fastest at the head. */
+        final PriorityQueue<Entry> slowest = new PriorityQueue<>(FASTEST_FIRST);
+        /** The time an operation must exceed to be kept. */
+        volatile long threshold = -1;
+
+        Window(long start) {
+            this.start = start;
+        }
+
+        synchronized void add(Entry entry) {
+            if (entry.nanos <= threshold) {
+                return;
+            }
+            slowest.add(entry);
+            if (slowest.size() > capacity) {
+                slowest.poll();
+            }
+            if (slowest.size() == capacity) {
+                threshold = slowest.peek().nanos;
+            }
+        }
+
+        synchronized List<Entry> entries() {
+            return new ArrayList<>(slowest);
+        }
+    }
+
+    private final int capacity;
+    private final LongSupplier clock;
+    private volatile Window current;
+    private volatile Window previous;
+
+    /**
+     * Creates a log keeping the given number of operations.
+     */
+    public SlowOperationLog(int capacity) {
+        this(capacity, System::nanoTime);
+    }
+
+    /**
+     * @param clock
+     *            the time in nanoseconds
+     */
+    SlowOperationLog(int capacity, LongSupplier clock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                    "Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.clock = clock;
+        long now = clock.getAsLong();
+        current = new Window(now);
+        previous = new Window(now - Timer.WINDOW_NANOS);
+    }
+
+    /**
+     * Logs an operation, if among the slowest.
+     *
+     * @param description
+     *            the description of the operation, only computed if the
+     *            operation is kept
+     */
+    public void record(long nanos, Supplier<String> description) {
+        Window window = window(clock.getAsLong());
+        if (nanos <= window.threshold) {
+            return;
+        }
+        window.add(new Entry(description.get(), nanos,
+                System.currentTimeMillis()));
+    }
+
+    /**
+     * Returns the slowest operations of the last one to two minutes, the
+     * slowest first.
+     */
+    public List<Entry> getSlowest() {
+        Window newer = window(clock.getAsLong());
+        List<Entry> entries = previous.entries();
+        entries.addAll(newer.entries());
+        entries.sort(FASTEST_FIRST.reversed());
+        return entries.size() > capacity
+                ? new ArrayList<>(entries.subList(0, capacity))
+                : entries;
+    }
+
+    private Window window(long now) {
+        Window window = current;
+        if (now - window.start >= Timer.WINDOW_NANOS) {
+            window = rotate(now);
+        }
+        return window;
+    }
+
+    private synchronized Window rotate(long now) {
+        Window window = current;
+        if (now - window.start >= Timer.WINDOW_NANOS) {
+            previous = now - window.start >= 2 * Timer.WINDOW_NANOS
+                    ? new Window(now - Timer.WINDOW_NANOS)
+                    : window;
+            window = new Window(now);
+            current = window;
+        }
+        return window;
+    }
+}
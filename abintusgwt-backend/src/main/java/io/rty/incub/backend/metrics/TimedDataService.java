@@ -0,0 +1,228 @@
+package io.rty.incub.backend.metrics;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.ListenerRegistration;
+import io.rty.incub.backend.ProductChangeListener;
+import io.rty.incub.backend.ProductQuery;
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Times every method of another {@link DataService}, with a
+ * {@value #TIMER_NAME} timer labelled with the method name.
+ * <p>
+ * Calls that throw are timed as well. The time of
+ * {@link #forEachProduct(ProductQuery, Consumer)} includes that of the
+ * action, which for an export is mostly writing to the client.
+ */
+public class TimedDataService extends DataService {
+
+    static final String TIMER_NAME = "abintusgwt_data_service_seconds";
+
+    private final DataService dataService;
+    private final transient MetricRegistry registry;
+    private final transient Timer getAllProducts;
+    private final transient Timer getAllCategories;
+    private final transient Timer updateProduct;
+    private final transient Timer deleteProduct;
+    private final transient Timer updateProducts;
+    private final transient Timer updateProductsById;
+    private final transient Timer deleteProducts;
+    private final transient Timer upsertProducts;
+    private final transient Timer getProductById;
+    private final transient Timer fetchProducts;
+    private final transient Timer forEachProduct;
+    private final transient Timer countProducts;
+    private final transient Timer addProductChangeListener;
+    private final transient Timer getEstimatedBytes;
+
+    public TimedDataService(DataService dataService) {
+        this(dataService, MetricRegistry.get());
+    }
+
+    public TimedDataService(DataService dataService,
+            MetricRegistry registry) {
+        this.dataService = dataService;
+        this.registry = registry;
+        getAllProducts = timer("getAllProducts");
+        getAllCategories = timer("getAllCategories");
+        updateProduct = timer("updateProduct");
+        deleteProduct = timer("deleteProduct");
+        updateProducts = timer("updateProducts");
+        updateProductsById = timer("updateProductsById");
+        deleteProducts = timer("deleteProducts");
+        upsertProducts = timer("upsertProducts");
+        getProductById = timer("getProductById");
+        fetchProducts = timer("fetchProducts");
+        forEachProduct = timer("forEachProduct");
+        countProducts = timer("countProducts");
+        addProductChangeListener = timer("addProductChangeListener");
+        getEstimatedBytes = timer("getEstimatedBytes");
+    }
+
+    private Timer timer(String method) {
+        return registry.timer(TIMER_NAME, "Time spent in data service calls.",
+                "method", method);
+    }
+
+    /**
+     * Returns the timed service.
+     */
+    public DataService getDataService() {
+        return dataService;
+    }
+
+    @Override
+    public Collection<Product> getAllProducts() {
+        long start = getAllProducts.start();
+        try {
+            return dataService.getAllProducts();
+        } finally {
+            getAllProducts.recordSince(start);
+        }
+    }
+
+    @Override
+    public Collection<Category> getAllCategories() {
+        long start = getAllCategories.start();
+        try {
+            return dataService.getAllCategories();
+        } finally {
+            getAllCategories.recordSince(start);
+        }
+    }
+
+    @Override
+    public void updateProduct(Product p) {
+        long start = updateProduct.start();
+        try {
+            dataService.updateProduct(p);
+        } finally {
+            updateProduct.recordSince(start);
+        }
+    }
+
+    @Override
+    public void deleteProduct(int productId) {
+        long start = deleteProduct.start();
+        try {
+            dataService.deleteProduct(productId);
+        } finally {
+            deleteProduct.recordSince(start);
+        }
+    }
+
+    @Override
+    public int updateProducts(Predicate<? super Product> where,
+            Consumer<? super Product> mutation) {
+        long start = updateProducts.start();
+        try {
+            return dataService.updateProducts(where, mutation);
+        } finally {
+            updateProducts.recordSince(start);
+        }
+    }
+
+    @Override
+    public int updateProductsById(Collection<Integer> productIds,
+            Consumer<? super Product> mutation) {
+        long start = updateProductsById.start();
+        try {
+            return dataService.updateProductsById(productIds, mutation);
+        } finally {
+            updateProductsById.recordSince(start);
+        }
+    }
+
+    @Override
+    public int deleteProducts(Collection<Integer> productIds) {
+        long start = deleteProducts.start();
+        try {
+            return dataService.deleteProducts(productIds);
+        } finally {
+            deleteProducts.recordSince(start);
+        }
+    }
+
+    @Override
+    public void upsertProducts(Collection<? extends Product> products) {
+        long start = upsertProducts.start();
+        try {
+            dataService.upsertProducts(products);
+        } finally {
+            upsertProducts.recordSince(start);
+        }
+    }
+
+    @Override
+    public Product getProductById(int productId) {
+        long start = getProductById.start();
+        try {
+            return dataService.getProductById(productId);
+        } finally {
+            getProductById.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<Product> fetchProducts(ProductQuery query) {
+        long start = fetchProducts.start();
+        try {
+            return dataService.fetchProducts(query);
+        } finally {
+            fetchProducts.recordSince(start);
+        }
+    }
+
+    @Override
+    public void forEachProduct(ProductQuery query,
+            Consumer<? super Product> action) {
+        long start = forEachProduct.start();
+        try {
+            dataService.forEachProduct(query, action);
+        } finally {
+            forEachProduct.recordSince(start);
+        }
+    }
+
+    @Override
+    public int countProducts(String filter) {
+        long start = countProducts.start();
+        try {
+            return dataService.countProducts(filter);
+        } finally {
+            countProducts.recordSince(start);
+        }
+    }
+
+    @Override
+    public ListenerRegistration addProductChangeListener(
+            ProductChangeListener listener) {
+        long start = addProductChangeListener.start();
+        try {
+            return dataService.addProductChangeListener(listener);
+        } finally {
+            addProductChangeListener.recordSince(start);
+        }
+    }
+
+    @Override
+    public long getEstimatedBytes() {
+        long start = getEstimatedBytes.start();
+        try {
+            return dataService.getEstimatedBytes();
+        } finally {
+            getEstimatedBytes.recordSince(start);
+        }
+    }
+
+    private Object readResolve() {
+        // timers are not serialized, they stay with the registry
+        return new TimedDataService(dataService);
+    }
+}
@@ -0,0 +1,214 @@
+package io.rty.incub.backend.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Times an operation: counts its calls and their total time, and keeps a
+ * histogram of recent durations to tell their percentiles.
+ * <p>
+ * Recording takes a clock read and a few atomic additions, so that timers
+ * can stay in the hot paths in production. The histogram is log-linear: each
+ * power of two is split into {@value #SUB_BUCKETS} buckets, so a percentile
+ * is off by at most 1/{@value #SUB_BUCKETS} of its value, whatever the range
+ * of durations. Percentiles are of the last one to two minutes, two
+ * histograms taking turns: every minute the older one is dropped and a new
+ * one started. The count and total are since the timer was created.
+ */
+public final class Timer {
+
+    static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = (64 - SUB_BUCKET_BITS) << SUB_BUCKET_BITS;
+    static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final class Window {
+        final long start;
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        Window(long start) {
+            this.start = start;
+        }
+    }
+
+    /**
+     * The durations recorded by a timer lately.
+     */
+    public static final class Snapshot {
+
+        private final long[] buckets;
+        private final long count;
+
+        private Snapshot(long[] buckets, long count) {
+            this.buckets = buckets;
+            this.count = count;
+        }
+
+        /**
+         * Returns the number of durations in the snapshot, those of the last
+         * one to two minutes.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the duration that the given fraction of the durations do
+         * not exceed, in nanoseconds, or {@code NaN} if there are none.
+         *
+         * @param quantile
+         *            between 0 and 1, 0.99 for the 99th percentile
+         */
+        public double getQuantileNanos(double quantile) {
+            if (count == 0) {
+                return Double.NaN;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return (lowerBound(i) + upperBound(i)) / 2.0;
+                }
+            }
+            // counts of a bucket may grow while it is copied
+            return upperBound(buckets.length - 1);
+        }
+    }
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongSupplier clock;
+    private volatile Window current;
+    private volatile Window previous;
+
+    public Timer() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * @param clock
+     *            the time in nanoseconds
+     */
+    Timer(LongSupplier clock) {
+        this.clock = clock;
+        long now = clock.getAsLong();
+        current = new Window(now);
+        previous = new Window(now - WINDOW_NANOS);
+    }
+
+    /**
+     * Returns the current time, to pass to {@link #recordSince(long)} once
+     * the operation is done.
+     */
+    public long start() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * Records the duration of an operation started at the given time.
+     *
+     * @param start
+     *            the time returned by {@link #start()}
+     */
+    public void recordSince(long start) {
+        long now = clock.getAsLong();
+        record(now - start, now);
+    }
+
+    /**
+     * Records the duration of an operation.
+     */
+    public void record(long duration, TimeUnit unit) {
+        record(unit.toNanos(duration), clock.getAsLong());
+    }
+
+    private void record(long nanos, long now) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        count.increment();
+        totalNanos.add(nanos);
+        window(now).buckets.incrementAndGet(bucket(nanos));
+    }
+
+    /**
+     * Returns the number of durations recorded since the timer was created.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the total of the durations recorded since the timer was
+     * created, in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * Returns the durations of the last one to two minutes.
+     */
+    public Snapshot snapshot() {
+        Window newer = window(clock.getAsLong());
+        Window older = previous;
+        long[] buckets = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = newer.buckets.get(i) + older.buckets.get(i);
+            total += buckets[i];
+        }
+        return new Snapshot(buckets, total);
+    }
+
+    private Window window(long now) {
+        Window window = current;
+        if (now - window.start >= WINDOW_NANOS) {
+            window = rotate(now);
+        }
+        return window;
+    }
+
+    private synchronized Window rotate(long now) {
+        Window window = current;
+        if (now - window.start >= WINDOW_NANOS) {
+            // a window older than the last minute has nothing to tell
+            previous = now - window.start >= 2 * WINDOW_NANOS
+                    ? new Window(now - WINDOW_NANOS)
+                    : window;
+            window = new Window(now);
+            current = window;
+        }
+        return window;
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (nanos >>> shift) & (SUB_BUCKETS - 1);
+        return ((shift + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = bucket & (SUB_BUCKETS - 1);
+        return (SUB_BUCKETS + subBucket) << shift;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        return lowerBound(bucket) + (1L << shift) - 1;
+    }
+}
@@ -2,19 +2,43 @@ package io.rty.incub.backend.mock;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
-import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import io.rty.incub.backend.data.Availability;
 import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.CategorySet;
 import io.rty.incub.backend.data.Product;
 
+/**
+ * Generator of synthetic catalogs, from the hundred products of the demo to
+ * multi-million product load test data.
+ * <p>
+ * Products are generated in chunks of {@value #CHUNK_SIZE}, in parallel. Each
+ * chunk draws from its own random generator, seeded from the generator seed
+ * and the chunk index, so a given configuration always produces the same
+ * catalog whatever the number of threads. Product ids are numbered from 1 in
+ * generation order.
+ * <p>
+ * By default categories and prices are uniformly distributed. A category skew
+ * makes category popularity follow a Zipf distribution, and a price skew draws
+ * prices from a log-normal distribution, where most books are cheap and a few
+ * are expensive.
+ */
 public class MockDataGenerator {
-    private static int nextCategoryId = 1;
-    private static int nextProductId = 1;
-    private static final Random random = new Random(1);
+
+    static final int CHUNK_SIZE = 8192;
+
+    /** System properties configuring the generator of the mock service. */
+    static final String PRODUCTS_PROPERTY = "abintusgwt.mock.products";
+    static final String CATEGORIES_PROPERTY = "abintusgwt.mock.categories";
+    static final String SEED_PROPERTY = "abintusgwt.mock.seed";
+
     private static final String categoryNames[] = new String[] {
             "Children's books", "Best sellers", "Romance", "Mystery",
             "Thriller", "Sci-fi", "Non-fiction", "Cookbooks" };
@@ -37,64 +61,245 @@ public class MockDataGenerator {
             "speaking to a big audience", "creating software", "giant needles",
             "elephants", "keeping your wife happy" };
 
+    private long seed = 1;
+    private int productCount = 100;
+    private int categoryCount = categoryNames.length;
+    private double categorySkew = 0;
+    private double priceSkew = 0;
+    private int parallelism = ForkJoinPool.getCommonPoolParallelism();
+
+    /**
+     * Returns a generator configured from the {@code abintusgwt.mock.*} system
+     * properties, falling back to the defaults.
+     */
+    static MockDataGenerator fromSystemProperties() {
+        MockDataGenerator generator = new MockDataGenerator();
+        generator.setProductCount(Integer.getInteger(PRODUCTS_PROPERTY,
+                generator.getProductCount()));
+        generator.setCategoryCount(Integer.getInteger(CATEGORIES_PROPERTY,
+                generator.getCategoryCount()));
+        generator.setSeed(Long.getLong(SEED_PROPERTY, generator.getSeed()));
+        return generator;
+    }
+
     static List<Category> createCategories() {
-        List<Category> categories = new ArrayList<Category>();
-        for (String name : categoryNames) {
-            Category c = createCategory(name);
-            categories.add(c);
+        return new MockDataGenerator().generateCategories();
+    }
+
+    static List<Product> createProducts(List<Category> categories) {
+        return new MockDataGenerator().generateProducts(categories);
+    }
+
+    static List<Product> createProducts(List<Category> categories,
+            int count) {
+        MockDataGenerator generator = new MockDataGenerator();
+        generator.setProductCount(count);
+        return generator.generateProducts(categories);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getProductCount() {
+        return productCount;
+    }
+
+    public void setProductCount(int productCount) {
+        if (productCount < 0) {
+            throw new IllegalArgumentException(
+                    "Negative product count " + productCount);
         }
-        return categories;
+        this.productCount = productCount;
+    }
 
+    public int getCategoryCount() {
+        return categoryCount;
     }
 
-    static List<Product> createProducts(List<Category> categories) {
-        List<Product> products = new ArrayList<Product>();
-        for (int i = 0; i < 100; i++) {
-            Product p = createProduct(categories);
-            products.add(p);
+    public void setCategoryCount(int categoryCount) {
+        if (categoryCount < 1) {
+            throw new IllegalArgumentException(
+                    "At least one category is needed");
+        }
+        this.categoryCount = categoryCount;
+    }
+
+    public double getCategorySkew() {
+        return categorySkew;
+    }
+
+    /**
+     * Sets the exponent of the Zipf distribution of category popularity: 0
+     * for uniform, 1 for the classic "the n-th category is n times less
+     * popular than the first".
+     */
+    public void setCategorySkew(double categorySkew) {
+        this.categorySkew = categorySkew;
+    }
+
+    public double getPriceSkew() {
+        return priceSkew;
+    }
+
+    /**
+     * Sets the standard deviation of the logarithm of the prices: 0 for
+     * uniform prices between 5 and 30 €, around 0.6 for a long tail of
+     * expensive books.
+     */
+    public void setPriceSkew(double priceSkew) {
+        this.priceSkew = priceSkew;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets how many chunks are generated at the same time. Does not change
+     * the generated data.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public List<Category> generateCategories() {
+        List<Category> categories = new ArrayList<Category>(categoryCount);
+        for (int i = 0; i < categoryCount; i++) {
+            String name = categoryNames[i % categoryNames.length];
+            if (i >= categoryNames.length) {
+                name += " " + (i / categoryNames.length + 1);
+            }
+            categories.add(Category.valueOf(name));
         }
+        return categories;
+    }
 
+    public List<Product> generateProducts(List<Category> categories) {
+        List<Product> products = new ArrayList<Product>(productCount);
+        generateProducts(categories, products::add);
         return products;
     }
 
-    private static Category createCategory(String name) {
-        Category c = new Category();
-        c.setId(nextCategoryId++);
-        c.setName(name);
-        return c;
+    /**
+     * Generates the products and hands them to {@code sink} in id order, on
+     * the calling thread. At most {@link #getParallelism()} chunks are held
+     * in memory at a time, so catalogs of any size can be streamed into a
+     * store without an intermediate list.
+     */
+    public void generateProducts(List<Category> categories,
+            Consumer<? super Product> sink) {
+        double[] categoryWeights = cumulativeCategoryWeights(
+                categories.size());
+        int chunks = (productCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        for (int wave = 0; wave < chunks; wave += parallelism) {
+            IntStream chunkIndexes = IntStream.range(wave,
+                    Math.min(wave + parallelism, chunks));
+            if (parallelism > 1) {
+                chunkIndexes = chunkIndexes.parallel();
+            }
+            List<Product[]> generated = chunkIndexes
+                    .mapToObj(chunk -> generateChunk(categories,
+                            categoryWeights, chunk))
+                    .collect(Collectors.toList());
+            for (Product[] chunk : generated) {
+                for (Product p : chunk) {
+                    sink.accept(p);
+                }
+            }
+        }
     }
 
-    private static Product createProduct(List<Category> categories) {
+    private Product[] generateChunk(List<Category> categories,
+            double[] categoryWeights, int chunk) {
+        SplittableRandom random = new SplittableRandom(
+                mix(seed + chunk * 0x9E3779B97F4A7C15L));
+        int first = chunk * CHUNK_SIZE;
+        Product[] products = new Product[Math.min(CHUNK_SIZE,
+                productCount - first)];
+        for (int i = 0; i < products.length; i++) {
+            products[i] = createProduct(random, first + i + 1, categories,
+                    categoryWeights);
+        }
+        return products;
+    }
+
+    private Product createProduct(SplittableRandom random, int id,
+            List<Category> categories, double[] categoryWeights) {
         Product p = new Product();
-        p.setId(nextProductId++);
-        p.setProductName(generateName());
+        p.setId(id);
+        p.setProductName(generateName(random));
 
-        p.setPrice(new BigDecimal((random.nextInt(250) + 50) / 10.0));
+        p.setPrice(generatePrice(random));
         p.setAvailability(Availability.values()[random.nextInt(Availability
                 .values().length)]);
         if (p.getAvailability() == Availability.AVAILABLE) {
             p.setStockCount(random.nextInt(523));
         }
 
-        p.setCategory(getCategory(categories, 1, 2));
+        p.setCategory(getCategory(random, categories, categoryWeights, 1, 2));
         return p;
     }
 
-    private static Set<Category> getCategory(List<Category> categories,
-            int min, int max) {
+    private BigDecimal generatePrice(SplittableRandom random) {
+        long cents;
+        if (priceSkew <= 0) {
+            cents = (random.nextInt(250) + 50) * 10;
+        } else {
+            // log-normal around a median of 12 €, Box-Muller for the normal
+            double normal = Math.sqrt(-2 * Math.log(1 - random.nextDouble()))
+                    * Math.cos(2 * Math.PI * random.nextDouble());
+            double price = 12 * Math.exp(priceSkew * normal);
+            cents = Math.max(99, Math.min(99_999, Math.round(price * 100)));
+        }
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    private static CategorySet getCategory(SplittableRandom random,
+            List<Category> categories, double[] categoryWeights, int min,
+            int max) {
         int nr = random.nextInt(max) + min;
-        HashSet<Category> productCategories = new HashSet<Category>();
+        Category[] productCategories = new Category[nr];
         for (int i = 0; i < nr; i++) {
-            productCategories.add(categories.get(random.nextInt(categories
-                    .size())));
+            productCategories[i] = categories
+                    .get(pick(categoryWeights, random.nextDouble()));
         }
 
-        return productCategories;
+        return CategorySet.of(productCategories);
     }
 
-    private static String generateName() {
+    private double[] cumulativeCategoryWeights(int count) {
+        double[] cumulative = new double[count];
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            total += 1 / Math.pow(i + 1, categorySkew);
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < count; i++) {
+            cumulative[i] /= total;
+        }
+        return cumulative;
+    }
+
+    private static int pick(double[] cumulativeWeights, double value) {
+        int i = Arrays.binarySearch(cumulativeWeights, value);
+        i = i >= 0 ? i + 1 : -i - 1;
+        return Math.min(i, cumulativeWeights.length - 1);
+    }
+
+    private static String generateName(SplittableRandom random) {
         return word1[random.nextInt(word1.length)] + " "
                 + word2[random.nextInt(word2.length)];
     }
 
+    /** The finalizer of SplitMix64, turning chunk numbers into seeds. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
 }
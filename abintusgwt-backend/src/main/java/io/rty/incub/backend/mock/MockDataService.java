@@ -1,82 +1,76 @@
 package io.rty.incub.backend.mock;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 
 import io.rty.incub.backend.DataService;
 import io.rty.incub.backend.data.Category;
 import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.persist.ProductSnapshotWriter;
+import io.rty.incub.backend.store.InMemoryDataService;
 
 /**
- * Mock data model. This implementation has very simplistic locking and does not
- * notify users of modifications.
+ * Mock data model, kept in memory and generated on first use by a
+ * {@link MockDataGenerator} configured from system properties.
  */
-public class MockDataService extends DataService {
+public class MockDataService extends InMemoryDataService {
 
-    private static MockDataService INSTANCE;
-
-    private List<Product> products;
-    private List<Category> categories;
-    private int nextProductId = 0;
+    private static class InstanceHolder {
+        private static final MockDataService INSTANCE = new MockDataService();
+    }
 
     private MockDataService() {
-        categories = MockDataGenerator.createCategories();
-        products = MockDataGenerator.createProducts(categories);
-        nextProductId = products.size() + 1;
+        this(MockDataGenerator.fromSystemProperties());
     }
 
-    public synchronized static DataService getInstance() {
-        if (INSTANCE == null) {
-            INSTANCE = new MockDataService();
-        }
-        return INSTANCE;
+    /**
+     * Creates a service holding a generated catalog. The products are
+     * streamed from the generator into the store and the text index.
+     */
+    MockDataService(MockDataGenerator generator) {
+        this(generator, generator.generateCategories());
     }
 
-    @Override
-    public synchronized List<Product> getAllProducts() {
-        return products;
+    private MockDataService(MockDataGenerator generator,
+            List<Category> categories) {
+        super(categories, generator.getProductCount(),
+                sink -> generator.generateProducts(categories, sink));
     }
 
-    @Override
-    public synchronized List<Category> getAllCategories() {
-        return categories;
+    /**
+     * Creates a service holding the given data, with new products numbered
+     * after the highest given id.
+     */
+    MockDataService(List<Category> categories, Collection<Product> initial) {
+        super(categories, initial);
     }
 
-    @Override
-    public synchronized void updateProduct(Product p) {
-        if (p.getId() < 0) {
-            // New product
-            p.setId(nextProductId++);
-            products.add(p);
-            return;
-        }
-        for (int i = 0; i < products.size(); i++) {
-            if (products.get(i).getId() == p.getId()) {
-                products.set(i, p);
-                return;
-            }
-        }
-
-        throw new IllegalArgumentException("No product with id " + p.getId()
-                + " found");
-    }
-
-    @Override
-    public synchronized Product getProductById(int productId) {
-        for (int i = 0; i < products.size(); i++) {
-            if (products.get(i).getId() == productId) {
-                return products.get(i);
-            }
-        }
-        return null;
+    public static DataService getInstance() {
+        return InstanceHolder.INSTANCE;
     }
 
-    @Override
-    public synchronized void deleteProduct(int productId) {
-        Product p = getProductById(productId);
-        if (p == null) {
-            throw new IllegalArgumentException("Product with id " + productId
-                    + " not found");
+    /**
+     * Writes the catalog the mock service would generate to a snapshot file,
+     * streaming the products from the generator to the file.
+     */
+    public static void writeSnapshot(Path file) throws IOException {
+        MockDataGenerator generator = MockDataGenerator.fromSystemProperties();
+        List<Category> categories = generator.generateCategories();
+        try (ProductSnapshotWriter writer = new ProductSnapshotWriter(file,
+                categories)) {
+            generator.generateProducts(categories, p -> {
+                try {
+                    writer.write(p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.commit();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        products.remove(p);
     }
 }
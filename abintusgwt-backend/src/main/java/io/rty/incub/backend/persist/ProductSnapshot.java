@@ -0,0 +1,215 @@
+package io.rty.incub.backend.persist;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import io.rty.incub.backend.data.Availability;
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.CategorySet;
+import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.store.ProductSource;
+
+/**
+ * A product snapshot file mapped into memory. Mapping a snapshot only reads
+ * its header and categories; products are decoded from the mapping when they
+ * are asked for, so opening a snapshot takes the same time whatever the
+ * number of products it holds.
+ * <p>
+ * A snapshot is laid out as follows, all numbers big-endian:
+ * <ol>
+ * <li>a header of {@value #HEADER_SIZE} bytes: magic number, format version,
+ * category count, product count, and the offsets of the product records, of
+ * the order index and of the id index</li>
+ * <li>the categories: id and name. Ids are only valid within the snapshot,
+ * categories are resolved by name when it is mapped.</li>
+ * <li>the product records in insertion order: id, stock count, unscaled price
+ * and scale, availability ordinal, category ids and name</li>
+ * <li>the order index: the offset of each record, in insertion order</li>
+ * <li>the id index: pairs of id and record offset, sorted by id</li>
+ * </ol>
+ * Strings are stored as their UTF-8 length followed by their bytes, with a
+ * length of -1 for {@code null}. Offsets are ints, which limits a snapshot to
+ * 2 GB, or some thirty million products.
+ * <p>
+ * Snapshots are immutable and safe to read from several threads.
+ *
+ * @see ProductSnapshotWriter
+ */
+public final class ProductSnapshot implements ProductSource {
+
+    static final int MAGIC = 0x41425053; // "ABPS"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+
+    static final byte NULL_SCALE = Byte.MIN_VALUE;
+    static final byte NULL_AVAILABILITY = -1;
+
+    private static final Availability[] AVAILABILITIES = Availability
+            .values();
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int recordsOffset;
+    private final int orderIndexOffset;
+    private final int idIndexOffset;
+    private final List<Category> categories;
+    private final Map<Integer, Category> categoriesById = new HashMap<>();
+
+    private ProductSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a product snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported product snapshot version "
+                    + buffer.getInt(4));
+        }
+        int categoryCount = buffer.getInt(8);
+        size = buffer.getInt(12);
+        recordsOffset = buffer.getInt(16);
+        orderIndexOffset = buffer.getInt(20);
+        idIndexOffset = buffer.getInt(24);
+        if (idIndexOffset + (long) size * 8 != buffer.limit()) {
+            throw new IOException("Truncated product snapshot");
+        }
+
+        ByteBuffer in = buffer.duplicate();
+        in.position(HEADER_SIZE);
+        List<Category> read = new ArrayList<>(categoryCount);
+        for (int i = 0; i < categoryCount; i++) {
+            // ids are only valid in the JVM that wrote the snapshot
+            int id = in.getInt();
+            Category category = Category.valueOf(readString(in));
+            read.add(category);
+            categoriesById.put(id, category);
+        }
+        categories = Collections.unmodifiableList(read);
+    }
+
+    /**
+     * Maps a snapshot file into memory. The mapping stays valid after the
+     * file is replaced or deleted.
+     *
+     * @throws IOException
+     *             if the file cannot be read or is not a product snapshot
+     */
+    public static ProductSnapshot map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Product snapshot " + file
+                        + " is larger than 2 GB");
+            }
+            return new ProductSnapshot(
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+        }
+    }
+
+    /**
+     * Returns the number of products in the snapshot.
+     */
+    public int size() {
+        return size;
+    }
+
+    public List<Category> getCategories() {
+        return categories;
+    }
+
+    /**
+     * Decodes the product at the given position in insertion order.
+     */
+    public Product getProduct(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException(
+                    "Position " + position + ", size " + size);
+        }
+        return readProduct(
+                at(buffer.getInt(orderIndexOffset + position * 4)));
+    }
+
+    /**
+     * Decodes the product with the given id, found by a binary search of the
+     * id index, or returns {@code null} if there is none.
+     */
+    public Product findProduct(int id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = buffer.getInt(idIndexOffset + mid * 8);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return readProduct(
+                        at(buffer.getInt(idIndexOffset + mid * 8 + 4)));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes every product in insertion order. The records are contiguous,
+     * so this reads the mapping sequentially.
+     */
+    @Override
+    public void forEachProduct(Consumer<? super Product> action) {
+        ByteBuffer in = at(recordsOffset);
+        for (int i = 0; i < size; i++) {
+            action.accept(readProduct(in));
+        }
+    }
+
+    private ByteBuffer at(int offset) {
+        ByteBuffer in = buffer.duplicate();
+        in.position(offset);
+        return in;
+    }
+
+    private Product readProduct(ByteBuffer in) {
+        Product p = new Product();
+        p.setId(in.getInt());
+        p.setStockCount(in.getInt());
+        long unscaledPrice = in.getLong();
+        byte scale = in.get();
+        p.setPrice(scale == NULL_SCALE ? null
+                : BigDecimal.valueOf(unscaledPrice, scale));
+        byte availability = in.get();
+        p.setAvailability(availability == NULL_AVAILABILITY ? null
+                : AVAILABILITIES[availability]);
+        int categoryCount = in.getShort();
+        if (categoryCount >= 0) {
+            Category[] category = new Category[categoryCount];
+            for (int i = 0; i < categoryCount; i++) {
+                category[i] = categoriesById.get(in.getInt());
+            }
+            p.setCategory(CategorySet.of(category));
+        }
+        p.setProductName(readString(in));
+        return p;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,203 @@
+package io.rty.incub.backend.persist;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.store.IntHashSet;
+
+/**
+ * Writes a {@link ProductSnapshot} file, one product at a time.
+ * <p>
+ * The snapshot is written to a temporary file next to the target, which
+ * {@link #commit()} moves over the target in one step. Readers of the target
+ * never see a partial snapshot, and closing a writer without committing it
+ * leaves the target as it was.
+ *
+ * <pre>
+ * try (ProductSnapshotWriter writer = new ProductSnapshotWriter(file, categories)) {
+ *     for (Product p : products) {
+ *         writer.write(p);
+ *     }
+ *     writer.commit();
+ * }
+ * </pre>
+ */
+public class ProductSnapshotWriter implements Closeable {
+
+    private final Path file;
+    private final Path temporaryFile;
+    private final DataOutputStream out;
+    private final IntHashSet categoryIds = new IntHashSet(16);
+    private final int categoryCount;
+    private final int recordsOffset;
+    private int[] offsets = new int[1024];
+    private int[] ids = new int[1024];
+    private int size;
+    private boolean committed;
+
+    public ProductSnapshotWriter(Path file, List<Category> categories)
+            throws IOException {
+        this.file = file.toAbsolutePath();
+        categoryCount = categories.size();
+        temporaryFile = Files.createTempFile(this.file.getParent(),
+                this.file.getFileName().toString(), ".tmp");
+        out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporaryFile), 1 << 16));
+        try {
+            // room for the header, written once the counts are known
+            out.write(new byte[ProductSnapshot.HEADER_SIZE]);
+            for (Category category : categories) {
+                out.writeInt(category.getId());
+                writeString(category.getName());
+                categoryIds.add(category.getId());
+            }
+            recordsOffset = out.size();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a product to the snapshot.
+     *
+     * @throws IllegalArgumentException
+     *             if the product refers to a category the snapshot does not
+     *             hold, or its price does not fit in a long once unscaled
+     */
+    public void write(Product p) throws IOException {
+        if (out.size() == Integer.MAX_VALUE) {
+            throw new IOException("Product snapshot exceeds 2 GB");
+        }
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        offsets[size] = out.size();
+        ids[size] = p.getId();
+        size++;
+
+        out.writeInt(p.getId());
+        out.writeInt(p.getStockCount());
+        BigDecimal price = p.getPrice();
+        if (price == null) {
+            out.writeLong(0);
+            out.writeByte(ProductSnapshot.NULL_SCALE);
+        } else {
+            if (price.scale() <= ProductSnapshot.NULL_SCALE
+                    || price.scale() > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException(
+                        "Unsupported price scale " + price.scale());
+            }
+            if (price.unscaledValue().bitLength() > 63) {
+                throw new IllegalArgumentException(
+                        "Price out of range: " + price);
+            }
+            out.writeLong(price.unscaledValue().longValue());
+            out.writeByte(price.scale());
+        }
+        out.writeByte(p.getAvailability() == null
+                ? ProductSnapshot.NULL_AVAILABILITY
+                : p.getAvailability().ordinal());
+        Set<Category> category = p.getCategory();
+        if (category == null) {
+            out.writeShort(-1);
+        } else {
+            out.writeShort(category.size());
+            for (Category c : category) {
+                if (!categoryIds.contains(c.getId())) {
+                    throw new IllegalArgumentException("Product " + p.getId()
+                            + " refers to unknown category " + c.getId());
+                }
+                out.writeInt(c.getId());
+            }
+        }
+        writeString(p.getProductName());
+    }
+
+    /**
+     * Writes the indexes and the header, and moves the snapshot over the
+     * target file.
+     */
+    public void commit() throws IOException {
+        int orderIndexOffset = out.size();
+        for (int i = 0; i < size; i++) {
+            out.writeInt(offsets[i]);
+        }
+        int idIndexOffset = out.size();
+        long[] byId = new long[size];
+        for (int i = 0; i < size; i++) {
+            byId[i] = ((long) ids[i] << 32) | (offsets[i] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(byId);
+        for (long entry : byId) {
+            out.writeLong(entry);
+        }
+        if (out.size() == Integer.MAX_VALUE) {
+            throw new IOException("Product snapshot exceeds 2 GB");
+        }
+        out.close();
+
+        ByteBuffer header = ByteBuffer.allocate(ProductSnapshot.HEADER_SIZE);
+        header.putInt(ProductSnapshot.MAGIC).putInt(ProductSnapshot.VERSION)
+                .putInt(categoryCount).putInt(size).putInt(recordsOffset)
+                .putInt(orderIndexOffset).putInt(idIndexOffset);
+        header.rewind();
+        try (FileChannel channel = FileChannel.open(temporaryFile,
+                StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(false);
+        }
+        try {
+            Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryFile, file,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        committed = true;
+    }
+
+    /**
+     * Closes the writer, discarding the snapshot unless it was committed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (committed) {
+            return;
+        }
+        try {
+            out.close();
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,285 @@
+package io.rty.incub.backend.persist;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.ListenerRegistration;
+import io.rty.incub.backend.ProductChangeListener;
+import io.rty.incub.backend.ProductQuery;
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.store.InMemoryDataService;
+import io.rty.incub.backend.store.ProductSource;
+
+/**
+ * Product data persisted in a {@link ProductSnapshot} file.
+ * <p>
+ * Opening the service maps the snapshot and loads it into an
+ * {@link InMemoryDataService} in the background. Until the load completes, id
+ * lookups, the product count and unfiltered, unsorted pages, which is all a
+ * grid asks for when it is first shown, are decoded straight from the
+ * mapping. Every other call waits for the load. Versions are not persisted:
+ * products decoded from the mapping have version 0, and the load gives them
+ * new ones.
+ * <p>
+ * Writes go to the in-memory service, and the whole snapshot is rewritten in
+ * the background {@value #SAVE_DELAY_MILLIS} ms after the first of a burst of
+ * writes. Call {@link #close()} on shutdown to save the last writes. Change
+ * listeners are registered with the in-memory service once it is loaded,
+ * which is before anything can change.
+ */
+public class SnapshotDataService extends DataService implements Closeable {
+
+    private static final Logger LOGGER = Logger
+            .getLogger(SnapshotDataService.class.getName());
+
+    private static final long SAVE_DELAY_MILLIS = 2000;
+
+    private final Path file;
+    private final List<Category> categories;
+    private final transient ScheduledExecutorService executor;
+    private final transient CompletableFuture<InMemoryDataService> loaded;
+    private final AtomicBoolean savePending = new AtomicBoolean();
+
+    /**
+     * The mapped snapshot, until the in-memory service is loaded. It is
+     * cleared before the load completes, so no reader sees it once a write
+     * may have happened.
+     */
+    private transient volatile ProductSnapshot snapshot;
+
+    /**
+     * Opens the service on an existing snapshot file.
+     *
+     * @throws IOException
+     *             if the file cannot be read or is not a product snapshot
+     */
+    public SnapshotDataService(Path file) throws IOException {
+        this.file = file;
+        ProductSnapshot mapped = ProductSnapshot.map(file);
+        snapshot = mapped;
+        categories = mapped.getCategories();
+        ScheduledThreadPoolExecutor snapshotExecutor = new ScheduledThreadPoolExecutor(
+                1, r -> {
+                    Thread thread = new Thread(r, "product-snapshot");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // close() saves by itself rather than waiting for a pending save
+        snapshotExecutor
+                .setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor = snapshotExecutor;
+        loaded = CompletableFuture.supplyAsync(() -> load(mapped), executor);
+    }
+
+    private InMemoryDataService load(ProductSnapshot mapped) {
+        InMemoryDataService service = new InMemoryDataService(categories,
+                mapped.size(), mapped);
+        snapshot = null;
+        return service;
+    }
+
+    /**
+     * Returns the in-memory service, waiting for it to be loaded.
+     */
+    private InMemoryDataService loaded() {
+        return loaded.join();
+    }
+
+    @Override
+    public List<Product> getAllProducts() {
+        return loaded().getAllProducts();
+    }
+
+    @Override
+    public List<Category> getAllCategories() {
+        return categories;
+    }
+
+    @Override
+    public Product getProductById(int productId) {
+        ProductSnapshot mapped = snapshot;
+        if (mapped != null) {
+            return mapped.findProduct(productId);
+        }
+        return loaded().getProductById(productId);
+    }
+
+    @Override
+    public List<Product> fetchProducts(ProductQuery query) {
+        ProductSnapshot mapped = snapshot;
+        if (mapped != null && !query.isFiltered() && !query.isSorted()) {
+            int end = (int) Math.min(mapped.size(),
+                    (long) query.getOffset() + query.getLimit());
+            List<Product> page = new ArrayList<>(
+                    Math.max(0, end - query.getOffset()));
+            for (int i = query.getOffset(); i < end; i++) {
+                page.add(mapped.getProduct(i));
+            }
+            return page;
+        }
+        return loaded().fetchProducts(query);
+    }
+
+    @Override
+    public void forEachProduct(ProductQuery query,
+            Consumer<? super Product> action) {
+        loaded().forEachProduct(query, action);
+    }
+
+    @Override
+    public int countProducts(String filter) {
+        ProductSnapshot mapped = snapshot;
+        if (mapped != null
+                && ProductQuery.normalizeFilter(filter).isEmpty()) {
+            return mapped.size();
+        }
+        return loaded().countProducts(filter);
+    }
+
+    @Override
+    public void updateProduct(Product p) {
+        loaded().updateProduct(p);
+        scheduleSave();
+    }
+
+    @Override
+    public void deleteProduct(int productId) {
+        loaded().deleteProduct(productId);
+        scheduleSave();
+    }
+
+    @Override
+    public int updateProducts(Predicate<? super Product> where,
+            Consumer<? super Product> mutation) {
+        int count = loaded().updateProducts(where, mutation);
+        if (count > 0) {
+            scheduleSave();
+        }
+        return count;
+    }
+
+    @Override
+    public int updateProductsById(Collection<Integer> productIds,
+            Consumer<? super Product> mutation) {
+        int count = loaded().updateProductsById(productIds, mutation);
+        if (count > 0) {
+            scheduleSave();
+        }
+        return count;
+    }
+
+    @Override
+    public int deleteProducts(Collection<Integer> productIds) {
+        int count = loaded().deleteProducts(productIds);
+        if (count > 0) {
+            scheduleSave();
+        }
+        return count;
+    }
+
+    @Override
+    public void upsertProducts(Collection<? extends Product> products) {
+        loaded().upsertProducts(products);
+        scheduleSave();
+    }
+
+    /**
+     * Returns the estimate of the in-memory service, or -1 until it is
+     * loaded.
+     */
+    @Override
+    public long getEstimatedBytes() {
+        if (!loaded.isDone() || loaded.isCompletedExceptionally()) {
+            return -1;
+        }
+        return loaded().getEstimatedBytes();
+    }
+
+    @Override
+    public ListenerRegistration addProductChangeListener(
+            ProductChangeListener listener) {
+        if (loaded.isDone()) {
+            return loaded().addProductChangeListener(listener);
+        }
+        CompletableFuture<ListenerRegistration> registration = loaded
+                .thenApply(s -> s.addProductChangeListener(listener));
+        return () -> registration.thenAccept(ListenerRegistration::remove);
+    }
+
+    private void scheduleSave() {
+        if (savePending.compareAndSet(false, true)) {
+            try {
+                executor.schedule(this::saveInBackground, SAVE_DELAY_MILLIS,
+                        TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // closed, the writes wait for an explicit save()
+            }
+        }
+    }
+
+    private void saveInBackground() {
+        try {
+            save();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Failed to save products to " + file, e);
+            // try again later
+            scheduleSave();
+        }
+    }
+
+    /**
+     * Rewrites the snapshot file with the current products. Writes made
+     * while saving are saved by the next save.
+     */
+    public synchronized void save() throws IOException {
+        savePending.set(false);
+        ProductSource products = loaded().copyProducts();
+        try (ProductSnapshotWriter writer = new ProductSnapshotWriter(file,
+                categories)) {
+            products.forEachProduct(p -> {
+                try {
+                    writer.write(p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.commit();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Stops the background thread, after letting a load or save in progress
+     * complete, and saves the writes not saved yet.
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (savePending.get()) {
+            save();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.rty.incub.backend.store;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Map from {@code int} keys to non-negative {@code int} values for keys that
+ * are mostly dense, such as ids handed out in sequence.
+ * <p>
+ * While the keys are non-negative and the largest one stays within a few
+ * times the number of mappings, values are kept in an array indexed by key,
+ * at 4 bytes per key instead of the 13 to 27 bytes per mapping of an
+ * {@link IntIntHashMap}. The map switches to an {@link IntIntHashMap} for
+ * good as soon as a key would make the array too sparse.
+ * <p>
+ * Like {@link IntIntHashMap}, {@link #get(int)} may return a wrong answer or
+ * throw when racing with a writer, but always terminates.
+ */
+public class AdaptiveIntIntMap implements Serializable {
+
+    /** Value returned by {@link #get(int)} when the key is not mapped. */
+    public static final int NO_VALUE = IntIntHashMap.NO_VALUE;
+
+    private static final int MIN_SPARSE_LENGTH = 1024;
+
+    /** Values indexed by key, {@code null} once the map went sparse. */
+    private int[] dense;
+    private IntIntHashMap sparse;
+    private int size;
+
+    public AdaptiveIntIntMap() {
+        this(16);
+    }
+
+    public AdaptiveIntIntMap(int expectedSize) {
+        dense = new int[Math.max(expectedSize + 1, 16)];
+        Arrays.fill(dense, NO_VALUE);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != NO_VALUE;
+    }
+
+    /**
+     * Returns the value mapped to {@code key}, or {@link #NO_VALUE}.
+     */
+    public int get(int key) {
+        IntIntHashMap sparse = this.sparse;
+        if (sparse != null) {
+            return sparse.get(key);
+        }
+        int[] dense = this.dense;
+        return key >= 0 && key < dense.length ? dense[key] : NO_VALUE;
+    }
+
+    /**
+     * Maps {@code key} to {@code value} and returns the previous value, or
+     * {@link #NO_VALUE}.
+     */
+    public int put(int key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value " + value);
+        }
+        if (sparse == null && key >= dense.length && key >= 0) {
+            long length = Math.max(key + 1L, dense.length * 3L / 2);
+            if (length <= Math.max(4L * (size + 1), MIN_SPARSE_LENGTH)) {
+                int previousLength = dense.length;
+                dense = Arrays.copyOf(dense, (int) length);
+                Arrays.fill(dense, previousLength, dense.length, NO_VALUE);
+            } else {
+                goSparse();
+            }
+        } else if (sparse == null && key < 0) {
+            goSparse();
+        }
+        if (sparse != null) {
+            int previous = sparse.put(key, value);
+            if (previous == NO_VALUE) {
+                size++;
+            }
+            return previous;
+        }
+        int previous = dense[key];
+        dense[key] = value;
+        if (previous == NO_VALUE) {
+            size++;
+        }
+        return previous;
+    }
+
+    /**
+     * Removes the mapping of {@code key} and returns its value, or
+     * {@link #NO_VALUE}.
+     */
+    public int remove(int key) {
+        int previous;
+        if (sparse != null) {
+            previous = sparse.remove(key);
+        } else if (key >= 0 && key < dense.length) {
+            previous = dense[key];
+            dense[key] = NO_VALUE;
+        } else {
+            previous = NO_VALUE;
+        }
+        if (previous != NO_VALUE) {
+            size--;
+        }
+        return previous;
+    }
+
+    /**
+     * Returns the size in bytes of the arrays backing this map.
+     */
+    public long estimatedBytes() {
+        return sparse != null ? sparse.estimatedBytes()
+                : (long) dense.length * Integer.BYTES;
+    }
+
+    private void goSparse() {
+        IntIntHashMap map = new IntIntHashMap(Math.max(size, 16));
+        for (int key = 0; key < dense.length; key++) {
+            if (dense[key] != NO_VALUE) {
+                map.put(key, dense[key]);
+            }
+        }
+        // readers check the sparse map first
+        sparse = map;
+        dense = null;
+    }
+}
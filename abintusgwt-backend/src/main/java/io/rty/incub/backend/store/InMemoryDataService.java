@@ -0,0 +1,672 @@
+package io.rty.incub.backend.store;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.ListenerRegistration;
+import io.rty.incub.backend.ProductChangeBroadcaster;
+import io.rty.incub.backend.ProductChangeListener;
+import io.rty.incub.backend.ProductConflictException;
+import io.rty.incub.backend.ProductQuery;
+import io.rty.incub.backend.ProductSortOrder;
+import io.rty.incub.backend.ProductSortOrder.Property;
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.metrics.MetricRegistry;
+import io.rty.incub.backend.metrics.Timer;
+
+/**
+ * Product data kept in memory, in a {@link ProductStore} and a
+ * {@link ProductTextIndex}. Modifications are published to product
+ * change listeners, coalesced over short bursts.
+ * <p>
+ * The store keeps fields rather than product objects, so every product handed
+ * out is a fresh copy. Changes to it are only seen by others once it is passed
+ * to {@link #updateProduct(Product)}, which sets the new
+ * {@link Product#getVersion() version} of the product on it.
+ * <p>
+ * Writes are serialized by a {@link StampedLock}. Id lookups read
+ * optimistically and only take the read lock if a write got in their way;
+ * queries share the read lock, so readers only ever wait for a write in
+ * progress, never for each other. Updates compare the version of the product
+ * with the stored one, optimistically first, so that a stale update fails
+ * without waiting for the write lock.
+ * <p>
+ * The bulk operations check every product before changing any, write them
+ * all under a single hold of the write lock and publish a single change.
+ * {@link #updateProducts(Predicate, Consumer)} runs the predicate and the
+ * mutation under the read lock, and only runs them again under the write
+ * lock if another write got in between.
+ * <p>
+ * Waits for the lock are timed with a {@value #LOCK_WAIT_TIMER_NAME} timer
+ * labelled with the lock mode. Only waits are timed: a lock taken at once
+ * costs no clock read.
+ */
+public class InMemoryDataService extends DataService {
+
+    /** The name of the timers of lock waits. */
+    public static final String LOCK_WAIT_TIMER_NAME = "abintusgwt_data_service_lock_wait_seconds";
+    private static final String LOCK_WAIT_TIMER_HELP = "Time spent waiting for the lock of in-memory data services.";
+    private static final Timer READ_LOCK_WAITS = MetricRegistry.get()
+            .timer(LOCK_WAIT_TIMER_NAME, LOCK_WAIT_TIMER_HELP, "mode", "read");
+    private static final Timer WRITE_LOCK_WAITS = MetricRegistry.get().timer(
+            LOCK_WAIT_TIMER_NAME, LOCK_WAIT_TIMER_HELP, "mode", "write");
+
+    private static final long CHANGE_COALESCE_MILLIS = 100;
+    /**
+     * Sorted queries matching fewer than one product in this many sort the
+     * matching ids rather than walk a sort index.
+     */
+    private static final int FEW_MATCHES_DIVISOR = 1024;
+    /** Products materialized under one hold of the read lock. */
+    private static final int FOR_EACH_CHUNK_SIZE = 1000;
+
+    private final transient ProductChangeBroadcaster changes = new ProductChangeBroadcaster(CHANGE_COALESCE_MILLIS);
+    private final StampedLock lock = new StampedLock();
+    private final ProductStore products;
+    private final ProductTextIndex textIndex;
+    private final List<Category> categories;
+    private int nextProductId = 0;
+
+    /** Incremented by every write, to tell whether a snapshot is current. */
+    private volatile long modificationCount;
+    /**
+     * The last materialized snapshot, softly referenced: it is worth keeping
+     * for repeated calls, but not at the price of running out of memory.
+     */
+    private volatile SoftReference<Snapshot> snapshot = new SoftReference<>(
+            null);
+
+    private static final class Snapshot {
+        private final long modificationCount;
+        private final List<Product> products;
+
+        private Snapshot(long modificationCount, List<Product> products) {
+            this.modificationCount = modificationCount;
+            this.products = products;
+        }
+    }
+
+    /**
+     * Creates a service holding the categories and the products of the
+     * source, in the order the source hands them out. New products are
+     * numbered after the highest id found.
+     *
+     * @param expectedSize
+     *            the number of products the source is expected to hold, used
+     *            to size the store
+     */
+    public InMemoryDataService(List<Category> categories, int expectedSize,
+            ProductSource source) {
+        this.categories = Collections
+                .unmodifiableList(new ArrayList<>(categories));
+        products = new ProductStore(expectedSize);
+        textIndex = new ProductTextIndex();
+        source.forEachProduct(p -> {
+            products.put(p);
+            textIndex.put(p);
+            nextProductId = Math.max(nextProductId, p.getId() + 1);
+        });
+        products.trimToSize();
+    }
+
+    /**
+     * Creates a service holding the given data, with new products numbered
+     * after the highest given id.
+     */
+    public InMemoryDataService(List<Category> categories,
+            Collection<Product> initial) {
+        this(categories, initial.size(), initial::forEach);
+    }
+
+    /**
+     * Returns an immutable snapshot of the products in insertion order. The
+     * snapshot is shared by all callers until the next write, unless memory
+     * runs short. It materializes every product, so it is meant for exports
+     * and tests rather than for serving pages.
+     */
+    @Override
+    public List<Product> getAllProducts() {
+        Snapshot current = snapshot.get();
+        if (current != null
+                && current.modificationCount == modificationCount) {
+            return current.products;
+        }
+        long stamp = readLock();
+        try {
+            current = new Snapshot(modificationCount, Collections
+                    .unmodifiableList(new ArrayList<>(products.values())));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        snapshot = new SoftReference<>(current);
+        return current.products;
+    }
+
+    /**
+     * Returns a copy of the products that can be read without holding any
+     * lock, while this service goes on taking writes. The copy takes far
+     * less memory than {@link #getAllProducts()}, as products are only
+     * materialized as they are read from it.
+     */
+    public ProductSource copyProducts() {
+        long stamp = readLock();
+        try {
+            return products.copyValues();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public List<Category> getAllCategories() {
+        return categories;
+    }
+
+    @Override
+    public void updateProduct(Product p) {
+        boolean newProduct = p.getId() < 0;
+        boolean versioned = !newProduct && p.getVersion() != 0;
+        if (versioned) {
+            failFastOnConflict(p);
+        }
+        long stamp = writeLock();
+        try {
+            if (newProduct) {
+                p.setId(nextProductId++);
+            } else {
+                int current = products.getVersion(p.getId());
+                if (versioned && current != p.getVersion()) {
+                    throw new ProductConflictException(p.getId(),
+                            p.getVersion(), current);
+                }
+                if (current == 0) {
+                    throw new IllegalArgumentException(
+                            "No product with id " + p.getId() + " found");
+                }
+            }
+            products.put(p);
+            textIndex.put(p);
+            modificationCount++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (newProduct) {
+            changes.productCreated(p.getId());
+        } else {
+            changes.productUpdated(p.getId());
+        }
+    }
+
+    /**
+     * Throws if the stored product is known to be at another version than
+     * the given one, without taking the lock. A write in progress makes the
+     * check inconclusive, and leaves it to the check under the write lock.
+     */
+    private void failFastOnConflict(Product p) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp == 0) {
+            return;
+        }
+        int current;
+        try {
+            current = products.getVersion(p.getId());
+        } catch (RuntimeException e) {
+            return;
+        }
+        if (lock.validate(stamp) && current != p.getVersion()) {
+            throw new ProductConflictException(p.getId(), p.getVersion(),
+                    current);
+        }
+    }
+
+    @Override
+    public Product getProductById(int productId) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                Product p = products.get(productId);
+                if (lock.validate(stamp)) {
+                    return p;
+                }
+            } catch (RuntimeException e) {
+                // a write changed the store under our feet, read again below
+            }
+        }
+        stamp = readLock();
+        try {
+            return products.get(productId);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns a page of products, materializing only the products of the
+     * page. Unfiltered pages sorted by a single property are read from the
+     * sort index of the property in O(log n + page size); the first such
+     * query builds the index, under the write lock.
+     */
+    @Override
+    public List<Product> fetchProducts(ProductQuery query) {
+        if (query.isSorted()) {
+            buildSortIndex(query.getSortOrders().get(0).getProperty());
+        }
+        long stamp = readLock();
+        try {
+            return idsFrom(query, query.getOffset()).limit(query.getLimit())
+                    .mapToObj(products::get).collect(Collectors.toList());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Walks the ids of the query once, materializing a chunk of products
+     * under the read lock and handing it to the action with the lock
+     * released. Only a write between two chunks makes the walk seek its
+     * position again, which is O(log n) for the unfiltered queries sorted by
+     * a single property and O(position) otherwise.
+     */
+    @Override
+    public void forEachProduct(ProductQuery query,
+            Consumer<? super Product> action) {
+        List<Product> chunk = new ArrayList<>(FOR_EACH_CHUNK_SIZE);
+        PrimitiveIterator.OfInt ids = null;
+        long seen = 0;
+        long position = query.getOffset();
+        long remaining = query.getLimit();
+        while (remaining > 0) {
+            if (query.isSorted()) {
+                buildSortIndex(query.getSortOrders().get(0).getProperty());
+            }
+            long stamp = readLock();
+            try {
+                if (ids == null || modificationCount != seen) {
+                    // the ids stream must not outlive a write
+                    ids = idsFrom(query,
+                            (int) Math.min(position, Integer.MAX_VALUE))
+                                    .iterator();
+                    seen = modificationCount;
+                }
+                while (chunk.size() < Math.min(FOR_EACH_CHUNK_SIZE, remaining)
+                        && ids.hasNext()) {
+                    chunk.add(products.get(ids.nextInt()));
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            if (chunk.isEmpty()) {
+                return;
+            }
+            chunk.forEach(action);
+            position += chunk.size();
+            remaining -= chunk.size();
+            chunk.clear();
+        }
+    }
+
+    /**
+     * Streams the ids of the products matching the query from the given
+     * position on, ignoring the offset and the limit of the query. Called
+     * under the read lock, with the sort index of a sorted query built.
+     * Without a filter, the store seeks the position directly, so a page
+     * of all products costs the same wherever it starts.
+     */
+    private IntStream idsFrom(ProductQuery query, int position) {
+        if (query.isSorted()) {
+            return sortedIds(new ProductQuery(position, Integer.MAX_VALUE,
+                    query.getSortOrders(), query.getFilter()));
+        }
+        if (query.getFilter().isEmpty()) {
+            return products.ids(position);
+        }
+        return matchingIds(query.getFilter()).skip(position);
+    }
+
+    private void buildSortIndex(Property property) {
+        // a stale answer only costs taking the write lock for nothing
+        if (!products.hasSortIndex(property)) {
+            long stamp = writeLock();
+            try {
+                products.sortedIds(ProductSortOrder.asc(property), 0);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Streams the ids of the products matching a sorted query from its
+     * offset on. Queries sorted by a single property walk its sort index,
+     * skipping the products that do not match the filter, unless so few
+     * products match that sorting them is cheaper. Secondary sort orders
+     * sort the matching ids by the store columns.
+     */
+    private IntStream sortedIds(ProductQuery query) {
+        List<ProductSortOrder> orders = query.getSortOrders();
+        String filter = query.getFilter();
+        if (orders.size() == 1 && filter.isEmpty()) {
+            return products.sortedIds(orders.get(0), query.getOffset());
+        }
+        if (!filter.isEmpty()) {
+            ProductTextIndex.Match match = textIndex.match(filter);
+            if (match.isEmpty()) {
+                return IntStream.empty();
+            }
+            if (orders.size() == 1 && match.getPostingCount() > products
+                    .size() / FEW_MATCHES_DIVISOR) {
+                BitSet matching = textIndex.matchingIdSet(match);
+                return products.sortedIds(orders.get(0), 0)
+                        .filter(matching::get).skip(query.getOffset());
+            }
+        }
+        int[] ids = matchingIds(filter).toArray();
+        products.sort(ids, orders);
+        return Arrays.stream(ids).skip(query.getOffset());
+    }
+
+    @Override
+    public int countProducts(String filter) {
+        String normalized = ProductQuery.normalizeFilter(filter);
+        long stamp;
+        if (normalized.isEmpty()) {
+            stamp = lock.tryOptimisticRead();
+            int size = products.size();
+            if (stamp != 0 && lock.validate(stamp)) {
+                return size;
+            }
+        }
+        stamp = readLock();
+        try {
+            if (normalized.isEmpty()) {
+                return products.size();
+            }
+            ProductTextIndex.Match match = textIndex.match(normalized);
+            return match.isEmpty() ? 0 : textIndex.count(match);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Streams the ids of the products matching the normalized filter in
+     * insertion order. Selective filters go through the posting sets of the
+     * text index, broad ones test each id against the matching terms instead
+     * of building a large id set.
+     */
+    private IntStream matchingIds(String filter) {
+        if (filter.isEmpty()) {
+            return products.ids();
+        }
+        ProductTextIndex.Match match = textIndex.match(filter);
+        if (match.isEmpty()) {
+            return IntStream.empty();
+        }
+        if (match.getPostingCount() < products.size() / 8) {
+            // ids are handed out in ascending order, so this is also the
+            // insertion order
+            return Arrays.stream(textIndex.matchingIds(match));
+        }
+        return products.ids().filter(id -> textIndex.matches(id, match));
+    }
+
+    @Override
+    public void deleteProduct(int productId) {
+        long stamp = writeLock();
+        try {
+            if (!products.remove(productId)) {
+                throw new IllegalArgumentException("Product with id "
+                        + productId + " not found");
+            }
+            textIndex.remove(productId);
+            modificationCount++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        changes.productDeleted(productId);
+    }
+
+    @Override
+    public int updateProducts(Predicate<? super Product> where,
+            Consumer<? super Product> mutation) {
+        long seen;
+        List<Product> updated;
+        long stamp = readLock();
+        try {
+            seen = modificationCount;
+            updated = matchAndMutate(where, mutation);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        int[] ids;
+        stamp = writeLock();
+        try {
+            if (modificationCount != seen) {
+                updated = matchAndMutate(where, mutation);
+            }
+            if (updated.isEmpty()) {
+                return 0;
+            }
+            products.putAll(updated);
+            ids = new int[updated.size()];
+            for (int i = 0; i < ids.length; i++) {
+                Product p = updated.get(i);
+                textIndex.put(p);
+                ids[i] = p.getId();
+            }
+            modificationCount++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        changes.productsUpdated(ids);
+        return ids.length;
+    }
+
+    /**
+     * Returns mutated copies of the products matching the predicate, checked
+     * to be storable. Called under a lock.
+     */
+    private List<Product> matchAndMutate(Predicate<? super Product> where,
+            Consumer<? super Product> mutation) {
+        List<Product> matching = new ArrayList<>();
+        for (Product p : products.values()) {
+            if (where.test(p)) {
+                int id = p.getId();
+                mutation.accept(p);
+                if (p.getId() != id) {
+                    throw new IllegalArgumentException(
+                            "The mutation changed the id of product " + id);
+                }
+                ProductStore.checkStorable(p);
+                matching.add(p);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Updates the products with the given ids, or none of them if any
+     * cannot be stored. The mutation runs under the write lock, on products
+     * looked up by id.
+     */
+    @Override
+    public int updateProductsById(Collection<Integer> productIds,
+            Consumer<? super Product> mutation) {
+        int[] ids;
+        long stamp = writeLock();
+        try {
+            List<Product> updated = new ArrayList<>(productIds.size());
+            for (int productId : new LinkedHashSet<>(productIds)) {
+                Product p = products.get(productId);
+                if (p != null) {
+                    mutation.accept(p);
+                    if (p.getId() != productId) {
+                        throw new IllegalArgumentException(
+                                "The mutation changed the id of product "
+                                        + productId);
+                    }
+                    ProductStore.checkStorable(p);
+                    updated.add(p);
+                }
+            }
+            if (updated.isEmpty()) {
+                return 0;
+            }
+            products.putAll(updated);
+            ids = new int[updated.size()];
+            for (int i = 0; i < ids.length; i++) {
+                Product p = updated.get(i);
+                textIndex.put(p);
+                ids[i] = p.getId();
+            }
+            modificationCount++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        changes.productsUpdated(ids);
+        return ids.length;
+    }
+
+    @Override
+    public int deleteProducts(Collection<Integer> productIds) {
+        int[] deleted;
+        long stamp = writeLock();
+        try {
+            deleted = products.removeAll(productIds);
+            for (int productId : deleted) {
+                textIndex.remove(productId);
+            }
+            if (deleted.length > 0) {
+                modificationCount++;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        changes.productsDeleted(deleted);
+        return deleted.length;
+    }
+
+    /**
+     * Stores all the products, or none of them if any is stale or cannot be
+     * stored.
+     */
+    @Override
+    public void upsertProducts(Collection<? extends Product> batch) {
+        int[] created = new int[batch.size()];
+        int[] updated = new int[batch.size()];
+        int createdCount = 0;
+        int updatedCount = 0;
+        long stamp = writeLock();
+        try {
+            for (Product p : batch) {
+                if (p.getId() >= 0) {
+                    int current = products.getVersion(p.getId());
+                    if (p.getVersion() != 0 && current != p.getVersion()) {
+                        throw new ProductConflictException(p.getId(),
+                                p.getVersion(), current);
+                    }
+                    if (current == 0) {
+                        throw new IllegalArgumentException(
+                                "No product with id " + p.getId() + " found");
+                    }
+                }
+                ProductStore.checkStorable(p);
+            }
+            for (Product p : batch) {
+                if (p.getId() < 0) {
+                    p.setId(nextProductId++);
+                    created[createdCount++] = p.getId();
+                } else {
+                    updated[updatedCount++] = p.getId();
+                }
+            }
+            products.putAll(batch);
+            for (Product p : batch) {
+                textIndex.put(p);
+            }
+            if (!batch.isEmpty()) {
+                modificationCount++;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        changes.productsCreated(Arrays.copyOf(created, createdCount));
+        changes.productsUpdated(Arrays.copyOf(updated, updatedCount));
+    }
+
+    @Override
+    public ListenerRegistration addProductChangeListener(
+            ProductChangeListener listener) {
+        return changes.addListener(listener);
+    }
+
+    /**
+     * Returns the size in bytes of the product store, not counting the text
+     * index.
+     */
+    @Override
+    public long getEstimatedBytes() {
+        long stamp = readLock();
+        try {
+            return products.estimatedBytes();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the timer of the waits for the read lock, shared by all
+     * in-memory services.
+     */
+    public static Timer getReadLockWaits() {
+        return READ_LOCK_WAITS;
+    }
+
+    /**
+     * Returns the timer of the waits for the write lock, shared by all
+     * in-memory services.
+     */
+    public static Timer getWriteLockWaits() {
+        return WRITE_LOCK_WAITS;
+    }
+
+    /**
+     * Takes the read lock, timing the wait if a write holds it.
+     */
+    private long readLock() {
+        long stamp = lock.tryReadLock();
+        if (stamp == 0) {
+            long start = READ_LOCK_WAITS.start();
+            stamp = lock.readLock();
+            READ_LOCK_WAITS.recordSince(start);
+        }
+        return stamp;
+    }
+
+    /**
+     * Takes the write lock, timing the wait if it is held.
+     */
+    private long writeLock() {
+        long stamp = lock.tryWriteLock();
+        if (stamp == 0) {
+            long start = WRITE_LOCK_WAITS.start();
+            stamp = lock.writeLock();
+            WRITE_LOCK_WAITS.recordSince(start);
+        }
+        return stamp;
+    }
+}
@@ -0,0 +1,174 @@
+package io.rty.incub.backend.store;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from {@code int} keys to non-negative {@code int}
+ * values. Keys and values are kept in plain arrays so that lookups neither box
+ * nor allocate.
+ */
+public class IntIntHashMap implements Serializable {
+
+    /** Value returned by {@link #get(int)} when the key is not mapped. */
+    public static final int NO_VALUE = -1;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int resizeThreshold;
+
+    public IntIntHashMap() {
+        this(16);
+    }
+
+    public IntIntHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the size in bytes of the arrays backing this map.
+     */
+    public long estimatedBytes() {
+        return (keys.length + (long) values.length) * Integer.BYTES;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != NO_VALUE;
+    }
+
+    /**
+     * Returns the value mapped to {@code key}, or {@link #NO_VALUE}.
+     * <p>
+     * The probe sequence is bounded by the table size, so that optimistic
+     * readers racing with a writer always terminate (possibly with a wrong
+     * answer or an exception, which they detect by validating afterwards).
+     */
+    public int get(int key) {
+        final int[] keys = this.keys;
+        final int[] values = this.values;
+        final int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        for (int probes = 0; probes < keys.length
+                && values[i] != NO_VALUE; probes++) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Maps {@code key} to {@code value} and returns the previous value, or
+     * {@link #NO_VALUE}.
+     */
+    public int put(int key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value " + value);
+        }
+        final int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (values[i] != NO_VALUE) {
+            if (keys[i] == key) {
+                int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Removes the mapping of {@code key} and returns its value, or
+     * {@link #NO_VALUE}.
+     */
+    public int remove(int key) {
+        final int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (values[i] != NO_VALUE) {
+            if (keys[i] == key) {
+                int previous = values[i];
+                shiftBack(i);
+                size--;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    public void clear() {
+        Arrays.fill(values, NO_VALUE);
+        size = 0;
+    }
+
+    /**
+     * Backward shift deletion: pull later entries of the probe chain into the
+     * freed slot so that no tombstones are needed.
+     */
+    private void shiftBack(int hole) {
+        final int mask = keys.length - 1;
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            if (values[i] == NO_VALUE) {
+                break;
+            }
+            int home = mix(keys[i]) & mask;
+            // move the entry if its home slot is not in (hole, i]
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        values[hole] = NO_VALUE;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        final int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] != NO_VALUE) {
+                int i = mix(oldKeys[j]) & mask;
+                while (values[i] != NO_VALUE) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, NO_VALUE);
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int wanted = (int) Math.ceil(Math.max(expectedSize, 4) / LOAD_FACTOR);
+        return Integer.highestOneBit(wanted - 1) << 1;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,18 @@
+package io.rty.incub.backend.store;
+
+import java.util.function.Consumer;
+
+import io.rty.incub.backend.data.Product;
+
+/**
+ * A sequence of products handed out one at a time, so that a store can be
+ * filled from a generator or a file without collecting them in a list first.
+ */
+@FunctionalInterface
+public interface ProductSource {
+
+    /**
+     * Passes every product of this source to the action, in order.
+     */
+    void forEachProduct(Consumer<? super Product> action);
+}
@@ -0,0 +1,960 @@
+package io.rty.incub.backend.store;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntBinaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import io.rty.incub.backend.ProductSortOrder;
+import io.rty.incub.backend.ProductSortOrder.Property;
+import io.rty.incub.backend.data.Availability;
+import io.rty.incub.backend.data.CategorySet;
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Product storage indexed by product id, kept column by column.
+ * <p>
+ * Instead of product objects, the store keeps one primitive array per field:
+ * ids, versions, prices in cents, stock counts, availability ordinals,
+ * category bit masks, and the offset of each name in a shared buffer of UTF-8
+ * names prefixed by their length. With the id map, that is some 40 bytes per
+ * product plus its name, where a {@link Product} with its {@code BigDecimal},
+ * {@code String} and {@code HashSet} takes some 350. The products returned by
+ * {@link #get(int)} and {@link #values()} are materialized from the columns on
+ * every call; changing them does not change the store until they are put
+ * back.
+ * <p>
+ * Slots are kept in insertion order, and an {@link AdaptiveIntIntMap} maps
+ * each id to its slot, so that lookups, replacements and removals are O(1)
+ * (removals are amortized, as freed slots are compacted once they make up
+ * half of the array).
+ * <p>
+ * Every put gives the product a new version, taken from a counter of the
+ * store, so that a version is never handed out twice whatever happens to the
+ * id.
+ * <p>
+ * Prices are rounded to whole cents. Categories are kept as the words of
+ * their {@link CategorySet}, so products of the same categories share a set
+ * once materialized.
+ * <p>
+ * A {@link SortedIndex} of the slots is built for a sortable property the
+ * first time products are sorted by it, and maintained by every write from
+ * then on, in a single pass for large batches. Sorting compares the
+ * columns, with {@code null} values first and names compared ignoring case,
+ * which matches {@link ProductSortOrder#getComparator()}.
+ * <p>
+ * This class is not thread safe. {@link #get(int)} tolerates concurrent
+ * writes in the sense that it may return a wrong product or throw, but does
+ * not loop forever, so it can be used under an optimistic read lock.
+ */
+public class ProductStore implements Serializable {
+
+    private static final int MIN_COMPACTION = 64;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    /**
+     * Batches of at least one product in this many update the sort indexes
+     * in a single pass.
+     */
+    private static final int BULK_INDEX_DIVISOR = 64;
+
+    private static final long NULL_PRICE = Long.MIN_VALUE;
+    private static final byte NULL_AVAILABILITY = -1;
+    private static final byte FREE_SLOT = -2;
+    private static final Availability[] AVAILABILITIES = Availability
+            .values();
+
+    private int[] ids;
+    private int[] versions;
+    private long[] prices;
+    private int[] stockCounts;
+    /** Availability ordinals, or {@link #FREE_SLOT} for removed products. */
+    private byte[] availabilities;
+    /** {@link #categoryWords} words of category bits per slot. */
+    private long[] categoryBits;
+    private int categoryWords = 1;
+    /** Name offsets in {@link #names}, -1 for {@code null} names. */
+    private int[] nameOffsets;
+    /**
+     * Names, each prefixed by its length in bytes as a varint. Names are only
+     * ever appended to this buffer; compacting it allocates a new one, so
+     * read-only copies of the store can share it.
+     */
+    private byte[] names;
+    private int namesUsed;
+    private int namesLive;
+
+    private int used;
+    private int live;
+    private int modCount;
+    private int lastVersion;
+    /** {@code null} in read-only copies. */
+    private final AdaptiveIntIntMap slotById;
+    /**
+     * Sort indexes by property ordinal, built on first use. Not serialized,
+     * as they are rebuilt on demand.
+     */
+    private transient SortedIndex[] sortIndexes;
+    /**
+     * A Fenwick tree counting the free slots, one-based, so that the slot of
+     * the nth product is found in O(log n); {@code null} while no slot is
+     * free. Not serialized, as it is rebuilt on reading.
+     */
+    private transient int[] freeSlots;
+
+    public ProductStore() {
+        this(16);
+    }
+
+    public ProductStore(int expectedSize) {
+        int capacity = Math.max(expectedSize, 4);
+        ids = new int[capacity];
+        versions = new int[capacity];
+        prices = new long[capacity];
+        stockCounts = new int[capacity];
+        availabilities = new byte[capacity];
+        categoryBits = new long[capacity];
+        nameOffsets = new int[capacity];
+        names = new byte[(int) Math.min(capacity * 32L, MAX_ARRAY_SIZE)];
+        slotById = new AdaptiveIntIntMap(expectedSize);
+    }
+
+    private ProductStore(ProductStore source) {
+        ids = Arrays.copyOf(source.ids, source.used);
+        versions = Arrays.copyOf(source.versions, source.used);
+        prices = Arrays.copyOf(source.prices, source.used);
+        stockCounts = Arrays.copyOf(source.stockCounts, source.used);
+        availabilities = Arrays.copyOf(source.availabilities, source.used);
+        categoryWords = source.categoryWords;
+        categoryBits = Arrays.copyOf(source.categoryBits,
+                source.used * categoryWords);
+        nameOffsets = Arrays.copyOf(source.nameOffsets, source.used);
+        names = source.names;
+        namesUsed = source.namesUsed;
+        namesLive = source.namesLive;
+        used = source.used;
+        live = source.live;
+        lastVersion = source.lastVersion;
+        slotById = null;
+        freeSlots = used == live ? null : buildFreeSlots(used);
+    }
+
+    public int size() {
+        return live;
+    }
+
+    /**
+     * Materializes the product with the given id.
+     *
+     * @return a new product, or {@code null} if there is none with that id
+     */
+    public Product get(int productId) {
+        int slot = slotById.get(productId);
+        return slot == AdaptiveIntIntMap.NO_VALUE ? null : materialize(slot);
+    }
+
+    public boolean contains(int productId) {
+        return slotById.containsKey(productId);
+    }
+
+    /**
+     * Returns the version of the product with the given id, or 0 if there is
+     * none. Like {@link #get(int)}, this can be used under an optimistic read
+     * lock.
+     */
+    public int getVersion(int productId) {
+        int slot = slotById.get(productId);
+        return slot == AdaptiveIntIntMap.NO_VALUE ? 0 : versions[slot];
+    }
+
+    /**
+     * Stores the fields of the product and sets its new version on it. A
+     * product with the same id is replaced in place and keeps its position,
+     * other products are appended.
+     *
+     * @return whether a product with the same id was replaced
+     * @throws IllegalArgumentException
+     *             if the price does not fit in a long once in cents
+     */
+    public boolean put(Product product) {
+        boolean replaced = slotById.containsKey(product.getId());
+        store(product, true);
+        return replaced;
+    }
+
+    /**
+     * Puts all the products, as {@link #put(Product)} would one by one.
+     * Batches of at least one product in {@value #BULK_INDEX_DIVISOR} merge
+     * their slots into the sort indexes once rather than insert them one by
+     * one. The whole batch is checked first, so that a product that cannot
+     * be stored throws before any of them is.
+     *
+     * @throws IllegalArgumentException
+     *             if a price does not fit in a long once in cents
+     */
+    public void putAll(Collection<? extends Product> batch) {
+        int added = 0;
+        for (Product product : batch) {
+            check(product);
+            if (!slotById.containsKey(product.getId())) {
+                added++;
+            }
+        }
+        if (!isBulk(batch.size())) {
+            batch.forEach(p -> store(p, true));
+            return;
+        }
+        // make room for the new products first: a compaction while storing
+        // them would renumber the slots already collected
+        reserve(added);
+        BitSet replaced = new BitSet(used);
+        BitSet stored = new BitSet(used + batch.size());
+        for (Product product : batch) {
+            int slot = slotById.get(product.getId());
+            if (slot != AdaptiveIntIntMap.NO_VALUE) {
+                replaced.set(slot);
+            }
+            stored.set(store(product, false));
+        }
+        mergeIntoSortIndexes(replaced, stored.stream().toArray());
+    }
+
+    /**
+     * Converts the fields of the product that {@link #store(Product, boolean)}
+     * could fail to convert, throwing as it would.
+     */
+    private static void check(Product product) {
+        toCents(product.getPrice());
+        if (product.getCategory() != null) {
+            CategorySet.of(product.getCategory());
+        }
+    }
+
+    private boolean isBulk(int batchSize) {
+        return sortIndexes != null && batchSize > 0
+                && batchSize >= live / BULK_INDEX_DIVISOR;
+    }
+
+    /**
+     * Stores the product, and updates the sort indexes if asked to.
+     *
+     * @return the slot of the product
+     */
+    private int store(Product product, boolean indexed) {
+        // convert everything first, so that a bad product leaves no trace
+        long price = toCents(product.getPrice());
+        byte availability = product.getAvailability() == null
+                ? NULL_AVAILABILITY
+                : (byte) product.getAvailability().ordinal();
+        CategorySet productCategories = product.getCategory() == null
+                ? CategorySet.empty()
+                : CategorySet.of(product.getCategory());
+        if (productCategories.wordCount() > categoryWords) {
+            widenCategoryBits(productCategories.wordCount());
+        }
+        byte[] name = product.getProductName() == null ? null
+                : product.getProductName().getBytes(StandardCharsets.UTF_8);
+
+        int slot = slotById.get(product.getId());
+        boolean replaced = slot != AdaptiveIntIntMap.NO_VALUE;
+        if (replaced) {
+            if (indexed) {
+                removeFromSortIndexes(slot);
+            }
+            // the old name no longer counts as live, so that a compaction to
+            // make room for the new one leaves it out
+            namesLive -= nameSize(slot);
+            nameOffsets[slot] = -1;
+        } else {
+            if (used == ids.length) {
+                grow();
+            }
+            slot = used++;
+            // the slot has no name yet, whatever a previous use left there,
+            // should making room for the new name compact the buffer
+            nameOffsets[slot] = -1;
+            slotById.put(product.getId(), slot);
+            live++;
+            modCount++;
+        }
+        ids[slot] = product.getId();
+        versions[slot] = ++lastVersion;
+        prices[slot] = price;
+        stockCounts[slot] = product.getStockCount();
+        availabilities[slot] = availability;
+        int firstWord = slot * categoryWords;
+        for (int word = 0; word < categoryWords; word++) {
+            categoryBits[firstWord + word] = productCategories.getWord(word);
+        }
+        if (name == null) {
+            nameOffsets[slot] = -1;
+        } else {
+            int size = varintSize(name.length) + name.length;
+            ensureNameCapacity(size);
+            int offset = writeVarint(names, namesUsed, name.length);
+            System.arraycopy(name, 0, names, offset, name.length);
+            nameOffsets[slot] = namesUsed;
+            namesUsed += size;
+            namesLive += size;
+        }
+        if (indexed && sortIndexes != null) {
+            for (SortedIndex index : sortIndexes) {
+                if (index != null) {
+                    index.insert(slot);
+                }
+            }
+        }
+        product.setVersion(versions[slot]);
+        return slot;
+    }
+
+    /**
+     * Removes the product with the given id.
+     *
+     * @return whether there was a product with that id
+     */
+    public boolean remove(int productId) {
+        if (free(productId, true) == AdaptiveIntIntMap.NO_VALUE) {
+            return false;
+        }
+        compactIfSparse();
+        return true;
+    }
+
+    /**
+     * Removes the products with the given ids, skipping ids of no product.
+     * Batches of at least one product in {@value #BULK_INDEX_DIVISOR} remove
+     * their slots from the sort indexes in a single pass.
+     *
+     * @return the ids of the removed products
+     */
+    public int[] removeAll(Collection<Integer> productIds) {
+        boolean bulk = isBulk(productIds.size());
+        BitSet freed = bulk ? new BitSet(used) : null;
+        int[] removed = new int[productIds.size()];
+        int count = 0;
+        for (int productId : productIds) {
+            int slot = free(productId, !bulk);
+            if (slot != AdaptiveIntIntMap.NO_VALUE) {
+                removed[count++] = productId;
+                if (bulk) {
+                    freed.set(slot);
+                }
+            }
+        }
+        if (bulk) {
+            mergeIntoSortIndexes(freed, new int[0]);
+        }
+        compactIfSparse();
+        return Arrays.copyOf(removed, count);
+    }
+
+    /**
+     * Frees the slot of the product, and removes it from the sort indexes if
+     * asked to.
+     *
+     * @return the freed slot, or {@link AdaptiveIntIntMap#NO_VALUE} if there
+     *         is no product with that id
+     */
+    private int free(int productId, boolean indexed) {
+        int slot = slotById.remove(productId);
+        if (slot == AdaptiveIntIntMap.NO_VALUE) {
+            return slot;
+        }
+        if (indexed) {
+            removeFromSortIndexes(slot);
+        }
+        availabilities[slot] = FREE_SLOT;
+        markFree(slot);
+        namesLive -= nameSize(slot);
+        live--;
+        modCount++;
+        return slot;
+    }
+
+    private void compactIfSparse() {
+        if (used - live >= MIN_COMPACTION && used - live > live) {
+            compact();
+        }
+    }
+
+    /**
+     * Returns a live, read-only view of the stored products in insertion
+     * order. Products are materialized as the view is iterated.
+     */
+    public Collection<Product> values() {
+        return new AbstractCollection<Product>() {
+            @Override
+            public Iterator<Product> iterator() {
+                return new SlotIterator();
+            }
+
+            @Override
+            public int size() {
+                return live;
+            }
+        };
+    }
+
+    /**
+     * Returns the ids of the stored products in insertion order, without
+     * materializing the products. The stream must be consumed before the
+     * next write.
+     */
+    public IntStream ids() {
+        return slots(0).map(slot -> ids[slot]);
+    }
+
+    /**
+     * Returns the ids of the stored products in insertion order from the
+     * given position on. The first slot is found in O(log n), so a page
+     * costs the same wherever it starts. The stream must be consumed before
+     * the next write.
+     */
+    public IntStream ids(int position) {
+        return slots(slotAt(position)).map(slot -> ids[slot]);
+    }
+
+    private IntStream slots(int from) {
+        return IntStream.range(from, used)
+                .filter(slot -> availabilities[slot] != FREE_SLOT);
+    }
+
+    /**
+     * Returns the slot of the product at the given position in insertion
+     * order, or {@link #used} if there are not that many products.
+     */
+    private int slotAt(int position) {
+        if (position >= live) {
+            return used;
+        }
+        int[] tree = freeSlots;
+        if (tree == null) {
+            return position;
+        }
+        // walks down the tree to the longest run of slots from the first with
+        // no more than position products in it: the product is the slot
+        // right after the run
+        int slot = 0;
+        int remaining = position;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0;
+                step >>= 1) {
+            int next = slot + step;
+            if (next < tree.length && step - tree[next] <= remaining) {
+                slot = next;
+                remaining -= step - tree[next];
+            }
+        }
+        return slot;
+    }
+
+    private void markFree(int slot) {
+        if (freeSlots == null) {
+            freeSlots = new int[ids.length + 1];
+        }
+        for (int i = slot + 1; i < freeSlots.length; i += i & -i) {
+            freeSlots[i]++;
+        }
+    }
+
+    /**
+     * Builds the tree of free slots for the given capacity in O(capacity).
+     */
+    private int[] buildFreeSlots(int capacity) {
+        int[] tree = new int[capacity + 1];
+        for (int i = 1; i <= capacity; i++) {
+            if (i <= used && availabilities[i - 1] == FREE_SLOT) {
+                tree[i]++;
+            }
+            int parent = i + (i & -i);
+            if (parent <= capacity) {
+                tree[parent] += tree[i];
+            }
+        }
+        return tree;
+    }
+
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        freeSlots = used == live ? null : buildFreeSlots(ids.length);
+    }
+
+    /**
+     * Tells whether the sort index of the property is built, in which case
+     * {@link #sortedIds(ProductSortOrder, int)} does not write to the store.
+     */
+    public boolean hasSortIndex(Property property) {
+        SortedIndex[] indexes = sortIndexes;
+        return indexes != null && indexes[property.ordinal()] != null;
+    }
+
+    /**
+     * Returns the ids of the stored products in the sort order, from the
+     * given position on, products of equal value in insertion order. Only
+     * the skipped blocks and the ids consumed are visited, so a page costs
+     * O(log n + page size). The stream must be consumed before the next
+     * write.
+     * <p>
+     * The first call for a property builds its index, which sorts every
+     * product and counts as a write.
+     */
+    public IntStream sortedIds(ProductSortOrder order, int offset) {
+        PrimitiveIterator.OfInt slots = sortIndex(order.getProperty())
+                .iterator(offset, order.isDescending());
+        return StreamSupport
+                .intStream(Spliterators.spliteratorUnknownSize(slots,
+                        Spliterator.ORDERED), false)
+                .map(slot -> ids[slot]);
+    }
+
+    /**
+     * Sorts the ids of stored products by the sort orders, then in insertion
+     * order, comparing the columns rather than materialized products.
+     *
+     * @throws IllegalArgumentException
+     *             if an id is not in the store
+     */
+    public void sort(int[] productIds, List<ProductSortOrder> orders) {
+        int[] slots = new int[productIds.length];
+        for (int i = 0; i < productIds.length; i++) {
+            slots[i] = slotById.get(productIds[i]);
+            if (slots[i] == AdaptiveIntIntMap.NO_VALUE) {
+                throw new IllegalArgumentException(
+                        "No product with id " + productIds[i]);
+            }
+        }
+        IntBinaryOperator comparator = null;
+        for (ProductSortOrder order : orders) {
+            IntBinaryOperator next = comparator(order.getProperty());
+            if (order.isDescending()) {
+                IntBinaryOperator ascending = next;
+                next = (slot1, slot2) -> ascending.applyAsInt(slot2, slot1);
+            }
+            comparator = comparator == null ? next
+                    : thenComparing(comparator, next);
+        }
+        Arrays.sort(slots);
+        if (comparator != null) {
+            // the sort is stable, so ties end up in insertion order
+            SortedIndex.sort(slots, comparator);
+        }
+        for (int i = 0; i < slots.length; i++) {
+            productIds[i] = ids[slots[i]];
+        }
+    }
+
+    private static IntBinaryOperator thenComparing(IntBinaryOperator first,
+            IntBinaryOperator second) {
+        return (slot1, slot2) -> {
+            int result = first.applyAsInt(slot1, slot2);
+            return result != 0 ? result : second.applyAsInt(slot1, slot2);
+        };
+    }
+
+    private SortedIndex sortIndex(Property property) {
+        if (sortIndexes == null) {
+            sortIndexes = new SortedIndex[Property.values().length];
+        }
+        SortedIndex index = sortIndexes[property.ordinal()];
+        if (index == null) {
+            index = new SortedIndex(comparator(property), slots(0).toArray());
+            sortIndexes[property.ordinal()] = index;
+        }
+        return index;
+    }
+
+    private void mergeIntoSortIndexes(BitSet removed, int[] inserted) {
+        for (SortedIndex index : sortIndexes) {
+            if (index != null) {
+                index.merge(removed, inserted);
+            }
+        }
+    }
+
+    private void removeFromSortIndexes(int slot) {
+        if (sortIndexes != null) {
+            for (SortedIndex index : sortIndexes) {
+                if (index != null) {
+                    index.remove(slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a comparator of slots by the value of the property, reading
+     * the columns as they are at the time of the comparison.
+     */
+    private IntBinaryOperator comparator(Property property) {
+        switch (property) {
+        case PRODUCT_NAME:
+            return this::compareNames;
+        case PRICE:
+            // NULL_PRICE is the lowest long, so null prices come first
+            return (slot1, slot2) -> Long.compare(prices[slot1],
+                    prices[slot2]);
+        case AVAILABILITY:
+            return (slot1, slot2) -> Byte.compare(availabilities[slot1],
+                    availabilities[slot2]);
+        case STOCK_COUNT:
+            return (slot1, slot2) -> Integer.compare(stockCounts[slot1],
+                    stockCounts[slot2]);
+        default:
+            throw new IllegalArgumentException(
+                    "Cannot sort products by " + property);
+        }
+    }
+
+    /**
+     * Compares the names of two slots as
+     * {@link String#CASE_INSENSITIVE_ORDER} does, straight from the name
+     * buffer as long as the names are ASCII.
+     */
+    private int compareNames(int slot1, int slot2) {
+        int offset1 = nameOffsets[slot1];
+        int offset2 = nameOffsets[slot2];
+        if (offset1 < 0 || offset2 < 0) {
+            return Boolean.compare(offset1 >= 0, offset2 >= 0);
+        }
+        byte[] names = this.names;
+        int length1 = readVarint(names, offset1);
+        int length2 = readVarint(names, offset2);
+        int start1 = offset1 + varintSize(length1);
+        int start2 = offset2 + varintSize(length2);
+        for (int i = 0, common = Math.min(length1, length2); i < common; i++) {
+            int c1 = names[start1 + i];
+            int c2 = names[start2 + i];
+            if (c1 < 0 || c2 < 0) {
+                return String.CASE_INSENSITIVE_ORDER.compare(readName(slot1),
+                        readName(slot2));
+            }
+            if (c1 != c2) {
+                c1 = c1 >= 'A' && c1 <= 'Z' ? c1 + ('a' - 'A') : c1;
+                c2 = c2 >= 'A' && c2 <= 'Z' ? c2 + ('a' - 'A') : c2;
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+            }
+        }
+        if (length1 != length2) {
+            // the longer name may still have non-ASCII characters beyond the
+            // common part, but it comes after the shorter one anyway
+            return length1 - length2;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns a copy of the stored products that stays unchanged whatever
+     * happens to this store, for instance to write them out without holding
+     * a lock. The copy costs the columns but not the names, which it shares.
+     */
+    public ProductSource copyValues() {
+        ProductStore copy = new ProductStore(this);
+        return action -> copy.values().forEach(action);
+    }
+
+    /**
+     * Releases the unused capacity of the arrays, typically after loading a
+     * catalog of unknown size.
+     */
+    public void trimToSize() {
+        resize(Math.max(used, 4));
+        byte[] trimmed = new byte[namesUsed];
+        System.arraycopy(names, 0, trimmed, 0, namesUsed);
+        names = trimmed;
+    }
+
+    /**
+     * Returns the size in bytes of the arrays backing this store, including
+     * the unused capacity.
+     */
+    public long estimatedBytes() {
+        long perSlot = Integer.BYTES * 4L + Long.BYTES + Byte.BYTES;
+        long bytes = ids.length * perSlot
+                + categoryBits.length * (long) Long.BYTES + names.length
+                + (slotById == null ? 0 : slotById.estimatedBytes());
+        if (sortIndexes != null) {
+            for (SortedIndex index : sortIndexes) {
+                bytes += index == null ? 0 : index.estimatedBytes();
+            }
+        }
+        return bytes;
+    }
+
+    private Product materialize(int slot) {
+        Product p = new Product();
+        p.setId(ids[slot]);
+        p.setVersion(versions[slot]);
+        long price = prices[slot];
+        p.setPrice(price == NULL_PRICE ? null : BigDecimal.valueOf(price, 2));
+        p.setStockCount(stockCounts[slot]);
+        byte availability = availabilities[slot];
+        p.setAvailability(availability == NULL_AVAILABILITY ? null
+                : AVAILABILITIES[availability]);
+        p.setCategory(CategorySet.fromWords(categoryBits,
+                slot * categoryWords, categoryWords));
+        p.setProductName(readName(slot));
+        return p;
+    }
+
+    private String readName(int slot) {
+        int offset = nameOffsets[slot];
+        if (offset < 0) {
+            return null;
+        }
+        byte[] names = this.names;
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = names[offset++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0 && shift < 32);
+        return new String(names, offset, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the bytes taken by the name of the slot in the name buffer,
+     * length prefix included.
+     */
+    private int nameSize(int slot) {
+        int offset = nameOffsets[slot];
+        if (offset < 0) {
+            return 0;
+        }
+        int length = 0;
+        int shift = 0;
+        int start = offset;
+        byte b;
+        do {
+            b = names[offset++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return offset - start + length;
+    }
+
+    private static int readVarint(byte[] buffer, int offset) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer[offset++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0 && shift < 32);
+        return value;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Writes the value as a varint and returns the offset following it.
+     */
+    private static int writeVarint(byte[] buffer, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Checks that {@link #put(Product)} would accept the product, so that a
+     * batch of puts can be checked before the first of them.
+     *
+     * @throws IllegalArgumentException
+     *             if the price does not fit in a long once in cents
+     */
+    public static void checkStorable(Product product) {
+        toCents(product.getPrice());
+    }
+
+    private static long toCents(BigDecimal price) {
+        if (price == null) {
+            return NULL_PRICE;
+        }
+        try {
+            long cents = price.setScale(2, RoundingMode.HALF_EVEN)
+                    .unscaledValue().longValueExact();
+            if (cents != NULL_PRICE) {
+                return cents;
+            }
+        } catch (ArithmeticException e) {
+            // out of range, reported below
+        }
+        throw new IllegalArgumentException("Price out of range: " + price);
+    }
+
+    private void widenCategoryBits(int words) {
+        long[] wider = new long[ids.length * words];
+        for (int slot = 0; slot < used; slot++) {
+            System.arraycopy(categoryBits, slot * categoryWords, wider,
+                    slot * words, categoryWords);
+        }
+        categoryBits = wider;
+        categoryWords = words;
+    }
+
+    private void ensureNameCapacity(int length) {
+        if (namesUsed + (long) length <= names.length) {
+            return;
+        }
+        long needed = (long) namesLive + length;
+        if (needed > MAX_ARRAY_SIZE) {
+            throw new IllegalStateException(
+                    "Product names exceed " + MAX_ARRAY_SIZE + " bytes");
+        }
+        // reclaim the names of replaced and removed products when they make
+        // up a third of the buffer, grow it otherwise
+        long capacity = namesUsed - namesLive > names.length / 3
+                ? names.length
+                : names.length * 3L / 2;
+        capacity = Math.min(Math.max(capacity, needed + needed / 2),
+                MAX_ARRAY_SIZE);
+        byte[] compacted = new byte[(int) capacity];
+        int offset = 0;
+        for (int slot = 0; slot < used; slot++) {
+            int size = nameSize(slot);
+            if (availabilities[slot] != FREE_SLOT && size > 0) {
+                System.arraycopy(names, nameOffsets[slot], compacted, offset,
+                        size);
+                nameOffsets[slot] = offset;
+                offset += size;
+            }
+        }
+        names = compacted;
+        namesUsed = offset;
+    }
+
+    private void grow() {
+        // reclaim freed slots before paying for bigger arrays
+        if (used - live > used / 4) {
+            compact();
+            if (used < ids.length) {
+                return;
+            }
+        }
+        resize(ids.length + (ids.length >> 1));
+    }
+
+    /**
+     * Makes room for the given number of products to be appended without
+     * growing, compacting the slots if enough of them are free.
+     */
+    private void reserve(int count) {
+        if (used + count <= ids.length) {
+            return;
+        }
+        if (used - live > used / 4) {
+            compact();
+        }
+        if (used + count > ids.length) {
+            resize(Math.max(used + count, ids.length + (ids.length >> 1)));
+        }
+    }
+
+    private void resize(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        stockCounts = Arrays.copyOf(stockCounts, capacity);
+        availabilities = Arrays.copyOf(availabilities, capacity);
+        categoryBits = Arrays.copyOf(categoryBits, capacity * categoryWords);
+        nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+        if (freeSlots != null) {
+            freeSlots = buildFreeSlots(capacity);
+        }
+    }
+
+    private void compact() {
+        int[] newSlots = sortIndexes == null ? null : new int[used];
+        int target = 0;
+        for (int slot = 0; slot < used; slot++) {
+            if (availabilities[slot] == FREE_SLOT) {
+                continue;
+            }
+            if (newSlots != null) {
+                newSlots[slot] = target;
+            }
+            if (target != slot) {
+                ids[target] = ids[slot];
+                versions[target] = versions[slot];
+                prices[target] = prices[slot];
+                stockCounts[target] = stockCounts[slot];
+                availabilities[target] = availabilities[slot];
+                System.arraycopy(categoryBits, slot * categoryWords,
+                        categoryBits, target * categoryWords, categoryWords);
+                nameOffsets[target] = nameOffsets[slot];
+                slotById.put(ids[target], target);
+            }
+            target++;
+        }
+        Arrays.fill(availabilities, target, used, FREE_SLOT);
+        used = target;
+        freeSlots = null;
+        if (newSlots != null) {
+            for (SortedIndex index : sortIndexes) {
+                if (index != null) {
+                    index.remap(newSlots);
+                }
+            }
+        }
+    }
+
+    private class SlotIterator implements Iterator<Product> {
+
+        private final int expectedModCount = modCount;
+        private int next = advance(0);
+
+        private int advance(int from) {
+            while (from < used && availabilities[from] == FREE_SLOT) {
+                from++;
+            }
+            return from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < used;
+        }
+
+        @Override
+        public Product next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= used) {
+                throw new NoSuchElementException();
+            }
+            Product p = materialize(next);
+            next = advance(next + 1);
+            return p;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package io.rty.incub.backend.store;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Inverted index answering the substring filter of
+ * {@link io.rty.incub.backend.ProductQuery} without looking at every product.
+ * <p>
+ * Every distinct lower case value of a product name, availability or category
+ * name is a <em>term</em>. Terms have a posting set of the products using
+ * them, and a trigram index over the terms finds the ones containing a filter
+ * text. Catalogs repeat their availability and category values a lot, so the
+ * term vocabulary stays much smaller than the catalog and a filter only
+ * verifies the terms that share all trigrams with it.
+ * <p>
+ * The index is maintained incrementally through {@link #put(Product)} and
+ * {@link #remove(int)}. This class is not thread safe.
+ */
+public class ProductTextIndex implements Serializable {
+
+    private static final int[] NO_TERMS = new int[0];
+
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final List<String> terms = new ArrayList<>();
+    private final List<Posting> postings = new ArrayList<>();
+    private final List<Integer> freeTermIds = new ArrayList<>();
+    private final Map<Long, IntHashSet> termsByTrigram = new HashMap<>();
+
+    private final IntIntHashMap slotByProductId = new IntIntHashMap();
+    private int[][] termsBySlot = new int[16][];
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount;
+    private int usedSlots;
+    private int maxProductId;
+
+    /**
+     * The ids of the products using a term. Sparse postings are hash sets;
+     * once a term is used by at least one in 64 products its posting turns
+     * into a bit set, which is no bigger at that density (a hash set entry
+     * takes 8 to 16 bytes) and lets unions be computed a word at a time.
+     */
+    private static final class Posting implements Serializable {
+
+        private IntHashSet sparse = new IntHashSet();
+        private BitSet dense;
+        private int size;
+
+        void add(int id, int maxId) {
+            if (dense != null) {
+                if (!dense.get(id)) {
+                    dense.set(id);
+                    size++;
+                }
+            } else if (sparse.add(id)) {
+                size++;
+                if (size >= 64 && size * 64L >= maxId) {
+                    dense = new BitSet(maxId + 1);
+                    sparse.forEach(dense::set);
+                    sparse = null;
+                }
+            }
+        }
+
+        void remove(int id, int maxId) {
+            if (dense != null) {
+                if (dense.get(id)) {
+                    dense.clear(id);
+                    size--;
+                    if (size * 128L < maxId) {
+                        sparse = new IntHashSet(size);
+                        dense.stream().forEach(sparse::add);
+                        dense = null;
+                    }
+                }
+            } else if (sparse.remove(id)) {
+                size--;
+            }
+        }
+
+        void addTo(BitSet ids) {
+            if (dense != null) {
+                ids.or(dense);
+            } else {
+                sparse.forEach(ids::set);
+            }
+        }
+
+        int[] toSortedArray() {
+            if (dense != null) {
+                return dense.stream().toArray();
+            }
+            int[] ids = sparse.toArray();
+            Arrays.sort(ids);
+            return ids;
+        }
+    }
+
+    /**
+     * Terms matching a filter text, as returned by {@link #match(String)}.
+     */
+    public static final class Match {
+
+        private final BitSet termIds;
+        private final int[] matchingTerms;
+        private final long postingCount;
+
+        private Match(BitSet termIds, int[] matchingTerms,
+                long postingCount) {
+            this.termIds = termIds;
+            this.matchingTerms = matchingTerms;
+            this.postingCount = postingCount;
+        }
+
+        /**
+         * Returns the summed posting set sizes of the matching terms, an
+         * upper bound for the number of matching products.
+         */
+        public long getPostingCount() {
+            return postingCount;
+        }
+
+        public boolean isEmpty() {
+            return matchingTerms.length == 0;
+        }
+    }
+
+    public int size() {
+        return slotByProductId.size();
+    }
+
+    /**
+     * Indexes the product, replacing what was indexed for its id before. A
+     * product whose terms did not change, as when only its price or stock
+     * count did, is left as indexed.
+     */
+    public void put(Product product) {
+        int[] productTerms = termsOf(product);
+        int current = slotByProductId.get(product.getId());
+        if (current != IntIntHashMap.NO_VALUE
+                && sameTerms(termsBySlot[current], productTerms)) {
+            return;
+        }
+        if (current != IntIntHashMap.NO_VALUE) {
+            remove(product.getId());
+            // terms only this product had are released, look them up again
+            productTerms = termsOf(product);
+        }
+        int slot;
+        if (freeSlotCount > 0) {
+            slot = freeSlots[--freeSlotCount];
+        } else {
+            if (usedSlots == termsBySlot.length) {
+                termsBySlot = Arrays.copyOf(termsBySlot,
+                        usedSlots + (usedSlots >> 1));
+            }
+            slot = usedSlots++;
+        }
+        termsBySlot[slot] = productTerms;
+        slotByProductId.put(product.getId(), slot);
+        maxProductId = Math.max(maxProductId, product.getId());
+        for (int term : productTerms) {
+            postings.get(term).add(product.getId(), maxProductId);
+        }
+    }
+
+    /**
+     * Drops the product with the given id from the index, if it is indexed.
+     */
+    public void remove(int productId) {
+        int slot = slotByProductId.remove(productId);
+        if (slot == IntIntHashMap.NO_VALUE) {
+            return;
+        }
+        for (int term : termsBySlot[slot]) {
+            Posting posting = postings.get(term);
+            posting.remove(productId, maxProductId);
+            if (posting.size == 0) {
+                releaseTerm(term);
+            }
+        }
+        termsBySlot[slot] = null;
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlotCount << 1);
+        }
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    /**
+     * Finds the terms containing the already normalized filter text.
+     *
+     * @see io.rty.incub.backend.ProductQuery#normalizeFilter(String)
+     */
+    public Match match(String filter) {
+        BitSet matching = new BitSet();
+        long postingCount = 0;
+        if (filter.length() >= 3) {
+            IntHashSet candidates = null;
+            for (int i = 0; i + 3 <= filter.length(); i++) {
+                IntHashSet withTrigram = termsByTrigram
+                        .get(trigram(filter, i));
+                if (withTrigram == null) {
+                    return new Match(matching, NO_TERMS, 0);
+                }
+                if (candidates == null
+                        || withTrigram.size() < candidates.size()) {
+                    candidates = withTrigram;
+                }
+            }
+            for (int term : candidates.toArray()) {
+                if (terms.get(term).contains(filter)) {
+                    matching.set(term);
+                    postingCount += postings.get(term).size;
+                }
+            }
+        } else {
+            // too short for trigrams, verify the whole (small) vocabulary
+            for (int term = 0; term < terms.size(); term++) {
+                String value = terms.get(term);
+                if (value != null && value.contains(filter)) {
+                    matching.set(term);
+                    postingCount += postings.get(term).size;
+                }
+            }
+        }
+        return new Match(matching, matching.stream().toArray(), postingCount);
+    }
+
+    /**
+     * Checks whether the indexed product has one of the matching terms.
+     */
+    public boolean matches(int productId, Match match) {
+        int slot = slotByProductId.get(productId);
+        return slot != IntIntHashMap.NO_VALUE
+                && matches(termsBySlot[slot], match);
+    }
+
+    /**
+     * Returns the number of products having one of the matching terms.
+     */
+    public int count(Match match) {
+        if (match.matchingTerms.length == 1) {
+            return postings.get(match.matchingTerms[0]).size;
+        }
+        return union(match).cardinality();
+    }
+
+    /**
+     * Returns the ids of the products having one of the matching terms, in
+     * ascending order.
+     */
+    public int[] matchingIds(Match match) {
+        if (match.matchingTerms.length == 1) {
+            return postings.get(match.matchingTerms[0]).toSortedArray();
+        }
+        return union(match).stream().toArray();
+    }
+
+    /**
+     * Returns the ids of the products having one of the matching terms as a
+     * bit set indexed by id, for membership tests that are cheaper than
+     * {@link #matches(int, Match)}.
+     */
+    public BitSet matchingIdSet(Match match) {
+        return union(match);
+    }
+
+    /**
+     * Merges the posting sets of the matching terms. Product ids are dense
+     * and non-negative, so a bit per id is both smaller and faster than a
+     * hash set once more than a few postings are involved.
+     */
+    private BitSet union(Match match) {
+        BitSet ids = new BitSet(maxProductId + 1);
+        for (int term : match.matchingTerms) {
+            postings.get(term).addTo(ids);
+        }
+        return ids;
+    }
+
+    private static boolean matches(int[] productTerms, Match match) {
+        for (int term : productTerms) {
+            if (match.termIds.get(term)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int[] termsOf(Product product) {
+        IntHashSet productTerms = new IntHashSet(4);
+        addTerm(productTerms, product.getProductName());
+        if (product.getAvailability() != null) {
+            addTerm(productTerms, product.getAvailability().toString());
+        }
+        if (product.getCategory() != null) {
+            for (Category category : product.getCategory()) {
+                addTerm(productTerms, category.getName());
+            }
+        }
+        return productTerms.toArray();
+    }
+
+    private static boolean sameTerms(int[] terms, int[] otherTerms) {
+        if (terms.length != otherTerms.length) {
+            return false;
+        }
+        // a product has a handful of distinct terms
+        for (int term : terms) {
+            boolean found = false;
+            for (int otherTerm : otherTerms) {
+                found |= term == otherTerm;
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addTerm(IntHashSet productTerms, String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        String term = value.toLowerCase(Locale.ENGLISH);
+        Integer id = termIds.get(term);
+        if (id == null) {
+            id = createTerm(term);
+        }
+        productTerms.add(id);
+    }
+
+    private int createTerm(String term) {
+        int id;
+        if (freeTermIds.isEmpty()) {
+            id = terms.size();
+            terms.add(term);
+            postings.add(new Posting());
+        } else {
+            id = freeTermIds.remove(freeTermIds.size() - 1);
+            terms.set(id, term);
+            postings.set(id, new Posting());
+        }
+        termIds.put(term, id);
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            termsByTrigram.computeIfAbsent(trigram(term, i),
+                    k -> new IntHashSet()).add(id);
+        }
+        return id;
+    }
+
+    private void releaseTerm(int id) {
+        String term = terms.get(id);
+        termIds.remove(term);
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            Long key = trigram(term, i);
+            IntHashSet withTrigram = termsByTrigram.get(key);
+            if (withTrigram != null) {
+                withTrigram.remove(id);
+                if (withTrigram.isEmpty()) {
+                    termsByTrigram.remove(key);
+                }
+            }
+        }
+        terms.set(id, null);
+        postings.set(id, null);
+        freeTermIds.add(id);
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16)
+                | s.charAt(i + 2);
+    }
+}
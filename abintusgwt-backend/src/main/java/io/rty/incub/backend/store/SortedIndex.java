@@ -0,0 +1,454 @@
+package io.rty.incub.backend.store;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Slots of a {@link ProductStore} sorted by the value of one of its columns,
+ * so that a sorted page costs O(log n + page size) instead of a sort of every
+ * product.
+ * <p>
+ * Slots are kept in sorted blocks of at most {@value #MAX_BLOCK}, along with
+ * the position of the first slot of each block. Inserting or removing a slot
+ * moves part of one block and updates the block positions, and finding the
+ * slot at a position is a binary search over the blocks. Slots of equal value
+ * are ordered by slot, which is insertion order.
+ * <p>
+ * The index does not see the values it is sorted by: a slot must be removed
+ * before its value changes and inserted again afterwards.
+ */
+final class SortedIndex {
+
+    static final int MAX_BLOCK = 1024;
+    /** Blocks are built three quarters full, to leave room for inserts. */
+    private static final int BUILD_BLOCK = MAX_BLOCK * 3 / 4;
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    /** Compares two slots by value only. */
+    private final IntBinaryOperator comparator;
+    private int[][] blocks;
+    private int[] sizes;
+    /** Position of the first slot of each block. */
+    private int[] starts;
+    private int blockCount;
+    private int size;
+
+    /**
+     * Builds the index of the given slots, which must be in ascending order.
+     */
+    SortedIndex(IntBinaryOperator comparator, int[] slots) {
+        this.comparator = comparator;
+        sort(slots, comparator);
+        build(slots, slots.length);
+    }
+
+    /**
+     * Rebuilds the blocks from the first {@code count} of the given sorted
+     * slots.
+     */
+    private void build(int[] slots, int count) {
+        size = count;
+        blockCount = Math.max(1, (size + BUILD_BLOCK - 1) / BUILD_BLOCK);
+        int capacity = blockCount + blockCount / 4 + 1;
+        blocks = new int[capacity][];
+        sizes = new int[capacity];
+        starts = new int[capacity];
+        for (int block = 0; block < blockCount; block++) {
+            int start = block * BUILD_BLOCK;
+            int end = Math.min(start + BUILD_BLOCK, size);
+            blocks[block] = Arrays.copyOfRange(slots, start,
+                    Math.max(end, start + 1));
+            sizes[block] = end - start;
+            starts[block] = start;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the slot at the given position.
+     */
+    int get(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException(
+                    "Position " + position + " of " + size);
+        }
+        int block = blockAt(position);
+        return blocks[block][position - starts[block]];
+    }
+
+    void insert(int slot) {
+        int block = blockFor(slot, false);
+        if (sizes[block] == MAX_BLOCK) {
+            split(block);
+            if (compare(slot, blocks[block][sizes[block] - 1], false) > 0) {
+                block++;
+            }
+        }
+        int[] slots = blocks[block];
+        int index = search(slots, sizes[block], slot, false, true);
+        if (sizes[block] == slots.length) {
+            slots = blocks[block] = Arrays.copyOf(slots,
+                    Math.min(MAX_BLOCK, slots.length + (slots.length >> 1)
+                            + 1));
+        }
+        System.arraycopy(slots, index, slots, index + 1,
+                sizes[block] - index);
+        slots[index] = slot;
+        sizes[block]++;
+        size++;
+        updateStarts(block);
+    }
+
+    /**
+     * Removes the slot, whose value must not have changed since it was
+     * inserted.
+     *
+     * @throws IllegalStateException
+     *             if the slot is not found
+     */
+    void remove(int slot) {
+        int block = blockFor(slot, false);
+        int[] slots = blocks[block];
+        int index = search(slots, sizes[block], slot, false, false);
+        if (index == sizes[block] || slots[index] != slot) {
+            throw new IllegalStateException(
+                    "Slot " + slot + " is not in the index");
+        }
+        System.arraycopy(slots, index + 1, slots, index,
+                sizes[block] - index - 1);
+        sizes[block]--;
+        size--;
+        if (sizes[block] == 0 && blockCount > 1) {
+            System.arraycopy(blocks, block + 1, blocks, block,
+                    blockCount - block - 1);
+            System.arraycopy(sizes, block + 1, sizes, block,
+                    blockCount - block - 1);
+            System.arraycopy(starts, block + 1, starts, block,
+                    blockCount - block - 1);
+            blockCount--;
+            blocks[blockCount] = null;
+            if (block == 0) {
+                starts[0] = 0;
+            }
+            updateStarts(Math.max(0, block - 1));
+        } else {
+            updateStarts(block);
+        }
+    }
+
+    /**
+     * Removes the slots set in {@code removed} and inserts the given slots,
+     * which must be in ascending order and not in the index unless removed,
+     * in a single pass that rebuilds the blocks. Removed slots are not
+     * compared, so their values may have changed since they were inserted.
+     * For k inserted slots, this costs O(n + k log k) rather than the
+     * O(k log n) and k block moves of single inserts, which pays off once k
+     * is a sizable fraction of n.
+     */
+    void merge(BitSet removed, int[] inserted) {
+        int[] added = inserted.clone();
+        // the sort is stable, so slots of equal value stay in slot order
+        sort(added, comparator);
+        int[] merged = new int[size + added.length];
+        int count = 0;
+        int next = 0;
+        for (int block = 0; block < blockCount; block++) {
+            int[] slots = blocks[block];
+            for (int i = 0; i < sizes[block]; i++) {
+                int slot = slots[i];
+                if (removed.get(slot)) {
+                    continue;
+                }
+                while (next < added.length
+                        && compare(added[next], slot, false) < 0) {
+                    merged[count++] = added[next++];
+                }
+                merged[count++] = slot;
+            }
+        }
+        while (next < added.length) {
+            merged[count++] = added[next++];
+        }
+        build(merged, count);
+    }
+
+    /**
+     * Replaces every slot by its new number after the store moved them. The
+     * store keeps the slots in order, so the index stays sorted.
+     */
+    void remap(int[] newSlots) {
+        for (int block = 0; block < blockCount; block++) {
+            int[] slots = blocks[block];
+            for (int i = 0; i < sizes[block]; i++) {
+                slots[i] = newSlots[slots[i]];
+            }
+        }
+    }
+
+    /**
+     * Iterates over the slots from the given position on. In descending
+     * order, slots of equal value still come in ascending slot order, as
+     * they would from a stable sort.
+     */
+    PrimitiveIterator.OfInt iterator(int position, boolean descending) {
+        return descending ? new DescendingIterator(position)
+                : new AscendingIterator(position);
+    }
+
+    long estimatedBytes() {
+        long bytes = blocks.length * 8L + sizes.length * 8L;
+        for (int block = 0; block < blockCount; block++) {
+            bytes += 16 + blocks[block].length * (long) Integer.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the first position whose slot has the same value as the given
+     * slot, or would have if it was in the index.
+     */
+    private int firstPosition(int slot) {
+        int block = blockFor(slot, true);
+        return starts[block]
+                + search(blocks[block], sizes[block], slot, true, false);
+    }
+
+    /**
+     * Returns the position after the last slot with the same value as the
+     * given slot.
+     */
+    private int endPosition(int slot) {
+        // the last block whose first slot is not after the value
+        int low = 0;
+        int high = blockCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(blocks[middle][0], slot, true) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int block = Math.max(0, low - 1);
+        return starts[block]
+                + search(blocks[block], sizes[block], slot, true, true);
+    }
+
+    private int compare(int slot1, int slot2, boolean valueOnly) {
+        int result = comparator.applyAsInt(slot1, slot2);
+        return result != 0 || valueOnly ? result
+                : Integer.compare(slot1, slot2);
+    }
+
+    /**
+     * Returns the first block whose last slot is not before the given slot,
+     * or the last block.
+     */
+    private int blockFor(int slot, boolean valueOnly) {
+        int low = 0;
+        int high = blockCount - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(blocks[middle][sizes[middle] - 1], slot,
+                    valueOnly) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first of the {@code size} slots that is after
+     * the given slot, or not before it unless {@code after} is set.
+     */
+    private int search(int[] slots, int size, int slot, boolean valueOnly,
+            boolean after) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int result = compare(slots[middle], slot, valueOnly);
+            if (result < 0 || (after && result == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int blockAt(int position) {
+        int low = 0;
+        int high = blockCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private void split(int block) {
+        if (blockCount == blocks.length) {
+            int capacity = blockCount + (blockCount >> 1) + 1;
+            blocks = Arrays.copyOf(blocks, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+        }
+        System.arraycopy(blocks, block + 1, blocks, block + 2,
+                blockCount - block - 1);
+        System.arraycopy(sizes, block + 1, sizes, block + 2,
+                blockCount - block - 1);
+        System.arraycopy(starts, block + 1, starts, block + 2,
+                blockCount - block - 1);
+        blockCount++;
+        int half = sizes[block] / 2;
+        blocks[block + 1] = Arrays.copyOfRange(blocks[block], half,
+                MAX_BLOCK);
+        sizes[block + 1] = sizes[block] - half;
+        sizes[block] = half;
+        starts[block + 1] = starts[block] + half;
+    }
+
+    private void updateStarts(int block) {
+        for (int i = block + 1; i < blockCount; i++) {
+            starts[i] = starts[i - 1] + sizes[i - 1];
+        }
+    }
+
+    /**
+     * Sorts the slots by the comparator. The sort is stable, so slots of
+     * equal value keep their relative order.
+     */
+    static void sort(int[] slots, IntBinaryOperator comparator) {
+        if (slots.length > INSERTION_SORT_THRESHOLD) {
+            mergeSort(slots.clone(), slots, 0, slots.length, comparator);
+        } else {
+            insertionSort(slots, 0, slots.length, comparator);
+        }
+    }
+
+    /** Sorts {@code to[from, end)}, using {@code buffer} as scratch. */
+    private static void mergeSort(int[] buffer, int[] to, int from, int end,
+            IntBinaryOperator comparator) {
+        if (end - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(to, from, end, comparator);
+            return;
+        }
+        int middle = (from + end) >>> 1;
+        // sort both halves into the buffer, then merge them back
+        mergeSort(to, buffer, from, middle, comparator);
+        mergeSort(to, buffer, middle, end, comparator);
+        if (comparator.applyAsInt(buffer[middle - 1], buffer[middle]) <= 0) {
+            System.arraycopy(buffer, from, to, from, end - from);
+            return;
+        }
+        int left = from;
+        int right = middle;
+        for (int i = from; i < end; i++) {
+            if (right >= end || (left < middle && comparator
+                    .applyAsInt(buffer[left], buffer[right]) <= 0)) {
+                to[i] = buffer[left++];
+            } else {
+                to[i] = buffer[right++];
+            }
+        }
+    }
+
+    private static void insertionSort(int[] slots, int from, int end,
+            IntBinaryOperator comparator) {
+        for (int i = from + 1; i < end; i++) {
+            int slot = slots[i];
+            int j = i - 1;
+            while (j >= from && comparator.applyAsInt(slots[j], slot) > 0) {
+                slots[j + 1] = slots[j];
+                j--;
+            }
+            slots[j + 1] = slot;
+        }
+    }
+
+    private class AscendingIterator implements PrimitiveIterator.OfInt {
+
+        private int block;
+        private int index;
+        private int remaining;
+
+        private AscendingIterator(int position) {
+            remaining = Math.max(0, size - position);
+            if (remaining > 0) {
+                block = blockAt(position);
+                index = position - starts[block];
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public int nextInt() {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            while (index == sizes[block]) {
+                block++;
+                index = 0;
+            }
+            remaining--;
+            return blocks[block][index++];
+        }
+    }
+
+    /**
+     * Walks the groups of equal value from the highest down, and each group
+     * in ascending order.
+     */
+    private class DescendingIterator implements PrimitiveIterator.OfInt {
+
+        /** The descending position of the next slot. */
+        private int position;
+        /** The descending position after the current group. */
+        private int groupEnd;
+        private AscendingIterator group;
+
+        private DescendingIterator(int position) {
+            this.position = Math.max(0, position);
+            groupEnd = this.position;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < size;
+        }
+
+        @Override
+        public int nextInt() {
+            if (position >= size) {
+                throw new NoSuchElementException();
+            }
+            if (position == groupEnd) {
+                int slot = get(size - 1 - position);
+                int first = firstPosition(slot);
+                int end = endPosition(slot);
+                groupEnd = size - first;
+                group = new AscendingIterator(
+                        first + position - (size - end));
+            }
+            position++;
+            return group.nextInt();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package io.rty.incub.backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.store.InMemoryDataService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for calling the data service on a bounded pool of threads.
+ */
+public class AsyncDataServiceTest {
+
+    private InMemoryDataService dataService;
+    private AsyncDataService service;
+
+    @Before
+    public void setUp() {
+        dataService = new InMemoryDataService(Collections.emptyList(),
+                products(10));
+        service = new AsyncDataService(dataService, 2);
+    }
+
+    @After
+    public void tearDown() {
+        service.close();
+    }
+
+    @Test
+    public void testCalls_runOnThePoolAndCompleteWithTheOutcome()
+            throws Exception {
+        String[] thread = new String[1];
+        int count = service.updateProducts(p -> {
+            thread[0] = Thread.currentThread().getName();
+            return p.getId() < 3;
+        }, p -> p.setStockCount(100)).get(5, TimeUnit.SECONDS);
+        assertEquals(3, count);
+        assertTrue(thread[0], thread[0].startsWith("data-service-"));
+        assertEquals(100, get(service.getProductById(2)).getStockCount());
+
+        Product product = new Product(get(service.getProductById(5)));
+        product.setProductName("Renamed");
+        Product saved = get(service.updateProduct(product));
+        assertEquals(product.getVersion(), saved.getVersion());
+        assertEquals("Renamed",
+                dataService.getProductById(5).getProductName());
+
+        assertEquals(10, (int) get(service.countProducts("")));
+        get(service.deleteProduct(5));
+        assertNull(get(service.getProductById(5)));
+        assertEquals(2,
+                (int) get(service.deleteProducts(Arrays.asList(1, 2, 5))));
+        assertEquals(7, get(service.fetchProducts(ProductQuery.all("")))
+                .size());
+    }
+
+    @Test
+    public void testCalls_completeExceptionallyWithWhatTheServiceThrew()
+            throws Exception {
+        Product stale = new Product(dataService.getProductById(1));
+        Product current = new Product(stale);
+        current.setStockCount(7);
+        dataService.updateProduct(current);
+        try {
+            get(service.updateProduct(stale));
+            fail("Stale product stored");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ProductConflictException);
+        }
+    }
+
+    @Test
+    public void testCalls_completeExceptionallyOnErrors() throws Exception {
+        service.close();
+        service = new AsyncDataService(
+                new InMemoryDataService(Collections.emptyList(), products(1)) {
+                    @Override
+                    public Product getProductById(int productId) {
+                        throw new StackOverflowError();
+                    }
+                }, 1);
+        try {
+            get(service.getProductById(0));
+            fail("Error swallowed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof StackOverflowError);
+        }
+    }
+
+    @Test
+    public void testGetProductsById_leavesOutMissingProducts()
+            throws Exception {
+        List<Product> products = get(
+                service.getProductsById(Arrays.asList(3, 42, 7)));
+        assertEquals(2, products.size());
+        assertEquals(3, products.get(0).getId());
+        assertEquals(7, products.get(1).getId());
+    }
+
+    @Test
+    public void testCalls_areRefusedWhenTheQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        service.close();
+        service = new AsyncDataService(
+                new InMemoryDataService(Collections.emptyList(), products(1)) {
+                    @Override
+                    public Product getProductById(int productId) {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return super.getProductById(productId);
+                    }
+                }, 1, 1);
+
+        CompletableFuture<Product> running = service.getProductById(0);
+        // wait for the first one to be taken off the queue
+        long deadline = System.currentTimeMillis() + 5000;
+        while (service.getQueuedCount() > 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        CompletableFuture<Product> queued = service.getProductById(0);
+        CompletableFuture<Product> refused = service.getProductById(0);
+        try {
+            refused.get();
+            fail("Call queued beyond the capacity");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        release.countDown();
+        assertEquals(0, get(running).getId());
+        assertEquals(0, get(queued).getId());
+    }
+
+    private static List<Product> products(int count) {
+        List<Product> products = new ArrayList<>();
+        for (int id = 0; id < count; id++) {
+            Product p = new Product();
+            p.setId(id);
+            p.setProductName("Product " + id);
+            products.add(p);
+        }
+        return products;
+    }
+
+    private static <T> T get(CompletableFuture<T> future) throws Exception {
+        return future.get(5, TimeUnit.SECONDS);
+    }
+}
@@ -1,5 +1,21 @@
 package io.rty.incub.backend;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
 import org.junit.Before;
 import org.junit.Test;
 import io.rty.incub.backend.data.Product;
@@ -7,6 +23,10 @@ import io.rty.incub.backend.mock.MockDataService;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Simple unit test for the back-end data service.
@@ -38,4 +58,291 @@ public class DataServiceTest {
         Product p2 = service.getAllProducts().iterator().next();
         assertEquals("My Test Name", p2.getProductName());
     }
+
+    @Test
+    public void testFetchProducts_returnsSortedPage() throws Exception {
+        List<Product> page = service.fetchProducts(new ProductQuery(5, 10,
+                Collections.singletonList(ProductSortOrder
+                        .desc(ProductSortOrder.Property.PRICE)), null));
+        assertEquals(10, page.size());
+        for (int i = 1; i < page.size(); i++) {
+            BigDecimal previous = page.get(i - 1).getPrice();
+            assertTrue(previous.compareTo(page.get(i).getPrice()) >= 0);
+        }
+    }
+
+    @Test
+    public void testFetchProducts_sortsLikeTheComparators() throws Exception {
+        List<List<ProductSortOrder>> sorts = Arrays.asList(
+                Collections.singletonList(ProductSortOrder
+                        .desc(ProductSortOrder.Property.PRICE)),
+                Collections.singletonList(ProductSortOrder
+                        .asc(ProductSortOrder.Property.PRODUCT_NAME)),
+                Arrays.asList(
+                        ProductSortOrder
+                                .asc(ProductSortOrder.Property.AVAILABILITY),
+                        ProductSortOrder
+                                .desc(ProductSortOrder.Property.STOCK_COUNT)));
+        for (String filter : Arrays.asList("", "a", "cookbooks")) {
+            for (List<ProductSortOrder> sort : sorts) {
+                ProductQuery query = new ProductQuery(3, 20, sort, filter);
+                List<Integer> expected = service.getAllProducts().stream()
+                        .filter(query.getFilterPredicate())
+                        .sorted(query.getComparator()).skip(3).limit(20)
+                        .map(Product::getId).collect(Collectors.toList());
+                List<Integer> actual = service.fetchProducts(query).stream()
+                        .map(Product::getId).collect(Collectors.toList());
+                assertEquals(query.toString(), expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testForEachProduct_handsOutTheProductsOfTheQuery()
+            throws Exception {
+        for (String filter : Arrays.asList("", "a")) {
+            for (List<ProductSortOrder> sort : Arrays.asList(
+                    Collections.<ProductSortOrder> emptyList(),
+                    Collections.singletonList(ProductSortOrder
+                            .desc(ProductSortOrder.Property.PRICE)))) {
+                for (ProductQuery query : Arrays.asList(
+                        new ProductQuery(0, Integer.MAX_VALUE, sort, filter),
+                        new ProductQuery(7, 30, sort, filter))) {
+                    List<Integer> expected = service.fetchProducts(query)
+                            .stream().map(Product::getId)
+                            .collect(Collectors.toList());
+                    List<Integer> actual = new ArrayList<>();
+                    service.forEachProduct(query, p -> actual.add(p.getId()));
+                    assertEquals(query.toString(), expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCountProducts_matchesFilteredFetch() throws Exception {
+        int count = service.countProducts(" Available ");
+        assertTrue(count > 0);
+        assertTrue(count < service.getAllProducts().size());
+        List<Product> matching = service
+                .fetchProducts(ProductQuery.all("AVAILABLE"));
+        assertEquals(count, matching.size());
+    }
+
+    @Test
+    public void testGetAllProducts_isAnImmutableSnapshot() throws Exception {
+        Collection<Product> before = service.getAllProducts();
+        Product p = new Product();
+        p.setProductName("Snapshot test");
+        service.updateProduct(p);
+        try {
+            assertEquals(before.size() + 1, service.getAllProducts().size());
+            assertFalse(before.contains(p));
+            try {
+                before.add(p);
+                fail("snapshot must be read only");
+            } catch (UnsupportedOperationException expected) {
+            }
+        } finally {
+            service.deleteProduct(p.getId());
+        }
+    }
+
+    @Test
+    public void testUpdateProduct_rejectsStaleCopies() throws Exception {
+        Product p = new Product();
+        p.setProductName("Stale copy test");
+        service.updateProduct(p);
+        try {
+            Product first = service.getProductById(p.getId());
+            Product second = service.getProductById(p.getId());
+            first.setStockCount(1);
+            service.updateProduct(first);
+            assertTrue(first.getVersion() > second.getVersion());
+
+            second.setStockCount(2);
+            try {
+                service.updateProduct(second);
+                fail("a stale copy must not overwrite the product");
+            } catch (ProductConflictException expected) {
+                assertEquals(second.getVersion(),
+                        expected.getExpectedVersion());
+                assertEquals(first.getVersion(),
+                        expected.getCurrentVersion());
+            }
+            assertEquals(1, service.getProductById(p.getId()).getStockCount());
+
+            // a product that was not read from the service is not checked
+            Product unversioned = new Product(second);
+            unversioned.setVersion(0);
+            service.updateProduct(unversioned);
+            assertEquals(2, service.getProductById(p.getId()).getStockCount());
+        } finally {
+            service.deleteProduct(p.getId());
+        }
+        try {
+            service.updateProduct(p);
+            fail("a deleted product must not be re-created");
+        } catch (ProductConflictException expected) {
+            assertEquals(0, expected.getCurrentVersion());
+        }
+    }
+
+    @Test
+    public void testBulkOperations_publishOneChangeEach() throws Exception {
+        BlockingQueue<ProductChangeEvent> events = new LinkedBlockingQueue<>();
+        ListenerRegistration registration = service
+                .addProductChangeListener(events::add);
+        Set<Integer> ids = new HashSet<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                Product p = new Product();
+                p.setProductName("Bulk test " + i);
+                service.updateProduct(p);
+                ids.add(p.getId());
+            }
+            assertTrue(events.poll(5, TimeUnit.SECONDS).getCreatedIds()
+                    .containsAll(ids));
+
+            assertEquals(3, service.updateProducts(
+                    p -> p.getProductName().startsWith("Bulk test "),
+                    p -> p.setStockCount(7)));
+            for (int id : ids) {
+                assertEquals(7, service.getProductById(id).getStockCount());
+            }
+            assertEquals(ids, events.poll(5, TimeUnit.SECONDS).getUpdatedIds());
+
+            List<Integer> toUpdate = new ArrayList<>(ids);
+            toUpdate.add(-1);
+            assertEquals(3, service.updateProductsById(toUpdate,
+                    p -> p.setStockCount(p.getStockCount() + 1)));
+            for (int id : ids) {
+                assertEquals(8, service.getProductById(id).getStockCount());
+            }
+            assertEquals(ids, events.poll(5, TimeUnit.SECONDS).getUpdatedIds());
+
+            List<Integer> toDelete = new ArrayList<>(ids);
+            toDelete.add(-1);
+            assertEquals(3, service.deleteProducts(toDelete));
+            assertEquals(0, service.countProducts("bulk test"));
+            assertEquals(ids, events.poll(5, TimeUnit.SECONDS).getDeletedIds());
+            assertNull(events.poll(300, TimeUnit.MILLISECONDS));
+        } finally {
+            registration.remove();
+            service.deleteProducts(ids);
+        }
+    }
+
+    @Test
+    public void testUpsertProducts_storesAllOrNothing() throws Exception {
+        Product first = new Product();
+        first.setProductName("Upsert test first");
+        Product second = new Product();
+        second.setProductName("Upsert test second");
+        service.upsertProducts(Arrays.asList(first, second));
+        assertTrue(first.getId() >= 0 && second.getId() >= 0);
+        try {
+            Product fresh = service.getProductById(first.getId());
+            Product stale = service.getProductById(second.getId());
+            service.updateProduct(service.getProductById(second.getId()));
+            fresh.setStockCount(11);
+            stale.setStockCount(12);
+            Product created = new Product();
+            created.setProductName("Upsert test created");
+            try {
+                service.upsertProducts(Arrays.asList(fresh, stale, created));
+                fail("a stale product must reject the whole batch");
+            } catch (ProductConflictException expected) {
+                assertEquals(second.getId(), expected.getProductId());
+            }
+            assertEquals(0,
+                    service.getProductById(first.getId()).getStockCount());
+            assertEquals(2, service.countProducts("upsert test"));
+
+            stale = service.getProductById(second.getId());
+            stale.setStockCount(12);
+            service.upsertProducts(Arrays.asList(fresh, stale, created));
+            assertEquals(11,
+                    service.getProductById(first.getId()).getStockCount());
+            assertEquals(12,
+                    service.getProductById(second.getId()).getStockCount());
+            assertEquals("Upsert test created", service
+                    .getProductById(created.getId()).getProductName());
+            assertEquals(3, service.deleteProducts(Arrays.asList(
+                    first.getId(), second.getId(), created.getId())));
+        } finally {
+            service.deleteProducts(Arrays.asList(first.getId(), second.getId()));
+        }
+    }
+
+    @Test
+    public void testConcurrentEditorsLoseNoUpdate() throws Exception {
+        Product p = new Product();
+        p.setProductName("Contended product");
+        service.updateProduct(p);
+        int editors = 4;
+        int edits = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(editors);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < editors; t++) {
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < edits; i++) {
+                        while (true) {
+                            Product copy = service.getProductById(p.getId());
+                            copy.setStockCount(copy.getStockCount() + 1);
+                            try {
+                                service.updateProduct(copy);
+                                break;
+                            } catch (ProductConflictException e) {
+                                // read again and retry
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+            assertEquals(editors * edits,
+                    service.getProductById(p.getId()).getStockCount());
+        } finally {
+            executor.shutdown();
+            service.deleteProduct(p.getId());
+        }
+    }
+
+    @Test
+    public void testConcurrentReadsAndWrites() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    Product p = new Product();
+                    p.setProductName("Concurrent " + i);
+                    service.updateProduct(p);
+                    service.deleteProduct(p.getId());
+                }
+            });
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                readers.add(executor.submit(() -> {
+                    while (!writer.isDone()) {
+                        Product first = service.getAllProducts().iterator()
+                                .next();
+                        assertNotNull(service.getProductById(first.getId()));
+                        service.fetchProducts(ProductQuery.all("concurrent"));
+                        service.countProducts("");
+                    }
+                }));
+            }
+            writer.get();
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, service.countProducts("concurrent"));
+    }
 }
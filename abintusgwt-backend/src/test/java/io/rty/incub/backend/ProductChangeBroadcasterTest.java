@@ -0,0 +1,78 @@
+package io.rty.incub.backend;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit test for the coalescing of product change notifications.
+ */
+public class ProductChangeBroadcasterTest {
+
+    private ProductChangeBroadcaster broadcaster;
+    private BlockingQueue<ProductChangeEvent> events;
+    private ListenerRegistration registration;
+
+    @Before
+    public void setUp() throws Exception {
+        broadcaster = new ProductChangeBroadcaster(20);
+        events = new LinkedBlockingQueue<>();
+        registration = broadcaster.addListener(events::add);
+    }
+
+    @Test
+    public void testBurstIsDeliveredAsOneCoalescedEvent() throws Exception {
+        broadcaster.productCreated(1);
+        broadcaster.productUpdated(1);
+        broadcaster.productCreated(2);
+        broadcaster.productDeleted(2);
+        broadcaster.productUpdated(3);
+        broadcaster.productUpdated(3);
+        broadcaster.productUpdated(4);
+        broadcaster.productDeleted(4);
+
+        ProductChangeEvent event = events.poll(5, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals(Collections.singleton(1), event.getCreatedIds());
+        assertEquals(Collections.singleton(3), event.getUpdatedIds());
+        assertEquals(Collections.singleton(4), event.getDeletedIds());
+        assertNull(events.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRemovedListenerIsNotNotified() throws Exception {
+        broadcaster.productUpdated(1);
+        assertEquals(new HashSet<>(Arrays.asList(1)),
+                events.poll(5, TimeUnit.SECONDS).getUpdatedIds());
+
+        registration.remove();
+        broadcaster.productUpdated(2);
+        assertNull(events.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testBroadcastersShareTheNotificationThread() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            ProductChangeBroadcaster other = new ProductChangeBroadcaster(0);
+            other.addListener(events::add);
+            other.productUpdated(i);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(events.poll(5, TimeUnit.SECONDS));
+        }
+        long notifiers = Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().equals("product-change-notifier"))
+                .count();
+        assertEquals(1, notifiers);
+    }
+}
@@ -0,0 +1,58 @@
+package io.rty.incub.backend;
+
+import java.util.concurrent.ThreadFactory;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for creating back-end threads as virtual threads when asked to.
+ */
+public class VirtualThreadsTest {
+
+    @After
+    public void tearDown() {
+        System.clearProperty(VirtualThreads.VIRTUAL_THREADS_PROPERTY);
+    }
+
+    @Test
+    public void testFactory_createsDaemonPlatformThreadsByDefault() {
+        assertFalse(VirtualThreads.isEnabled());
+        ThreadFactory factory = VirtualThreads.factory("worker");
+        Thread first = factory.newThread(() -> {
+        });
+        Thread second = factory.newThread(() -> {
+        });
+        assertEquals("worker-1", first.getName());
+        assertEquals("worker-2", second.getName());
+        assertTrue(first.isDaemon());
+    }
+
+    @Test
+    public void testFactory_createsVirtualThreadsWhenEnabledAndAvailable()
+            throws Exception {
+        System.setProperty(VirtualThreads.VIRTUAL_THREADS_PROPERTY, "true");
+        boolean available;
+        try {
+            Thread.class.getMethod("ofVirtual");
+            available = true;
+        } catch (NoSuchMethodException e) {
+            available = false;
+        }
+        assertEquals(available, VirtualThreads.isEnabled());
+
+        Thread thread = VirtualThreads.factory("worker").newThread(() -> {
+        });
+        assertEquals("worker-1", thread.getName());
+        // virtual threads are always daemon threads
+        assertTrue(thread.isDaemon());
+        if (available) {
+            assertTrue((Boolean) Thread.class.getMethod("isVirtual")
+                    .invoke(thread));
+        }
+    }
+}
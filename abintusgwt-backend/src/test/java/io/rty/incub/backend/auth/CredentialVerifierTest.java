@@ -0,0 +1,188 @@
+package io.rty.incub.backend.auth;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for checking passwords in the background and throttling failed
+ * logins.
+ */
+public class CredentialVerifierTest {
+
+    private InMemoryCredentialStore store;
+    private AtomicLong clock;
+    private CredentialVerifier verifier;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryCredentialStore();
+        store.setPasswordHash("admin",
+                PasswordHash.create("secret".toCharArray(), 1000));
+        clock = new AtomicLong();
+        verifier = createVerifier(store, 2, 8);
+    }
+
+    @After
+    public void tearDown() {
+        verifier.close();
+    }
+
+    @Test
+    public void testVerify_checksThePassword() throws Exception {
+        char[] password = "secret".toCharArray();
+        assertTrue(verify("admin", password));
+        // cleared once checked
+        assertEquals(new String(new char[6]), new String(password));
+
+        assertFalse(verify("admin", "wrong".toCharArray()));
+        assertFalse(verify("nobody", "secret".toCharArray()));
+        assertFalse(verify("", "secret".toCharArray()));
+    }
+
+    @Test
+    public void testVerify_makesFailingUsersWaitLongerAndLonger()
+            throws Exception {
+        assertFalse(verify("admin", "1".toCharArray()));
+        assertFalse(verify("admin", "2".toCharArray()));
+        assertEquals(1000, throttled("admin"));
+
+        clock.addAndGet(999);
+        assertEquals(1, throttled("admin"));
+        clock.addAndGet(1);
+        assertFalse(verify("admin", "3".toCharArray()));
+        assertEquals(2000, throttled("admin"));
+
+        clock.addAndGet(2000);
+        assertTrue(verify("admin", "secret".toCharArray()));
+        // a success resets the count
+        assertFalse(verify("admin", "4".toCharArray()));
+        assertFalse(verify("admin", "5".toCharArray()));
+        assertEquals(1000, throttled("admin"));
+
+        // and failures are forgotten after the longest wait
+        clock.addAndGet(8000);
+        assertFalse(verify("admin", "6".toCharArray()));
+        assertFalse(verify("admin", "7".toCharArray()));
+    }
+
+    @Test
+    public void testVerify_refusesConcurrentAttemptsBeyondTheFreeOnes()
+            throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        verifier.close();
+        verifier = createVerifier(blockingStore(release), 2, 8);
+
+        CompletableFuture<Boolean> first = verifier.verify("admin",
+                "1".toCharArray());
+        CompletableFuture<Boolean> second = verifier.verify("admin",
+                "2".toCharArray());
+        CompletableFuture<Boolean> third = verifier.verify("admin",
+                "3".toCharArray());
+        assertTrue(third.isCompletedExceptionally());
+        release.countDown();
+        assertFalse(first.get(5, TimeUnit.SECONDS));
+        assertFalse(second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testVerify_refusesLoginsWhenTheQueueIsFull()
+            throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        verifier.close();
+        verifier = createVerifier(blockingStore(release), 1, 1);
+
+        CompletableFuture<Boolean> running = verifier.verify("a",
+                "x".toCharArray());
+        CompletableFuture<Boolean> queued = verifier.verify("b",
+                "x".toCharArray());
+        // wait for the first one to be taken off the queue
+        long deadline = System.currentTimeMillis() + 5000;
+        while (verifier.getQueuedCount() > 1
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        CompletableFuture<Boolean> refused = verifier.verify("c",
+                "x".toCharArray());
+        try {
+            refused.get();
+            fail("Login queued beyond the capacity");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        release.countDown();
+        assertFalse(running.get(5, TimeUnit.SECONDS));
+        assertFalse(queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testVerify_completesExceptionallyOnErrors() throws Exception {
+        verifier.close();
+        verifier = createVerifier(new InMemoryCredentialStore() {
+            @Override
+            public PasswordHash getPasswordHash(String username) {
+                throw new OutOfMemoryError();
+            }
+        }, 1, 1);
+        try {
+            verify("admin", "secret".toCharArray());
+            fail("Error swallowed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OutOfMemoryError);
+        }
+    }
+
+    private CredentialVerifier createVerifier(CredentialStore store,
+            int threads, int queueCapacity) {
+        return new CredentialVerifier(store, threads, queueCapacity,
+                new LoginAttempts(16, 2, 1000, 8000,
+                        () -> TimeUnit.MILLISECONDS.toNanos(clock.get())));
+    }
+
+    /**
+     * Returns a store holding lookups until released.
+     */
+    private CredentialStore blockingStore(CountDownLatch release) {
+        PasswordHash hash = store.getPasswordHash("admin");
+        return new InMemoryCredentialStore() {
+            @Override
+            public PasswordHash getPasswordHash(String username) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return hash;
+            }
+        };
+    }
+
+    private boolean verify(String username, char[] password)
+            throws Exception {
+        return verifier.verify(username, password).get(5, TimeUnit.SECONDS);
+    }
+
+    private long throttled(String username) throws Exception {
+        try {
+            verify(username, "secret".toCharArray());
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof LoginThrottledException);
+            return ((LoginThrottledException) e.getCause())
+                    .getRetryAfterMillis();
+        }
+        fail("Login not throttled");
+        return 0;
+    }
+}
@@ -0,0 +1,112 @@
+package io.rty.incub.backend.auth;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for credentials kept in a file, and the hashes in it.
+ */
+public class FileCredentialStoreTest {
+
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("credentials-test");
+        file = directory.resolve("credentials");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path f : files.collect(Collectors.toList())) {
+                Files.delete(f);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testPasswordHash_matchesOnlyThePassword() {
+        PasswordHash hash = PasswordHash.create("secret".toCharArray(), 1000);
+        assertTrue(hash.matches("secret".toCharArray()));
+        assertFalse(hash.matches("Secret".toCharArray()));
+        assertFalse(hash.matches(new char[0]));
+
+        PasswordHash parsed = PasswordHash.parse(hash.toString());
+        assertEquals(hash, parsed);
+        assertEquals(1000, parsed.getIterations());
+        assertTrue(parsed.matches("secret".toCharArray()));
+        // a new salt every time
+        assertFalse(hash.equals(
+                PasswordHash.create("secret".toCharArray(), 1000)));
+    }
+
+    @Test
+    public void testSetPasswordHash_isSavedAndReadBack() throws Exception {
+        FileCredentialStore store = new FileCredentialStore(file);
+        assertNull(store.getPasswordHash("admin"));
+
+        PasswordHash admin = PasswordHash.create("a".toCharArray(), 1000);
+        PasswordHash colon = PasswordHash.create("b".toCharArray(), 1000);
+        store.setPasswordHash("admin", admin);
+        store.setPasswordHash("with:colon", colon);
+        store.setPasswordHash("gone", admin);
+        assertTrue(store.removeUser("gone"));
+        assertFalse(store.removeUser("gone"));
+
+        FileCredentialStore reopened = new FileCredentialStore(file);
+        assertEquals(admin, reopened.getPasswordHash("admin"));
+        assertEquals(colon, reopened.getPasswordHash("with:colon"));
+        assertNull(reopened.getPasswordHash("gone"));
+        // only the file itself is left behind
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testOpen_skipsCommentsAndRejectsMalformedLines()
+            throws Exception {
+        PasswordHash hash = PasswordHash.create("a".toCharArray(), 1000);
+        write("# users", "", "admin:" + hash);
+        assertEquals(hash,
+                new FileCredentialStore(file).getPasswordHash("admin"));
+
+        write("admin:" + hash, "broken:pbkdf2-sha256$x$y");
+        try {
+            new FileCredentialStore(file);
+            fail("Malformed line accepted");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(":2:"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetPasswordHash_rejectsMultilineNames() throws Exception {
+        new FileCredentialStore(file).setPasswordHash("a\nb",
+                PasswordHash.create("a".toCharArray(), 1000));
+    }
+
+    private void write(String... lines) throws IOException {
+        List<String> list = Arrays.asList(lines);
+        Files.write(file, list, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,392 @@
+package io.rty.incub.backend.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import io.rty.incub.backend.ListenerRegistration;
+import io.rty.incub.backend.ProductQuery;
+import io.rty.incub.backend.ProductSortOrder;
+import io.rty.incub.backend.ProductSortOrder.Property;
+import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.metrics.MetricRegistry;
+import io.rty.incub.backend.store.InMemoryDataService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for caching the lookups and queries of a data service.
+ */
+public class CachingDataServiceTest {
+
+    private static final ProductQuery APPLES = new ProductQuery(0, 10, null,
+            "apple");
+    private static final ProductQuery PEARS = new ProductQuery(0, 10, null,
+            "pear");
+    private static final ProductQuery PEARS_BY_STOCK = new ProductQuery(0, 10,
+            Collections.singletonList(ProductSortOrder.asc(Property.STOCK_COUNT)),
+            "pear");
+
+    private CountingDataService store;
+    private CachingDataService service;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        store = new CountingDataService();
+        service = new CachingDataService(store, 100, 100,
+                new MetricRegistry());
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testReads_areCachedAndCopied() {
+        Product first = service.getProductById(1);
+        Product second = service.getProductById(1);
+        assertNotSame(first, second);
+        assertEquals(first.getProductName(), second.getProductName());
+        first.setProductName("Changed");
+        assertEquals("Apple 1", service.getProductById(1).getProductName());
+        assertEquals(1, store.lookups.get());
+
+        assertEquals(5, service.fetchProducts(APPLES).size());
+        service.fetchProducts(APPLES).get(0).setProductName("Changed");
+        assertEquals("Apple 0",
+                service.fetchProducts(APPLES).get(0).getProductName());
+        assertEquals(1, store.fetches.get());
+
+        assertEquals(5, service.countProducts(" Apple"));
+        assertEquals(5, service.countProducts("apple"));
+        assertEquals(1, store.counts.get());
+
+        CacheStats stats = service.getProductStats();
+        assertEquals(2, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getSize());
+    }
+
+    @Test
+    public void testReads_ofMissingProductsAndLongPagesAreNotCached() {
+        assertNull(service.getProductById(100));
+        assertNull(service.getProductById(100));
+        assertEquals(2, store.lookups.get());
+
+        ProductQuery export = ProductQuery.all("");
+        service.fetchProducts(export);
+        service.fetchProducts(export);
+        assertEquals(2, store.fetches.get());
+    }
+
+    @Test
+    public void testUpdate_invalidatesOnlyWhatItChanged() {
+        service.getProductById(0);
+        service.getProductById(1);
+        service.fetchProducts(APPLES);
+        service.fetchProducts(PEARS);
+        service.fetchProducts(PEARS_BY_STOCK);
+        service.countProducts("apple");
+        service.countProducts("pear");
+
+        Product apple = service.getProductById(1);
+        apple.setStockCount(42);
+        service.updateProduct(apple);
+        store.reset();
+
+        assertEquals(42, service.getProductById(1).getStockCount());
+        assertEquals(42, service.fetchProducts(APPLES).get(1).getStockCount());
+        service.getProductById(0);
+        service.fetchProducts(PEARS);
+        service.fetchProducts(PEARS_BY_STOCK);
+        service.countProducts("apple");
+        service.countProducts("pear");
+        // the product and the page it is on, nothing else
+        assertEquals(1, store.lookups.get());
+        assertEquals(1, store.fetches.get());
+        assertEquals(0, store.counts.get());
+    }
+
+    @Test
+    public void testUpdate_changingTheMatchInvalidatesBothFilters() {
+        service.fetchProducts(APPLES);
+        service.fetchProducts(PEARS_BY_STOCK);
+        service.countProducts("apple");
+        service.countProducts("pear");
+
+        Product apple = service.getProductById(1);
+        apple.setProductName("Pear 1");
+        service.updateProduct(apple);
+        store.reset();
+
+        assertEquals(4, service.countProducts("apple"));
+        assertEquals(6, service.countProducts("pear"));
+        assertEquals(4, service.fetchProducts(APPLES).size());
+        assertEquals(6, service.fetchProducts(PEARS_BY_STOCK).size());
+        assertEquals(2, store.counts.get());
+        assertEquals(2, store.fetches.get());
+    }
+
+    @Test
+    public void testCreateAndDelete_invalidateTheMatchingQueries() {
+        service.fetchProducts(APPLES);
+        service.fetchProducts(PEARS);
+        service.countProducts("pear");
+
+        Product pear = new Product();
+        pear.setId(-1);
+        pear.setProductName("Pear new");
+        service.updateProduct(pear);
+        assertEquals(6, service.countProducts("pear"));
+        assertEquals(6, service.fetchProducts(PEARS).size());
+
+        service.getProductById(pear.getId());
+        service.deleteProduct(pear.getId());
+        assertNull(service.getProductById(pear.getId()));
+        assertEquals(5, service.countProducts("pear"));
+        assertEquals(5, service.fetchProducts(PEARS).size());
+
+        store.reset();
+        service.fetchProducts(APPLES);
+        assertEquals(0, store.fetches.get());
+    }
+
+    @Test
+    public void testBulkWrites_invalidateEveryQuery() {
+        service.getProductById(1);
+        service.getProductById(6);
+        service.fetchProducts(APPLES);
+        service.countProducts("pear");
+
+        assertEquals(1, service.updateProducts(p -> p.getId() == 1,
+                p -> p.setStockCount(7)));
+        assertEquals(7, service.getProductById(1).getStockCount());
+        assertEquals(7, service.fetchProducts(APPLES).get(1).getStockCount());
+
+        assertEquals(1, service.deleteProducts(Arrays.asList(6, 100)));
+        assertNull(service.getProductById(6));
+        assertEquals(4, service.countProducts("pear"));
+
+        Product apple = service.getProductById(0);
+        apple.setProductName("Pear 0");
+        service.upsertProducts(Collections.singletonList(apple));
+        assertEquals("Pear 0", service.getProductById(0).getProductName());
+        assertEquals(4, service.fetchProducts(APPLES).size());
+    }
+
+    @Test
+    public void testRead_overlappingAWriteIsNotCached() throws Exception {
+        service.countProducts("pear");
+        store.reset();
+        CountDownLatch read = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        store.afterRead = () -> {
+            read.countDown();
+            await(written);
+        };
+        Future<List<Product>> stale = executor
+                .submit(() -> service.fetchProducts(PEARS));
+        await(read);
+        store.afterRead = null;
+        Product pear = service.getProductById(5);
+        pear.setStockCount(99);
+        service.updateProduct(pear);
+        written.countDown();
+
+        assertEquals(0, stale.get(5, TimeUnit.SECONDS).get(0).getStockCount());
+        assertEquals(99, service.fetchProducts(PEARS).get(0).getStockCount());
+        assertEquals(2, store.fetches.get());
+    }
+
+    @Test
+    public void testConcurrentWrites_leaveNoStaleEntries() throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Future<?>> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(executor.submit(() -> {
+                while (running.get()) {
+                    service.getProductById(1);
+                    service.fetchProducts(APPLES);
+                    service.countProducts("pear");
+                }
+            }));
+        }
+        List<Future<?>> writers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            writers.add(executor.submit(() -> {
+                for (int n = 0; n < 500; n++) {
+                    Product apple = service.getProductById(1);
+                    apple.setStockCount(apple.getStockCount() + 1);
+                    apple.setVersion(0);
+                    service.updateProduct(apple);
+                    service.updateProducts(p -> p.getId() == 6,
+                            p -> p.setProductName(p.getProductName()
+                                    .startsWith("Pear") ? "Fig 6"
+                                            : "Pear 6"));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get(30, TimeUnit.SECONDS);
+        }
+        running.set(false);
+        for (Future<?> reader : readers) {
+            reader.get(5, TimeUnit.SECONDS);
+        }
+
+        Product stored = store.getProductById(1);
+        assertEquals(stored.getStockCount(),
+                service.getProductById(1).getStockCount());
+        assertEquals(stored.getStockCount(),
+                service.fetchProducts(APPLES).get(1).getStockCount());
+        assertEquals(store.countProducts("pear"),
+                service.countProducts("pear"));
+        assertTrue(service.getPageStats().getHits() > 0);
+    }
+
+    @Test
+    public void testListeners_neverReadOlderThanTheirEvent() throws Exception {
+        // widens the gap between the store write and the end of the write
+        store.afterWrite = () -> sleep(2);
+        AtomicInteger events = new AtomicInteger();
+        AtomicInteger stale = new AtomicInteger();
+        ListenerRegistration registration = service
+                .addProductChangeListener(event -> {
+                    if (!event.getUpdatedIds().contains(1)) {
+                        return;
+                    }
+                    events.incrementAndGet();
+                    // at least as recent as the write the event is about
+                    int stored = store.getProductById(1).getStockCount();
+                    if (service.getProductById(1).getStockCount() < stored
+                            || service.fetchProducts(APPLES).get(1)
+                                    .getStockCount() < stored) {
+                        stale.incrementAndGet();
+                    }
+                });
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Future<?>> readers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            readers.add(executor.submit(() -> {
+                while (running.get()) {
+                    service.getProductById(1);
+                    service.fetchProducts(APPLES);
+                }
+            }));
+        }
+        try {
+            for (int n = 0; n < 500; n++) {
+                Product apple = service.getProductById(1);
+                apple.setStockCount(apple.getStockCount() + 1);
+                service.updateProduct(apple);
+            }
+        } finally {
+            running.set(false);
+            registration.remove();
+        }
+        for (Future<?> reader : readers) {
+            reader.get(5, TimeUnit.SECONDS);
+        }
+        assertTrue(events.get() > 0);
+        assertEquals(0, stale.get());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Five apples, ids 0 to 4, and five pears, ids 5 to 9, counting reads.
+     */
+    private static class CountingDataService extends InMemoryDataService {
+
+        private final AtomicInteger lookups = new AtomicInteger();
+        private final AtomicInteger fetches = new AtomicInteger();
+        private final AtomicInteger counts = new AtomicInteger();
+        private volatile Runnable afterRead;
+        private volatile Runnable afterWrite;
+
+        CountingDataService() {
+            super(Collections.emptyList(), products());
+        }
+
+        private static List<Product> products() {
+            List<Product> products = new ArrayList<>();
+            for (int id = 0; id < 10; id++) {
+                Product p = new Product();
+                p.setId(id);
+                p.setProductName((id < 5 ? "Apple " : "Pear ") + id);
+                products.add(p);
+            }
+            return products;
+        }
+
+        void reset() {
+            lookups.set(0);
+            fetches.set(0);
+            counts.set(0);
+        }
+
+        @Override
+        public Product getProductById(int productId) {
+            lookups.incrementAndGet();
+            return super.getProductById(productId);
+        }
+
+        @Override
+        public List<Product> fetchProducts(ProductQuery query) {
+            fetches.incrementAndGet();
+            List<Product> page = super.fetchProducts(query);
+            Runnable after = afterRead;
+            if (after != null) {
+                after.run();
+            }
+            return page;
+        }
+
+        @Override
+        public void updateProduct(Product p) {
+            super.updateProduct(p);
+            Runnable after = afterWrite;
+            if (after != null) {
+                after.run();
+            }
+        }
+
+        @Override
+        public int countProducts(String filter) {
+            counts.incrementAndGet();
+            return super.countProducts(filter);
+        }
+    }
+}
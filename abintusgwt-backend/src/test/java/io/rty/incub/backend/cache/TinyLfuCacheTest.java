@@ -0,0 +1,73 @@
+package io.rty.incub.backend.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the frequency-aware cache of the caching data service.
+ */
+public class TinyLfuCacheTest {
+
+    @Test
+    public void testScan_keepsFrequentlyUsedKeys() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100);
+        // 50 keys used all along, each after 100 keys of a scan used once:
+        // more distinct keys than a least recently used cache of 100 keeps
+        for (int n = 0; n < 6000; n++) {
+            int key = n % 3 == 0 ? n / 3 % 50 : 1000 + n;
+            if (cache.get(key) == null) {
+                cache.put(key, "value " + key);
+            }
+        }
+        assertEquals(100, cache.size());
+        int kept = 0;
+        for (int key = 0; key < 50; key++) {
+            if (cache.get(key) != null) {
+                kept++;
+            }
+        }
+        assertTrue("Kept " + kept, kept >= 45);
+    }
+
+    @Test
+    public void testStats_countHitsMissesAndEvictions() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(2);
+        assertNull(cache.get(1));
+        cache.put(1, "one");
+        assertEquals("one", cache.get(1));
+        cache.put(2, "two");
+        cache.put(3, "three");
+
+        CacheStats stats = cache.stats();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(0.5, stats.getHitRate(), 0);
+        assertEquals(1, stats.getEvictions());
+        assertEquals(2, stats.getSize());
+        assertEquals(2, stats.getCapacity());
+    }
+
+    @Test
+    public void testRemove_dropsEntries() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(10);
+        for (int key = 0; key < 10; key++) {
+            cache.put(key, "value " + key);
+        }
+        cache.remove(3);
+        cache.removeIf((key, value) -> key % 2 == 0);
+        assertEquals(4, cache.size());
+        assertNull(cache.get(3));
+        assertNull(cache.get(4));
+        assertEquals("value 5", cache.get(5));
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_rejectsTinyCapacity() {
+        new TinyLfuCache<>(1);
+    }
+}
@@ -0,0 +1,87 @@
+package io.rty.incub.backend.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CategorySetTest {
+
+    private static Category category(int i) {
+        return Category.valueOf("Set test category " + i);
+    }
+
+    @Test
+    public void testValueOf_internsByName() {
+        Category category = category(1);
+        assertSame(category, Category.valueOf("Set test category 1"));
+        assertSame(category, Category.forId(category.getId()));
+    }
+
+    @Test
+    public void testOf_sharesSetsOfTheSameCategories() {
+        CategorySet set = CategorySet.of(category(1), category(2));
+        assertSame(set, CategorySet.of(category(2), category(1)));
+        assertSame(CategorySet.empty(), CategorySet.of());
+    }
+
+    @Test
+    public void testContainsAndIterate_inIdOrder() {
+        List<Category> categories = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            categories.add(category(i));
+        }
+        Category first = categories.get(3);
+        Category far = categories.get(99);
+        CategorySet set = CategorySet.of(far, first);
+
+        assertEquals(2, set.size());
+        assertTrue(set.contains(first));
+        assertTrue(set.contains(far));
+        assertFalse(set.contains(categories.get(4)));
+        assertEquals(Arrays.asList(first, far), new ArrayList<>(set));
+    }
+
+    @Test
+    public void testIntersects() {
+        CategorySet set = CategorySet.of(category(1), category(2));
+        assertTrue(set.intersects(CategorySet.of(category(2), category(3))));
+        assertFalse(set.intersects(CategorySet.of(category(3))));
+        assertFalse(set.intersects(CategorySet.empty()));
+    }
+
+    @Test
+    public void testEquals_asAnySet() {
+        CategorySet set = CategorySet.of(category(1), category(2));
+        HashSet<Category> hashSet = new HashSet<>(
+                Arrays.asList(category(2), category(1)));
+        assertEquals(hashSet, set);
+        assertEquals(set, hashSet);
+        assertEquals(hashSet.hashCode(), set.hashCode());
+    }
+
+    @Test
+    public void testSerialization_resolvesCategoriesByName()
+            throws Exception {
+        CategorySet set = CategorySet.of(category(1), category(2));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(set);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertSame(set, in.readObject());
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package io.rty.incub.backend.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import io.rty.incub.backend.ProductQuery;
+import io.rty.incub.backend.ProductSortOrder;
+import io.rty.incub.backend.data.Availability;
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.store.InMemoryDataService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for exporting products to CSV, JSON and XLSX files.
+ */
+public class ProductExporterTest {
+
+    private List<Category> categories;
+    private InMemoryDataService service;
+
+    @Before
+    public void setUp() throws Exception {
+        categories = Arrays.asList(Category.valueOf("Export test fiction"),
+                Category.valueOf("Export test poetry"));
+        List<Product> products = new ArrayList<>();
+        String[] names = { "Plain", "Comma, separated", "\"Quoted\" title",
+                "Two\nlines", " Spaced ", "Fish & <chips>" };
+        for (int i = 0; i < 2500; i++) {
+            Product p = new Product();
+            p.setId(i);
+            p.setProductName(names[i % names.length] + " " + i);
+            p.setPrice(new BigDecimal(i).movePointLeft(2));
+            p.setStockCount(i % 13);
+            p.setAvailability(Availability.values()[i % 3]);
+            p.setCategory(i % 4 == 0 ? Collections.emptySet()
+                    : new HashSet<>(categories.subList(0, i % 4 == 1 ? 1 : 2)));
+            products.add(p);
+        }
+        service = new InMemoryDataService(categories, products);
+    }
+
+    @Test
+    public void testCsvAndJson_importBackAsExported() throws Exception {
+        ProductQuery query = new ProductQuery(0, Integer.MAX_VALUE,
+                Collections.singletonList(ProductSortOrder
+                        .desc(ProductSortOrder.Property.STOCK_COUNT)),
+                "fiction");
+        List<Product> expected = service.fetchProducts(query);
+        assertTrue(expected.size() > 1000);
+        for (ProductFeedFormat format : Arrays.asList(ProductFeedFormat.CSV,
+                ProductFeedFormat.JSON)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(expected.size(), new ProductExporter(service)
+                    .exportProducts(query, format, out));
+
+            InMemoryDataService imported = new InMemoryDataService(
+                    categories, Collections.emptyList());
+            ProductImportResult result = new ProductImporter(imported)
+                    .importProducts(
+                            new ByteArrayInputStream(out.toByteArray()),
+                            format, progress -> {
+                            });
+            assertEquals(result.getErrors().toString(), 0,
+                    result.getRejected());
+            List<Product> actual = new ArrayList<>(
+                    imported.getAllProducts());
+            // the importer trims values
+            for (Function<Product, Object> property : Arrays
+                    .<Function<Product, Object>> asList(
+                            p -> p.getProductName().trim(), Product::getPrice,
+                            Product::getAvailability,
+                            Product::getStockCount,
+                            Product::getCategory)) {
+                assertEquals(format.toString(),
+                        expected.stream().map(property)
+                                .collect(Collectors.toList()),
+                        actual.stream().map(property)
+                                .collect(Collectors.toList()));
+            }
+        }
+    }
+
+    @Test
+    public void testCsv_quotesOnlyWhatNeedsQuotes() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ProductExporter(service).exportProducts(
+                new ProductQuery(0, 6, null, null), ProductFeedFormat.CSV,
+                out);
+        assertEquals("Product name,Price,Availability,Stock count,Category\r\n"
+                + "Plain 0,0.00,Coming,0,\r\n"
+                + "\"Comma, separated 1\",0.01,Available,1,Export test fiction\r\n"
+                + "\"\"\"Quoted\"\" title 2\",0.02,Discontinued,2,"
+                + "\"Export test fiction, Export test poetry\"\r\n"
+                + "\"Two\nlines 3\",0.03,Coming,3,"
+                + "\"Export test fiction, Export test poetry\"\r\n"
+                + "\" Spaced  4\",0.04,Available,4,\r\n"
+                + "Fish & <chips> 5,0.05,Discontinued,5,Export test fiction\r\n",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCsv_neutralisesFormulasAndImportsThemBack()
+            throws Exception {
+        List<String> names = Arrays.asList("=HYPERLINK(\"http://x\")",
+                "+1", "-1", "@SUM(A1)", "'=Quoted", "''+Twice", "'Plain",
+                "Safe = name");
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            Product p = new Product();
+            p.setId(i);
+            p.setProductName(names.get(i));
+            products.add(p);
+        }
+        service = new InMemoryDataService(categories, products);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ProductExporter(service).exportProducts(ProductQuery.all(null),
+                ProductFeedFormat.CSV, out);
+        String csv = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(csv, csv.contains("\r\n\"'=HYPERLINK(\"\"http://x\"\")\","));
+        assertTrue(csv, csv.contains("\r\n'+1,"));
+        assertTrue(csv, csv.contains("\r\n'-1,"));
+        assertTrue(csv, csv.contains("\r\n'@SUM(A1),"));
+        assertTrue(csv, csv.contains("\r\n''=Quoted,"));
+        assertTrue(csv, csv.contains("\r\n'''+Twice,"));
+        assertTrue(csv, csv.contains("\r\n'Plain,"));
+        assertTrue(csv, csv.contains("\r\nSafe = name,"));
+
+        InMemoryDataService imported = new InMemoryDataService(categories,
+                Collections.emptyList());
+        ProductImportResult result = new ProductImporter(imported)
+                .importProducts(new ByteArrayInputStream(out.toByteArray()),
+                        ProductFeedFormat.CSV, progress -> {
+                        });
+        assertEquals(result.getErrors().toString(), 0, result.getRejected());
+        assertEquals(names, imported.getAllProducts().stream()
+                .map(Product::getProductName).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testXlsx_splitsLongExportsIntoSheets() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XlsxWriter writer = new XlsxWriter(out, 3);
+        service.forEachProduct(new ProductQuery(0, 5, null, null), p -> {
+            try {
+                writer.write(p);
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+        writer.finish();
+
+        Map<String, Document> parts = readParts(out.toByteArray());
+        assertEquals(new HashSet<>(Arrays.asList("[Content_Types].xml",
+                "_rels/.rels", "xl/workbook.xml", "xl/_rels/workbook.xml.rels",
+                "xl/styles.xml", "xl/worksheets/sheet1.xml",
+                "xl/worksheets/sheet2.xml", "xl/worksheets/sheet3.xml")),
+                parts.keySet());
+        assertEquals(3, parts.get("xl/workbook.xml")
+                .getElementsByTagName("sheet").getLength());
+        Document first = parts.get("xl/worksheets/sheet1.xml");
+        assertEquals(3, first.getElementsByTagName("row").getLength());
+        assertEquals("Product name",
+                first.getElementsByTagName("t").item(0).getTextContent());
+        assertEquals(2, parts.get("xl/worksheets/sheet3.xml")
+                .getElementsByTagName("row").getLength());
+        assertEquals(" Spaced  4",
+                parts.get("xl/worksheets/sheet3.xml")
+                        .getElementsByTagName("t").item(5).getTextContent());
+    }
+
+    /**
+     * Parses every part of the zipped workbook, in the order written.
+     */
+    private static Map<String, Document> readParts(byte[] workbook)
+            throws Exception {
+        Map<String, Document> parts = new LinkedHashMap<>();
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        try (ZipInputStream zip = new ZipInputStream(
+                new ByteArrayInputStream(workbook))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                ByteArrayOutputStream part = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = zip.read(buffer)) > 0) {
+                    part.write(buffer, 0, read);
+                }
+                parts.put(entry.getName(), factory.newDocumentBuilder()
+                        .parse(new ByteArrayInputStream(part.toByteArray())));
+            }
+        }
+        return parts;
+    }
+}
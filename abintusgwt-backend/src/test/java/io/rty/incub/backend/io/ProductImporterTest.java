@@ -0,0 +1,220 @@
+package io.rty.incub.backend.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Before;
+import org.junit.Test;
+import io.rty.incub.backend.ProductQuery;
+import io.rty.incub.backend.data.Availability;
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.store.InMemoryDataService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for importing products from CSV and JSON feeds.
+ */
+public class ProductImporterTest {
+
+    private Category romance;
+    private Category mystery;
+    private InMemoryDataService service;
+
+    @Before
+    public void setUp() throws Exception {
+        romance = Category.valueOf("Import test romance");
+        mystery = Category.valueOf("Import test mystery");
+        service = new InMemoryDataService(Arrays.asList(romance, mystery),
+                Collections.emptyList());
+    }
+
+    @Test
+    public void testCsv_importsQuotedFieldsAndReportsBadRecords()
+            throws Exception {
+        String csv = "﻿id,Product name,Price,Stock count,Availability,Category\r\n"
+                + "7,\"Love, \"\"actually\"\"\",12.50,3,available,"
+                + "\"import test romance, Import test mystery\"\r\n"
+                + "\n"
+                + "8,\"Two\nlines\",,,,\n"
+                + "9,X,1,1,Coming,\n"
+                + "10,Negative stock,1,-1,Coming,\n"
+                + "11,Bad price,cheap,1,Coming,\n"
+                + "12,Unknown category,1,1,Coming,Poetry\n"
+                + "13,Bad availability,1,1,Sold out,\n"
+                + "14,Last one,1E+2,5,DISCONTINUED,Import test mystery";
+        ProductImportResult result = importFeed(csv, ProductFeedFormat.CSV,
+                2, new ArrayList<>());
+
+        assertEquals(8, result.getRecords());
+        assertEquals(3, result.getImported());
+        assertEquals(5, result.getRejected());
+        assertEquals(Arrays.asList(
+                "Line 6: productName: Product name must have at least two characters",
+                "Line 7: stockCount: Can't have negative amount in stock",
+                "Line 8: price: not a number: cheap",
+                "Line 9: category: unknown category: Poetry",
+                "Line 10: availability: unknown availability: Sold out"),
+                result.getErrors());
+
+        List<Product> products = new ArrayList<>(service.getAllProducts());
+        assertEquals(3, products.size());
+        Product first = products.get(0);
+        assertEquals(0, first.getId());
+        assertEquals("Love, \"actually\"", first.getProductName());
+        assertEquals(new BigDecimal("12.50"), first.getPrice());
+        assertEquals(3, first.getStockCount());
+        assertEquals(Availability.AVAILABLE, first.getAvailability());
+        assertEquals(new java.util.HashSet<>(Arrays.asList(romance, mystery)),
+                first.getCategory());
+        Product second = products.get(1);
+        assertEquals("Two\nlines", second.getProductName());
+        assertEquals(Availability.COMING, second.getAvailability());
+        assertEquals(0, second.getPrice().signum());
+        assertEquals(0, products.get(2).getPrice()
+                .compareTo(new BigDecimal(100)));
+    }
+
+    @Test
+    public void testCsv_unescapesFormulasInNamesOnly() throws Exception {
+        String csv = "name,price\n'=Love,1\n'-Minus,'-1\n";
+        ProductImportResult result = importFeed(csv, ProductFeedFormat.CSV,
+                10, new ArrayList<>());
+        assertEquals(1, result.getImported());
+        assertEquals(Collections.singletonList(
+                "Line 3: price: not a number: '-1"), result.getErrors());
+        assertEquals("=Love", service.getProductById(0).getProductName());
+    }
+
+    @Test
+    public void testJson_importsArraysAndDelimitedObjects() throws Exception {
+        String array = "[\n"
+                + "  {\"productName\": \"Caf\\u00e9 stories\", \"price\": 9.99,"
+                + " \"stockCount\": 2, \"extra\": {\"nested\": [1, true, null]},"
+                + " \"category\": [\"Import test romance\"]},\n"
+                + "  {\"name\": \"Plain\", \"availability\": \"Available\"},\n"
+                + "  {\"name\": \"Bad\", \"price\": [1]}\n"
+                + "]";
+        ProductImportResult result = importFeed(array,
+                ProductFeedFormat.JSON, 10, new ArrayList<>());
+        assertEquals(2, result.getImported());
+        assertEquals(Collections.singletonList(
+                "Line 4: price: not a single value"), result.getErrors());
+        Product cafe = service.getProductById(0);
+        assertEquals("Café stories", cafe.getProductName());
+        assertEquals(new BigDecimal("9.99"), cafe.getPrice());
+        assertEquals(Collections.singleton(romance), cafe.getCategory());
+
+        String delimited = "{\"name\": \"One\"}\n{\"name\": \"Two\"}\n";
+        result = importFeed(delimited, ProductFeedFormat.JSON, 10,
+                new ArrayList<>());
+        assertEquals(2, result.getImported());
+        assertEquals(4, service.countProducts(""));
+    }
+
+    @Test
+    public void testMalformedFeedsFailWithTheirLine() throws Exception {
+        assertFeedException("name\n\"Unterminated\n\n", ProductFeedFormat.CSV,
+                2);
+        assertFeedException("price\n1\n", ProductFeedFormat.CSV, 1);
+        assertFeedException("[{\"name\": \"One\"},\n{\"name\": }]",
+                ProductFeedFormat.JSON, 2);
+        assertFeedException("[{\"name\": \"One\"}", ProductFeedFormat.JSON,
+                1);
+    }
+
+    @Test
+    public void testProgressIsReportedPerBatch() throws Exception {
+        StringBuilder csv = new StringBuilder("name\n");
+        for (int i = 0; i < 25; i++) {
+            csv.append("Product ").append(i).append('\n');
+        }
+        List<ProductImportResult> progress = new ArrayList<>();
+        ProductImportResult result = importFeed(csv.toString(),
+                ProductFeedFormat.CSV, 10, progress);
+        assertEquals(3, progress.size());
+        assertEquals(10, progress.get(0).getImported());
+        assertEquals(20, progress.get(1).getImported());
+        assertEquals(25, result.getImported());
+        assertEquals(csv.length(), result.getBytesRead());
+    }
+
+    @Test
+    public void testLargeFeedIsStreamed() throws Exception {
+        int rows = 200_000;
+        ProductImportResult result = new ProductImporter(service)
+                .importProducts(generatedCsv(rows), ProductFeedFormat.CSV,
+                        progress -> {
+                        });
+        assertEquals(rows, result.getImported());
+        assertEquals(rows, service.countProducts(""));
+        assertEquals(rows, service.countProducts("import test mystery"));
+        assertEquals(1, service.fetchProducts(
+                ProductQuery.all("generated product 199999")).size());
+    }
+
+    private ProductImportResult importFeed(String feed,
+            ProductFeedFormat format, int batchSize,
+            List<ProductImportResult> progress) throws Exception {
+        return new ProductImporter(service, batchSize).importProducts(
+                new ByteArrayInputStream(
+                        feed.getBytes(StandardCharsets.UTF_8)),
+                format, progress::add);
+    }
+
+    private void assertFeedException(String feed, ProductFeedFormat format,
+            int line) throws Exception {
+        try {
+            importFeed(feed, format, 10, new ArrayList<>());
+            fail("Expected a malformed feed: " + feed);
+        } catch (ProductFeedException e) {
+            assertEquals(e.getMessage(), line, e.getLine());
+        }
+    }
+
+    /**
+     * Returns a CSV feed generated as it is read, so that it is never held
+     * in memory as a whole.
+     */
+    private static InputStream generatedCsv(int rows) {
+        Enumeration<InputStream> chunks = new Enumeration<InputStream>() {
+            private int row = -1;
+
+            @Override
+            public boolean hasMoreElements() {
+                return row < rows;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                if (row >= rows) {
+                    throw new NoSuchElementException();
+                }
+                StringBuilder chunk = new StringBuilder();
+                if (row < 0) {
+                    chunk.append("productName,price,stockCount,category\n");
+                    row++;
+                }
+                for (int end = Math.min(row + 1000, rows); row < end; row++) {
+                    chunk.append("Generated product ").append(row)
+                            .append(",").append(row % 100).append(".95,")
+                            .append(row % 7).append(",Import test mystery\n");
+                }
+                return new ByteArrayInputStream(
+                        chunk.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        };
+        return new SequenceInputStream(chunks);
+    }
+}
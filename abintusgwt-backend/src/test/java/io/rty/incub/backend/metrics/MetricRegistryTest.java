@@ -0,0 +1,115 @@
+package io.rty.incub.backend.metrics;
+
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.ProductQuery;
+import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.store.InMemoryDataService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for metrics written out for Prometheus, and the timed data
+ * service.
+ */
+public class MetricRegistryTest {
+
+    private MetricRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new MetricRegistry();
+    }
+
+    @Test
+    public void testWritePrometheus_writesEveryFamilyOnce() throws Exception {
+        Timer fetch = registry.timer("app_seconds", "Time.", "method",
+                "fetch");
+        assertSame(fetch, registry.timer("app_seconds", "Time.", "method",
+                "fetch"));
+        fetch.record(2, TimeUnit.MILLISECONDS);
+        registry.timer("app_seconds", "Time.", "method", "count");
+        registry.counter("app_logins_total", "Logins.").add(3);
+        registry.gauge("app_sessions", "Sessions.", () -> 1.5, "node",
+                "a\"b\\c");
+
+        String text = write();
+        assertEquals("# HELP app_logins_total Logins.\n"
+                + "# TYPE app_logins_total counter\n"
+                + "app_logins_total 3\n"
+                + "# HELP app_seconds Time.\n"
+                + "# TYPE app_seconds summary\n"
+                + "app_seconds{method=\"count\",quantile=\"0.5\"} NaN\n"
+                + "app_seconds{method=\"count\",quantile=\"0.99\"} NaN\n"
+                + "app_seconds_sum{method=\"count\"} 0.0\n"
+                + "app_seconds_count{method=\"count\"} 0\n"
+                + "app_seconds{method=\"fetch\",quantile=\"0.5\"} "
+                + quantile(fetch, 0.5) + "\n"
+                + "app_seconds{method=\"fetch\",quantile=\"0.99\"} "
+                + quantile(fetch, 0.99) + "\n"
+                + "app_seconds_sum{method=\"fetch\"} 0.002\n"
+                + "app_seconds_count{method=\"fetch\"} 1\n"
+                + "# HELP app_sessions Sessions.\n"
+                + "# TYPE app_sessions gauge\n"
+                + "app_sessions{node=\"a\\\"b\\\\c\"} 1.5\n", text);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCounter_rejectsTheNameOfATimer() {
+        registry.timer("app_seconds", "Time.");
+        registry.counter("app_seconds", "Count.");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTimer_rejectsAnInvalidName() {
+        registry.timer("app-seconds", "Time.");
+    }
+
+    @Test
+    public void testTimedDataService_timesEveryCall() throws Exception {
+        DataService service = new TimedDataService(
+                new InMemoryDataService(Collections.emptyList(),
+                        Collections.<Product> emptyList()),
+                registry);
+        Product product = new Product();
+        product.setProductName("Timed");
+        service.updateProduct(product);
+        service.fetchProducts(ProductQuery.all(""));
+        service.fetchProducts(ProductQuery.all(""));
+        service.countProducts("");
+        service.forEachProduct(ProductQuery.all(""), p -> {
+        });
+
+        assertEquals(1, timer("updateProduct").getCount());
+        assertEquals(2, timer("fetchProducts").getCount());
+        assertEquals(1, timer("countProducts").getCount());
+        assertEquals(1, timer("forEachProduct").getCount());
+        assertEquals(0, timer("deleteProduct").getCount());
+        assertTrue(write().contains(TimedDataService.TIMER_NAME
+                + "_count{method=\"fetchProducts\"} 2\n"));
+    }
+
+    private Timer timer(String method) {
+        return registry.timer(TimedDataService.TIMER_NAME, "",
+                "method", method);
+    }
+
+    private static String quantile(Timer timer, double quantile) {
+        return Double.toString(
+                timer.snapshot().getQuantileNanos(quantile) / 1e9);
+    }
+
+    private String write() throws Exception {
+        StringWriter out = new StringWriter();
+        registry.writePrometheus(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package io.rty.incub.backend.metrics;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for keeping the slowest recent operations.
+ */
+public class SlowOperationLogTest {
+
+    private AtomicLong clock;
+    private SlowOperationLog log;
+
+    @Before
+    public void setUp() {
+        clock = new AtomicLong();
+        log = new SlowOperationLog(3, clock::get);
+    }
+
+    @Test
+    public void testGetSlowest_keepsTheSlowestFirst() {
+        for (long nanos : new long[] { 5, 1, 9, 7, 3 }) {
+            log.record(nanos, () -> "op" + nanos);
+        }
+        assertEquals("[op9, op7, op5]", descriptions());
+        // faster than the fastest kept, not even described
+        log.record(4, () -> {
+            fail("Described a fast operation");
+            return null;
+        });
+    }
+
+    @Test
+    public void testGetSlowest_forgetsOperationsOlderThanTwoMinutes() {
+        log.record(9, () -> "old");
+        clock.addAndGet(Timer.WINDOW_NANOS);
+        log.record(1, () -> "new");
+        assertEquals("[old, new]", descriptions());
+
+        clock.addAndGet(Timer.WINDOW_NANOS);
+        assertEquals("[new]", descriptions());
+        clock.addAndGet(Timer.WINDOW_NANOS);
+        assertEquals("[]", descriptions());
+    }
+
+    private String descriptions() {
+        List<SlowOperationLog.Entry> slowest = log.getSlowest();
+        return slowest.stream().map(SlowOperationLog.Entry::getDescription)
+                .collect(Collectors.toList()).toString();
+    }
+}
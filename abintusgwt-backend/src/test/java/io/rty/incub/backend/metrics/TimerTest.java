@@ -0,0 +1,84 @@
+package io.rty.incub.backend.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the timer histogram and its percentiles.
+ */
+public class TimerTest {
+
+    private AtomicLong clock;
+    private Timer timer;
+
+    @Before
+    public void setUp() {
+        clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+        timer = new Timer(clock::get);
+    }
+
+    @Test
+    public void testBuckets_coverEveryDurationOnce() {
+        assertEquals(0, Timer.bucket(0));
+        assertEquals(Timer.BUCKETS - 1, Timer.bucket(Long.MAX_VALUE));
+        long expectedLower = 0;
+        for (int bucket = 0; bucket < Timer.BUCKETS; bucket++) {
+            long lower = Timer.lowerBound(bucket);
+            long upper = Timer.upperBound(bucket);
+            assertEquals(expectedLower, lower);
+            assertEquals(bucket, Timer.bucket(lower));
+            assertEquals(bucket, Timer.bucket(upper));
+            // within an eighth of the value
+            assertTrue(upper - lower <= lower / Timer.SUB_BUCKETS);
+            expectedLower = upper + 1;
+        }
+        assertEquals(Long.MIN_VALUE, expectedLower);
+    }
+
+    @Test
+    public void testSnapshot_tellsPercentilesWithinABucket() {
+        for (int i = 1; i <= 1000; i++) {
+            timer.record(i, TimeUnit.MICROSECONDS);
+        }
+        Timer.Snapshot snapshot = timer.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500_000, snapshot.getQuantileNanos(0.5), 500_000 / 8);
+        assertEquals(990_000, snapshot.getQuantileNanos(0.99), 990_000 / 8);
+        assertEquals(1000, timer.getCount());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(500_500),
+                timer.getTotalNanos());
+    }
+
+    @Test
+    public void testSnapshot_keepsTheLastOneToTwoMinutes() {
+        timer.record(1, TimeUnit.SECONDS);
+        clock.addAndGet(Timer.WINDOW_NANOS);
+        timer.record(2, TimeUnit.SECONDS);
+        assertEquals(2, timer.snapshot().getCount());
+
+        clock.addAndGet(Timer.WINDOW_NANOS);
+        Timer.Snapshot snapshot = timer.snapshot();
+        assertEquals(1, snapshot.getCount());
+        assertEquals(2e9, snapshot.getQuantileNanos(0.5), 2e9 / 8);
+
+        clock.addAndGet(5 * Timer.WINDOW_NANOS);
+        assertEquals(0, timer.snapshot().getCount());
+        assertTrue(Double.isNaN(timer.snapshot().getQuantileNanos(0.5)));
+        // the totals are kept
+        assertEquals(2, timer.getCount());
+    }
+
+    @Test
+    public void testRecordSince_recordsTheElapsedTime() {
+        long start = timer.start();
+        clock.addAndGet(1234);
+        timer.recordSince(start);
+        assertEquals(1234, timer.getTotalNanos());
+    }
+}
@@ -0,0 +1,97 @@
+package io.rty.incub.backend.mock;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the configurable mock data generator.
+ */
+public class MockDataGeneratorTest {
+
+    @Test
+    public void testOutputDoesNotDependOnParallelism() throws Exception {
+        MockDataGenerator sequential = generator(1);
+        MockDataGenerator parallel = generator(4);
+
+        List<Product> expected = sequential
+                .generateProducts(sequential.generateCategories());
+        List<Product> actual = new ArrayList<>();
+        parallel.generateProducts(parallel.generateCategories(), actual::add);
+
+        assertEquals(sequential.getProductCount(), expected.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Product e = expected.get(i);
+            Product a = actual.get(i);
+            assertEquals(i + 1, a.getId());
+            assertEquals(e.getProductName(), a.getProductName());
+            assertEquals(e.getPrice(), a.getPrice());
+            assertEquals(e.getAvailability(), a.getAvailability());
+            assertEquals(e.getStockCount(), a.getStockCount());
+            assertEquals(categoryIds(e), categoryIds(a));
+        }
+    }
+
+    @Test
+    public void testSeedChangesTheCatalog() throws Exception {
+        MockDataGenerator generator = generator(2);
+        List<Category> categories = generator.generateCategories();
+        List<Product> first = generator.generateProducts(categories);
+        generator.setSeed(42);
+        List<Product> second = generator.generateProducts(categories);
+
+        int differentNames = 0;
+        for (int i = 0; i < first.size(); i++) {
+            if (!first.get(i).getProductName()
+                    .equals(second.get(i).getProductName())) {
+                differentNames++;
+            }
+        }
+        assertTrue(differentNames > first.size() / 2);
+    }
+
+    @Test
+    public void testSkewedDistributions() throws Exception {
+        MockDataGenerator generator = generator(2);
+        generator.setCategoryCount(20);
+        generator.setCategorySkew(1.2);
+        generator.setPriceSkew(0.6);
+        List<Category> categories = generator.generateCategories();
+        assertEquals(20, categories.size());
+        assertEquals("Mystery 2", categories.get(11).getName());
+
+        Map<Integer, Integer> perCategory = new TreeMap<>();
+        for (Product p : generator.generateProducts(categories)) {
+            for (Category c : p.getCategory()) {
+                perCategory.merge(categories.indexOf(c), 1, Integer::sum);
+            }
+            assertTrue(p.getPrice().compareTo(new BigDecimal("0.99")) >= 0);
+            assertEquals(2, p.getPrice().scale());
+        }
+        assertTrue(perCategory.get(0) > 5 * perCategory.get(19));
+        assertFalse(perCategory.containsKey(-1));
+    }
+
+    private static String categoryIds(Product p) {
+        return p.getCategory().stream().map(Category::getId).sorted()
+                .map(String::valueOf).reduce("", (a, b) -> a + "," + b);
+    }
+
+    private static MockDataGenerator generator(int parallelism) {
+        MockDataGenerator generator = new MockDataGenerator();
+        generator.setProductCount(3 * MockDataGenerator.CHUNK_SIZE + 17);
+        generator.setParallelism(parallelism);
+        return generator;
+    }
+}
@@ -0,0 +1,227 @@
+package io.rty.incub.backend.persist;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.rty.incub.backend.ProductChangeEvent;
+import io.rty.incub.backend.ProductQuery;
+import io.rty.incub.backend.data.Availability;
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit test for the snapshot file format and the service persisting to it.
+ */
+public class SnapshotDataServiceTest {
+
+    private Path directory;
+    private Path file;
+    private List<Category> categories;
+    private List<Product> products;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("snapshot-test");
+        file = directory.resolve("products.snapshot");
+        categories = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            categories.add(Category.valueOf("Snapshot test category " + i));
+        }
+        products = new ArrayList<>();
+        // ids out of order, so the id index has something to sort
+        for (int id : new int[] { 5, 3, 8, 1, 13 }) {
+            Product p = new Product();
+            p.setId(id);
+            p.setProductName("Product é " + id);
+            p.setPrice(new BigDecimal(id + ".99"));
+            p.setStockCount(id * 10);
+            p.setAvailability(Availability.values()[id
+                    % Availability.values().length]);
+            p.setCategory(new HashSet<>(categories.subList(0, id % 3 + 1)));
+            products.add(p);
+        }
+        write(products);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path f : files.collect(Collectors.toList())) {
+                Files.delete(f);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws Exception {
+        ProductSnapshot snapshot = ProductSnapshot.map(file);
+
+        assertEquals(products.size(), snapshot.size());
+        assertEquals(categories.size(), snapshot.getCategories().size());
+        List<Product> read = new ArrayList<>();
+        snapshot.forEachProduct(read::add);
+        for (int i = 0; i < products.size(); i++) {
+            assertSameProduct(products.get(i), read.get(i));
+            assertSameProduct(products.get(i), snapshot.getProduct(i));
+            assertSameProduct(products.get(i),
+                    snapshot.findProduct(products.get(i).getId()));
+        }
+        assertNull(snapshot.findProduct(4));
+        assertNull(snapshot.findProduct(100));
+        assertEquals(categories, snapshot.getCategories());
+        // categories are interned
+        assertSame(categories.get(0), snapshot.getCategories().get(0));
+    }
+
+    @Test
+    public void testNullFieldsRoundTrip() throws Exception {
+        Product p = new Product();
+        p.setId(1);
+        p.setProductName(null);
+        p.setPrice(null);
+        p.setAvailability(null);
+        write(Collections.singletonList(p));
+
+        Product read = ProductSnapshot.map(file).getProduct(0);
+        assertNull(read.getProductName());
+        assertNull(read.getPrice());
+        assertNull(read.getAvailability());
+        assertNull(read.getCategory());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrite_rejectsPricesOutOfRange() throws Exception {
+        Product p = products.get(0);
+        p.setPrice(new BigDecimal("92233720368547758.08"));
+        try (ProductSnapshotWriter writer = new ProductSnapshotWriter(file,
+                categories)) {
+            writer.write(p);
+        }
+    }
+
+    @Test
+    public void testUncommittedWriterLeavesTheSnapshot() throws Exception {
+        try (ProductSnapshotWriter writer = new ProductSnapshotWriter(file,
+                categories)) {
+            writer.write(products.get(0));
+        }
+        assertEquals(products.size(), ProductSnapshot.map(file).size());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testServiceReadsBeforeAndAfterLoading() throws Exception {
+        try (SnapshotDataService service = new SnapshotDataService(file)) {
+            // answered from the mapping or from the loaded store, depending on
+            // timing, with the same results
+            assertEquals(products.size(), service.countProducts(""));
+            assertSameProduct(products.get(2), service.getProductById(8));
+            List<Product> page = service
+                    .fetchProducts(new ProductQuery(1, 2, null, null));
+            assertEquals(2, page.size());
+            assertSameProduct(products.get(1), page.get(0));
+            assertSameProduct(products.get(2), page.get(1));
+
+            assertEquals(products.size(), service.getAllProducts().size());
+            assertEquals(products.size(), service.countProducts(""));
+            assertSameProduct(products.get(2), service.getProductById(8));
+            assertEquals(1, service.countProducts("é 13"));
+        }
+    }
+
+    @Test
+    public void testWritesArePersisted() throws Exception {
+        try (SnapshotDataService service = new SnapshotDataService(file)) {
+            Product changed = service.getProductById(3);
+            changed.setProductName("Changed");
+            service.updateProduct(changed);
+            service.deleteProduct(13);
+            Product created = new Product();
+            created.setProductName("Created");
+            service.updateProduct(created);
+            assertEquals(14, created.getId());
+        }
+
+        try (SnapshotDataService reopened = new SnapshotDataService(file)) {
+            assertEquals(products.size(), reopened.countProducts(""));
+            assertEquals("Changed",
+                    reopened.getProductById(3).getProductName());
+            assertNull(reopened.getProductById(13));
+            assertEquals("Created",
+                    reopened.getProductById(14).getProductName());
+            assertFalse(reopened.getAllProducts().isEmpty());
+        }
+    }
+
+    @Test
+    public void testBulkWritesArePersistedAndPublished() throws Exception {
+        BlockingQueue<ProductChangeEvent> events = new LinkedBlockingQueue<>();
+        try (SnapshotDataService service = new SnapshotDataService(file)) {
+            // registered before the load completes
+            service.addProductChangeListener(events::add);
+            assertEquals(2, service.updateProducts(p -> p.getId() < 5,
+                    p -> p.setStockCount(0)));
+            assertEquals(new HashSet<>(Arrays.asList(1, 3)),
+                    events.poll(5, TimeUnit.SECONDS).getUpdatedIds());
+            assertEquals(1, service.deleteProducts(Arrays.asList(8, 99)));
+            assertEquals(Collections.singleton(8),
+                    events.poll(5, TimeUnit.SECONDS).getDeletedIds());
+        }
+
+        try (SnapshotDataService reopened = new SnapshotDataService(file)) {
+            assertEquals(products.size() - 1, reopened.countProducts(""));
+            assertEquals(0, reopened.getProductById(1).getStockCount());
+            assertEquals(0, reopened.getProductById(3).getStockCount());
+            assertEquals(50, reopened.getProductById(5).getStockCount());
+            assertNull(reopened.getProductById(8));
+        }
+    }
+
+    private void write(List<Product> content) throws IOException {
+        try (ProductSnapshotWriter writer = new ProductSnapshotWriter(file,
+                categories)) {
+            for (Product p : content) {
+                writer.write(p);
+            }
+            writer.commit();
+        }
+    }
+
+    private static void assertSameProduct(Product expected, Product actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getProductName(), actual.getProductName());
+        assertEquals(expected.getPrice(), actual.getPrice());
+        assertEquals(expected.getStockCount(), actual.getStockCount());
+        assertEquals(expected.getAvailability(), actual.getAvailability());
+        assertEquals(categoryIds(expected), categoryIds(actual));
+    }
+
+    private static List<Integer> categoryIds(Product p) {
+        return p.getCategory().stream().map(Category::getId).sorted()
+                .collect(Collectors.toList());
+    }
+}
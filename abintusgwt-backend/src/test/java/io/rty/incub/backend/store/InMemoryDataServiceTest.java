@@ -0,0 +1,141 @@
+package io.rty.incub.backend.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Before;
+import org.junit.Test;
+import io.rty.incub.backend.ProductQuery;
+import io.rty.incub.backend.ProductSortOrder;
+import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.metrics.Timer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for reading on through the products of the in-memory service
+ * while it takes writes.
+ */
+public class InMemoryDataServiceTest {
+
+    private InMemoryDataService service;
+
+    @Before
+    public void setUp() throws Exception {
+        List<Product> products = new ArrayList<>();
+        for (int id = 0; id < 3500; id++) {
+            Product p = new Product();
+            p.setId(id);
+            p.setProductName("Product " + id);
+            p.setStockCount(id);
+            products.add(p);
+        }
+        service = new InMemoryDataService(Collections.emptyList(), products);
+    }
+
+    @Test
+    public void testForEachProduct_readsOnAfterWrites() throws Exception {
+        List<Integer> handedOut = new ArrayList<>();
+        service.forEachProduct(ProductQuery.all(""), p -> {
+            handedOut.add(p.getId());
+            // writes that do not move products must not disturb the walk
+            p.setStockCount(p.getStockCount() + 1);
+            service.updateProduct(p);
+        });
+        assertEquals(IntStream.range(0, 3500).boxed()
+                .collect(Collectors.toList()), handedOut);
+        assertEquals(3500, service.getProductById(3499).getStockCount());
+    }
+
+    @Test
+    public void testForEachProduct_followsTheSortIndexAcrossWrites()
+            throws Exception {
+        ProductQuery query = new ProductQuery(100, 3000,
+                Collections.singletonList(ProductSortOrder
+                        .desc(ProductSortOrder.Property.STOCK_COUNT)),
+                null);
+        List<Integer> handedOut = new ArrayList<>();
+        service.forEachProduct(query, p -> {
+            handedOut.add(p.getId());
+            if (p.getId() % 500 == 0) {
+                // renaming keeps the stock count order
+                p.setProductName("Renamed " + p.getId());
+                service.updateProduct(p);
+            }
+        });
+        assertEquals(IntStream.range(0, 3000).map(i -> 3399 - i).boxed()
+                .collect(Collectors.toList()), handedOut);
+    }
+
+    @Test
+    public void testWriteLock_waitsAreTimed() throws Exception {
+        Timer waits = InMemoryDataService.getWriteLockWaits();
+        long before = waits.getCount();
+        Thread[] writer = new Thread[1];
+        // the predicate runs under the read lock
+        service.updateProducts(p -> {
+            if (writer[0] == null) {
+                writer[0] = new Thread(() -> service.deleteProduct(1));
+                writer[0].start();
+                sleep(100);
+            }
+            return false;
+        }, p -> {
+        });
+        writer[0].join();
+        assertEquals(before + 1, waits.getCount());
+        assertTrue(waits.getTotalNanos() > 0);
+        assertTrue(service.getEstimatedBytes() > 3499 * 20);
+    }
+
+    @Test
+    public void testUpsertProducts_afterDeletesKeepsTheSortIndexes() {
+        List<Product> products = new ArrayList<>();
+        for (int id = 0; id < 100; id++) {
+            Product p = new Product();
+            p.setId(id);
+            p.setProductName("Product " + id);
+            p.setStockCount(id);
+            products.add(p);
+        }
+        service = new InMemoryDataService(Collections.emptyList(), products);
+        ProductQuery byStock = new ProductQuery(0, 1000,
+                Collections.singletonList(ProductSortOrder
+                        .asc(ProductSortOrder.Property.STOCK_COUNT)),
+                null);
+        // builds the sort index
+        service.fetchProducts(byStock);
+        for (int id = 0; id < 40; id++) {
+            service.deleteProduct(id);
+        }
+        Product updated = service.getProductById(99);
+        updated.setStockCount(1000);
+        Product added = new Product();
+        added.setId(-1);
+        added.setProductName("New");
+        added.setStockCount(50);
+        // the new product needs a slot, and freed slots get compacted
+        service.upsertProducts(Arrays.asList(updated, added));
+
+        List<Integer> sorted = service.fetchProducts(byStock).stream()
+                .map(Product::getId).collect(Collectors.toList());
+        assertEquals(service.countProducts(""), sorted.size());
+        assertEquals(61, sorted.size());
+        assertEquals(Integer.valueOf(40), sorted.get(0));
+        assertEquals(Integer.valueOf(added.getId()), sorted.get(11));
+        assertEquals(Integer.valueOf(99), sorted.get(60));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
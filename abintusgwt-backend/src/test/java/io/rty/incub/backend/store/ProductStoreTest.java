@@ -0,0 +1,373 @@
+package io.rty.incub.backend.store;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import io.rty.incub.backend.ProductSortOrder;
+import io.rty.incub.backend.data.Availability;
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for the id indexed, column oriented product store.
+ */
+public class ProductStoreTest {
+
+    private ProductStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new ProductStore();
+        for (int id = 1; id <= 1000; id++) {
+            store.put(product(id));
+        }
+    }
+
+    @Test
+    public void testGet_findsProductsById() throws Exception {
+        assertEquals(1000, store.size());
+        assertEquals(1, store.get(1).getId());
+        assertEquals(734, store.get(734).getId());
+        assertNull(store.get(1001));
+    }
+
+    @Test
+    public void testPut_replacesInPlace() throws Exception {
+        Product replacement = product(3);
+        replacement.setProductName("Replacement");
+        assertTrue(store.put(replacement));
+        assertEquals(1000, store.size());
+        assertEquals("Replacement", store.get(3).getProductName());
+        assertNotSame(replacement, store.get(3));
+        assertEquals(3, ids().get(2).intValue());
+    }
+
+    @Test
+    public void testRemove_keepsInsertionOrderAcrossCompaction()
+            throws Exception {
+        for (int id = 1; id <= 1000; id += 2) {
+            assertTrue(store.remove(id));
+        }
+        for (int id = 2; id <= 1000; id += 4) {
+            store.remove(id);
+        }
+        assertFalse(store.remove(1));
+        store.put(product(5000));
+
+        List<Integer> ids = ids();
+        assertEquals(store.size(), ids.size());
+        assertEquals(4, ids.get(0).intValue());
+        assertEquals(5000, ids.get(ids.size() - 1).intValue());
+        for (int i = 1; i < ids.size(); i++) {
+            assertEquals(ids.get(i).intValue(),
+                    store.get(ids.get(i)).getId());
+        }
+        assertFalse(store.contains(6));
+    }
+
+    @Test
+    public void testIds_seeksPositionsPastRemovedProducts() throws Exception {
+        Random random = new Random(7);
+        for (int n = 0; n < 300; n++) {
+            store.remove(1 + random.nextInt(1000));
+        }
+        assertIdsFromEveryPosition();
+        for (int id = 1001; id <= 1500; id++) {
+            store.put(product(id));
+            if (id % 3 == 0) {
+                store.remove(id - 1);
+            }
+        }
+        assertIdsFromEveryPosition();
+    }
+
+    @Test
+    public void testGet_materializesEveryField() throws Exception {
+        Category first = category(0);
+        // enough categories for ids past the first word of bits
+        Category far = first;
+        for (int i = 1; i <= 64; i++) {
+            far = category(i);
+        }
+        assertTrue(far.getId() >= 64);
+        Product p = product(2000);
+        p.setProductName("Ünïcode name");
+        p.setPrice(new BigDecimal("12.345"));
+        p.setStockCount(42);
+        p.setAvailability(Availability.DISCONTINUED);
+        p.setCategory(new HashSet<>(Arrays.asList(first, far)));
+        store.put(p);
+
+        Product read = store.get(2000);
+        assertEquals("Ünïcode name", read.getProductName());
+        // prices are kept in cents
+        assertEquals(new BigDecimal("12.34"), read.getPrice());
+        assertEquals(42, read.getStockCount());
+        assertEquals(Availability.DISCONTINUED, read.getAvailability());
+        assertEquals(2, read.getCategory().size());
+        assertTrue(read.getCategory().contains(first));
+        assertTrue(read.getCategory().contains(far));
+        assertTrue(store.get(1).getCategory().isEmpty());
+
+        p.setProductName(null);
+        p.setPrice(null);
+        p.setAvailability(null);
+        store.put(p);
+        read = store.get(2000);
+        assertNull(read.getProductName());
+        assertNull(read.getPrice());
+        assertNull(read.getAvailability());
+    }
+
+    @Test
+    public void testPut_givesEveryWriteANewVersion() throws Exception {
+        Product p = store.get(3);
+        int version = p.getVersion();
+        assertTrue(version > 0);
+        assertEquals(version, store.get(3).getVersion());
+
+        p.setStockCount(5);
+        store.put(p);
+        assertTrue(p.getVersion() > version);
+        assertEquals(p.getVersion(), store.get(3).getVersion());
+
+        // a removed and re-added id does not get an old version back
+        store.remove(3);
+        Product readded = product(3);
+        store.put(readded);
+        assertTrue(readded.getVersion() > p.getVersion());
+    }
+
+    @Test
+    public void testPut_reclaimsTheNamesOfReplacedProducts()
+            throws Exception {
+        long before = store.estimatedBytes();
+        for (int round = 0; round < 100; round++) {
+            for (int id = 1; id <= 1000; id++) {
+                Product p = product(id);
+                p.setProductName("Product " + id + " renamed " + round);
+                store.put(p);
+            }
+        }
+        assertEquals("Product 734 renamed 99",
+                store.get(734).getProductName());
+        assertTrue(store.estimatedBytes() < before * 4);
+    }
+
+    @Test
+    public void testPut_growsATrimmedEmptyStore() throws Exception {
+        ProductStore empty = new ProductStore();
+        empty.trimToSize();
+        for (int id = 1; id <= 100; id++) {
+            empty.put(product(id));
+        }
+        assertEquals(100, empty.size());
+        assertEquals(product(57).getProductName(),
+                empty.get(57).getProductName());
+    }
+
+    @Test
+    public void testCopyValues_isNotChangedByLaterWrites() throws Exception {
+        ProductSource copy = store.copyValues();
+        Product renamed = product(1);
+        renamed.setProductName("Renamed");
+        store.put(renamed);
+        store.remove(2);
+        for (int id = 1001; id <= 3000; id++) {
+            store.put(product(id));
+        }
+
+        List<Product> copied = new ArrayList<>();
+        copy.forEachProduct(copied::add);
+        assertEquals(1000, copied.size());
+        assertEquals("Product 1", copied.get(0).getProductName());
+        assertEquals(2, copied.get(1).getId());
+    }
+
+    @Test
+    public void testSortedIds_followsTheComparatorsAcrossWrites()
+            throws Exception {
+        Random random = new Random(42);
+        store = new ProductStore();
+        for (int id = 1; id <= 3000; id++) {
+            store.put(randomProduct(random, id));
+        }
+        assertSortedIds();
+
+        for (int i = 0; i < 3000; i++) {
+            int id = random.nextInt(4000) + 1;
+            if (random.nextInt(3) == 0) {
+                store.remove(id);
+            } else {
+                store.put(randomProduct(random, id));
+            }
+        }
+        // enough removals for the slots to be compacted
+        for (int id = 1; id <= 4000; id++) {
+            if (id % 4 != 0) {
+                store.remove(id);
+            }
+        }
+        assertSortedIds();
+    }
+
+    @Test
+    public void testSortedIds_followsTheComparatorsAcrossBatches()
+            throws Exception {
+        Random random = new Random(7);
+        store = new ProductStore();
+        for (int id = 1; id <= 3000; id++) {
+            store.put(randomProduct(random, id));
+        }
+        assertSortedIds();
+
+        for (int round = 0; round < 4; round++) {
+            // large enough to be merged into the indexes, with replaced,
+            // new and repeated ids
+            List<Product> batch = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                batch.add(randomProduct(random, random.nextInt(4000) + 1));
+            }
+            store.putAll(batch);
+            for (Product p : batch) {
+                // repeated ids leave the last version stored
+                assertTrue(p.getVersion() > 0);
+                assertTrue(p.getVersion() <= store.getVersion(p.getId()));
+            }
+            List<Integer> ids = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                ids.add(random.nextInt(4000) + 1);
+            }
+            int[] removed = store.removeAll(ids);
+            for (int id : removed) {
+                assertFalse(store.contains(id));
+            }
+            assertSortedIds();
+        }
+        // a small batch goes through the indexes product by product
+        store.putAll(Collections.singletonList(randomProduct(random, 5000)));
+        assertSortedIds();
+    }
+
+    @Test
+    public void testPutAll_storesNothingOfABatchWithABadProduct()
+            throws Exception {
+        assertSortedIds();
+        List<Product> batch = new ArrayList<>();
+        for (int id = 1; id <= 100; id++) {
+            batch.add(product(id * 20));
+        }
+        batch.get(50).setPrice(new BigDecimal("1e20"));
+        int version = store.getVersion(20);
+        try {
+            store.putAll(batch);
+            fail("Price out of range stored");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(1000, store.size());
+        assertEquals(version, store.getVersion(20));
+        assertFalse(store.contains(2000));
+        assertSortedIds();
+    }
+
+    @Test
+    public void testSort_breaksTiesWithTheNextOrderThenInsertionOrder()
+            throws Exception {
+        int[] ids = { 1, 2, 3, 4, 5, 6 };
+        for (int id : ids) {
+            Product p = product(id);
+            p.setStockCount(id % 2);
+            p.setPrice(id <= 4 ? BigDecimal.ONE : BigDecimal.TEN);
+            store.put(p);
+        }
+        store.sort(ids, Arrays.asList(
+                ProductSortOrder.desc(ProductSortOrder.Property.STOCK_COUNT),
+                ProductSortOrder.asc(ProductSortOrder.Property.PRICE)));
+        assertEquals("[1, 3, 5, 2, 4, 6]", Arrays.toString(ids));
+    }
+
+    private void assertSortedIds() {
+        List<Product> products = new ArrayList<>(store.values());
+        for (ProductSortOrder.Property property : ProductSortOrder.Property
+                .values()) {
+            for (boolean descending : new boolean[] { false, true }) {
+                ProductSortOrder order = new ProductSortOrder(property,
+                        descending);
+                List<Integer> expected = new ArrayList<>();
+                products.stream().sorted(order.getComparator())
+                        .forEach(p -> expected.add(p.getId()));
+                List<Integer> actual = new ArrayList<>();
+                store.sortedIds(order, 0).forEach(actual::add);
+                assertEquals(order.toString(), expected, actual);
+
+                int offset = products.size() / 2;
+                List<Integer> page = new ArrayList<>();
+                store.sortedIds(order, offset).limit(20).forEach(page::add);
+                assertEquals(order.toString(),
+                        expected.subList(offset, offset + 20), page);
+            }
+        }
+    }
+
+    private static Product randomProduct(Random random, int id) {
+        String[] names = { "apple", "Apple", "banana", "Ébène", "zebra",
+                "apple pie", null };
+        Product p = new Product();
+        p.setId(id);
+        String name = names[random.nextInt(names.length)];
+        p.setProductName(name == null || random.nextBoolean() ? name
+                : name + " " + random.nextInt(10));
+        p.setPrice(random.nextInt(10) == 0 ? null
+                : BigDecimal.valueOf(random.nextInt(50), 1));
+        p.setStockCount(random.nextInt(20));
+        int availability = random.nextInt(Availability.values().length + 1);
+        p.setAvailability(availability == Availability.values().length ? null
+                : Availability.values()[availability]);
+        return p;
+    }
+
+    private void assertIdsFromEveryPosition() {
+        int[] ids = store.ids().toArray();
+        for (int position = 0; position <= ids.length + 1; position++) {
+            int[] expected = Arrays.stream(ids).skip(position).toArray();
+            assertEquals("Position " + position, Arrays.toString(expected),
+                    Arrays.toString(store.ids(position).toArray()));
+        }
+    }
+
+    private List<Integer> ids() {
+        List<Integer> ids = new ArrayList<>();
+        Iterator<Product> it = store.values().iterator();
+        while (it.hasNext()) {
+            ids.add(it.next().getId());
+        }
+        return ids;
+    }
+
+    private static Category category(int i) {
+        return Category.valueOf("Store test category " + i);
+    }
+
+    private static Product product(int id) {
+        Product p = new Product();
+        p.setId(id);
+        p.setProductName("Product " + id);
+        return p;
+    }
+}
@@ -0,0 +1,134 @@
+package io.rty.incub.backend.store;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import io.rty.incub.backend.ProductQuery;
+import io.rty.incub.backend.data.Availability;
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the text index against a plain scan with
+ * {@link ProductQuery#matches(Product, String)}.
+ */
+public class ProductTextIndexTest {
+
+    private static final String[] FILTERS = { "a", "ro", "the", "sci-fi",
+            "coming", "art of", "GARDEN", "zzz", "tree hou", " mystery " };
+
+    private final Random random = new Random(7);
+    private List<Category> categories;
+    private ProductStore store;
+    private ProductTextIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        categories = new ArrayList<>();
+        for (String name : new String[] { "Romance", "Mystery", "Sci-fi",
+                "Cookbooks" }) {
+            categories.add(Category.valueOf(name));
+        }
+        store = new ProductStore();
+        index = new ProductTextIndex();
+        for (int id = 1; id <= 2000; id++) {
+            Product p = randomProduct(id);
+            store.put(p);
+            index.put(p);
+        }
+    }
+
+    @Test
+    public void testMatch_agreesWithScan() throws Exception {
+        assertAgreesWithScan();
+    }
+
+    @Test
+    public void testMatch_followsUpdatesAndDeletes() throws Exception {
+        for (int id = 1; id <= 2000; id += 3) {
+            store.remove(id);
+            index.remove(id);
+        }
+        for (int id = 2; id <= 2000; id += 3) {
+            Product p = randomProduct(id);
+            p.setProductName("Unique title " + id);
+            store.put(p);
+            index.put(p);
+        }
+        assertEquals(store.size(), index.size());
+        assertAgreesWithScan();
+        assertArrayEquals(new int[] { 2000 },
+                index.matchingIds(index.match("unique title 2000")));
+    }
+
+    @Test
+    public void testPut_keepsTheTermsOfAProductWhoseOtherTermsChange()
+            throws Exception {
+        Product p = randomProduct(2001);
+        p.setProductName("Solitary title");
+        p.setAvailability(Availability.AVAILABLE);
+        store.put(p);
+        index.put(p);
+        // same terms, nothing to reindex
+        p.setStockCount(3);
+        index.put(p);
+        // the name is still only used by this product once its
+        // availability changed
+        p.setAvailability(Availability.COMING);
+        store.put(p);
+        index.put(p);
+        assertArrayEquals(new int[] { 2001 },
+                index.matchingIds(index.match("solitary")));
+        assertAgreesWithScan();
+    }
+
+    private void assertAgreesWithScan() {
+        for (String raw : FILTERS) {
+            String filter = ProductQuery.normalizeFilter(raw);
+            List<Integer> expected = new ArrayList<>();
+            for (Product p : store.values()) {
+                if (ProductQuery.matches(p, filter)) {
+                    expected.add(p.getId());
+                }
+            }
+            ProductTextIndex.Match match = index.match(filter);
+            int[] ids = index.matchingIds(match);
+            assertEquals(raw, expected.size(), ids.length);
+            assertEquals(raw, expected.size(), index.count(match));
+            for (int i = 0; i < ids.length; i++) {
+                assertEquals(raw, expected.get(i).intValue(), ids[i]);
+                assertTrue(index.matches(ids[i], match));
+            }
+        }
+    }
+
+    private Product randomProduct(int id) {
+        String[] first = { "The art of", "Mastering", "Book of" };
+        String[] second = { "gardening", "designing tree houses", "debugging",
+                "Romance novels" };
+        Product p = new Product();
+        p.setId(id);
+        p.setProductName(first[random.nextInt(first.length)] + " "
+                + second[random.nextInt(second.length)]);
+        p.setPrice(BigDecimal.TEN);
+        p.setAvailability(Availability.values()[random
+                .nextInt(Availability.values().length)]);
+        Set<Category> productCategories = new HashSet<>();
+        productCategories.add(categories.get(random.nextInt(categories.size())));
+        if (random.nextBoolean()) {
+            productCategories.add(categories.get(0));
+        }
+        p.setCategory(productCategories);
+        return p;
+    }
+}
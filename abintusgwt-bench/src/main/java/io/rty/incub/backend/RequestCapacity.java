@@ -0,0 +1,139 @@
+package io.rty.incub.backend;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.rty.incub.backend.metrics.Timer;
+
+/**
+ * Compares how many concurrent users requests blocking on a slow store can
+ * serve, when run on a pool of platform threads the size of the default
+ * Jetty pool and when run on a virtual thread each, as the
+ * {@code virtualThreads} profile of the ui module does.
+ * <p>
+ * Every user sends a request, which blocks for the store latency, waits for
+ * the response, thinks for a while and sends the next one, for the duration
+ * of the run. The report gives the throughput and the median and 99th
+ * percentile response times, waiting for a thread included, per number of
+ * users. The pool saturates once the requests in flight outnumber its
+ * threads, and the response times then grow with the users. Virtual threads
+ * are only compared on a JDK that has them:
+ *
+ * <pre>
+ * java -cp benchmarks.jar io.rty.incub.backend.RequestCapacity [store-ms think-ms seconds users...]
+ * java -cp benchmarks.jar io.rty.incub.backend.RequestCapacity 50 1000 20 100 1000 5000 10000
+ * </pre>
+ */
+public final class RequestCapacity {
+
+    /** The default maximum of the Jetty thread pool. */
+    private static final int POOL_THREADS = 200;
+
+    private RequestCapacity() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 4) {
+            args = new String[] { "50", "1000", "20", "100", "1000", "5000" };
+        }
+        long storeMillis = Long.parseLong(args[0]);
+        long thinkMillis = Long.parseLong(args[1]);
+        long seconds = Long.parseLong(args[2]);
+        int[] users = Arrays.stream(args, 3, args.length)
+                .mapToInt(Integer::parseInt).toArray();
+
+        System.setProperty(VirtualThreads.VIRTUAL_THREADS_PROPERTY, "true");
+        boolean virtual = VirtualThreads.isEnabled();
+        System.out.printf("store %d ms, think %d ms, %d s per run%n",
+                storeMillis, thinkMillis, seconds);
+        if (!virtual) {
+            System.out.println(
+                    "No virtual threads on this JDK, only the pool is run");
+        }
+        for (int count : users) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(POOL_THREADS,
+                    POOL_THREADS, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), platformThreads());
+            report(POOL_THREADS + " platform threads", count,
+                    run(pool, count, storeMillis, thinkMillis, seconds),
+                    seconds);
+            pool.shutdownNow();
+            if (virtual) {
+                ThreadFactory factory = VirtualThreads.factory("request");
+                report("virtual threads", count,
+                        run(task -> factory.newThread(task).start(), count,
+                                storeMillis, thinkMillis, seconds),
+                        seconds);
+            }
+        }
+    }
+
+    /**
+     * Runs the users against the executor and returns the response times of
+     * the requests completed within the run, after a think time of warm-up.
+     */
+    private static Timer.Snapshot run(Executor executor, int users,
+            long storeMillis, long thinkMillis, long seconds)
+            throws InterruptedException {
+        AtomicReference<Timer> responses = new AtomicReference<>(new Timer());
+        AtomicBoolean running = new AtomicBoolean(true);
+        ScheduledExecutorService clients = Executors
+                .newSingleThreadScheduledExecutor(platformThreads());
+        Runnable[] send = new Runnable[1];
+        send[0] = () -> {
+            long sent = System.nanoTime();
+            executor.execute(() -> {
+                try {
+                    // a blocking call to a slow store
+                    Thread.sleep(storeMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (running.get()) {
+                    responses.get().recordSince(sent);
+                    clients.schedule(send[0], thinkMillis,
+                            TimeUnit.MILLISECONDS);
+                }
+            });
+        };
+        for (int user = 0; user < users; user++) {
+            // spread the first requests over the think time
+            clients.schedule(send[0], thinkMillis * user / users,
+                    TimeUnit.MILLISECONDS);
+        }
+        Thread.sleep(thinkMillis + storeMillis);
+        responses.set(new Timer());
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running.set(false);
+        Timer.Snapshot snapshot = responses.get().snapshot();
+        clients.shutdownNow();
+        // let the requests in flight end before the next run
+        Thread.sleep(storeMillis * 2);
+        return snapshot;
+    }
+
+    private static void report(String mode, int users,
+            Timer.Snapshot responses, long seconds) {
+        System.out.printf(
+                "%,7d users, %-20s %,9.1f requests/s, p50 %,8.1f ms, p99 %,8.1f ms%n",
+                users, mode + ":", (double) responses.getCount() / seconds,
+                responses.getQuantileNanos(0.5) / 1e6,
+                responses.getQuantileNanos(0.99) / 1e6);
+    }
+
+    private static ThreadFactory platformThreads() {
+        return r -> {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
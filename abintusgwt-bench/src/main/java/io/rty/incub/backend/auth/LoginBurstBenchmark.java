@@ -0,0 +1,94 @@
+package io.rty.incub.backend.auth;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A burst of users signing in at once, as at the start of a shift: each
+ * thread is a user submitting the right password to the
+ * {@link CredentialVerifier} and waiting for the outcome.
+ * <p>
+ * The throughput score is logins per second, and the sample time score gives
+ * the latency percentiles a user sees, p99 included, queueing for a
+ * verifier thread included. Logins refused because the verifier queue is
+ * full return at once and are counted by {@code refused}: they are scored
+ * too, so the scores only tell about checked logins while it stays at 0. The
+ * number of users can be changed with {@code -t}; the verifier uses half the
+ * processors, and queues 16 logins per thread, whatever it is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(64)
+public class LoginBurstBenchmark {
+
+    private static final int USERS = 10_000;
+    private static final String PASSWORD = "correct horse battery staple";
+
+    /** PBKDF2 iterations of the stored hashes. */
+    @Param({ "100000", "600000" })
+    public int iterations;
+
+    private CredentialVerifier verifier;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+
+        public long refused;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            refused = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        InMemoryCredentialStore store = new InMemoryCredentialStore();
+        // one hash shared by all users, hashing each would take minutes
+        PasswordHash hash = PasswordHash.create(PASSWORD.toCharArray(),
+                iterations);
+        for (int i = 0; i < USERS; i++) {
+            store.setPasswordHash("user" + i, hash);
+        }
+        verifier = new CredentialVerifier(store);
+    }
+
+    @TearDown
+    public void tearDown() {
+        verifier.close();
+    }
+
+    @Benchmark
+    public Boolean login(Outcomes outcomes) throws InterruptedException {
+        String username = "user"
+                + ThreadLocalRandom.current().nextInt(USERS);
+        try {
+            return verifier.verify(username, PASSWORD.toCharArray()).get();
+        } catch (ExecutionException e) {
+            outcomes.refused++;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package io.rty.incub.backend.mock;
+
+import java.util.List;
+
+import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Catalogs of a given size for the benchmarks, built with the mock data
+ * generator so that they look like the data of the application.
+ */
+public final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    public static MockDataGenerator generator(int size) {
+        MockDataGenerator generator = new MockDataGenerator();
+        generator.setProductCount(size);
+        return generator;
+    }
+
+    public static List<Category> categories() {
+        return MockDataGenerator.createCategories();
+    }
+
+    public static List<Product> products(List<Category> categories,
+            int size) {
+        return generator(size).generateProducts(categories);
+    }
+
+    /**
+     * Creates a new in-memory service holding {@code size} products.
+     */
+    public static DataService service(int size) {
+        return new MockDataService(generator(size));
+    }
+}
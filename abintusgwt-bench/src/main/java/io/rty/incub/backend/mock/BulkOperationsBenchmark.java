@@ -0,0 +1,115 @@
+package io.rty.incub.backend.mock;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.ProductQuery;
+import io.rty.incub.backend.ProductSortOrder;
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Bulk operations of {@link MockDataService} on batches of
+ * {@value #BATCH} products spread over the catalog, against updating the
+ * same products one by one. Scores are per product, so that they compare
+ * with the single product operations of {@link MockDataServiceBenchmark}.
+ * The price sort index is built, as it is once a grid was sorted by price.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(BulkOperationsBenchmark.BATCH)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class BulkOperationsBenchmark {
+
+    static final int BATCH = 100_000;
+
+    @Param({ "1000000" })
+    public int size;
+
+    private DataService service;
+    /** The products of the batch, as last stored. */
+    private List<Product> batch;
+    private BitSet batchIds;
+
+    @Setup
+    public void setUp() {
+        service = BenchmarkData.service(size);
+        List<Product> all = new ArrayList<>(service.getAllProducts());
+        batch = new ArrayList<>(BATCH);
+        batchIds = new BitSet();
+        int stride = Math.max(1, all.size() / BATCH);
+        for (int i = 0; i < all.size() && batch.size() < BATCH; i += stride) {
+            batch.add(new Product(all.get(i)));
+            batchIds.set(all.get(i).getId());
+        }
+        service.fetchProducts(new ProductQuery(0, 50,
+                Collections.singletonList(ProductSortOrder
+                        .asc(ProductSortOrder.Property.PRICE)),
+                null));
+    }
+
+    @Benchmark
+    public int updateOneByOne() {
+        for (Product p : batch) {
+            Product current = service.getProductById(p.getId());
+            current.setStockCount(current.getStockCount() + 1);
+            service.updateProduct(current);
+        }
+        return batch.size();
+    }
+
+    @Benchmark
+    public int updateProducts() {
+        return service.updateProducts(p -> batchIds.get(p.getId()),
+                p -> p.setStockCount(p.getStockCount() + 1));
+    }
+
+    @Benchmark
+    public int upsertProducts() {
+        for (Product p : batch) {
+            p.setStockCount(p.getStockCount() + 1);
+            p.setVersion(0);
+        }
+        service.upsertProducts(batch);
+        return batch.size();
+    }
+
+    /**
+     * Deletes the batch and creates it again, to keep the catalog size.
+     */
+    @Benchmark
+    public int deleteAndCreateProducts() {
+        List<Integer> ids = new ArrayList<>(batch.size());
+        for (Product p : batch) {
+            ids.add(p.getId());
+            p.setId(-1);
+            p.setVersion(0);
+        }
+        int deleted = service.deleteProducts(ids);
+        service.upsertProducts(batch);
+        batchIds.clear();
+        for (Product p : batch) {
+            batchIds.set(p.getId());
+        }
+        return deleted;
+    }
+}
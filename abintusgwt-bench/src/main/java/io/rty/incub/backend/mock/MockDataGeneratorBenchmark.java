@@ -0,0 +1,65 @@
+package io.rty.incub.backend.mock;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Time to generate a mock catalog of a given size, sequentially and on every
+ * core, into a list or streamed to a sink.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class MockDataGeneratorBenchmark {
+
+    @Param({ "100", "10000", "1000000", "10000000" })
+    public int size;
+
+    /** Chunks generated at the same time, 0 for one per core. */
+    @Param({ "1", "0" })
+    public int parallelism;
+
+    private MockDataGenerator generator;
+    private List<Category> categories;
+
+    @Setup
+    public void setUp() {
+        generator = BenchmarkData.generator(size);
+        generator.setParallelism(parallelism > 0 ? parallelism
+                : ForkJoinPool.getCommonPoolParallelism());
+        categories = generator.generateCategories();
+    }
+
+    @Benchmark
+    public List<Product> generateList() {
+        return generator.generateProducts(categories);
+    }
+
+    @Benchmark
+    public long generateStream() {
+        LongAdder stock = new LongAdder();
+        generator.generateProducts(categories,
+                p -> stock.add(p.getStockCount()));
+        return stock.sum();
+    }
+}
@@ -0,0 +1,89 @@
+package io.rty.incub.backend.mock;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.ProductQuery;
+import io.rty.incub.backend.ProductSortOrder;
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Single product operations of {@link MockDataService}: lookup, update and
+ * delete (followed by re-creating the product, to keep the catalog size), and
+ * a page from the middle of the catalog sorted by price.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class MockDataServiceBenchmark {
+
+    @Param({ "100", "10000", "1000000", "10000000" })
+    public int size;
+
+    private DataService service;
+    /** Live product ids, updated as deleted products are re-created. */
+    private int[] ids;
+
+    @Setup
+    public void setUp() {
+        service = BenchmarkData.service(size);
+        ids = service.getAllProducts().stream().mapToInt(Product::getId)
+                .toArray();
+        // the first sorted query builds the sort index
+        fetchSortedPage();
+    }
+
+    private int randomIndex() {
+        return ThreadLocalRandom.current().nextInt(ids.length);
+    }
+
+    @Benchmark
+    public Product getProductById() {
+        return service.getProductById(ids[randomIndex()]);
+    }
+
+    @Benchmark
+    public Product updateProduct() {
+        Product p = service.getProductById(ids[randomIndex()]);
+        p.setStockCount(p.getStockCount() + 1);
+        service.updateProduct(p);
+        return p;
+    }
+
+    @Benchmark
+    public List<Product> fetchSortedPage() {
+        return service.fetchProducts(new ProductQuery(ids.length / 2, 50,
+                Collections.singletonList(ProductSortOrder
+                        .desc(ProductSortOrder.Property.PRICE)),
+                null));
+    }
+
+    @Benchmark
+    public Product deleteProduct() {
+        int index = randomIndex();
+        Product p = service.getProductById(ids[index]);
+        service.deleteProduct(p.getId());
+        p.setId(-1);
+        service.updateProduct(p);
+        ids[index] = p.getId();
+        return p;
+    }
+}
@@ -0,0 +1,75 @@
+package io.rty.incub.backend.mock;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.ProductQuery;
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Read throughput of {@link MockDataService} while a writer keeps updating
+ * products: readers select rows and scroll pages like users of the grid do.
+ * <p>
+ * Compare the read scores for a growing number of readers with the thread
+ * group option, e.g. {@code -tg 1,1}, {@code -tg 2,1} ... {@code -tg 16,1}.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class MockDataServiceConcurrencyBenchmark {
+
+    @Param({ "100000", "1000000" })
+    public int size;
+
+    private DataService service;
+    private int[] ids;
+
+    @Setup
+    public void setUp() {
+        service = BenchmarkData.service(size);
+        ids = service.getAllProducts().stream().mapToInt(Product::getId)
+                .toArray();
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(4)
+    public Object read() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(100) == 0) {
+            List<Product> page = service.fetchProducts(new ProductQuery(
+                    random.nextInt(ids.length), 50, null, ""));
+            return page;
+        }
+        return service.getProductById(ids[random.nextInt(ids.length)]);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public Object write() {
+        Product p = service.getProductById(
+                ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+        service.updateProduct(p);
+        return p;
+    }
+}
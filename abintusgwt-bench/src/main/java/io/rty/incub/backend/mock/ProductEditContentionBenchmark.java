@@ -0,0 +1,87 @@
+package io.rty.incub.backend.mock;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.ProductConflictException;
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Many editors saving products at the same time, each reading a product,
+ * changing it and saving it back, and starting over with a fresh copy when
+ * the save conflicts with another editor's.
+ * <p>
+ * Editors pick among the first {@code hotProducts} products, from one product
+ * everybody fights over to a spread where conflicts are rare. The
+ * {@code saves} and {@code conflicts} counters tell how many edits went
+ * through and how many had to be redone; the thread count can be changed with
+ * {@code -t}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(16)
+public class ProductEditContentionBenchmark {
+
+    @Param({ "1", "16", "1024" })
+    public int hotProducts;
+
+    private DataService service;
+    private int[] ids;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+
+        public long saves;
+        public long conflicts;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            saves = 0;
+            conflicts = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        service = BenchmarkData.service(100_000);
+        ids = service.getAllProducts().stream().mapToInt(Product::getId)
+                .limit(hotProducts).toArray();
+    }
+
+    @Benchmark
+    public Product edit(Outcomes outcomes) {
+        int id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        while (true) {
+            Product p = service.getProductById(id);
+            p.setStockCount(p.getStockCount() + 1);
+            try {
+                service.updateProduct(p);
+                outcomes.saves++;
+                return p;
+            } catch (ProductConflictException e) {
+                outcomes.conflicts++;
+            }
+        }
+    }
+}
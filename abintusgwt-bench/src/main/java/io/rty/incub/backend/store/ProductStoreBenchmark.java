@@ -0,0 +1,95 @@
+package io.rty.incub.backend.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Id lookups, replacements and removals of {@link ProductStore}, next to the
+ * linear list scans the store replaced as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class ProductStoreBenchmark {
+
+    @Param({ "100", "10000", "1000000", "10000000" })
+    public int size;
+
+    private ProductStore store;
+    private List<Product> list;
+
+    @Setup
+    public void setUp() {
+        store = new ProductStore(size);
+        list = new ArrayList<>(size);
+        for (int id = 1; id <= size; id++) {
+            Product p = new Product();
+            p.setId(id);
+            store.put(p);
+            list.add(p);
+        }
+    }
+
+    private int randomId() {
+        return ThreadLocalRandom.current().nextInt(size) + 1;
+    }
+
+    @Benchmark
+    public Product storeGet() {
+        return store.get(randomId());
+    }
+
+    @Benchmark
+    public boolean storeReplace() {
+        return store.put(store.get(randomId()));
+    }
+
+    @Benchmark
+    public Product storeRemoveAndAdd() {
+        Product p = store.get(randomId());
+        store.remove(p.getId());
+        store.put(p);
+        return p;
+    }
+
+    @Benchmark
+    public Product listScanGet() {
+        return scan(randomId());
+    }
+
+    @Benchmark
+    public Product listScanRemoveAndAdd() {
+        Product p = scan(randomId());
+        list.remove(p);
+        list.add(p);
+        return p;
+    }
+
+    private Product scan(int id) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).getId() == id) {
+                return list.get(i);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,64 @@
+package io.rty.incub.backend.store;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.mock.BenchmarkData;
+
+/**
+ * Reports the heap taken per product by generated catalogs, held as a list of
+ * {@link Product} objects and in a {@link ProductStore}. Heap usage is read
+ * after full collections, so run it with a heap large enough for the list
+ * and nothing else in the JVM:
+ *
+ * <pre>
+ * java -Xmx16g -cp benchmarks.jar io.rty.incub.backend.store.ProductStoreFootprint 1000000 10000000
+ * </pre>
+ */
+public final class ProductStoreFootprint {
+
+    private ProductStoreFootprint() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            args = new String[] { "1000000" };
+        }
+        List<Category> categories = BenchmarkData.categories();
+        for (String arg : args) {
+            int size = Integer.parseInt(arg);
+            report(categories, size);
+        }
+    }
+
+    private static void report(List<Category> categories, int size) {
+        long baseline = usedHeap();
+        List<Product> list = new ArrayList<>(size);
+        BenchmarkData.generator(size).generateProducts(categories, list::add);
+        long objects = usedHeap() - baseline;
+
+        ProductStore store = new ProductStore(size);
+        list.forEach(store::put);
+        store.trimToSize();
+        list = null;
+        long columns = usedHeap() - baseline;
+
+        System.out.printf(
+                "%,d products: objects %.1f bytes/product, columns %.1f bytes/product"
+                        + " (%.1f estimated), %.1fx smaller%n",
+                size, (double) objects / size, (double) columns / size,
+                (double) store.estimatedBytes() / size,
+                (double) objects / columns);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+                .getUsed();
+    }
+}
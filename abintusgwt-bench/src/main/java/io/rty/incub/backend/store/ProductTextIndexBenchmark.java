@@ -0,0 +1,70 @@
+package io.rty.incub.backend.store;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.rty.incub.backend.ProductQuery;
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.mock.BenchmarkData;
+
+/**
+ * Counting the products matching a filter with {@link ProductTextIndex},
+ * next to the plain scan it replaced as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class ProductTextIndexBenchmark {
+
+    @Param({ "100", "10000", "1000000", "10000000" })
+    public int size;
+
+    @Param({ "cello", "tree hou", "sci", "available", "xyz" })
+    public String filter;
+
+    private List<Product> products;
+    private ProductTextIndex index;
+
+    @Setup
+    public void setUp() {
+        List<Category> categories = BenchmarkData.categories();
+        products = BenchmarkData.products(categories, size);
+        index = new ProductTextIndex();
+        for (Product p : products) {
+            index.put(p);
+        }
+    }
+
+    @Benchmark
+    public int indexCount() {
+        ProductTextIndex.Match match = index.match(filter);
+        return match.isEmpty() ? 0 : index.count(match);
+    }
+
+    @Benchmark
+    public int[] indexMatchingIds() {
+        return index.matchingIds(index.match(filter));
+    }
+
+    @Benchmark
+    public long scanCount() {
+        return products.stream()
+                .filter(ProductQuery.all(filter).getFilterPredicate()).count();
+    }
+}
@@ -0,0 +1,75 @@
+package io.rty.incub.crud;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.data.provider.QuerySortOrder;
+import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.mock.BenchmarkData;
+
+/**
+ * What the grid asks of {@link ProductDataProvider}: the row count and one
+ * page of 50 rows at a random position, for a given filter and sort column.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class ProductDataProviderBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({ "100", "10000", "1000000", "10000000" })
+    public int size;
+
+    @Param({ "", "sci", "cello" })
+    public String filter;
+
+    /** Sort property of the grid column, empty for unsorted. */
+    @Param({ "", "productName", "price", "stockCount" })
+    public String sortProperty;
+
+    private ProductDataProvider dataProvider;
+    private List<QuerySortOrder> sortOrders;
+    private int rows;
+
+    @Setup
+    public void setUp() {
+        dataProvider = new ProductDataProvider(BenchmarkData.service(size));
+        dataProvider.setFilter(filter);
+        sortOrders = sortProperty.isEmpty() ? Collections.emptyList()
+                : QuerySortOrder.asc(sortProperty).build();
+        rows = dataProvider.size(new Query<>());
+    }
+
+    @Benchmark
+    public int size() {
+        return dataProvider.size(new Query<>());
+    }
+
+    @Benchmark
+    public List<Product> fetchPage() {
+        int offset = rows <= PAGE_SIZE ? 0
+                : ThreadLocalRandom.current().nextInt(rows - PAGE_SIZE);
+        return dataProvider.fetch(new Query<>(offset, PAGE_SIZE, sortOrders,
+                null, null)).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,87 @@
+package io.rty.incub.crud;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.mock.BenchmarkData;
+
+/**
+ * Formatting the cells of the product grid, one row per invocation, walking
+ * through the whole catalog like a user scrolling to the end. The cached row
+ * goes through a {@link ProductRenderCache} of the default size, so it only
+ * hits once the catalog has been walked through and fits in the cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class ProductFormatterBenchmark {
+
+    @Param({ "100", "10000", "1000000", "10000000" })
+    public int size;
+
+    private final ProductFormatter formatter = new ProductFormatter();
+    private final ProductRenderCache renderCache = new ProductRenderCache(
+            1 << 16);
+    private List<Product> products;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        products = BenchmarkData.products(BenchmarkData.categories(), size);
+        // as if read from the data service, which versions what it stores
+        products.forEach(p -> p.setVersion(1));
+    }
+
+    private Product nextProduct() {
+        if (next == products.size()) {
+            next = 0;
+        }
+        return products.get(next++);
+    }
+
+    @Benchmark
+    public String formatPrice() {
+        return formatter.formatPrice(nextProduct());
+    }
+
+    @Benchmark
+    public String formatCategories() {
+        return formatter.formatCategories(nextProduct());
+    }
+
+    @Benchmark
+    public void formatRow(Blackhole blackhole) {
+        Product product = nextProduct();
+        blackhole.consume(formatter.formatPrice(product));
+        blackhole.consume(formatter.formatAvailability(product));
+        blackhole.consume(formatter.formatStockCount(product));
+        blackhole.consume(formatter.formatCategories(product));
+    }
+
+    @Benchmark
+    public void renderCachedRow(Blackhole blackhole) {
+        ProductRenderCache.Cells cells = renderCache
+                .getCells(nextProduct(), formatter);
+        blackhole.consume(cells.getPrice());
+        blackhole.consume(cells.getAvailability());
+        blackhole.consume(cells.getStockCount());
+        blackhole.consume(cells.getCategories());
+    }
+}
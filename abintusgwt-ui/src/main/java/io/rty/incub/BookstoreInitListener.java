@@ -5,6 +5,10 @@ import com.vaadin.flow.server.VaadinServiceInitListener;
 import io.rty.incub.authentication.AccessControl;
 import io.rty.incub.authentication.AccessControlFactory;
 import io.rty.incub.authentication.LoginScreen;
+import io.rty.incub.backend.metrics.MetricRegistry;
+import io.rty.incub.backend.metrics.Timer;
+import io.rty.incub.shared.JvmMetrics;
+import io.rty.incub.shared.SessionMemoryMeter;
 
 /**
  * This class is used to listen to BeforeEnter event of all UIs in order to
@@ -13,6 +17,11 @@ import io.rty.incub.authentication.LoginScreen;
  * com.vaadin.flow.server.VaadinServiceInitListener in META-INF/services.
  */
 public class BookstoreInitListener implements VaadinServiceInitListener {
+
+    private static final Timer GUARD = MetricRegistry.get().timer(
+            "abintusgwt_navigation_guard_seconds",
+            "Time spent checking sign-in before navigating.");
+
     @Override
     public void serviceInit(ServiceInitEvent initEvent) {
         final AccessControl accessControl = AccessControlFactory.getInstance()
@@ -20,10 +29,14 @@ public class BookstoreInitListener implements VaadinServiceInitListener {
 
         initEvent.getSource().addUIInitListener(uiInitEvent -> {
             uiInitEvent.getUI().addBeforeEnterListener(enterEvent -> {
+                long start = GUARD.start();
                 if (!accessControl.isUserSignedIn() && !LoginScreen.class
                         .equals(enterEvent.getNavigationTarget()))
                     enterEvent.rerouteTo(LoginScreen.class);
+                GUARD.recordSince(start);
             });
         });
+        SessionMemoryMeter.register(initEvent.getSource());
+        JvmMetrics.register();
     }
 }
@@ -3,7 +3,9 @@ package io.rty.incub;
 import com.vaadin.flow.component.dependency.StyleSheet;
 import com.vaadin.flow.component.icon.VaadinIcon;
 import com.vaadin.flow.component.orderedlayout.FlexLayout;
+import com.vaadin.flow.component.page.Push;
 import com.vaadin.flow.router.RouterLayout;
+import com.vaadin.flow.shared.ui.Transport;
 import com.vaadin.flow.theme.Theme;
 import com.vaadin.flow.theme.lumo.Lumo;
 import io.rty.incub.about.AboutView;
@@ -11,8 +13,12 @@ import io.rty.incub.crud.SampleCrudView;
 import io.rty.incub.settings.SettingsView;
 
 /**
- * The layout of the pages e.g. About and Inventory.
+ * The layout of the pages e.g. About and Inventory. Server push is enabled so
+ * that product changes made by other users show up without a refresh. Round
+ * trips to the server go as requests rather than over the web socket, so
+ * that the {@link io.rty.incub.shared.RequestTimingFilter} times them.
  */
+@Push(transport = Transport.WEBSOCKET_XHR)
 @StyleSheet("css/shared-styles.css")
 @Theme(value = Lumo.class, variant = Lumo.DARK)
 public class MainLayout extends FlexLayout implements RouterLayout {
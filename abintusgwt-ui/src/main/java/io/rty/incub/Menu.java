@@ -15,6 +15,7 @@ import com.vaadin.flow.component.tabs.Tabs;
 import com.vaadin.flow.router.RouterLink;
 import com.vaadin.flow.server.VaadinServletService;
 import com.vaadin.flow.server.VaadinSession;
+import io.rty.incub.authentication.AccessControlFactory;
 
 /**
  * Implementation of the side menu.
@@ -77,7 +78,8 @@ public class Menu extends FlexLayout {
         final Button logoutButton = new Button("Logout",
                 VaadinIcon.SIGN_OUT.create());
         logoutButton.addClickListener(event -> {
-            VaadinSession.getCurrent().getSession().invalidate();
+            AccessControlFactory.getInstance().createAccessControl()
+                    .signOut();
             UI.getCurrent().getPage().reload();
         });
 
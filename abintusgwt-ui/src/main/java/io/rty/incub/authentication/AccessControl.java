@@ -1,6 +1,10 @@
 package io.rty.incub.authentication;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Simple interface for authentication and authorization checks.
@@ -10,11 +14,55 @@ public interface AccessControl extends Serializable {
     String ADMIN_ROLE_NAME = "admin";
     String ADMIN_USERNAME = "admin";
 
-    public boolean signIn(String username, String password);
+    /**
+     * The roles the application checks, which are resolved for a user once
+     * by {@link #resolvePrincipal()}.
+     */
+    Set<String> ROLE_NAMES = Collections.singleton(ADMIN_ROLE_NAME);
+
+    /**
+     * Checks the credentials in the background, as checking a password is
+     * slow by design and must not hold up the session. A user whose
+     * credentials match is then signed in with {@link #signIn(String)}.
+     *
+     * @return a future of whether the credentials match, which completes
+     *         exceptionally if they cannot be checked now
+     */
+    public CompletableFuture<Boolean> verifyCredentials(String username,
+            String password);
+
+    /**
+     * Signs in the user, whose credentials have been verified with
+     * {@link #verifyCredentials(String, String)}. Must be called with the
+     * session locked.
+     */
+    public void signIn(String username);
+
+    /**
+     * Signs the current user out and invalidates the session.
+     */
+    public void signOut();
 
     public boolean isUserSignedIn();
 
     public boolean isUserInRole(String role);
 
     public String getPrincipalName();
+
+    /**
+     * Resolves the current user and which of the {@link #ROLE_NAMES} it is
+     * in.
+     */
+    public default UserPrincipal resolvePrincipal() {
+        if (!isUserSignedIn()) {
+            return UserPrincipal.ANONYMOUS;
+        }
+        Set<String> roles = new HashSet<>();
+        for (String role : ROLE_NAMES) {
+            if (isUserInRole(role)) {
+                roles.add(role);
+            }
+        }
+        return new UserPrincipal(getPrincipalName(), roles);
+    }
 }
@@ -2,7 +2,8 @@ package io.rty.incub.authentication;
 
 public class AccessControlFactory {
     private static final AccessControlFactory INSTANCE = new AccessControlFactory();
-    private final AccessControl accessControl = new BasicAccessControl();
+    private final AccessControl accessControl = new CachingAccessControl(
+            new BasicAccessControl());
 
     private AccessControlFactory() {
     }
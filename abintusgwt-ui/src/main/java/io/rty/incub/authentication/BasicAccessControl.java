@@ -1,19 +1,33 @@
 package io.rty.incub.authentication;
 
+import java.util.concurrent.CompletableFuture;
+
+import com.vaadin.flow.server.VaadinSession;
+import io.rty.incub.backend.auth.CredentialVerifier;
+
 /**
- * Default mock implementation of {@link AccessControl}. This implementation
- * accepts any string as a password, and considers the user "admin" as the only
- * administrator.
+ * Default implementation of {@link AccessControl}. This implementation checks
+ * passwords with the {@link CredentialVerifier} of the application, and
+ * considers the user "admin" as the only administrator.
  */
 public class BasicAccessControl implements AccessControl {
 
     @Override
-    public boolean signIn(String username, String password) {
-        if (username == null || username.isEmpty())
-            return false;
+    public CompletableFuture<Boolean> verifyCredentials(String username,
+            String password) {
+        return CredentialVerifier.get().verify(username,
+                password.toCharArray());
+    }
 
+    @Override
+    public void signIn(String username) {
         CurrentUser.set(username);
-        return true;
+    }
+
+    @Override
+    public void signOut() {
+        CurrentUser.set(null);
+        VaadinSession.getCurrent().getSession().invalidate();
     }
 
     @Override
@@ -0,0 +1,85 @@
+package io.rty.incub.authentication;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.vaadin.flow.server.VaadinSession;
+
+/**
+ * {@link AccessControl} that resolves the user of a session once, with its
+ * roles, and answers the access checks from the resolved
+ * {@link UserPrincipal}.
+ * <p>
+ * The principal is kept as an attribute of the {@link VaadinSession}, so a
+ * check reads it from the session locked for the request rather than looking
+ * the user up in the HTTP session each time. It is resolved again after
+ * signing in or out. Roles other than the {@link AccessControl#ROLE_NAMES}
+ * are checked with the wrapped access control.
+ */
+public class CachingAccessControl implements AccessControl {
+
+    private final AccessControl accessControl;
+
+    public CachingAccessControl(AccessControl accessControl) {
+        this.accessControl = accessControl;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> verifyCredentials(String username,
+            String password) {
+        return accessControl.verifyCredentials(username, password);
+    }
+
+    @Override
+    public void signIn(String username) {
+        accessControl.signIn(username);
+        setPrincipal(null);
+    }
+
+    @Override
+    public void signOut() {
+        setPrincipal(null);
+        accessControl.signOut();
+    }
+
+    @Override
+    public boolean isUserSignedIn() {
+        return resolvePrincipal().isSignedIn();
+    }
+
+    @Override
+    public boolean isUserInRole(String role) {
+        if (ROLE_NAMES.contains(role)) {
+            return resolvePrincipal().isInRole(role);
+        }
+        return accessControl.isUserInRole(role);
+    }
+
+    @Override
+    public String getPrincipalName() {
+        return resolvePrincipal().getName();
+    }
+
+    @Override
+    public UserPrincipal resolvePrincipal() {
+        VaadinSession session = getSession();
+        UserPrincipal principal = session.getAttribute(UserPrincipal.class);
+        if (principal == null) {
+            principal = accessControl.resolvePrincipal();
+            session.setAttribute(UserPrincipal.class, principal);
+        }
+        return principal;
+    }
+
+    private static void setPrincipal(UserPrincipal principal) {
+        getSession().setAttribute(UserPrincipal.class, principal);
+    }
+
+    private static VaadinSession getSession() {
+        VaadinSession session = VaadinSession.getCurrent();
+        if (session == null) {
+            throw new IllegalStateException(
+                    "No session bound to current thread.");
+        }
+        return session;
+    }
+}
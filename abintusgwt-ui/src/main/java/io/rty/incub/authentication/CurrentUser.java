@@ -1,15 +1,17 @@
 package io.rty.incub.authentication;
 
-import com.vaadin.flow.server.VaadinRequest;
-import com.vaadin.flow.server.VaadinService;
+import com.vaadin.flow.server.VaadinSession;
+import com.vaadin.flow.server.WrappedSession;
 
 /**
  * Class for retrieving and setting the name of the current user of the current
  * session (without using JAAS). All methods of this class require that a
- * {@link VaadinRequest} is bound to the current thread.
+ * {@link VaadinSession} is bound to the current thread, as it is while
+ * handling a request or in {@code UI.access}, so that a user can be signed
+ * in once the password was checked in the background.
  * 
  * 
- * @see VaadinService#getCurrentRequest()
+ * @see VaadinSession#getCurrent()
  */
 public final class CurrentUser {
 
@@ -30,7 +32,7 @@ public final class CurrentUser {
      *             if the current session cannot be accessed.
      */
     public static String get() {
-        String currentUser = (String) getCurrentRequest().getWrappedSession()
+        String currentUser = (String) getCurrentSession()
                 .getAttribute(CURRENT_USER_SESSION_ATTRIBUTE_KEY);
         if (currentUser == null) {
             return "";
@@ -48,20 +50,20 @@ public final class CurrentUser {
      */
     public static void set(String currentUser) {
         if (currentUser == null) {
-            getCurrentRequest().getWrappedSession().removeAttribute(
+            getCurrentSession().removeAttribute(
                     CURRENT_USER_SESSION_ATTRIBUTE_KEY);
         } else {
-            getCurrentRequest().getWrappedSession().setAttribute(
+            getCurrentSession().setAttribute(
                     CURRENT_USER_SESSION_ATTRIBUTE_KEY, currentUser);
         }
     }
 
-    private static VaadinRequest getCurrentRequest() {
-        VaadinRequest request = VaadinService.getCurrentRequest();
-        if (request == null) {
+    private static WrappedSession getCurrentSession() {
+        VaadinSession session = VaadinSession.getCurrent();
+        if (session == null) {
             throw new IllegalStateException(
-                    "No request bound to current thread.");
+                    "No session bound to current thread.");
         }
-        return request;
+        return session.getSession();
     }
 }
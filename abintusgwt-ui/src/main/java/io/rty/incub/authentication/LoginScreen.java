@@ -1,7 +1,11 @@
 package io.rty.incub.authentication;
 
+import java.util.concurrent.CompletionException;
+
 import com.vaadin.flow.component.Component;
 import com.vaadin.flow.component.Html;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.dependency.StyleSheet;
 import com.vaadin.flow.component.formlayout.FormLayout;
@@ -11,14 +15,22 @@ import com.vaadin.flow.component.notification.Notification;
 import com.vaadin.flow.component.orderedlayout.FlexLayout;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.component.page.Push;
 import com.vaadin.flow.component.textfield.PasswordField;
 import com.vaadin.flow.component.textfield.TextField;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
+import com.vaadin.flow.server.Command;
+import com.vaadin.flow.shared.ui.Transport;
+import io.rty.incub.backend.auth.LoginThrottledException;
 
 /**
  * UI content when the user is not logged in yet.
+ * <p>
+ * The password is checked in the background, without holding the session,
+ * and the outcome is pushed to the browser.
  */
+@Push(transport = Transport.WEBSOCKET_XHR)
 @Route("Login")
 @PageTitle("Login")
 @StyleSheet("css/shared-styles.css")
@@ -85,7 +97,7 @@ public class LoginScreen extends FlexLayout {
         login.getElement().getThemeList().add("success primary");
 
         buttons.add(forgotPassword = new Button("Forgot password?"));
-        forgotPassword.addClickListener(event -> showNotification(new Notification("Hint: try anything")));
+        forgotPassword.addClickListener(event -> showNotification(new Notification("Hint: try admin/admin or user/user")));
         forgotPassword.getElement().getThemeList().add("tertiary");
 
         return loginForm;
@@ -104,17 +116,48 @@ public class LoginScreen extends FlexLayout {
     }
 
     private void login() {
+        if (!login.isEnabled()) {
+            // already checking, Enter was pressed again
+            return;
+        }
         login.setEnabled(false);
+        UI ui = UI.getCurrent();
+        String name = username.getValue();
+        accessControl.verifyCredentials(name, password.getValue())
+                .whenComplete((valid, error) -> access(ui, () -> {
+                    login.setEnabled(true);
+                    if (error != null) {
+                        showNotification(new Notification(
+                                loginUnavailable(error)));
+                    } else if (valid) {
+                        accessControl.signIn(name);
+                        ui.navigate("");
+                    } else {
+                        showNotification(new Notification("Login failed. " +
+                                "Please check your username and password and try again."));
+                        username.focus();
+                    }
+                }));
+    }
+
+    private static String loginUnavailable(Throwable error) {
+        Throwable cause = error instanceof CompletionException
+                ? error.getCause()
+                : error;
+        if (cause instanceof LoginThrottledException) {
+            long seconds = (((LoginThrottledException) cause)
+                    .getRetryAfterMillis() + 999) / 1000;
+            return "Too many failed logins. Please try again in " + seconds
+                    + " s.";
+        }
+        return "Login is busy. Please try again in a moment.";
+    }
+
+    private static void access(UI ui, Command command) {
         try {
-            if (accessControl.signIn(username.getValue(), password.getValue())) {
-                getUI().get().navigate("");
-            } else {
-                showNotification(new Notification("Login failed. " +
-                        "Please check your username and password and try again."));
-                username.focus();
-            }
-        } finally {
-            login.setEnabled(true);
+            ui.access(command);
+        } catch (UIDetachedException e) {
+            // the browser went away while checking
         }
     }
 
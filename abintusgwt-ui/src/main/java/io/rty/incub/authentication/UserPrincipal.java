@@ -0,0 +1,51 @@
+package io.rty.incub.authentication;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The user of a session, resolved once with the roles it is in, so that
+ * access checks do not need to go back to the {@link AccessControl}.
+ * Instances are immutable.
+ */
+public final class UserPrincipal implements Serializable {
+
+    /** The principal of a session no user is signed in to. */
+    public static final UserPrincipal ANONYMOUS = new UserPrincipal("",
+            Collections.emptySet());
+
+    private final String name;
+    private final Set<String> roles;
+
+    public UserPrincipal(String name, Collection<String> roles) {
+        this.name = name;
+        this.roles = Collections.unmodifiableSet(new HashSet<>(roles));
+    }
+
+    /**
+     * Returns the name of the user, or an empty string if none is signed in.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public boolean isSignedIn() {
+        return !name.isEmpty();
+    }
+
+    public Set<String> getRoles() {
+        return roles;
+    }
+
+    public boolean isInRole(String role) {
+        return roles.contains(role);
+    }
+
+    @Override
+    public String toString() {
+        return isSignedIn() ? name + " " + roles : "anonymous";
+    }
+}
@@ -0,0 +1,72 @@
+package io.rty.incub.crud;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.data.Availability;
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+
+/**
+ * The catalog data shown by the inventory views of all UIs, held once for
+ * the application: the categories and availabilities to choose from, the
+ * formatter and the {@link ProductRenderCache} of the grid cells. Filtering
+ * is left to the indexes of the {@link DataService}, which are shared too.
+ * <p>
+ * Views only reference it, so that a UI retains nothing that grows with the
+ * catalog beyond the rows it shows. It is immutable but for its caches,
+ * which are thread safe, and a serialized session refers to it rather than
+ * holding a copy.
+ */
+public final class CatalogViewModel implements Serializable {
+
+    private static class InstanceHolder {
+        private static final CatalogViewModel INSTANCE = new CatalogViewModel(
+                DataService.get().getAllCategories(),
+                ProductRenderCache.get());
+    }
+
+    private final transient List<Category> categories;
+    private final transient List<Availability> availabilities = Collections
+            .unmodifiableList(Arrays.asList(Availability.values()));
+    private final transient ProductFormatter formatter = new ProductFormatter();
+    private final transient ProductRenderCache renderCache;
+
+    CatalogViewModel(Collection<Category> categories,
+            ProductRenderCache renderCache) {
+        this.categories = Collections
+                .unmodifiableList(new ArrayList<>(categories));
+        this.renderCache = renderCache;
+    }
+
+    /**
+     * Returns the view-model shared by all UIs.
+     */
+    public static CatalogViewModel get() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    public List<Category> getCategories() {
+        return categories;
+    }
+
+    public List<Availability> getAvailabilities() {
+        return availabilities;
+    }
+
+    /**
+     * Returns the formatted grid cells of the product, cached for all UIs.
+     */
+    public ProductRenderCache.Cells getCells(Product product) {
+        return renderCache.getCells(product, formatter);
+    }
+
+    private Object readResolve() {
+        return get();
+    }
+}
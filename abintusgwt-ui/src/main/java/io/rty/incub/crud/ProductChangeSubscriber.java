@@ -0,0 +1,117 @@
+package io.rty.incub.crud;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
+import com.vaadin.flow.server.Command;
+import io.rty.incub.backend.AsyncDataService;
+import io.rty.incub.backend.ProductChangeEvent;
+import io.rty.incub.backend.ProductChangeListener;
+
+/**
+ * Applies product changes made by other users to the grid of one UI, pushing
+ * them to the browser.
+ * <p>
+ * Changes arriving while the UI is busy are merged, so that each UI has at
+ * most one round of changes in flight whatever the write rate. Past
+ * {@link #MAX_PENDING_ROWS} changed rows, or as soon as products are created
+ * or deleted, the pending work degrades to a single refresh of the whole grid.
+ * Changed rows are looked up on the {@link AsyncDataService}, so that only
+ * the products found are handed to {@link UI#access}, and the session lock is
+ * not held while the store is read.
+ */
+public class ProductChangeSubscriber implements ProductChangeListener {
+
+    static final int MAX_PENDING_ROWS = 200;
+
+    private final UI ui;
+    private final ProductGrid grid;
+    private final ProductDataProvider dataProvider;
+
+    private Set<Integer> pendingRows = new HashSet<>();
+    private boolean pendingRefreshAll;
+    /** Whether a round of changes is being looked up or applied. */
+    private boolean inFlight;
+
+    public ProductChangeSubscriber(UI ui, ProductGrid grid,
+            ProductDataProvider dataProvider) {
+        this.ui = ui;
+        this.grid = grid;
+        this.dataProvider = dataProvider;
+    }
+
+    @Override
+    public void productsChanged(ProductChangeEvent event) {
+        synchronized (this) {
+            if (event.isStructural()
+                    || pendingRows.size() + event.getUpdatedIds()
+                            .size() > MAX_PENDING_ROWS) {
+                pendingRefreshAll = true;
+                pendingRows.clear();
+            } else if (!pendingRefreshAll) {
+                pendingRows.addAll(event.getUpdatedIds());
+            }
+            if (inFlight) {
+                return;
+            }
+            inFlight = true;
+        }
+        deliver();
+    }
+
+    /**
+     * Starts a round with the pending changes: a refresh of the grid, or a
+     * lookup of the changed rows followed by a refresh of those found.
+     */
+    private void deliver() {
+        Set<Integer> rows;
+        boolean refreshAll;
+        synchronized (this) {
+            rows = pendingRows;
+            refreshAll = pendingRefreshAll;
+            pendingRows = new HashSet<>();
+            pendingRefreshAll = false;
+        }
+        if (refreshAll) {
+            access(() -> {
+                dataProvider.refreshAll();
+                roundDone();
+            });
+            return;
+        }
+        AsyncDataService.get().getProductsById(rows)
+                .whenComplete((products, error) -> access(() -> {
+                    if (error != null) {
+                        // the rows could not be read, show what is there now
+                        dataProvider.refreshAll();
+                    } else {
+                        products.forEach(grid::refresh);
+                    }
+                    roundDone();
+                }));
+    }
+
+    /**
+     * Ends a round, starting the next one if changes came in meanwhile. Only
+     * hands work over, so it may run with the session locked.
+     */
+    private void roundDone() {
+        synchronized (this) {
+            if (pendingRows.isEmpty() && !pendingRefreshAll) {
+                inFlight = false;
+                return;
+            }
+        }
+        deliver();
+    }
+
+    private void access(Command command) {
+        try {
+            ui.access(command);
+        } catch (UIDetachedException e) {
+            // the view is going away and removes this listener on detach
+        }
+    }
+}
@@ -1,31 +1,67 @@
 package io.rty.incub.crud;
 
-import java.util.Locale;
+import java.util.List;
 import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import com.vaadin.flow.data.provider.ListDataProvider;
+import com.vaadin.flow.data.provider.AbstractBackEndDataProvider;
+import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.data.provider.QuerySortOrder;
+import com.vaadin.flow.data.provider.SortDirection;
 import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.ProductQuery;
+import io.rty.incub.backend.ProductSortOrder;
 import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.metrics.MetricRegistry;
+import io.rty.incub.backend.metrics.Timer;
 
-public class ProductDataProvider extends ListDataProvider<Product> {
+/**
+ * Lazy data provider for the product grid. Only the rows the grid asks for
+ * are fetched from the {@link DataService}, which also does the filtering and
+ * sorting. Fetches, counts and filter changes are timed, the latter including
+ * the refresh of the grid.
+ * <p>
+ * The grid asks for its rows synchronously, so pages are read on the request
+ * thread, but writes go through the
+ * {@link io.rty.incub.backend.AsyncDataService}, and the grid is refreshed
+ * once they are done.
+ */
+public class ProductDataProvider
+        extends AbstractBackEndDataProvider<Product, Void> {
+
+    private static final String TIMER_NAME = "abintusgwt_data_provider_seconds";
+    private static final String TIMER_HELP = "Time spent by grid data providers.";
+    private static final Timer FETCH = MetricRegistry.get()
+            .timer(TIMER_NAME, TIMER_HELP, "operation", "fetch");
+    private static final Timer COUNT = MetricRegistry.get()
+            .timer(TIMER_NAME, TIMER_HELP, "operation", "count");
+    private static final Timer FILTER = MetricRegistry.get()
+            .timer(TIMER_NAME, TIMER_HELP, "operation", "filter");
+
+    private final DataService dataService;
 
     /** Text filter that can be changed separately. */
     private String filterText = "";
 
     public ProductDataProvider() {
-        super(DataService.get().getAllProducts());
+        this(DataService.get());
+    }
+
+    public ProductDataProvider(DataService dataService) {
+        this.dataService = dataService;
     }
 
     /**
-     * Store given product to the backing data service.
-     * 
+     * Refreshes the grid once the product was stored, the whole of it if the
+     * product is a new one, as it may land on any page.
+     *
      * @param product
-     *            the updated or new product
+     *            the product stored
+     * @param newProduct
+     *            whether it was stored as a new product
      */
-    public void save(Product product) {
-        boolean newProduct = product.isNewProduct();
-
-        DataService.get().updateProduct(product);
+    public void refreshSaved(Product product, boolean newProduct) {
         if (newProduct) {
             refreshAll();
         } else {
@@ -33,17 +69,6 @@ public class ProductDataProvider extends ListDataProvider<Product> {
         }
     }
 
-    /**
-     * Delete given product from the backing data service.
-     * 
-     * @param product
-     *            the product to be deleted
-     */
-    public void delete(Product product) {
-        DataService.get().deleteProduct(product.getId());
-        refreshAll();
-    }
-
     /**
      * Sets the filter to use for this data provider and refreshes data.
      * <p>
@@ -57,11 +82,22 @@ public class ProductDataProvider extends ListDataProvider<Product> {
         if (Objects.equals(this.filterText, filterText.trim())) {
             return;
         }
-        this.filterText = filterText.trim();
+        long start = FILTER.start();
+        try {
+            this.filterText = filterText.trim();
+            refreshAll();
+        } finally {
+            FILTER.recordSince(start);
+        }
+    }
 
-        setFilter(product -> passesFilter(product.getProductName(), filterText)
-                || passesFilter(product.getAvailability(), filterText)
-                || passesFilter(product.getCategory(), filterText));
+    /**
+     * Returns a query for all the products shown with the current filter, in
+     * the order of the given grid sort orders.
+     */
+    public ProductQuery getQuery(List<QuerySortOrder> sortOrders) {
+        return new ProductQuery(0, Integer.MAX_VALUE,
+                toSortOrders(sortOrders), filterText);
     }
 
     @Override
@@ -72,8 +108,36 @@ public class ProductDataProvider extends ListDataProvider<Product> {
         return product.getId();
     }
 
-    private boolean passesFilter(Object object, String filterText) {
-        return object != null && object.toString().toLowerCase(Locale.ENGLISH)
-                .contains(filterText);
+    @Override
+    protected Stream<Product> fetchFromBackEnd(Query<Product, Void> query) {
+        long start = FETCH.start();
+        try {
+            return dataService.fetchProducts(new ProductQuery(
+                    query.getOffset(), query.getLimit(),
+                    toSortOrders(query.getSortOrders()), filterText))
+                    .stream();
+        } finally {
+            FETCH.recordSince(start);
+        }
+    }
+
+    @Override
+    protected int sizeInBackEnd(Query<Product, Void> query) {
+        long start = COUNT.start();
+        try {
+            return dataService.countProducts(filterText);
+        } finally {
+            COUNT.recordSince(start);
+        }
+    }
+
+    private static List<ProductSortOrder> toSortOrders(
+            List<QuerySortOrder> sortOrders) {
+        return sortOrders.stream()
+                .map(order -> new ProductSortOrder(
+                        ProductSortOrder.Property
+                                .forPropertyName(order.getSorted()),
+                        order.getDirection() == SortDirection.DESCENDING))
+                .collect(Collectors.toList());
     }
 }
@@ -0,0 +1,74 @@
+package io.rty.incub.crud;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.html.Anchor;
+import com.vaadin.flow.component.icon.VaadinIcon;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
+import com.vaadin.flow.data.provider.QuerySortOrder;
+import com.vaadin.flow.server.StreamResource;
+import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.ProductQuery;
+import io.rty.incub.backend.io.ProductExporter;
+import io.rty.incub.backend.io.ProductFeedFormat;
+
+/**
+ * Download links exporting the products shown in a {@link ProductGrid}, with
+ * its filter and sort order, to CSV and XLSX files.
+ * <p>
+ * The files are not generated up front: each download streams the products
+ * from the {@link DataService} straight into the response, outside the
+ * session lock, so that an export of any size takes no more memory than a
+ * page of products. The links are given a new query whenever the filter or
+ * the sort order changes, since the download itself cannot read the grid.
+ */
+public class ProductExportLinks extends HorizontalLayout {
+
+    private final ProductGrid grid;
+    private final ProductDataProvider dataProvider;
+    private final Anchor csv = createLink("CSV");
+    private final Anchor xlsx = createLink("Excel");
+
+    public ProductExportLinks(ProductGrid grid,
+            ProductDataProvider dataProvider) {
+        this.grid = grid;
+        this.dataProvider = dataProvider;
+        add(csv, xlsx);
+        grid.addSortListener(event -> update());
+        update();
+    }
+
+    /**
+     * Points the links at exports of the products currently shown.
+     */
+    public void update() {
+        List<QuerySortOrder> sortOrders = grid.getSortOrder().stream()
+                .flatMap(order -> order.getSorted()
+                        .getSortOrder(order.getDirection()))
+                .collect(Collectors.toList());
+        ProductQuery query = dataProvider.getQuery(sortOrders);
+        csv.setHref(createResource(query, ProductFeedFormat.CSV));
+        xlsx.setHref(createResource(query, ProductFeedFormat.XLSX));
+    }
+
+    private static Anchor createLink(String label) {
+        Anchor link = new Anchor();
+        link.getElement().setAttribute("download", true);
+        link.add(new Button(label, VaadinIcon.DOWNLOAD.create()));
+        return link;
+    }
+
+    private static StreamResource createResource(ProductQuery query,
+            ProductFeedFormat format) {
+        StreamResource resource = new StreamResource(
+                "products" + format.getExtension(),
+                (out, session) -> new ProductExporter(DataService.get())
+                        .exportProducts(query, format, out));
+        resource.setContentType(format.getContentType());
+        // a download is always a fresh export
+        resource.setCacheTime(0);
+        return resource;
+    }
+}
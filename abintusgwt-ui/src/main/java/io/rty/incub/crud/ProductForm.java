@@ -23,7 +23,6 @@ import com.vaadin.flow.data.binder.BeanValidationBinder;
 import com.vaadin.flow.data.binder.Binder;
 import com.vaadin.flow.data.converter.StringToBigDecimalConverter;
 import com.vaadin.flow.data.converter.StringToIntegerConverter;
-import com.vaadin.flow.data.value.ValueChangeMode;
 import io.rty.incub.backend.data.Availability;
 import io.rty.incub.backend.data.Category;
 import io.rty.incub.backend.data.Product;
@@ -87,8 +86,8 @@ public class ProductForm extends BaseSideForm<Product> {
     	productName = new TextField("Product name");
         productName.setWidth("100%");
         productName.setRequired(true);
-        productName.setValueChangeMode(ValueChangeMode.EAGER);
         content.add(productName);
+        debounceValueChanges(productName);
     }
     
     private void createPriceAndStockFields() {
@@ -96,12 +95,10 @@ public class ProductForm extends BaseSideForm<Product> {
     	price = new TextField("Price");
         price.setSuffixComponent(new Span("€"));
         price.getElement().getThemeList().add("align-right");
-        price.setValueChangeMode(ValueChangeMode.EAGER);
         
         // create the stock field
         stockCount = new TextField("In stock");
         stockCount.getElement().getThemeList().add("align-right");
-        stockCount.setValueChangeMode(ValueChangeMode.EAGER);
 
         // align both on the same line
         final HorizontalLayout horizontalLayout = new HorizontalLayout(price,
@@ -109,13 +106,14 @@ public class ProductForm extends BaseSideForm<Product> {
         horizontalLayout.setWidth("100%");
         horizontalLayout.setFlexGrow(1, price, stockCount);
         content.add(horizontalLayout);
+        debounceValueChanges(price, stockCount);
     }
     
     private void createAvailabilityField() {
     	availability = new ComboBox<>("Availability");
         availability.setWidth("100%");
         availability.setRequired(true);
-        availability.setItems(Availability.values());
+        availability.setItems(CatalogViewModel.get().getAvailabilities());
         availability.setAllowCustomValue(false);
         content.add(availability);
     }
@@ -140,19 +138,19 @@ public class ProductForm extends BaseSideForm<Product> {
         binder.bindInstanceFields(this);
 
         // enable/disable save button while editing
-        binder.addStatusChangeListener(event -> {
-            boolean isValid = !event.hasValidationErrors();
-            boolean hasChanges = binder.hasChanges();
-            save.setEnabled(hasChanges && isValid);
-            discard.setEnabled(hasChanges);
-        });
+        bindButtonsToStatus();
     }
     
     protected ComponentEventListener<ClickEvent<Button>> saveClickListener() {
     	return event -> {
-            if (currentItem != null
-                    && binder.writeBeanIfValid(currentItem)) {
-                viewLogic.saveProduct(currentItem);
+            if (currentItem == null) {
+                return;
+            }
+            // save a copy, so that the product shown in the grid only
+            // changes once the save succeeds
+            Product edited = new Product(currentItem);
+            if (binder.writeBeanIfValid(edited)) {
+                viewLogic.saveProduct(edited);
             }
         };     	
     }
@@ -0,0 +1,77 @@
+package io.rty.incub.crud;
+
+import java.io.Serializable;
+import java.text.DecimalFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Formats product values for display in the {@link ProductGrid}.
+ * <p>
+ * Instances are thread safe, so that a single one, held by the
+ * {@link CatalogViewModel}, formats for the grids of all UIs: each thread
+ * gets its own {@link DecimalFormat}, and category labels are cached by
+ * category set for all threads.
+ */
+public class ProductFormatter implements Serializable {
+
+    private static final int MAX_CATEGORY_LABELS = 4096;
+
+    private static final ThreadLocal<DecimalFormat> DECIMAL_FORMAT = ThreadLocal
+            .withInitial(() -> {
+                DecimalFormat format = new DecimalFormat();
+                format.setMaximumFractionDigits(2);
+                format.setMinimumFractionDigits(2);
+                return format;
+            });
+
+    private final ConcurrentMap<Set<Category>, String> categoryLabels = new ConcurrentHashMap<>();
+
+    /**
+     * Formats the price with two decimals and adds " €".
+     */
+    public String formatPrice(Product product) {
+        return DECIMAL_FORMAT.get().format(product.getPrice()) + " €";
+    }
+
+    public String formatAvailability(Product product) {
+        return product.getAvailability().toString();
+    }
+
+    /**
+     * Formats the stock count, showing "-" for an empty stock.
+     */
+    public String formatStockCount(Product product) {
+        return product.getStockCount() == 0 ? "-"
+                : Integer.toString(product.getStockCount());
+    }
+
+    /**
+     * Lists the categories of the product by id, separated by commas.
+     * <p>
+     * Category sets are bit sets, and few distinct ones are in use, so labels
+     * are cached by set instead of being joined for every row.
+     */
+    public String formatCategories(Product product) {
+        Set<Category> categories = product.getCategory();
+        if (categories == null || categories.isEmpty()) {
+            return "";
+        }
+        String label = categoryLabels.get(categories);
+        if (label == null) {
+            // category sets iterate in id order
+            label = categories.stream().map(Category::getName)
+                    .collect(Collectors.joining(", "));
+            if (categoryLabels.size() >= MAX_CATEGORY_LABELS) {
+                categoryLabels.clear();
+            }
+            categoryLabels.put(categories, label);
+        }
+        return label;
+    }
+}
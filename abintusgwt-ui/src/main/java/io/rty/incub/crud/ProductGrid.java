@@ -1,40 +1,39 @@
 package io.rty.incub.crud;
 
+import java.util.Set;
+
 import com.vaadin.flow.component.grid.Grid;
 import com.vaadin.flow.data.renderer.TemplateRenderer;
-import io.rty.incub.backend.data.Category;
 import io.rty.incub.backend.data.Product;
 
-import java.text.DecimalFormat;
-import java.util.Comparator;
-import java.util.stream.Collectors;
-
 /**
- * Grid of products, handling the visual presentation and filtering of a set of
- * items. This version uses an in-memory data source that is suitable for small
- * data sets.
+ * Grid of products, handling the visual presentation of a set of items.
+ * Columns are sorted through their sort property, so that a lazy data provider
+ * can push the sorting to the back end. Cell values are taken from the
+ * {@link CatalogViewModel} shared by all UIs, whose cache only formats
+ * products that changed since they were last shown.
+ * <p>
+ * Rows are selected through their check boxes, so that several can be
+ * selected for bulk operations.
  */
 public class ProductGrid extends Grid<Product> {
 
     public ProductGrid() {
         setSizeFull();
+        setSelectionMode(SelectionMode.MULTI);
 
         addColumn(Product::getProductName)
                 .setHeader("Product name")
                 .setFlexGrow(20)
-                .setSortable(true);
+                .setSortProperty("productName");
 
         // Format and add " €" to price
-        final DecimalFormat decimalFormat = new DecimalFormat();
-        decimalFormat.setMaximumFractionDigits(2);
-        decimalFormat.setMinimumFractionDigits(2);
-
         // To change the text alignment of the column, a template is used.
         final String priceTemplate = "<div style='text-align: right'>[[item.price]]</div>";
         addColumn(TemplateRenderer.<Product>of(priceTemplate)
-                .withProperty("price", product -> decimalFormat.format(product.getPrice()) + " €"))
+                .withProperty("price", p -> cells(p).getPrice()))
                 .setHeader("Price")
-                .setComparator(Comparator.comparing(Product::getPrice))
+                .setSortProperty("price")
                 .setFlexGrow(3);
 
         // Add an traffic light icon in front of availability
@@ -43,39 +42,43 @@ public class ProductGrid extends Grid<Product> {
         // used here in availabilityTemplate.
         final String availabilityTemplate = "<iron-icon icon=\"vaadin:circle\" class-name=\"[[item.availability]]\"></iron-icon> [[item.availability]]";
         addColumn(TemplateRenderer.<Product>of(availabilityTemplate)
-                .withProperty("availability", product -> product.getAvailability().toString()))
+                .withProperty("availability",
+                        p -> cells(p).getAvailability()))
                 .setHeader("Availability")
-                .setComparator(Comparator.comparing(Product::getAvailability))
+                .setSortProperty("availability")
                 .setFlexGrow(5);
 
         // To change the text alignment of the column, a template is used.
         final String stockCountTemplate = "<div style='text-align: right'>[[item.stockCount]]</div>";
         addColumn(TemplateRenderer.<Product>of(stockCountTemplate)
-                .withProperty("stockCount", product -> product.getStockCount() == 0 ? "-" : Integer.toString(product.getStockCount())))
+                .withProperty("stockCount", p -> cells(p).getStockCount()))
                 .setHeader("Stock count")
-                .setComparator(Comparator.comparingInt(Product::getStockCount))
+                .setSortProperty("stockCount")
                 .setFlexGrow(3);
 
         // Show all categories the product is in, separated by commas
-        addColumn(this::formatCategories)
+        addColumn(p -> cells(p).getCategories())
                 .setHeader("Category")
                 .setFlexGrow(12);
     }
 
-    public Product getSelectedRow() {
-        return asSingleSelect().getValue();
+    private ProductRenderCache.Cells cells(Product product) {
+        return CatalogViewModel.get().getCells(product);
+    }
+
+    public Set<Product> getSelectedRows() {
+        return getSelectedItems();
     }
 
     public void refresh(Product product) {
         getDataCommunicator().refresh(product);
     }
 
-    private String formatCategories(Product product) {
-        if (product.getCategory() == null || product.getCategory().isEmpty()) {
-            return "";
-        }
-        return product.getCategory().stream()
-                .sorted(Comparator.comparing(Category::getId))
-                .map(Category::getName).collect(Collectors.joining(", "));
+    /**
+     * Shows the grid as loading while products are written in the
+     * background.
+     */
+    public void setLoading(boolean loading) {
+        getElement().getClassList().set("loading", loading);
     }
 }
@@ -0,0 +1,194 @@
+package io.rty.incub.crud;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
+import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.dialog.Dialog;
+import com.vaadin.flow.component.html.H3;
+import com.vaadin.flow.component.html.Span;
+import com.vaadin.flow.component.progressbar.ProgressBar;
+import com.vaadin.flow.component.textfield.TextArea;
+import com.vaadin.flow.component.upload.Upload;
+import com.vaadin.flow.server.Command;
+import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.VirtualThreads;
+import io.rty.incub.backend.io.ProductFeedFormat;
+import io.rty.incub.backend.io.ProductImportResult;
+import io.rty.incub.backend.io.ProductImporter;
+
+/**
+ * A dialog for importing products from an uploaded CSV or JSON feed.
+ * <p>
+ * The upload is written to a temporary file as it arrives, and imported from
+ * there on a background thread, so that neither the upload nor the import
+ * holds the session lock or the whole feed in memory. The progress is pushed
+ * to the browser after every batch. Closing the dialog stops the import
+ * between two batches; the products imported until then are kept.
+ */
+public class ProductImportDialog extends Dialog {
+
+    /**
+     * Runs the imports of all the users one after another, as they all write
+     * to the same service.
+     */
+    private static final ExecutorService IMPORTS = Executors
+            .newSingleThreadExecutor(VirtualThreads.factory("product-import"));
+
+    private final Upload upload;
+    private final ProgressBar progressBar = new ProgressBar();
+    private final Span status = new Span();
+    private final TextArea errors = new TextArea("Rejected records");
+
+    private File feed;
+    private transient Future<?> running;
+
+    public ProductImportDialog() {
+        upload = new Upload(this::receiveUpload);
+        upload.setMaxFiles(1);
+        upload.setAcceptedFileTypes(ProductFeedFormat.CSV.getExtension(),
+                ProductFeedFormat.JSON.getExtension());
+        upload.addSucceededListener(event -> startImport(event.getFileName()));
+        upload.addFailedListener(event -> {
+            deleteFeed();
+            status.setText("Upload failed: " + event.getReason().getMessage());
+        });
+
+        progressBar.setVisible(false);
+        errors.setReadOnly(true);
+        errors.setWidth("100%");
+        errors.setVisible(false);
+
+        Button close = new Button("Close", click -> close());
+        add(new H3("Import products"),
+                new Span("CSV files with a header, or JSON objects, with "
+                        + "product name, price, stock count, availability "
+                        + "and category fields."),
+                upload, progressBar, status, errors, close);
+        setWidth("600px");
+
+        addOpenedChangeListener(event -> {
+            if (!event.isOpened()) {
+                cancelImport();
+            }
+        });
+    }
+
+    private FileOutputStream receiveUpload(String fileName, String mimeType) {
+        deleteFeed();
+        ProductFeedFormat format = ProductFeedFormat.forFileName(fileName);
+        if (!format.isImportable()) {
+            throw new IllegalArgumentException("Cannot import " + fileName);
+        }
+        try {
+            feed = File.createTempFile("product-import",
+                    format.getExtension());
+            return new FileOutputStream(feed);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void startImport(String fileName) {
+        UI ui = UI.getCurrent();
+        File file = feed;
+        ProductFeedFormat format = ProductFeedFormat.forFileName(fileName);
+        long size = file.length();
+
+        upload.setVisible(false);
+        progressBar.setVisible(true);
+        progressBar.setValue(0);
+        status.setText("Importing " + fileName + "...");
+        errors.setVisible(false);
+
+        running = IMPORTS.submit(() -> {
+            try (InputStream in = new BufferedInputStream(
+                    Files.newInputStream(file.toPath()), 1 << 16)) {
+                ProductImportResult result = new ProductImporter(
+                        DataService.get()).importProducts(in, format,
+                                progress -> access(ui,
+                                        () -> showProgress(progress, size)));
+                access(ui, () -> showResult(result, null));
+            } catch (IOException | RuntimeException e) {
+                // checked here, on the thread that was interrupted
+                String failure = isCancellation(e) ? "Import cancelled"
+                        : "Import failed: " + e.getMessage();
+                access(ui, () -> showResult(null, failure));
+            } finally {
+                // the dialog deletes it too, should the import never start
+                file.delete();
+            }
+        });
+    }
+
+    /**
+     * Returns whether the import failed because it was cancelled: the
+     * importer stops between lines with an {@link InterruptedIOException},
+     * but an interrupt while reading the file closes it and throws a
+     * {@link ClosedByInterruptException} instead.
+     */
+    private static boolean isCancellation(Exception e) {
+        return e instanceof InterruptedIOException
+                || e instanceof ClosedByInterruptException
+                || e.getCause() instanceof ClosedByInterruptException
+                || Thread.interrupted();
+    }
+
+    private void showProgress(ProductImportResult progress, long size) {
+        progressBar.setValue(
+                size == 0 ? 1 : Math.min(1, progress.getBytesRead()
+                        / (double) size));
+        status.setText(progress.toString());
+    }
+
+    private void showResult(ProductImportResult result, String failure) {
+        running = null;
+        deleteFeed();
+        progressBar.setVisible(false);
+        upload.setVisible(true);
+        status.setText(failure != null ? failure : result.toString());
+        if (result != null && !result.getErrors().isEmpty()) {
+            errors.setValue(String.join("\n", result.getErrors()));
+            errors.setVisible(true);
+        }
+    }
+
+    private void cancelImport() {
+        if (running != null) {
+            running.cancel(true);
+            running = null;
+        }
+        deleteFeed();
+    }
+
+    private void deleteFeed() {
+        if (feed != null) {
+            feed.delete();
+            feed = null;
+        }
+    }
+
+    /**
+     * Runs the command with the session of the UI locked, unless the UI is
+     * gone.
+     */
+    private static void access(UI ui, Command command) {
+        try {
+            ui.access(command);
+        } catch (UIDetachedException e) {
+            // nobody is looking at the progress any more
+        }
+    }
+}
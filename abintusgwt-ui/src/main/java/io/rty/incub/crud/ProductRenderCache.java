@@ -0,0 +1,109 @@
+package io.rty.incub.crud;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import io.rty.incub.backend.data.Product;
+
+/**
+ * Formatted cell values of the {@link ProductGrid}, shared by the grids of
+ * all UIs, so that a product is formatted once per version rather than on
+ * every fetch of every grid.
+ * <p>
+ * The cache is direct mapped: each product id has a single entry, which holds
+ * the id and {@link Product#getVersion() version} it was formatted for. A
+ * product stored through the data service gets a new version, so its entry is
+ * replaced on the next lookup and nothing needs to be invalidated. Another
+ * product hashing to the same entry may evict it, which only costs formatting
+ * it again. Lookups that hit take no lock and allocate nothing.
+ */
+public final class ProductRenderCache {
+
+    /** System property setting the number of entries of the shared cache. */
+    static final String CAPACITY_PROPERTY = "abintusgwt.grid.renderCache";
+
+    private static final ProductRenderCache INSTANCE = new ProductRenderCache(
+            Integer.getInteger(CAPACITY_PROPERTY, 1 << 16));
+
+    private final AtomicReferenceArray<Cells> entries;
+    private final int mask;
+
+    /**
+     * The formatted cell values of a product version.
+     */
+    public static final class Cells {
+
+        private final int id;
+        private final int version;
+        private final String price;
+        private final String availability;
+        private final String stockCount;
+        private final String categories;
+
+        private Cells(Product product, ProductFormatter formatter) {
+            id = product.getId();
+            version = product.getVersion();
+            price = formatter.formatPrice(product);
+            availability = formatter.formatAvailability(product);
+            stockCount = formatter.formatStockCount(product);
+            categories = formatter.formatCategories(product);
+        }
+
+        public String getPrice() {
+            return price;
+        }
+
+        public String getAvailability() {
+            return availability;
+        }
+
+        public String getStockCount() {
+            return stockCount;
+        }
+
+        public String getCategories() {
+            return categories;
+        }
+    }
+
+    /**
+     * Creates a cache of at least the given number of entries, rounded up to
+     * a power of two.
+     */
+    ProductRenderCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        entries = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Returns the cache shared by all UIs.
+     */
+    public static ProductRenderCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the cell values of the product, formatting them with the given
+     * formatter unless they are cached for the id and version of the product.
+     * Products that have not been stored have no version to tell them apart
+     * and are always formatted.
+     */
+    public Cells getCells(Product product, ProductFormatter formatter) {
+        if (product.getVersion() == 0) {
+            return new Cells(product, formatter);
+        }
+        int index = index(product.getId());
+        Cells cells = entries.get(index);
+        if (cells == null || cells.id != product.getId()
+                || cells.version != product.getVersion()) {
+            cells = new Cells(product, formatter);
+            entries.lazySet(index, cells);
+        }
+        return cells;
+    }
+
+    private int index(int productId) {
+        // rows shown together mostly have close ids, which never collide
+        return productId & mask;
+    }
+}
@@ -3,22 +3,34 @@ package io.rty.incub.crud;
 import com.vaadin.flow.component.UI;
 import io.rty.incub.authentication.AccessControl;
 import io.rty.incub.authentication.AccessControlFactory;
-import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.ProductConflictException;
+import io.rty.incub.backend.data.Availability;
 import io.rty.incub.backend.data.Product;
 
 import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * This class provides an interface for the logical operations between the CRUD
  * view, its parts like the product editor form and the data source, including
  * fetching and saving products.
  *
+ * Products are fetched and saved in the background: the outcome of each
+ * operation is handled in a callback, which the view runs with the session
+ * locked once the operation is done.
+ *
  * Having this separate from the view makes it easier to test various parts of
  * the system separately, and to e.g. provide alternative views for the same
  * data.
  */
 public class SampleCrudLogic implements Serializable {
 
+    private static final BigDecimal PRICE_CUT = new BigDecimal("0.90");
+
     private SampleCrudView view;
 
     public SampleCrudLogic(SampleCrudView simpleCrudView) {
@@ -31,7 +43,9 @@ public class SampleCrudLogic implements Serializable {
         if (!AccessControlFactory.getInstance().createAccessControl()
                 .isUserInRole(AccessControl.ADMIN_ROLE_NAME)) {
             view.setNewProductEnabled(false);
+            view.setImportEnabled(false);
         }
+        view.showBulkActions(0);
     }
 
     public void cancelProduct() {
@@ -62,8 +76,11 @@ public class SampleCrudLogic implements Serializable {
                 // login
                 try {
                     int pid = Integer.parseInt(productId);
-                    Product product = findProduct(pid);
-                    view.selectRow(product);
+                    view.findProduct(pid, product -> {
+                        if (product != null) {
+                            view.selectRow(product);
+                        }
+                    });
                 } catch (NumberFormatException e) {
                 }
             }
@@ -72,24 +89,48 @@ public class SampleCrudLogic implements Serializable {
         }
     }
 
-    private Product findProduct(int productId) {
-        return DataService.get().getProductById(productId);
-    }
-
+    /**
+     * Saves the product, unless it was changed or deleted by someone else
+     * since it was opened in the form. In that case the form shows the
+     * current product, if any, for the user to edit again.
+     */
     public void saveProduct(Product product) {
         boolean newProduct = product.isNewProduct();
-        view.clearSelection();
-        view.updateProduct(product);
-        setFragmentParameter("");
-        view.showSaveNotification(product.getProductName()
-                + (newProduct ? " created" : " updated"));
+        view.updateProduct(product, error -> {
+            if (error instanceof ProductConflictException) {
+                showConflict(product);
+            } else if (error != null) {
+                view.showFailure(error);
+            } else {
+                view.clearSelection();
+                setFragmentParameter("");
+                view.showSaveNotification(product.getProductName()
+                        + (newProduct ? " created" : " updated"));
+            }
+        });
+    }
+
+    private void showConflict(Product product) {
+        view.findProduct(product.getId(), current -> {
+            if (current == null) {
+                cancelProduct();
+                view.showError(product.getProductName()
+                        + " was removed by someone else");
+            } else {
+                view.editProduct(current);
+                view.showError(product.getProductName()
+                        + " was changed by someone else, please check the"
+                        + " current values and save again");
+            }
+        });
     }
 
     public void deleteProduct(Product product) {
-        view.clearSelection();
-        view.removeProduct(product);
-        setFragmentParameter("");
-        view.showSaveNotification(product.getProductName() + " removed");
+        view.removeProduct(product, () -> {
+            view.clearSelection();
+            setFragmentParameter("");
+            view.showSaveNotification(product.getProductName() + " removed");
+        });
     }
 
     public void editProduct(Product product) {
@@ -107,10 +148,53 @@ public class SampleCrudLogic implements Serializable {
         view.editProduct(new Product());
     }
 
-    public void rowSelected(Product product) {
+    /**
+     * Edits the selected product if there is a single one, and offers the
+     * bulk operations for any selection.
+     */
+    public void rowsSelected(Set<Product> products) {
         if (AccessControlFactory.getInstance().createAccessControl()
                 .isUserInRole(AccessControl.ADMIN_ROLE_NAME)) {
-            editProduct(product);
+            view.showBulkActions(products.size());
+            editProduct(products.size() == 1 ? products.iterator().next()
+                    : null);
         }
     }
+
+    public void discontinueSelected() {
+        view.updateProducts(selectedIds(),
+                p -> p.setAvailability(Availability.DISCONTINUED), count -> {
+                    view.clearSelection();
+                    view.showSaveNotification(
+                            count + " products discontinued");
+                });
+    }
+
+    /**
+     * Cuts the prices of the selected products by ten percent, from their
+     * current prices rather than the ones shown.
+     */
+    public void cutPricesOfSelected() {
+        view.updateProducts(selectedIds(), p -> {
+            if (p.getPrice() != null) {
+                p.setPrice(p.getPrice().multiply(PRICE_CUT).setScale(2,
+                        RoundingMode.HALF_UP));
+            }
+        }, count -> {
+            view.clearSelection();
+            view.showSaveNotification("Prices of " + count + " products cut");
+        });
+    }
+
+    public void deleteSelected() {
+        List<Integer> ids = selectedIds();
+        view.clearSelection();
+        view.removeProducts(ids, count -> view
+                .showSaveNotification(count + " products removed"));
+    }
+
+    private List<Integer> selectedIds() {
+        return view.getSelectedRows().stream().map(Product::getId)
+                .collect(Collectors.toList());
+    }
 }
@@ -1,6 +1,20 @@
 package io.rty.incub.crud;
 
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import com.vaadin.flow.component.AttachEvent;
+import com.vaadin.flow.component.DetachEvent;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
 import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.html.Span;
 import com.vaadin.flow.component.icon.VaadinIcon;
 import com.vaadin.flow.component.notification.Notification;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
@@ -12,14 +26,23 @@ import com.vaadin.flow.router.OptionalParameter;
 import com.vaadin.flow.router.Route;
 import com.vaadin.flow.router.RouteAlias;
 import io.rty.incub.MainLayout;
+import io.rty.incub.backend.AsyncDataService;
 import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.ListenerRegistration;
 import io.rty.incub.backend.data.Product;
+import io.rty.incub.backend.metrics.MetricRegistry;
+import io.rty.incub.backend.metrics.Timer;
 
 /**
  * A view for performing create-read-update-delete operations on products.
  *
  * See also {@link SampleCrudLogic} for fetching the data, the actual CRUD
  * operations and controlling the view based on events from outside.
+ * <p>
+ * Products are looked up and written through the {@link AsyncDataService},
+ * so that a slow store holds neither the request thread nor the session
+ * lock. The outcome is pushed to the browser once it is known, and the grid
+ * and the form show as loading until then.
  */
 @Route(value = "Inventory", layout = MainLayout.class)
 @RouteAlias(value = "", layout = MainLayout.class)
@@ -27,26 +50,41 @@ public class SampleCrudView extends HorizontalLayout
         implements HasUrlParameter<String> {
 
     public static final String VIEW_NAME = "Inventory";
+
+    private static final Timer CONSTRUCTION = MetricRegistry.get().timer(
+            "abintusgwt_view_construction_seconds",
+            "Time spent constructing views.", "view", VIEW_NAME);
+
     private ProductGrid grid;
     private ProductForm form;
     private TextField filter;
 
     private SampleCrudLogic viewLogic = new SampleCrudLogic(this);
     private Button newProduct;
+    private Button importProducts;
+    private ProductExportLinks exportLinks;
+    private HorizontalLayout bulkActions;
+    private Span selectionCount;
 
     private ProductDataProvider dataProvider = new ProductDataProvider();
+    private ListenerRegistration productChangeRegistration;
+    /** Back-end calls whose outcome has not been shown yet. */
+    private int pendingCalls;
 
     public SampleCrudView() {
+        long start = CONSTRUCTION.start();
         setSizeFull();
         HorizontalLayout topLayout = createTopBar();
 
         grid = new ProductGrid();
         grid.setDataProvider(dataProvider);
-        grid.asSingleSelect().addValueChangeListener(
-                event -> viewLogic.rowSelected(event.getValue()));
+        grid.addSelectionListener(
+                event -> viewLogic.rowsSelected(event.getAllSelectedItems()));
+        exportLinks = new ProductExportLinks(grid, dataProvider);
+        topLayout.addComponentAtIndex(1, exportLinks);
 
         form = new ProductForm(viewLogic);
-        form.setCategories(DataService.get().getAllCategories());
+        form.setCategories(CatalogViewModel.get().getCategories());
 
         VerticalLayout barAndGridLayout = new VerticalLayout();
         barAndGridLayout.add(topLayout);
@@ -60,22 +98,44 @@ public class SampleCrudView extends HorizontalLayout
         add(form);
 
         viewLogic.init();
+        CONSTRUCTION.recordSince(start);
     }
 
     public HorizontalLayout createTopBar() {
         filter = new TextField();
         filter.setPlaceholder("Filter name, availability or category");
         // Apply the filter to grid's data provider. TextField value is never null
-        filter.addValueChangeListener(event -> dataProvider.setFilter(event.getValue()));
+        filter.addValueChangeListener(event -> {
+            dataProvider.setFilter(event.getValue());
+            exportLinks.update();
+        });
 
         newProduct = new Button("New product");
         newProduct.getElement().getThemeList().add("primary");
         newProduct.setIcon(VaadinIcon.PLUS_CIRCLE.create());
         newProduct.addClickListener(click -> viewLogic.newProduct());
 
+        importProducts = new Button("Import", VaadinIcon.UPLOAD.create(),
+                click -> new ProductImportDialog().open());
+
+        // operations on all the selected products at once
+        selectionCount = new Span();
+        Button discontinue = new Button("Discontinue",
+                click -> viewLogic.discontinueSelected());
+        Button cutPrices = new Button("Cut prices 10 %",
+                click -> viewLogic.cutPricesOfSelected());
+        Button delete = new Button("Delete", VaadinIcon.TRASH.create(),
+                click -> viewLogic.deleteSelected());
+        delete.getElement().getThemeList().add("error");
+        bulkActions = new HorizontalLayout(selectionCount, discontinue,
+                cutPrices, delete);
+        bulkActions.setDefaultVerticalComponentAlignment(Alignment.CENTER);
+
         HorizontalLayout topLayout = new HorizontalLayout();
         topLayout.setWidth("100%");
         topLayout.add(filter);
+        topLayout.add(bulkActions);
+        topLayout.add(importProducts);
         topLayout.add(newProduct);
         topLayout.setVerticalComponentAlignment(Alignment.START, filter);
         topLayout.expand(filter);
@@ -94,6 +154,15 @@ public class SampleCrudView extends HorizontalLayout
         newProduct.setEnabled(enabled);
     }
 
+    public void setImportEnabled(boolean enabled) {
+        importProducts.setEnabled(enabled);
+    }
+
+    public void showBulkActions(int selected) {
+        bulkActions.setVisible(selected > 0);
+        selectionCount.setText(selected + " selected");
+    }
+
     public void clearSelection() {
         grid.getSelectionModel().deselectAll();
     }
@@ -102,16 +171,123 @@ public class SampleCrudView extends HorizontalLayout
         grid.getSelectionModel().select(row);
     }
 
-    public Product getSelectedRow() {
-        return grid.getSelectedRow();
+    public Set<Product> getSelectedRows() {
+        return grid.getSelectedRows();
+    }
+
+    /**
+     * Looks up the product in the background and hands it, or {@code null}
+     * if there is no such product, to the callback.
+     */
+    public void findProduct(int productId, Consumer<Product> found) {
+        call(AsyncDataService.get().getProductById(productId),
+                (product, error) -> {
+                    if (error != null) {
+                        showFailure(error);
+                    } else {
+                        found.accept(product);
+                    }
+                });
+    }
+
+    /**
+     * Stores the product in the background, and refreshes the grid once it
+     * is stored. The callback is handed what failed, if anything.
+     */
+    public void updateProduct(Product product, Consumer<Throwable> done) {
+        boolean newProduct = product.isNewProduct();
+        call(AsyncDataService.get().updateProduct(product),
+                (saved, error) -> {
+                    if (error == null) {
+                        dataProvider.refreshSaved(saved, newProduct);
+                    }
+                    done.accept(error);
+                });
+    }
+
+    /**
+     * Deletes the product in the background, and refreshes the grid once it
+     * is deleted.
+     */
+    public void removeProduct(Product product, Runnable done) {
+        call(AsyncDataService.get().deleteProduct(product.getId()),
+                (nothing, error) -> refreshAfter(error, done));
     }
 
-    public void updateProduct(Product product) {
-        dataProvider.save(product);
+    /**
+     * Applies the mutation to the given products in the background, as a
+     * single update, and refreshes the grid once they are updated. The
+     * callback is handed the number of products updated, leaving out those
+     * deleted in the meantime.
+     */
+    public void updateProducts(Collection<Integer> productIds,
+            Consumer<? super Product> mutation, IntConsumer done) {
+        call(AsyncDataService.get().updateProductsById(productIds, mutation),
+                (count, error) -> refreshAfter(error,
+                        () -> done.accept(count)));
     }
 
-    public void removeProduct(Product product) {
-        dataProvider.delete(product);
+    /**
+     * Deletes the given products in the background, as a single deletion,
+     * and refreshes the grid once they are deleted. The callback is handed
+     * the number of products deleted.
+     */
+    public void removeProducts(Collection<Integer> productIds,
+            IntConsumer done) {
+        call(AsyncDataService.get().deleteProducts(productIds),
+                (count, error) -> refreshAfter(error,
+                        () -> done.accept(count)));
+    }
+
+    private void refreshAfter(Throwable error, Runnable done) {
+        if (error != null) {
+            showFailure(error);
+            return;
+        }
+        dataProvider.refreshAll();
+        done.run();
+    }
+
+    /**
+     * Shows why a back-end call failed.
+     */
+    public void showFailure(Throwable error) {
+        if (error instanceof RejectedExecutionException) {
+            showError("The server is busy, please try again in a moment");
+        } else {
+            showError("Could not reach the product catalog: "
+                    + error.getMessage());
+        }
+    }
+
+    /**
+     * Hands the outcome of the back-end call to the callback with the
+     * session of this view locked, and shows the grid and the form as
+     * loading until then. Errors are handed over as thrown by the service.
+     */
+    private <T> void call(CompletableFuture<T> future,
+            BiConsumer<T, Throwable> callback) {
+        UI ui = UI.getCurrent();
+        pendingCalls++;
+        setLoading(true);
+        future.whenComplete((value, error) -> {
+            try {
+                ui.access(() -> {
+                    setLoading(--pendingCalls > 0);
+                    callback.accept(value,
+                            error instanceof CompletionException
+                                    ? error.getCause()
+                                    : error);
+                });
+            } catch (UIDetachedException e) {
+                // the user went away, the write is done all the same
+            }
+        });
+    }
+
+    private void setLoading(boolean loading) {
+        grid.setLoading(loading);
+        form.setLoading(loading);
     }
 
     public void editProduct(Product product) {
@@ -124,6 +300,21 @@ public class SampleCrudView extends HorizontalLayout
         form.getElement().setEnabled(show);
     }
 
+    @Override
+    protected void onAttach(AttachEvent attachEvent) {
+        super.onAttach(attachEvent);
+        productChangeRegistration = DataService.get()
+                .addProductChangeListener(new ProductChangeSubscriber(
+                        attachEvent.getUI(), grid, dataProvider));
+    }
+
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        productChangeRegistration.remove();
+        productChangeRegistration = null;
+        super.onDetach(detachEvent);
+    }
+
     @Override
     public void setParameter(BeforeEvent event,
                              @OptionalParameter String parameter) {
@@ -0,0 +1,171 @@
+package io.rty.incub.settings;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.metrics.SlowOperationLog;
+import io.rty.incub.backend.metrics.Timer;
+import io.rty.incub.backend.store.InMemoryDataService;
+import io.rty.incub.shared.JvmMetrics;
+import io.rty.incub.shared.RequestTimingFilter;
+import io.rty.incub.shared.SessionMemoryMeter;
+
+/**
+ * The runtime figures of the application at one time, as shown by the
+ * {@link SettingsView}. Instances are immutable.
+ */
+final class Diagnostics {
+
+    /**
+     * The collections of one garbage collector.
+     */
+    static final class Collector {
+
+        private final String name;
+        private final long count;
+        private final long millis;
+        private final Timer.Snapshot recent;
+
+        private Collector(GarbageCollectorMXBean collector) {
+            name = collector.getName();
+            count = collector.getCollectionCount();
+            millis = collector.getCollectionTime();
+            recent = JvmMetrics.getGcTimer(name).snapshot();
+        }
+
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the number of collections since the start.
+         */
+        long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the time spent collecting since the start.
+         */
+        long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Returns the durations of the collections of the last minutes.
+         */
+        Timer.Snapshot getRecent() {
+            return recent;
+        }
+    }
+
+    private final long sampledAtMillis;
+    private final MemoryUsage heap;
+    private final List<Collector> collectors;
+    private final int sessionCount;
+    private final int uiCount;
+    private final int productCount;
+    private final long catalogBytes;
+    private final Timer.Snapshot readLockWaits;
+    private final Timer.Snapshot writeLockWaits;
+    private final Timer.Snapshot requests;
+    private final List<SlowOperationLog.Entry> slowestRequests;
+
+    private Diagnostics(DataService dataService) {
+        sampledAtMillis = System.currentTimeMillis();
+        heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        List<Collector> gcs = new ArrayList<>();
+        for (GarbageCollectorMXBean collector : ManagementFactory
+                .getGarbageCollectorMXBeans()) {
+            gcs.add(new Collector(collector));
+        }
+        collectors = Collections.unmodifiableList(gcs);
+        sessionCount = SessionMemoryMeter.getSessionCount();
+        uiCount = SessionMemoryMeter.getUiCount();
+        productCount = dataService.countProducts("");
+        catalogBytes = dataService.getEstimatedBytes();
+        readLockWaits = InMemoryDataService.getReadLockWaits().snapshot();
+        writeLockWaits = InMemoryDataService.getWriteLockWaits().snapshot();
+        requests = RequestTimingFilter.getRequests().snapshot();
+        slowestRequests = Collections.unmodifiableList(
+                RequestTimingFilter.getSlowestRequests().getSlowest());
+    }
+
+    /**
+     * Samples the figures now.
+     */
+    static Diagnostics sample() {
+        return new Diagnostics(DataService.get());
+    }
+
+    long getSampledAtMillis() {
+        return sampledAtMillis;
+    }
+
+    MemoryUsage getHeap() {
+        return heap;
+    }
+
+    List<Collector> getCollectors() {
+        return collectors;
+    }
+
+    int getSessionCount() {
+        return sessionCount;
+    }
+
+    int getUiCount() {
+        return uiCount;
+    }
+
+    int getProductCount() {
+        return productCount;
+    }
+
+    /**
+     * Returns the estimated bytes per product, or -1 if not known.
+     */
+    long getBytesPerProduct() {
+        return catalogBytes < 0 || productCount == 0 ? -1
+                : catalogBytes / productCount;
+    }
+
+    long getCatalogBytes() {
+        return catalogBytes;
+    }
+
+    /**
+     * Returns the waits for the read lock of the data service of the last
+     * minutes. Taking the lock without waiting is not counted.
+     */
+    Timer.Snapshot getReadLockWaits() {
+        return readLockWaits;
+    }
+
+    /**
+     * Returns the waits for the write lock of the data service of the last
+     * minutes. Taking the lock without waiting is not counted.
+     */
+    Timer.Snapshot getWriteLockWaits() {
+        return writeLockWaits;
+    }
+
+    /**
+     * Returns the durations of the requests of the last minutes.
+     */
+    Timer.Snapshot getRequests() {
+        return requests;
+    }
+
+    /**
+     * Returns the slowest requests of the last minutes, the slowest first.
+     */
+    List<SlowOperationLog.Entry> getSlowestRequests() {
+        return slowestRequests;
+    }
+}
@@ -0,0 +1,85 @@
+package io.rty.incub.settings;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.flow.shared.Registration;
+
+/**
+ * Samples the {@link Diagnostics} of the application every
+ * {@value #PERIOD_SECONDS} seconds and hands them to its listeners, from a
+ * thread of its own.
+ * <p>
+ * A sample reads the JVM management beans and the counters that timers and
+ * listeners keep anyway, and locks nothing but the data service for reading,
+ * so it costs next to nothing. Still, sampling only goes on while someone
+ * listens.
+ */
+final class DiagnosticsSampler {
+
+    static final long PERIOD_SECONDS = 2;
+
+    private static final Logger LOGGER = Logger
+            .getLogger(DiagnosticsSampler.class.getName());
+    private static final DiagnosticsSampler INSTANCE = new DiagnosticsSampler();
+
+    private final ScheduledExecutorService executor = Executors
+            .newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "diagnostics-sampler");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private final List<Consumer<Diagnostics>> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledFuture<?> sampling;
+
+    private DiagnosticsSampler() {
+    }
+
+    static DiagnosticsSampler get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Adds a listener, handed a first sample at once and then every
+     * {@value #PERIOD_SECONDS} seconds. Listeners are called from the thread
+     * of the sampler, one after the other, so they should only hand the
+     * sample over to their UI.
+     */
+    synchronized Registration addListener(Consumer<Diagnostics> listener) {
+        listeners.add(listener);
+        if (sampling == null) {
+            sampling = executor.scheduleAtFixedRate(this::sample, 0,
+                    PERIOD_SECONDS, TimeUnit.SECONDS);
+        } else {
+            executor.execute(() -> listener.accept(Diagnostics.sample()));
+        }
+        return () -> removeListener(listener);
+    }
+
+    private synchronized void removeListener(Consumer<Diagnostics> listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty() && sampling != null) {
+            sampling.cancel(false);
+            sampling = null;
+        }
+    }
+
+    private void sample() {
+        // an exception would cancel the sampling for good
+        try {
+            Diagnostics diagnostics = Diagnostics.sample();
+            for (Consumer<Diagnostics> listener : listeners) {
+                listener.accept(diagnostics);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to sample diagnostics", e);
+        }
+    }
+}
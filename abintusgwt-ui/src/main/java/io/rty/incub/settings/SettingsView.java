@@ -1,27 +1,81 @@
 package io.rty.incub.settings;
 
+import java.lang.management.MemoryUsage;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.flow.component.AttachEvent;
+import com.vaadin.flow.component.DetachEvent;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
+import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.html.H3;
 import com.vaadin.flow.component.html.Span;
 import com.vaadin.flow.component.icon.VaadinIcon;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
+import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.component.orderedlayout.FlexComponent.Alignment;
 import com.vaadin.flow.component.orderedlayout.FlexComponent.JustifyContentMode;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
-import com.vaadin.flow.server.Version;
+import com.vaadin.flow.shared.Registration;
 
 import io.rty.incub.MainLayout;
 import io.rty.incub.authentication.AccessControl;
 import io.rty.incub.authentication.AccessControlFactory;
+import io.rty.incub.backend.metrics.SlowOperationLog;
+import io.rty.incub.backend.metrics.Timer;
+import io.rty.incub.shared.SessionMemoryMeter;
+import io.rty.incub.shared.SessionMemoryMeter.Measurement;
 
+/**
+ * Shows the runtime diagnostics of the application to admins: heap and
+ * garbage collections, live sessions, the size of the catalog, waits for the
+ * locks of the data service and the slowest recent requests. The figures are
+ * sampled by the {@link DiagnosticsSampler} and pushed while the view is
+ * attached. The memory retained by each session is measured on demand only.
+ */
 @Route(value = "settings", layout = MainLayout.class)
 @PageTitle("Settings")
 public class SettingsView extends HorizontalLayout  {
 
 	public static final String VIEW_NAME = "settings";
+
+	private static final Logger LOGGER = Logger
+			.getLogger(SettingsView.class.getName());
+
+	/**
+	 * Sessions cannot be measured from a request thread, which holds the lock
+	 * of its own session, so they are measured on this one.
+	 */
+	private static final ExecutorService MEASUREMENTS = Executors
+			.newSingleThreadExecutor(r -> {
+				Thread thread = new Thread(r, "session-memory");
+				thread.setDaemon(true);
+				return thread;
+			});
 	
-	
-	private HorizontalLayout layout;
-    private AccessControl accessControl;
+	private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter
+			.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+	private AccessControl accessControl;
+
+	private final Span sampledAt = new Span();
+	private final Span heap = new Span();
+	private final Grid<Diagnostics.Collector> collectors = new Grid<>();
+	private final Span sessions = new Span();
+	private final Span catalog = new Span();
+	private final Span lockWaits = new Span();
+	private final Span requests = new Span();
+	private final Grid<SlowOperationLog.Entry> slowestRequests = new Grid<>();
+	private Registration sampling;
 	
 	public SettingsView() {
 		accessControl = AccessControlFactory.getInstance().createAccessControl();
@@ -30,7 +84,166 @@ public class SettingsView extends HorizontalLayout  {
 	
 	private void buildUI() {
 		setSizeFull();
-		layout = new HorizontalLayout();
 		setClassName("settings-screen");
+		if (accessControl.isUserInRole(AccessControl.ADMIN_ROLE_NAME)) {
+			add(createDiagnostics(), createSessionMemory());
+		} else {
+			add(new Span("Diagnostics are only shown to admins."));
+		}
+	}
+
+	@Override
+	protected void onAttach(AttachEvent attachEvent) {
+		super.onAttach(attachEvent);
+		if (accessControl.isUserInRole(AccessControl.ADMIN_ROLE_NAME)) {
+			UI ui = attachEvent.getUI();
+			sampling = DiagnosticsSampler.get().addListener(diagnostics -> {
+				try {
+					ui.access(() -> show(diagnostics));
+				} catch (UIDetachedException e) {
+					// detached before the sample came, see onDetach
+				}
+			});
+		}
+	}
+
+	@Override
+	protected void onDetach(DetachEvent detachEvent) {
+		if (sampling != null) {
+			sampling.remove();
+			sampling = null;
+		}
+		super.onDetach(detachEvent);
+	}
+
+	private VerticalLayout createDiagnostics() {
+		collectors.addColumn(Diagnostics.Collector::getName)
+				.setHeader("Collector");
+		collectors.addColumn(collector -> String.format("%,d",
+				collector.getCount())).setHeader("Collections");
+		collectors.addColumn(collector -> String.format("%,d",
+				collector.getMillis())).setHeader("Total ms");
+		collectors.addColumn(collector -> collector.getRecent().getCount())
+				.setHeader("Recent");
+		collectors.addColumn(collector -> millis(collector.getRecent(), 0.5))
+				.setHeader("p50 ms");
+		collectors.addColumn(collector -> millis(collector.getRecent(), 0.99))
+				.setHeader("p99 ms");
+		collectors.setHeightByRows(true);
+
+		slowestRequests.addColumn(entry -> TIME_FORMAT
+				.format(Instant.ofEpochMilli(entry.getEndMillis())))
+				.setHeader("Ended").setFlexGrow(0).setWidth("7em");
+		slowestRequests.addColumn(entry -> String.format("%,.1f",
+				entry.getNanos() / 1e6)).setHeader("ms").setFlexGrow(0)
+				.setWidth("7em");
+		slowestRequests.addColumn(SlowOperationLog.Entry::getDescription)
+				.setHeader("Request");
+
+		VerticalLayout diagnostics = new VerticalLayout(new H3("Diagnostics"),
+				sampledAt, heap, collectors, sessions, catalog, lockWaits,
+				requests, new H3("Slowest requests"), slowestRequests);
+		diagnostics.setSizeFull();
+		return diagnostics;
+	}
+
+	private void show(Diagnostics diagnostics) {
+		sampledAt.setText("Sampled at " + TIME_FORMAT
+				.format(Instant.ofEpochMilli(diagnostics.getSampledAtMillis())));
+		MemoryUsage usage = diagnostics.getHeap();
+		heap.setText(String.format(
+				"Heap: %,d MB used, %,d MB committed, %s max",
+				megabytes(usage.getUsed()), megabytes(usage.getCommitted()),
+				usage.getMax() < 0 ? "no"
+						: String.format("%,d MB", megabytes(usage.getMax()))));
+		collectors.setItems(diagnostics.getCollectors());
+		sessions.setText(String.format("Sessions: %,d, UIs: %,d",
+				diagnostics.getSessionCount(), diagnostics.getUiCount()));
+		catalog.setText(String.format("Catalog: %,d products, %s per product",
+				diagnostics.getProductCount(),
+				diagnostics.getBytesPerProduct() < 0 ? "unknown bytes"
+						: String.format("%,d bytes",
+								diagnostics.getBytesPerProduct())));
+		lockWaits.setText(String.format(
+				"Lock waits: %,d read (p50 %s ms, p99 %s ms), "
+						+ "%,d write (p50 %s ms, p99 %s ms)",
+				diagnostics.getReadLockWaits().getCount(),
+				millis(diagnostics.getReadLockWaits(), 0.5),
+				millis(diagnostics.getReadLockWaits(), 0.99),
+				diagnostics.getWriteLockWaits().getCount(),
+				millis(diagnostics.getWriteLockWaits(), 0.5),
+				millis(diagnostics.getWriteLockWaits(), 0.99)));
+		requests.setText(String.format(
+				"Requests: %,d (p50 %s ms, p99 %s ms)",
+				diagnostics.getRequests().getCount(),
+				millis(diagnostics.getRequests(), 0.5),
+				millis(diagnostics.getRequests(), 0.99)));
+		slowestRequests.setItems(diagnostics.getSlowestRequests());
+	}
+
+	private static String millis(Timer.Snapshot snapshot, double quantile) {
+		return snapshot.getCount() == 0 ? "-"
+				: String.format("%,.1f",
+						snapshot.getQuantileNanos(quantile) / 1e6);
+	}
+
+	private static long megabytes(long bytes) {
+		return bytes >> 20;
+	}
+
+	/**
+	 * Lists the bytes retained by each UI, largest first, when asked for.
+	 */
+	private VerticalLayout createSessionMemory() {
+		Grid<Measurement> grid = new Grid<>();
+		grid.addColumn(Measurement::getSessionId).setHeader("Session");
+		grid.addColumn(Measurement::getUiId).setHeader("UI");
+		grid.addColumn(Measurement::getLocation).setHeader("View");
+		grid.addColumn(measurement -> measurement.getBytes() < 0
+				? "not serializable"
+				: String.format("%,d", measurement.getBytes()))
+				.setHeader("Bytes");
+		Span summary = new Span();
+		Button measure = new Button("Measure sessions",
+				VaadinIcon.REFRESH.create());
+		measure.addClickListener(event -> {
+			UI ui = UI.getCurrent();
+			measure.setEnabled(false);
+			MEASUREMENTS.execute(() -> {
+				List<Measurement> measurements;
+				try {
+					measurements = SessionMemoryMeter.measureAll();
+				} catch (RuntimeException e) {
+					LOGGER.log(Level.WARNING, "Failed to measure sessions", e);
+					measurements = null;
+				}
+				List<Measurement> measured = measurements;
+				try {
+					ui.access(() -> {
+						if (measured == null) {
+							summary.setText("Measuring failed, see the log");
+						} else {
+							long total = measured.stream()
+									.mapToLong(Measurement::getBytes)
+									.filter(bytes -> bytes > 0).sum();
+							grid.setItems(measured);
+							summary.setText(String.format(
+									"%,d sessions, %,d UIs, %,d bytes",
+									SessionMemoryMeter.getSessionCount(),
+									measured.size(), total));
+						}
+						measure.setEnabled(true);
+					});
+				} catch (UIDetachedException e) {
+					// the view was left while measuring
+				}
+			});
+		});
+		HorizontalLayout header = new HorizontalLayout(measure, summary);
+		header.setDefaultVerticalComponentAlignment(Alignment.CENTER);
+		VerticalLayout sessionMemory = new VerticalLayout(
+				new H3("Session memory"), header, grid);
+		sessionMemory.setSizeFull();
+		return sessionMemory;
 	}
 }
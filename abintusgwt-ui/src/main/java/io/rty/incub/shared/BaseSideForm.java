@@ -1,13 +1,19 @@
 package io.rty.incub.shared;
 
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 import com.vaadin.flow.component.ClickEvent;
 import com.vaadin.flow.component.ComponentEventListener;
+import com.vaadin.flow.component.HasValue;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.html.Div;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.component.textfield.TextField;
 import com.vaadin.flow.data.binder.Binder;
+import com.vaadin.flow.data.binder.BinderValidationStatusHandler;
+import com.vaadin.flow.data.binder.BindingValidationStatus;
 import com.vaadin.flow.dom.DomEventListener;
 
 /**
@@ -18,12 +24,45 @@ import com.vaadin.flow.dom.DomEventListener;
  * @param <T> the type of the item the form should edit
  */
 public abstract class BaseSideForm<T> extends Div {
+
+    /**
+     * Milliseconds without typing after which a debounced field sends its
+     * value.
+     */
+    protected static final int VALUE_CHANGE_TIMEOUT = 400;
+
+    private static final String DEBOUNCED_EVENT = "debounced-value-changed";
+
+    /**
+     * Sends the value on the first keystroke after a pause, so that the
+     * buttons follow at once, then once typing pauses, or when the field is
+     * left or Enter pressed, whichever comes first. Installed once per
+     * element, while the timeout is updated on every attach.
+     */
+    private static final String DEBOUNCE_SCRIPT = "const field = this;"
+            + "field.$debounceTimeout = $0;"
+            + "if (field.$debounce) { return; }"
+            + "let timer = null, pending = false;"
+            + "const send = () => field.dispatchEvent(new CustomEvent('"
+            + DEBOUNCED_EVENT + "'));"
+            + "field.$debounce = () => {"
+            + "  if (timer !== null) { clearTimeout(timer); timer = null; }"
+            + "  if (pending) { pending = false; send(); }"
+            + "};"
+            + "field.addEventListener('input', () => {"
+            + "  if (timer === null) { send(); } else { clearTimeout(timer); pending = true; }"
+            + "  timer = setTimeout(field.$debounce, field.$debounceTimeout);"
+            + "});"
+            + "field.addEventListener('change', field.$debounce);";
 	
 	protected VerticalLayout content;
 	
 	protected Binder<T> binder;
 
 	protected T currentItem;
+
+    /** The fields whose last validation failed. */
+    private final Set<HasValue<?, ?>> invalidFields = new HashSet<>();
 	
     protected Button save;
     protected Button discard;
@@ -48,6 +87,58 @@ public abstract class BaseSideForm<T> extends Div {
      */
     protected abstract void setUpBinder();
     
+    /**
+     * Make the given fields send their value once typing pauses for
+     * {@value #VALUE_CHANGE_TIMEOUT} ms, rather than on every keystroke,
+     * which costs a round trip and a validation each.
+     * 
+     * The first keystroke after a pause is still sent at once, so that
+     * the buttons are enabled as soon as an edit starts, and leaving the
+     * field or pressing Enter sends its value right away, so that a save
+     * never misses the last keystrokes.
+     * 
+     * @param fields the text fields to debounce
+     */
+    protected void debounceValueChanges(final TextField... fields) {
+        for (TextField field : fields) {
+            // the value is only synchronized on the event of the script
+            field.setValueChangeMode(null);
+            field.getElement().synchronizeProperty("value", DEBOUNCED_EVENT);
+            field.addAttachListener(event -> field.getElement()
+                    .executeJavaScript(DEBOUNCE_SCRIPT, VALUE_CHANGE_TIMEOUT));
+        }
+    }
+
+    /**
+     * Enable the {@code save} and {@code discard} buttons while the item has
+     * changes, and {@code save} only while it is valid.
+     * 
+     * The binder validates a field only when its value changes, so the
+     * outcome is kept per field and the form is valid while none of them
+     * failed. Call it at the end of {@link #setUpBinder()}, after any
+     * validation status handler is set.
+     */
+    protected void bindButtonsToStatus() {
+        final BinderValidationStatusHandler<T> statusHandler = binder
+                .getValidationStatusHandler();
+        binder.setValidationStatusHandler(status -> {
+            for (BindingValidationStatus<?> fieldStatus : status
+                    .getFieldValidationStatuses()) {
+                if (fieldStatus.isError()) {
+                    invalidFields.add(fieldStatus.getField());
+                } else {
+                    invalidFields.remove(fieldStatus.getField());
+                }
+            }
+            statusHandler.statusChange(status);
+        });
+        binder.addStatusChangeListener(event -> {
+            boolean hasChanges = binder.hasChanges();
+            save.setEnabled(hasChanges && invalidFields.isEmpty());
+            discard.setEnabled(hasChanges);
+        });
+    }
+    
     /**
      * Create the listener invoked when the user click on the {@code save} button
      * 
@@ -175,6 +266,18 @@ public abstract class BaseSideForm<T> extends Div {
         content.add(save, discard, delete, cancel);
     }
     
+    /**
+     * Show the form as loading while its item is read or written in the
+     * background, with its fields and buttons disabled, so that the same
+     * edit cannot be saved twice.
+     * 
+     * @param loading whether the form is waiting for the back end
+     */
+    public void setLoading(final boolean loading) {
+        getElement().getClassList().set("loading", loading);
+        content.getElement().setEnabled(!loading);
+    }
+    
     /**
      * Adjust the form to be able to edit the {@code item} from within this
      * form.
@@ -183,6 +286,7 @@ public abstract class BaseSideForm<T> extends Div {
      */
     protected void editItem(final T item) {
     	currentItem = item;
+        // reading resets the status of every field
         binder.readBean(item);
     }
 }
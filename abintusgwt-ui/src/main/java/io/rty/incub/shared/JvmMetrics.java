@@ -0,0 +1,77 @@
+package io.rty.incub.shared;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import io.rty.incub.backend.metrics.MetricRegistry;
+import io.rty.incub.backend.metrics.Timer;
+
+/**
+ * Adds the heap usage and the garbage collections of the JVM to the
+ * {@link MetricRegistry} of the application.
+ * <p>
+ * Collections are timed from the notifications the collectors send when
+ * done, with a {@value #GC_TIMER_NAME} timer per collector, rather than by
+ * polling. For collectors working alongside the application, such as the
+ * cycles of ZGC, the time is that of the whole collection, not of a pause.
+ */
+public final class JvmMetrics {
+
+    public static final String GC_TIMER_NAME = "abintusgwt_jvm_gc_seconds";
+
+    private static final AtomicBoolean REGISTERED = new AtomicBoolean();
+
+    private JvmMetrics() {
+    }
+
+    /**
+     * Registers the metrics of the JVM, once.
+     */
+    public static void register() {
+        if (!REGISTERED.compareAndSet(false, true)) {
+            return;
+        }
+        MetricRegistry registry = MetricRegistry.get();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        registry.gauge("abintusgwt_jvm_heap_used_bytes", "Heap in use.",
+                () -> memory.getHeapMemoryUsage().getUsed());
+        registry.gauge("abintusgwt_jvm_heap_committed_bytes",
+                "Heap reserved from the system.",
+                () -> memory.getHeapMemoryUsage().getCommitted());
+        registry.gauge("abintusgwt_jvm_heap_max_bytes",
+                "Heap the JVM can grow to, -1 if unbounded.",
+                () -> memory.getHeapMemoryUsage().getMax());
+        for (GarbageCollectorMXBean collector : ManagementFactory
+                .getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                Timer timer = getGcTimer(collector.getName());
+                ((NotificationEmitter) collector).addNotificationListener(
+                        (notification, handback) -> timer.record(
+                                GarbageCollectionNotificationInfo
+                                        .from((CompositeData) notification
+                                                .getUserData())
+                                        .getGcInfo().getDuration(),
+                                TimeUnit.MILLISECONDS),
+                        notification -> GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
+                                .equals(notification.getType()),
+                        null);
+            }
+        }
+    }
+
+    /**
+     * Returns the timer of the collections of the given collector.
+     */
+    public static Timer getGcTimer(String collector) {
+        return MetricRegistry.get().timer(GC_TIMER_NAME,
+                "Time spent in garbage collections.", "collector",
+                collector);
+    }
+}
@@ -0,0 +1,34 @@
+package io.rty.incub.shared;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import io.rty.incub.backend.metrics.MetricRegistry;
+
+/**
+ * Serves the metrics of the application at {@code /metrics}, in the
+ * Prometheus text format, for Prometheus to scrape.
+ * <p>
+ * The endpoint needs no sign-in, as scrapers have no session: keep it to the
+ * internal network at the proxy.
+ */
+@WebServlet(urlPatterns = "/metrics", name = "MetricsServlet")
+public class MetricsServlet extends HttpServlet {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Override
+    protected void doGet(HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        response.setContentType(CONTENT_TYPE);
+        response.setHeader("Cache-Control", "no-cache");
+        Writer out = response.getWriter();
+        MetricRegistry.get().writePrometheus(out);
+        out.flush();
+    }
+}
@@ -0,0 +1,124 @@
+package io.rty.incub.shared;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import io.rty.incub.authentication.CurrentUser;
+import io.rty.incub.backend.metrics.MetricRegistry;
+import io.rty.incub.backend.metrics.SlowOperationLog;
+import io.rty.incub.backend.metrics.Timer;
+
+/**
+ * Times every HTTP request, and keeps the slowest recent ones with who made
+ * them, to tell which requests a slowdown comes from.
+ * <p>
+ * Push requests are left out, as they stay open for as long as the client is
+ * there. Server round trips are requests rather than push messages thanks to
+ * the {@code WEBSOCKET_XHR} transport, so they are timed too.
+ */
+@WebFilter(urlPatterns = "/*", asyncSupported = true)
+public class RequestTimingFilter implements Filter {
+
+    private static final Timer REQUESTS = MetricRegistry.get().timer(
+            "abintusgwt_http_request_seconds",
+            "Time spent serving HTTP requests, push excluded.");
+    private static final SlowOperationLog SLOWEST = new SlowOperationLog(20);
+
+    /**
+     * Returns the timer of all requests.
+     */
+    public static Timer getRequests() {
+        return REQUESTS;
+    }
+
+    /**
+     * Returns the slowest requests of the last one to two minutes.
+     */
+    public static SlowOperationLog getSlowestRequests() {
+        return SLOWEST;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response,
+            FilterChain chain) throws IOException, ServletException {
+        if (!(request instanceof HttpServletRequest)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        if ("push".equals(queryParameter(httpRequest, "v-r"))) {
+            chain.doFilter(request, response);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            long nanos = System.nanoTime() - start;
+            REQUESTS.record(nanos, TimeUnit.NANOSECONDS);
+            SLOWEST.record(nanos, () -> describe(httpRequest));
+        }
+    }
+
+    private static String describe(HttpServletRequest request) {
+        StringBuilder description = new StringBuilder(request.getMethod())
+                .append(' ').append(request.getRequestURI());
+        String type = queryParameter(request, "v-r");
+        if (type != null) {
+            description.append(" v-r=").append(type);
+        }
+        String ui = queryParameter(request, "v-uiId");
+        if (ui != null) {
+            description.append(" UI ").append(ui);
+        }
+        Object user = null;
+        HttpSession session = request.getSession(false);
+        try {
+            user = session == null ? null
+                    : session.getAttribute(
+                            CurrentUser.CURRENT_USER_SESSION_ATTRIBUTE_KEY);
+        } catch (IllegalStateException e) {
+            // the request signed the user out
+        }
+        if (user != null) {
+            description.append(" by ").append(user);
+        }
+        return description.toString();
+    }
+
+    /**
+     * Reads a parameter from the query string only, as reading the
+     * parameters of a form post would consume its body.
+     */
+    private static String queryParameter(HttpServletRequest request,
+            String name) {
+        String query = request.getQueryString();
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                return parameter.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
@@ -0,0 +1,233 @@
+package io.rty.incub.shared;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.server.VaadinService;
+import com.vaadin.flow.server.VaadinSession;
+import io.rty.incub.backend.DataService;
+import io.rty.incub.backend.data.Category;
+import io.rty.incub.backend.metrics.MetricRegistry;
+import io.rty.incub.crud.CatalogViewModel;
+import io.rty.incub.crud.ProductRenderCache;
+
+/**
+ * Accounts for the memory retained by each UI of the live sessions.
+ * <p>
+ * The bytes of a UI are estimated by serializing it, as a session would be
+ * for replication, with the objects shared by all UIs, such as the
+ * {@link DataService} and the {@link CatalogViewModel}, written as mere
+ * references. The estimate follows the retained heap closely enough to tell
+ * which UIs grow, and with what, without a heap dump. Serializing takes the
+ * session lock and time in proportion to the size of the UI, so measuring is
+ * meant for diagnostics rather than for every request.
+ */
+public final class SessionMemoryMeter {
+
+    private static final Logger LOGGER = Logger
+            .getLogger(SessionMemoryMeter.class.getName());
+
+    /** Objects of these types are shared by all UIs and not counted. */
+    private static final List<Class<?>> SHARED_TYPES = Arrays.asList(
+            VaadinService.class, VaadinSession.class, DataService.class,
+            CatalogViewModel.class, ProductRenderCache.class,
+            Category.class);
+
+    private static final Set<VaadinSession> SESSIONS = ConcurrentHashMap
+            .newKeySet();
+    private static final AtomicInteger UI_COUNT = new AtomicInteger();
+
+    /**
+     * The memory retained by one UI.
+     */
+    public static final class Measurement implements Serializable {
+
+        private final String sessionId;
+        private final int uiId;
+        private final String location;
+        private final long bytes;
+
+        private Measurement(String sessionId, int uiId, String location,
+                long bytes) {
+            this.sessionId = sessionId;
+            this.uiId = uiId;
+            this.location = location;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Returns an id of the session that cannot be used to take it over.
+         */
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public int getUiId() {
+            return uiId;
+        }
+
+        /**
+         * Returns the path of the view shown by the UI.
+         */
+        public String getLocation() {
+            return location;
+        }
+
+        /**
+         * Returns the estimated bytes retained by the UI, or -1 if it holds
+         * something that cannot be serialized.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    private SessionMemoryMeter() {
+    }
+
+    /**
+     * Keeps track of the sessions of the service, so that they can be
+     * measured, and counts their UIs. Both counts are added to the
+     * {@link MetricRegistry} as well.
+     */
+    public static void register(VaadinService service) {
+        service.addSessionInitListener(
+                event -> SESSIONS.add(event.getSession()));
+        service.addSessionDestroyListener(
+                event -> SESSIONS.remove(event.getSession()));
+        service.addUIInitListener(event -> {
+            UI_COUNT.incrementAndGet();
+            event.getUI().addDetachListener(
+                    detach -> UI_COUNT.decrementAndGet());
+        });
+        MetricRegistry.get().gauge("abintusgwt_sessions",
+                "Live Vaadin sessions.", SessionMemoryMeter::getSessionCount);
+        MetricRegistry.get().gauge("abintusgwt_uis",
+                "UIs of the live sessions.", SessionMemoryMeter::getUiCount);
+    }
+
+    public static int getSessionCount() {
+        return SESSIONS.size();
+    }
+
+    /**
+     * Returns the number of UIs of the live sessions, counted as they are
+     * created and detached rather than by locking the sessions.
+     */
+    public static int getUiCount() {
+        return UI_COUNT.get();
+    }
+
+    /**
+     * Measures every UI of every live session, locking one session at a
+     * time. A session that fails to be measured, for instance for a UI too
+     * deep to serialize, is logged and left out.
+     * Must not be called with a session locked, so not from a request
+     * thread.
+     *
+     * @return the measurements, from the largest UI down
+     */
+    public static List<Measurement> measureAll() {
+        List<Measurement> measurements = new ArrayList<>();
+        for (VaadinSession session : SESSIONS) {
+            List<Measurement> ofSession = new ArrayList<>();
+            try {
+                session.accessSynchronously(() -> {
+                    for (UI ui : session.getUIs()) {
+                        ofSession.add(measure(ui));
+                    }
+                });
+            } catch (RuntimeException | StackOverflowError e) {
+                // serializing overflows the stack on deep enough objects
+                LOGGER.log(Level.WARNING, "Failed to measure a session", e);
+                continue;
+            }
+            measurements.addAll(ofSession);
+        }
+        measurements.sort((a, b) -> Long.compare(b.bytes, a.bytes));
+        return Collections.unmodifiableList(measurements);
+    }
+
+    /**
+     * Measures the UI. The session of the UI must be locked.
+     */
+    public static Measurement measure(UI ui) {
+        VaadinSession session = ui.getSession();
+        long bytes;
+        try {
+            bytes = serializedSize(ui);
+        } catch (NotSerializableException e) {
+            bytes = -1;
+        } catch (IOException e) {
+            throw new IllegalStateException(
+                    "Cannot measure UI " + ui.getUIId(), e);
+        }
+        return new Measurement(
+                Integer.toHexString(System.identityHashCode(session)),
+                ui.getUIId(),
+                ui.getInternals().getActiveViewLocation()
+                        .getPathWithQueryParameters(),
+                bytes);
+    }
+
+    private static long serializedSize(Object root) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream();
+        try (ObjectOutputStream out = new SharedReferenceOutputStream(
+                counter)) {
+            out.writeObject(root);
+        }
+        return counter.count;
+    }
+
+    /**
+     * Writes objects shared by all UIs as {@code null}, so that only what the
+     * UI retains by itself is counted.
+     */
+    private static final class SharedReferenceOutputStream
+            extends ObjectOutputStream {
+
+        private SharedReferenceOutputStream(OutputStream out)
+                throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object object) {
+            for (Class<?> type : SHARED_TYPES) {
+                if (type.isInstance(object)) {
+                    return null;
+                }
+            }
+            return object;
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}